@@ -0,0 +1,95 @@
+package com.telegram_bots.bookbot.service;
+
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Разбор страницы поиска litres: прежний DOM-разбор со сборкой всего списка против потокового до limit книг.
+ * Запуск: mvn -Pjmh test-compile exec:exec -Djmh.args="LitresPageParser -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LitresPageParserBenchmark {
+
+    private static final String ITEM = """
+            <div class="art-item">
+              <div class="art-item__cover"><img src="/covers/%1$d.jpg" alt="Обложка"></div>
+              <div class="art-item__name"><a href="/book/%1$d/">Книга номер %1$d</a></div>
+              <div class="art-item__author"><a href="/author/%1$d/">Автор %1$d</a></div>
+              <div class="art-item__annotation">Длинная аннотация к книге %1$d, в которой пересказан сюжет. Объем: %2$d тыс. знаков</div>
+              <div class="art-item__rating"><span>4.%1$d</span> <span>(%1$d оценок)</span></div>
+            </div>
+            """;
+
+    @Param({"60"})
+    public int itemsOnPage;
+
+    @Param({"5"})
+    public int limit;
+
+    private String page;
+    private LitresPageParser streamParser;
+
+    @Setup
+    public void setUp() {
+        StringBuilder html = new StringBuilder("<html><head><title>Поиск</title></head><body><div class=\"search\">");
+        for (int i = 0; i < itemsOnPage; i++) {
+            html.append(String.format(ITEM, i, 100 + i));
+        }
+        page = html.append("</div></body></html>").toString();
+        streamParser = new LitresPageParser(limit);
+    }
+
+    // так страница разбиралась раньше: полный DOM, все карточки, Pattern в цикле, обрезка уже у вызывающего
+    @Benchmark
+    public List<LitresBookDto> domParseAllThenLimit() {
+        Document doc = Jsoup.parse(page, "https://www.litres.ru/");
+        List<LitresBookDto> result = new ArrayList<>();
+        for (Element book : doc.select(".art-item")) {
+            String title = book.select(".art-item__name a").text();
+            String author = book.select(".art-item__author a").text();
+            String annotation = book.select(".art-item__annotation").text();
+            int totalPages = 0;
+            Pattern pattern = Pattern.compile("Объем:\\s*(\\d+)\\s*тыс\\. знаков");
+            Matcher matcher = pattern.matcher(annotation);
+            if (matcher.find()) {
+                totalPages = (int) Math.ceil(Integer.parseInt(matcher.group(1)) * 1000 / 1800.0);
+            }
+            if (!title.isEmpty()) {
+                result.add(new LitresBookDto(title, author, totalPages));
+            }
+        }
+        return result.stream().limit(limit).toList();
+    }
+
+    @Benchmark
+    public List<LitresBookDto> domParseWithLimit() {
+        return new LitresPageParser(limit).parse(Jsoup.parse(page, "https://www.litres.ru/"));
+    }
+
+    @Benchmark
+    public List<LitresBookDto> streamParseWithLimit() throws IOException {
+        try (StreamParser parser = new StreamParser(Parser.htmlParser())
+                .parse(new StringReader(page), "https://www.litres.ru/")) {
+            return streamParser.parse(parser);
+        }
+    }
+}
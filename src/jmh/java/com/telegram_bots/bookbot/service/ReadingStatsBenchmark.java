@@ -0,0 +1,150 @@
+package com.telegram_bots.bookbot.service;
+
+import com.telegram_bots.bookbot.model.dto.Statistics;
+import com.telegram_bots.bookbot.repository.BookRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Статистика чтения на H2 в памяти: прежний цикл по всем книгам пользователя, агрегатный SQL-запрос
+ * {@link BookRepository#STATISTICS_SQL} и чтение строки агрегата user_reading_stats.
+ * Запуск: mvn -Pjmh test-compile exec:exec -Djmh.args="ReadingStats"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadingStatsBenchmark {
+
+    private static final long TELEGRAM_ID = 1L;
+    // книги других пользователей, чтобы таблица не состояла из одного читателя
+    private static final int OTHER_BOOKS = 20_000;
+
+    @Param({"10", "1000", "50000"})
+    public int books;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbc;
+    private NamedParameterJdbcTemplate namedJdbc;
+    private UUID userId;
+    private MapSqlParameterSource statisticsParams;
+
+    @Setup
+    public void setUp() {
+        // кэш результатов H2 выключен, иначе одинаковый запрос по неизменной таблице не выполняется заново
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:stats" + books + ";DB_CLOSE_DELAY=-1;QUERY_CACHE_SIZE=0", true);
+        jdbc = new JdbcTemplate(dataSource);
+        namedJdbc = new NamedParameterJdbcTemplate(jdbc);
+
+        jdbc.execute("CREATE TABLE users (id UUID PRIMARY KEY, telegram_id BIGINT)");
+        jdbc.execute("CREATE TABLE book (id BIGINT AUTO_INCREMENT PRIMARY KEY, title VARCHAR(255), status VARCHAR(16), " +
+                "finish_date DATE, current_page INT, user_id UUID NOT NULL)");
+        jdbc.execute("CREATE INDEX idx_book_user_status_id ON book (user_id, status, id)");
+        jdbc.execute("CREATE TABLE user_reading_stats (telegram_id BIGINT PRIMARY KEY, day_start DATE, day_books INT, " +
+                "day_pages INT, month_start DATE, month_books INT, month_pages INT, year_start DATE, year_books INT, " +
+                "year_pages INT, biggest_book_id BIGINT, biggest_book_title VARCHAR(255), biggest_book_pages INT)");
+
+        userId = UUID.randomUUID();
+        UUID otherId = UUID.randomUUID();
+        jdbc.update("INSERT INTO users (id, telegram_id) VALUES (?, ?), (?, ?)", userId, TELEGRAM_ID, otherId, 2L);
+        insertBooks(userId, books);
+        insertBooks(otherId, OTHER_BOOKS);
+
+        LocalDate today = LocalDate.now();
+        jdbc.update("INSERT INTO user_reading_stats VALUES (?, ?, 1, 100, ?, 5, 900, ?, 40, 9000, 1, 'Книга', 700)",
+                TELEGRAM_ID, today, today.withDayOfMonth(1), today.withDayOfYear(1));
+
+        LocalDate monthStart = today.withDayOfMonth(1);
+        LocalDate yearStart = today.withDayOfYear(1);
+        statisticsParams = new MapSqlParameterSource()
+                .addValue("telegramId", TELEGRAM_ID)
+                .addValue("today", today)
+                .addValue("monthStart", monthStart)
+                .addValue("nextMonth", monthStart.plusMonths(1))
+                .addValue("yearStart", yearStart)
+                .addValue("nextYear", yearStart.plusYears(1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        jdbc.execute("SHUTDOWN");
+        dataSource.destroy();
+    }
+
+    private void insertBooks(UUID owner, int count) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate today = LocalDate.now();
+        List<Object[]> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // примерно две трети прочитаны, даты окончания за последние три года
+            boolean finished = random.nextInt(3) > 0;
+            rows.add(new Object[]{"Книга " + i, finished ? "READ" : "READING",
+                    finished ? today.minusDays(random.nextInt(3 * 365)) : null, random.nextInt(1, 1000), owner});
+        }
+        jdbc.batchUpdate("INSERT INTO book (title, status, finish_date, current_page, user_id) VALUES (?, ?, ?, ?, ?)", rows);
+    }
+
+    // так статистика считалась раньше: все книги пользователя в память и цикл по ним
+    @Benchmark
+    public Statistics javaLoop() {
+        List<Map<String, Object>> rows = jdbc.queryForList(
+                "SELECT title, finish_date, current_page FROM book WHERE user_id = ?", userId);
+        LocalDate today = LocalDate.now();
+        YearMonth thisMonth = YearMonth.now();
+        int thisYear = today.getYear();
+        int todayBooks = 0, todayPages = 0, monthBooks = 0, monthPages = 0, yearBooks = 0, yearPages = 0;
+        String biggestTitle = null;
+        int biggestPages = -1;
+        for (Map<String, Object> row : rows) {
+            Object finishDate = row.get("FINISH_DATE");
+            if (finishDate == null) {
+                continue;
+            }
+            LocalDate finished = ((Date) finishDate).toLocalDate();
+            int pages = row.get("CURRENT_PAGE") != null ? ((Number) row.get("CURRENT_PAGE")).intValue() : 0;
+            if (finished.isEqual(today)) {
+                todayBooks++;
+                todayPages += pages;
+            }
+            if (YearMonth.from(finished).equals(thisMonth)) {
+                monthBooks++;
+                monthPages += pages;
+            }
+            if (finished.getYear() == thisYear) {
+                yearBooks++;
+                yearPages += pages;
+            }
+            if (pages > biggestPages) {
+                biggestPages = pages;
+                biggestTitle = (String) row.get("TITLE");
+            }
+        }
+        return new Statistics(todayBooks, todayPages, monthBooks, monthPages, yearBooks, yearPages,
+                biggestTitle != null ? biggestTitle : "-", Math.max(biggestPages, 0));
+    }
+
+    @Benchmark
+    public Map<String, Object> sqlAggregate() {
+        return namedJdbc.queryForMap(BookRepository.STATISTICS_SQL, statisticsParams);
+    }
+
+    @Benchmark
+    public Map<String, Object> aggregateRow() {
+        return jdbc.queryForMap("SELECT * FROM user_reading_stats WHERE telegram_id = ?", TELEGRAM_ID);
+    }
+}
@@ -1,15 +1,21 @@
 package com.telegram_bots.bookbot;
 
 import com.telegram_bots.bookbot.bot.MyTelegramBot;
+import com.telegram_bots.bookbot.controller.TelegramWebhookController;
 import org.springframework.boot.SpringApplication;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
 @SpringBootApplication
+@EnableScheduling
 public class BookBotApplication {
 
     public static void main(String[] args) {
@@ -17,9 +23,28 @@ public class BookBotApplication {
     }
     @Profile("!test")
     @Bean
+    @ConditionalOnProperty(name = "bot.mode", havingValue = "polling", matchIfMissing = true)
     public TelegramBotsApi telegramBotsApi(MyTelegramBot myTelegramBot) throws TelegramApiException {
         TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
         botsApi.registerBot(myTelegramBot);
         return botsApi;
     }
+
+    // В режиме webhook апдейты приходят в TelegramWebhookController, здесь только сообщаем Telegram адрес с секретом
+    @Profile("!test")
+    @Bean
+    @ConditionalOnProperty(name = "bot.mode", havingValue = "webhook")
+    public SetWebhook telegramWebhook(MyTelegramBot myTelegramBot,
+                                      @Value("${bot.webhook.url}") String webhookUrl,
+                                      @Value("${bot.webhook.secret:}") String webhookSecret,
+                                      @Value("${bot.token}") String botToken,
+                                      @Value("${bot.webhook.max-connections:40}") int maxConnections) throws TelegramApiException {
+        String baseUrl = webhookUrl.endsWith("/") ? webhookUrl.substring(0, webhookUrl.length() - 1) : webhookUrl;
+        SetWebhook setWebhook = SetWebhook.builder()
+                .url(baseUrl + "/" + TelegramWebhookController.secret(webhookSecret, botToken))
+                .maxConnections(maxConnections)
+                .build();
+        myTelegramBot.execute(setWebhook);
+        return setWebhook;
+    }
 }
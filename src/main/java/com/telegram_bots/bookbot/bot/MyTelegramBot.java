@@ -1,15 +1,22 @@
 package com.telegram_bots.bookbot.bot;
 
+import com.telegram_bots.bookbot.bot.dispatcher.UpdateDeduplicator;
+import com.telegram_bots.bookbot.bot.dispatcher.UpdateDispatcher;
+import com.telegram_bots.bookbot.bot.outbound.OutboundMessageQueue;
 import com.telegram_bots.bookbot.bot.service.BotResponseService;
+import com.telegram_bots.bookbot.bot.service.InlineQueryService;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.commands.SetMyCommands;
-import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.InlineQuery;
 import org.telegram.telegrambots.meta.api.objects.commands.BotCommand;
 import org.telegram.telegrambots.meta.api.objects.commands.scope.BotCommandScopeDefault;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
@@ -22,6 +29,10 @@ import java.util.List;
 public class MyTelegramBot extends TelegramLongPollingBot {
 
     private final BotResponseService botResponseService;
+    private final InlineQueryService inlineQueryService;
+    private final UpdateDispatcher updateDispatcher;
+    private final UpdateDeduplicator updateDeduplicator;
+    private final OutboundMessageQueue outboundMessageQueue;
 
     @Value("${bot.token}")
     private String botToken;
@@ -29,11 +40,38 @@ public class MyTelegramBot extends TelegramLongPollingBot {
     @Value("${bot.username}")
     private String botUsername;
 
-    public MyTelegramBot(BotResponseService botResponseService) {
+    public MyTelegramBot(BotResponseService botResponseService,
+                         InlineQueryService inlineQueryService,
+                         UpdateDispatcher updateDispatcher,
+                         UpdateDeduplicator updateDeduplicator,
+                         OutboundMessageQueue outboundMessageQueue,
+                         @Value("${bot.sender.threads:4}") int senderThreads,
+                         @Value("${bot.api.base-url:}") String apiBaseUrl) {
+        super(createOptions(senderThreads, apiBaseUrl));
         this.botResponseService = botResponseService;
+        this.inlineQueryService = inlineQueryService;
+        this.updateDispatcher = updateDispatcher;
+        this.updateDeduplicator = updateDeduplicator;
+        this.outboundMessageQueue = outboundMessageQueue;
+    }
+
+    private static DefaultBotOptions createOptions(int senderThreads, String apiBaseUrl) {
+        DefaultBotOptions options = new DefaultBotOptions();
+        // executeAsync выполняется в пуле бота, по умолчанию там один поток
+        options.setMaxThreads(Math.max(1, senderThreads));
+        // свой адрес Bot API: локальный telegram-bot-api сервер или фейковый сервер в тестах
+        if (apiBaseUrl != null && !apiBaseUrl.isBlank()) {
+            options.setBaseUrl(apiBaseUrl);
+        }
+        return options;
     }
 
     @PostConstruct
+    public void init() {
+        outboundMessageQueue.attach(this);
+        registerBotCommands();
+    }
+
     public void registerBotCommands() {
         List<BotCommand> commands = List.of(new BotCommand("/start", "Запустить бота"));
         try {
@@ -55,39 +93,82 @@ public class MyTelegramBot extends TelegramLongPollingBot {
 
     @Override
     public void onUpdateReceived(Update update) {
-        List<SendMessage> messagesToSend = null;
-        DeleteMessage messageToDelete = null;
+        // Telegram повторяет апдейты после таймаутов и перезапусков
+        if (!updateDeduplicator.markUpdate(update.getUpdateId())) {
+            log.debug("Повторный апдейт {} пропущен", update.getUpdateId());
+            return;
+        }
+        // подсказки собираются только из памяти (библиотека догружается в фоне), ждать очереди чата им незачем
+        if (update.hasInlineQuery()) {
+            answerInlineQuery(update.getInlineQuery());
+            return;
+        }
+        // поток опроса только раскладывает апдейты, обработка идёт в пуле с сохранением порядка внутри чата
+        if (!updateDispatcher.dispatch(dispatchKey(update), () -> handleUpdate(update))) {
+            log.warn("Очередь обработки переполнена, апдейт {} пропущен", update.getUpdateId());
+        }
+    }
+
+    private long dispatchKey(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        return update.getUpdateId() == null ? 0L : update.getUpdateId();
+    }
+
+    void handleUpdate(Update update) {
         if (update.hasMessage() && update.getMessage().hasText()) {
-            messagesToSend = botResponseService.handleTextMessage(update);
+            send(update.getMessage().getChatId(), botResponseService.handleTextMessage(update));
         } else if (update.hasCallbackQuery()) {
-            messagesToSend = botResponseService.handleCallbackQuery(update);
-            messageToDelete = botResponseService.handleDeleteMessage(update);
+            CallbackQuery callbackQuery = update.getCallbackQuery();
+            if (callbackQuery.getMessage() == null) {
+                // кнопка под сообщением, отправленным через inline-режим: чата у бота нет, только снимаем часики
+                answerCallbackQuery(callbackQuery);
+                return;
+            }
+            if (botResponseService.requiresIdempotency(update)
+                    && !updateDeduplicator.markCallback(update.getCallbackQuery())) {
+                log.debug("Повторное нажатие {} пропущено", update.getCallbackQuery().getData());
+                return;
+            }
+            send(callbackQuery.getMessage().getChatId(), botResponseService.handleCallbackResponse(update));
         }
+    }
 
-        sendMessages(messagesToSend);
-        deleteMessage(messageToDelete);
+    private void answerInlineQuery(InlineQuery inlineQuery) {
+        try {
+            // ответ не идёт через очередь исходящих: у inline-ответов нет лимитов чата, а опоздавший ответ уже не нужен
+            executeAsync(inlineQueryService.answer(inlineQuery))
+                    .exceptionally(e -> {
+                        log.warn("Не удалось ответить на inline-запрос {}: {}", inlineQuery.getId(), e.getMessage());
+                        return null;
+                    });
+        } catch (TelegramApiException e) {
+            log.warn("Не удалось ответить на inline-запрос {}: {}", inlineQuery.getId(), e.getMessage());
+        }
     }
 
-    private void sendMessages(List<SendMessage> messages) {
-        if (messages != null && !messages.isEmpty()) {
-            try {
-                for (SendMessage msg : messages) {
-                    execute(msg);
-                }
-            } catch (TelegramApiException e) {
-                log.error("Ошибка при отправке сообщения: ", e);
-            }
+    private void answerCallbackQuery(CallbackQuery callbackQuery) {
+        try {
+            executeAsync(new AnswerCallbackQuery(callbackQuery.getId()))
+                    .exceptionally(e -> {
+                        log.debug("Не удалось ответить на нажатие {}: {}", callbackQuery.getId(), e.getMessage());
+                        return null;
+                    });
+        } catch (TelegramApiException e) {
+            log.debug("Не удалось ответить на нажатие {}: {}", callbackQuery.getId(), e.getMessage());
         }
     }
 
-    private void deleteMessage(DeleteMessage message) {
-        if (message != null) {
-            try {
-                execute(message);
-            } catch (TelegramApiException e) {
-                log.error("Ошибка при удалении сообщения: ", e);
+    private void send(Long chatId, List<? extends BotApiMethod<?>> methods) {
+        if (methods != null) {
+            String chat = String.valueOf(chatId);
+            for (BotApiMethod<?> method : methods) {
+                outboundMessageQueue.submit(chat, method);
             }
         }
     }
 }
-
@@ -0,0 +1,103 @@
+package com.telegram_bots.bookbot.bot.callback;
+
+import java.util.Arrays;
+
+/**
+ * Компактный формат callback_data: маркер версии, один символ кода действия и аргументы в виде varint.
+ * Каждый символ аргумента несёт 5 бит значения и бит продолжения, алфавит из 64 безопасных ASCII символов.
+ * Разбор идёт прямо по строке, без split, substring и регулярных выражений.
+ * <p>
+ * Маркер версии не входит в алфавит и не может быть первым символом прежнего формата "команда:аргумент",
+ * поэтому кнопки старых сообщений не попадают ни в один маршрут.
+ */
+public final class CallbackCodec {
+
+    // лимит Telegram на callback_data
+    public static final int MAX_LENGTH = 64;
+
+    // первый символ данных в текущем формате
+    static final char VERSION = '~';
+    private static final int HEADER_LENGTH = 2;
+
+    private static final char[] ALPHABET =
+            "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ-_".toCharArray();
+    private static final int[] DIGITS = new int[128];
+    private static final int PAYLOAD_BITS = 5;
+    private static final int PAYLOAD_MASK = (1 << PAYLOAD_BITS) - 1;
+    private static final int CONTINUATION = 1 << PAYLOAD_BITS;
+
+    static {
+        Arrays.fill(DIGITS, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DIGITS[ALPHABET[i]] = i;
+        }
+    }
+
+    private CallbackCodec() {
+    }
+
+    public static String encode(CallbackRoute route, long... args) {
+        StringBuilder data = new StringBuilder(HEADER_LENGTH + args.length * 2);
+        data.append(VERSION).append(route.getOpcode());
+        for (long arg : args) {
+            if (arg < 0) {
+                throw new IllegalArgumentException("Callback argument must be non-negative: " + arg);
+            }
+            long rest = arg;
+            do {
+                int digit = (int) (rest & PAYLOAD_MASK);
+                rest >>>= PAYLOAD_BITS;
+                data.append(ALPHABET[rest != 0 ? digit | CONTINUATION : digit]);
+            } while (rest != 0);
+        }
+        if (data.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("Callback data is longer than " + MAX_LENGTH + " bytes");
+        }
+        return data.toString();
+    }
+
+    /**
+     * @return маршрут или null, если данные пустые, код неизвестен или это кнопка из старой версии бота
+     */
+    public static CallbackRoute route(String data) {
+        if (data == null || data.length() < HEADER_LENGTH || data.charAt(0) != VERSION || data.indexOf(':') >= 0) {
+            return null;
+        }
+        return CallbackRoute.byOpcode(data.charAt(1));
+    }
+
+    /**
+     * Достаёт аргумент с номером index.
+     *
+     * @return значение аргумента или -1, если аргумента нет или он записан некорректно
+     */
+    public static long argument(String data, int index) {
+        if (data == null || data.length() < HEADER_LENGTH || data.charAt(0) != VERSION) {
+            return -1;
+        }
+        int position = HEADER_LENGTH;
+        int length = data.length();
+        for (int current = 0; position < length; current++) {
+            long value = 0;
+            int shift = 0;
+            int digit;
+            do {
+                if (position >= length || shift > 60) {
+                    return -1;
+                }
+                char c = data.charAt(position++);
+                digit = c < DIGITS.length ? DIGITS[c] : -1;
+                if (digit < 0) {
+                    return -1;
+                }
+                value |= (long) (digit & PAYLOAD_MASK) << shift;
+                shift += PAYLOAD_BITS;
+            } while ((digit & CONTINUATION) != 0);
+
+            if (current == index) {
+                return value;
+            }
+        }
+        return -1;
+    }
+}
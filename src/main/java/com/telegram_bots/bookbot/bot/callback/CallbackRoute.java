@@ -0,0 +1,74 @@
+package com.telegram_bots.bookbot.bot.callback;
+
+/**
+ * Все действия, которые можно повесить на inline-кнопку.
+ * Код действия - символ после маркера версии в callback_data, по нему маршрут находится без разбора строки.
+ */
+public enum CallbackRoute {
+    ADD_BOOK('a', false, true, false),
+    CANCEL_ADDED_BOOK('c', false, true, false),
+    SHOW_BOOKS('l', false, false, false),
+    SELECT_BOOK('s', false, true, true),
+    BOOKS_NEXT_PAGE('n', true, true, false),
+    BOOKS_PREV_PAGE('p', true, true, false),
+    CHANGE_FILTER('f', true, true, false),
+    FILTER_STATUS_CLEAR('e', true, false, false),
+    FILTER_BY_STATUS('g', true, false, false),
+    MANAGE_BOOK('m', false, false, false),
+    CHANGE_STATUS('h', false, false, false),
+    UPDATE_PAGE('u', false, false, false),
+    RATE_BOOK('r', false, false, false),
+    DELETE_BOOK('d', false, true, true),
+    SET_STATUS('t', false, false, false),
+    CANCEL_UPDATE_BOOK('x', false, true, false),
+    SHOW_STATS('z', false, false, false),
+    MORE_RESULTS('o', true, true, false);
+
+    private static final CallbackRoute[] BY_OPCODE = new CallbackRoute[128];
+
+    static {
+        for (CallbackRoute route : values()) {
+            if (BY_OPCODE[route.opcode] != null) {
+                throw new IllegalStateException("Duplicate callback opcode " + route.opcode);
+            }
+            BY_OPCODE[route.opcode] = route;
+        }
+    }
+
+    private final char opcode;
+    private final boolean editable;
+    private final boolean deletesMessage;
+    private final boolean requiresIdempotency;
+
+    /**
+     * @param editable            при edit-in-place ответ редактирует сообщение с кнопкой
+     * @param deletesMessage      без редактирования сообщение с кнопкой удаляется после ответа
+     * @param requiresIdempotency повторное нажатие нельзя выполнять второй раз
+     */
+    CallbackRoute(char opcode, boolean editable, boolean deletesMessage, boolean requiresIdempotency) {
+        this.opcode = opcode;
+        this.editable = editable;
+        this.deletesMessage = deletesMessage;
+        this.requiresIdempotency = requiresIdempotency;
+    }
+
+    public char getOpcode() {
+        return opcode;
+    }
+
+    public boolean editable() {
+        return editable;
+    }
+
+    public boolean deletesMessage() {
+        return deletesMessage;
+    }
+
+    public boolean requiresIdempotency() {
+        return requiresIdempotency;
+    }
+
+    static CallbackRoute byOpcode(char opcode) {
+        return opcode < BY_OPCODE.length ? BY_OPCODE[opcode] : null;
+    }
+}
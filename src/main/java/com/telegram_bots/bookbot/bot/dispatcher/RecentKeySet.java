@@ -0,0 +1,58 @@
+package com.telegram_bots.bookbot.bot.dispatcher;
+
+/**
+ * Множество недавно встреченных 64-битных ключей фиксированного размера.
+ * Открытая адресация с коротким пробингом: при нехватке места вытесняется самый старый ключ из окна пробинга.
+ * После создания не выделяет память.
+ */
+final class RecentKeySet {
+
+    private static final int PROBES = 8;
+
+    private final long[] keys;
+    private final long[] expiresAt;
+    private final int mask;
+
+    RecentKeySet(int capacity) {
+        int size = Integer.highestOneBit(Math.max(PROBES, capacity - 1)) << 1;
+        this.keys = new long[size];
+        this.expiresAt = new long[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return true, если ключа не было (или он истёк) и он добавлен; false, если это повтор
+     */
+    synchronized boolean add(long key, long now, long ttl) {
+        // 0 означает пустую ячейку
+        long stored = key == 0 ? 1 : key;
+        int start = (int) (mix(stored) & mask);
+        int firstFree = -1;
+        int oldest = start;
+
+        for (int i = 0; i < PROBES; i++) {
+            int index = (start + i) & mask;
+            boolean alive = keys[index] != 0 && expiresAt[index] > now;
+            if (alive && keys[index] == stored) {
+                return false;
+            }
+            if (!alive) {
+                if (firstFree < 0) {
+                    firstFree = index;
+                }
+            } else if (expiresAt[index] < expiresAt[oldest]) {
+                oldest = index;
+            }
+        }
+
+        int slot = firstFree >= 0 ? firstFree : oldest;
+        keys[slot] = stored;
+        expiresAt[slot] = now + ttl;
+        return true;
+    }
+
+    static long mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,127 @@
+package com.telegram_bots.bookbot.bot.dispatcher;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отсекает повторно доставленные апдейты и повторные нажатия неидемпотентных кнопок.
+ * update_id идут подряд, поэтому хватает битового окна над последними N идентификаторами.
+ * Id старше окна отбрасываются: отличить их от повтора уже нельзя, а сброс окна ради них
+ * снова пропустил бы все недавние апдейты.
+ */
+@Component
+public class UpdateDeduplicator {
+
+    private final long[] window;
+    private final int windowSize;
+    private long highestId = -1;
+
+    private final RecentKeySet recentCallbacks;
+    private final long callbackTtlNanos;
+
+    private final Counter duplicateUpdates;
+    private final Counter duplicateCallbacks;
+
+    public UpdateDeduplicator(@Value("${bot.dedup.window:65536}") int windowSize,
+                              @Value("${bot.dedup.callback-capacity:8192}") int callbackCapacity,
+                              @Value("${bot.dedup.callback-ttl-seconds:600}") long callbackTtlSeconds,
+                              MeterRegistry meterRegistry) {
+        int words = Math.max(1, (windowSize + 63) >>> 6);
+        this.window = new long[words];
+        this.windowSize = words << 6;
+        this.recentCallbacks = new RecentKeySet(callbackCapacity);
+        this.callbackTtlNanos = TimeUnit.SECONDS.toNanos(callbackTtlSeconds);
+        this.duplicateUpdates = meterRegistry.counter("bot.dedup.duplicates", "kind", "update");
+        this.duplicateCallbacks = meterRegistry.counter("bot.dedup.duplicates", "kind", "callback");
+    }
+
+    /**
+     * Отмечает update_id как обработанный.
+     *
+     * @return false, если апдейт с таким id уже приходил
+     */
+    public boolean markUpdate(Integer updateId) {
+        if (updateId == null) {
+            return true;
+        }
+        boolean first = markUpdateId(updateId);
+        if (!first) {
+            duplicateUpdates.increment();
+        }
+        return first;
+    }
+
+    private synchronized boolean markUpdateId(long id) {
+        if (highestId < 0 || id > highestId + windowSize) {
+            // первый апдейт или скачок вперёд дальше окна: всё, что в окне, уже старше нового id
+            Arrays.fill(window, 0L);
+            highestId = id;
+            setBit(id);
+            return true;
+        }
+        if (id > highestId) {
+            for (long stale = highestId + 1; stale < id; stale++) {
+                clearBit(stale);
+            }
+            highestId = id;
+            setBit(id);
+            return true;
+        }
+        if (highestId - id >= windowSize || isSet(id)) {
+            return false;
+        }
+        setBit(id);
+        return true;
+    }
+
+    /**
+     * Повторное нажатие той же кнопки на том же сообщении (или повторная доставка нажатия)
+     * для неидемпотентных действий отбрасывается до обращения к базе.
+     *
+     * @return false, если такое нажатие уже обрабатывалось
+     */
+    public boolean markCallback(CallbackQuery callbackQuery) {
+        if (callbackQuery.getMessage() == null || callbackQuery.getData() == null) {
+            return true;
+        }
+        long key = idempotencyKey(callbackQuery.getMessage().getChatId(),
+                callbackQuery.getMessage().getMessageId(), callbackQuery.getData());
+        boolean first = recentCallbacks.add(key, System.nanoTime(), callbackTtlNanos);
+        if (!first) {
+            duplicateCallbacks.increment();
+        }
+        return first;
+    }
+
+    static long idempotencyKey(long chatId, int messageId, String data) {
+        long h = RecentKeySet.mix(chatId);
+        h = RecentKeySet.mix(h ^ messageId);
+        h = RecentKeySet.mix(h ^ ((long) data.length() << 32 | (data.hashCode() & 0xffffffffL)));
+        return h;
+    }
+
+    private int bitIndex(long id) {
+        return (int) Math.floorMod(id, (long) windowSize);
+    }
+
+    private void setBit(long id) {
+        int bit = bitIndex(id);
+        window[bit >>> 6] |= 1L << bit;
+    }
+
+    private void clearBit(long id) {
+        int bit = bitIndex(id);
+        window[bit >>> 6] &= ~(1L << bit);
+    }
+
+    private boolean isSet(long id) {
+        int bit = bitIndex(id);
+        return (window[bit >>> 6] & (1L << bit)) != 0;
+    }
+}
@@ -0,0 +1,180 @@
+package com.telegram_bots.bookbot.bot.dispatcher;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Раскидывает обработку апдейтов по пулу воркеров.
+ * Задачи с одинаковым ключом (chatId) попадают в одну "полосу" и выполняются строго по очереди,
+ * разные полосы обрабатываются параллельно.
+ * Очередь полосы ограничена stripe-capacity: если чат или соседи по полосе завалили её апдейтами,
+ * новые отбрасываются, а не копятся в памяти без предела.
+ */
+@Slf4j
+@Component
+public class UpdateDispatcher {
+
+    // сколько задач полоса выполняет подряд, прежде чем уступить поток другим
+    private static final int BATCH_SIZE = 32;
+
+    private final Stripe[] stripes;
+    private final int stripeCapacity;
+    private final ExecutorService workers;
+    private final Counter rejectedCounter;
+
+    public UpdateDispatcher(@Value("${bot.dispatcher.threads:0}") int threads,
+                            @Value("${bot.dispatcher.stripes:64}") int stripeCount,
+                            @Value("${bot.dispatcher.stripe-capacity:1000}") int stripeCapacity,
+                            MeterRegistry meterRegistry) {
+        int workerCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.stripeCapacity = Math.max(1, stripeCapacity);
+        this.rejectedCounter = meterRegistry.counter("bot.dispatcher.rejected");
+        this.stripes = new Stripe[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(i, meterRegistry);
+        }
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        // полоса стоит в очереди пула не больше одного раза, поэтому места на все полосы хватает всегда
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(stripes.length),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "update-worker-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * @return false, если очередь полосы заполнена и задача отброшена
+     */
+    public boolean dispatch(long key, Runnable task) {
+        Stripe stripe = stripes[stripeIndex(key)];
+        if (stripe.depth.incrementAndGet() > stripeCapacity) {
+            stripe.depth.decrementAndGet();
+            rejectedCounter.increment();
+            return false;
+        }
+        stripe.queue.add(new QueuedTask(task, System.nanoTime()));
+        stripe.schedule();
+        return true;
+    }
+
+    public List<StripeStats> getStats() {
+        List<StripeStats> stats = new ArrayList<>(stripes.length);
+        for (Stripe stripe : stripes) {
+            stats.add(new StripeStats(stripe.index, stripe.depth.get(), stripe.inFlight.get(),
+                    stripe.completed.get(), stripe.totalWaitNanos.get(), stripe.maxWaitNanos.get()));
+        }
+        return stats;
+    }
+
+    int stripeIndex(long key) {
+        // перемешиваем биты, чтобы соседние chatId не попадали в одну полосу
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) ((h ^ (h >>> 32)) & 0x7fffffff) % stripes.length;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public record StripeStats(int stripe, int queueDepth, int inFlight, long completed,
+                              long totalWaitNanos, long maxWaitNanos) {
+    }
+
+    private record QueuedTask(Runnable task, long enqueuedAt) {
+    }
+
+    private final class Stripe implements Runnable {
+        private final int index;
+        private final Queue<QueuedTask> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final Timer waitTimer;
+
+        private Stripe(int index, MeterRegistry meterRegistry) {
+            this.index = index;
+            String tag = String.valueOf(index);
+            Gauge.builder("bot.dispatcher.queue.depth", depth, AtomicInteger::get)
+                    .tag("stripe", tag)
+                    .register(meterRegistry);
+            Gauge.builder("bot.dispatcher.in.flight", inFlight, AtomicInteger::get)
+                    .tag("stripe", tag)
+                    .register(meterRegistry);
+            this.waitTimer = Timer.builder("bot.dispatcher.wait")
+                    .tag("stripe", tag)
+                    .register(meterRegistry);
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                workers.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    QueuedTask next = queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    depth.decrementAndGet();
+                    long waited = System.nanoTime() - next.enqueuedAt();
+                    totalWaitNanos.addAndGet(waited);
+                    maxWaitNanos.accumulateAndGet(waited, Math::max);
+                    waitTimer.record(waited, TimeUnit.NANOSECONDS);
+
+                    inFlight.incrementAndGet();
+                    try {
+                        next.task().run();
+                    } catch (Throwable e) {
+                        log.error("Ошибка при обработке апдейта в полосе {}: ", index, e);
+                    } finally {
+                        inFlight.decrementAndGet();
+                        completed.incrementAndGet();
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                // задачи могли прийти, пока мы снимали флаг
+                if (!queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+}
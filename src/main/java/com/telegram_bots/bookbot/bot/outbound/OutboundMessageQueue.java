@@ -0,0 +1,295 @@
+package com.telegram_bots.bookbot.bot.outbound;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронная очередь исходящих запросов к Telegram.
+ * Соблюдает общий лимит бота и лимит на чат, сообщения одного чата уходят строго по порядку.
+ * При 429 ждёт retry_after и повторяет только неудавшийся запрос. Ограничение 429 общее на бота,
+ * поэтому на retry_after приостанавливается и общий лимит. Такие повторы считаются отдельно от сбоев:
+ * их не больше max-throttled-attempts, а max-attempts относится только к ошибкам сети и 5xx.
+ */
+@Slf4j
+@Component
+public class OutboundMessageQueue {
+
+    private static final long BACKOFF_BASE_MILLIS = 500;
+
+    private final TokenBucket globalBucket;
+    private final double chatRate;
+    private final int chatBurst;
+    private final int maxAttempts;
+    private final int maxThrottledAttempts;
+
+    private final Map<String, ChatQueue> chats = new ConcurrentHashMap<>();
+    private final DelayQueue<ChatQueue> ready = new DelayQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Counter sentCounter;
+    private final Counter retriedCounter;
+    private final Counter throttledCounter;
+    private final Counter failedCounter;
+
+    private volatile AbsSender sender;
+    private volatile boolean running;
+    private Thread pump;
+
+    public OutboundMessageQueue(@Value("${bot.sender.global-rate:30}") double globalRate,
+                                @Value("${bot.sender.chat-rate:1}") double chatRate,
+                                @Value("${bot.sender.chat-burst:3}") int chatBurst,
+                                @Value("${bot.sender.max-attempts:3}") int maxAttempts,
+                                @Value("${bot.sender.max-throttled-attempts:10}") int maxThrottledAttempts,
+                                MeterRegistry meterRegistry) {
+        this.globalBucket = new TokenBucket(Math.max(1, globalRate), globalRate);
+        this.chatRate = chatRate;
+        this.chatBurst = Math.max(1, chatBurst);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.maxThrottledAttempts = Math.max(1, maxThrottledAttempts);
+
+        Gauge.builder("bot.sender.pending", pending, AtomicInteger::get).register(meterRegistry);
+        this.sentCounter = meterRegistry.counter("bot.sender.sent");
+        this.retriedCounter = meterRegistry.counter("bot.sender.retried");
+        this.throttledCounter = meterRegistry.counter("bot.sender.throttled");
+        this.failedCounter = meterRegistry.counter("bot.sender.failed");
+    }
+
+    public void attach(AbsSender sender) {
+        this.sender = sender;
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        pump = new Thread(this::pumpLoop, "outbound-pump");
+        pump.setDaemon(true);
+        pump.start();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        if (pump != null) {
+            pump.interrupt();
+        }
+    }
+
+    public void submit(String chatId, BotApiMethod<?> method) {
+        while (true) {
+            ChatQueue chat = chats.computeIfAbsent(chatId, ChatQueue::new);
+            synchronized (chat) {
+                if (chat.retired) {
+                    // очередь чата только что опустела и была удалена, берём новую
+                    continue;
+                }
+                chat.outgoing.addLast(new Outgoing(method));
+                pending.incrementAndGet();
+                if (!chat.queued && !chat.inFlight) {
+                    schedule(chat, 0);
+                }
+                return;
+            }
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    private void pumpLoop() {
+        while (running) {
+            try {
+                sendNext(ready.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Ошибка в очереди исходящих сообщений: ", e);
+            }
+        }
+    }
+
+    private void sendNext(ChatQueue chat) {
+        Outgoing next;
+        synchronized (chat) {
+            chat.queued = false;
+            if (chat.outgoing.isEmpty()) {
+                retireIfIdle(chat);
+                return;
+            }
+            if (sender == null) {
+                // бот ещё не подключил себя к очереди
+                schedule(chat, TimeUnit.MILLISECONDS.toNanos(BACKOFF_BASE_MILLIS));
+                return;
+            }
+            long chatWait = chat.bucket.tryAcquire();
+            if (chatWait > 0) {
+                schedule(chat, chatWait);
+                return;
+            }
+            next = chat.outgoing.pollFirst();
+            chat.inFlight = true;
+        }
+
+        // общий лимит один на всех, поэтому просто ждём токен в потоке-насосе
+        long globalWait;
+        while ((globalWait = globalBucket.tryAcquire()) > 0) {
+            LockSupport.parkNanos(globalWait);
+        }
+
+        CompletableFuture<?> future;
+        try {
+            future = sender.executeAsync(next.method);
+        } catch (TelegramApiException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((result, error) -> onComplete(chat, next, error));
+    }
+
+    private void onComplete(ChatQueue chat, Outgoing sent, Throwable error) {
+        synchronized (chat) {
+            chat.inFlight = false;
+            long delay = 0;
+            if (error == null) {
+                pending.decrementAndGet();
+                sentCounter.increment();
+            } else {
+                Throwable cause = unwrap(error);
+                Integer retryAfter = retryAfter(cause);
+                if (retryAfter != null && ++sent.throttledAttempts < maxThrottledAttempts) {
+                    throttledCounter.increment();
+                    chat.outgoing.addFirst(sent);
+                    delay = TimeUnit.SECONDS.toNanos(retryAfter);
+                    // лимит превышен у бота целиком, остальные чаты тоже должны переждать
+                    globalBucket.pause(delay);
+                } else if (retryAfter == null && isTransient(cause) && ++sent.failedAttempts < maxAttempts) {
+                    retriedCounter.increment();
+                    chat.outgoing.addFirst(sent);
+                    delay = TimeUnit.MILLISECONDS.toNanos(BACKOFF_BASE_MILLIS << (sent.failedAttempts - 1));
+                } else if (isNotModified(cause)) {
+                    // повторное нажатие той же кнопки при редактировании сообщения, ничего страшного
+                    pending.decrementAndGet();
+                    log.debug("Сообщение в чате {} не изменилось", chat.chatId);
+                } else {
+                    pending.decrementAndGet();
+                    failedCounter.increment();
+                    log.error("Ошибка при отправке {} в чат {}: ", sent.method.getMethod(), chat.chatId, cause);
+                }
+            }
+
+            if (chat.outgoing.isEmpty()) {
+                retireIfIdle(chat);
+            } else {
+                schedule(chat, delay);
+            }
+        }
+    }
+
+    // вызывается под монитором chat
+    private void schedule(ChatQueue chat, long delayNanos) {
+        chat.readyAt = System.nanoTime() + delayNanos;
+        chat.queued = true;
+        ready.add(chat);
+    }
+
+    // вызывается под монитором chat
+    private void retireIfIdle(ChatQueue chat) {
+        if (!chat.inFlight && !chat.queued && chat.outgoing.isEmpty()) {
+            chat.retired = true;
+            chats.remove(chat.chatId, chat);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private static Integer retryAfter(Throwable cause) {
+        if (cause instanceof TelegramApiRequestException requestException
+                && requestException.getParameters() != null) {
+            return requestException.getParameters().getRetryAfter();
+        }
+        return null;
+    }
+
+    private static boolean isNotModified(Throwable cause) {
+        return cause instanceof TelegramApiRequestException requestException
+                && requestException.getApiResponse() != null
+                && requestException.getApiResponse().contains("message is not modified");
+    }
+
+    private static boolean isTransient(Throwable cause) {
+        if (cause instanceof TelegramApiRequestException requestException) {
+            Integer code = requestException.getErrorCode();
+            return code == null || code >= 500;
+        }
+        // сетевые ошибки и прочие сбои без ответа от API
+        return true;
+    }
+
+    private static final class Outgoing {
+        private final BotApiMethod<?> method;
+        // неудачные попытки из-за сбоев и из-за 429 считаются раздельно
+        private int failedAttempts;
+        private int throttledAttempts;
+
+        private Outgoing(BotApiMethod<?> method) {
+            this.method = method;
+        }
+    }
+
+    private final class ChatQueue implements Delayed {
+        private final String chatId;
+        private final TokenBucket bucket;
+        private final Deque<Outgoing> outgoing = new ArrayDeque<>();
+        private boolean queued;
+        private boolean inFlight;
+        private boolean retired;
+        private volatile long readyAt;
+
+        private ChatQueue(String chatId) {
+            this.chatId = chatId;
+            this.bucket = new TokenBucket(chatBurst, chatRate);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(readyAt, ((ChatQueue) other).readyAt);
+        }
+    }
+}
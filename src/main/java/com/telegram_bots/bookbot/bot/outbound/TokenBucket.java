@@ -0,0 +1,67 @@
+package com.telegram_bots.bookbot.bot.outbound;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Простой token bucket: ёмкость задаёт допустимый всплеск, скорость - средний темп.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final LongSupplier clock;
+
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double capacity, double tokensPerSecond) {
+        this(capacity, tokensPerSecond, System::nanoTime);
+    }
+
+    TokenBucket(double capacity, double tokensPerSecond, LongSupplier clock) {
+        if (capacity < 1 || tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("Bucket capacity must be >= 1 and rate must be positive");
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.clock = clock;
+        this.tokens = capacity;
+        this.lastRefill = clock.getAsLong();
+    }
+
+    /**
+     * Пытается взять токен.
+     *
+     * @return 0, если токен получен, иначе сколько наносекунд подождать до следующей попытки
+     */
+    public synchronized long tryAcquire() {
+        long now = clock.getAsLong();
+        refill(now);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        // во время паузы lastRefill в будущем, токены начнут копиться только после неё
+        long paused = Math.max(0, lastRefill - now);
+        return Math.max(1, paused + (long) Math.ceil((1 - tokens) / tokensPerNano));
+    }
+
+    /**
+     * Не выдаёт токенов pauseNanos от текущего момента (например, по retry_after от API), затем копит их заново.
+     */
+    public synchronized void pause(long pauseNanos) {
+        long now = clock.getAsLong();
+        refill(now);
+        tokens = 0;
+        lastRefill = Math.max(lastRefill, now + pauseNanos);
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+            lastRefill = now;
+        }
+    }
+}
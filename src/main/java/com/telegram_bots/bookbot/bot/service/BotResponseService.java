@@ -1,17 +1,23 @@
 package com.telegram_bots.bookbot.bot.service;
 
+import com.telegram_bots.bookbot.bot.callback.CallbackCodec;
+import com.telegram_bots.bookbot.bot.callback.CallbackRoute;
+import com.telegram_bots.bookbot.model.dto.BookPage;
 import com.telegram_bots.bookbot.model.dto.LitresBookDto;
 import com.telegram_bots.bookbot.model.dto.Statistics;
 import com.telegram_bots.bookbot.model.entities.Book;
 import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
+import com.telegram_bots.bookbot.model.session.SearchCursor;
 import com.telegram_bots.bookbot.model.session.enums.UserState;
 import com.telegram_bots.bookbot.service.BookService;
-import com.telegram_bots.bookbot.service.LitresService;
+import com.telegram_bots.bookbot.service.SearchResultPager;
 import com.telegram_bots.bookbot.utils.ButtonUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
@@ -20,22 +26,26 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Service
 public class BotResponseService {
 
     private final UserStateService userStateService;
-    private final LitresService litresService;
+    private final SearchResultPager searchResultPager;
     private final MessageService messageService;
     private final BookService bookService;
 
+    private static final int BOOK_LIST_PAGE_SIZE = 10;
+
     @Value("${book.searchResult.maxCount}")
     private int maxCountBooks;
 
-    public BotResponseService(UserStateService userStateService, LitresService litresService, MessageService messageService, BookService bookService) {
+    @Value("${bot.response.edit-in-place:true}")
+    private boolean editInPlace;
+
+    public BotResponseService(UserStateService userStateService, SearchResultPager searchResultPager, MessageService messageService, BookService bookService) {
         this.userStateService = userStateService;
-        this.litresService = litresService;
+        this.searchResultPager = searchResultPager;
         this.messageService = messageService;
         this.bookService = bookService;
     }
@@ -59,22 +69,54 @@ public class BotResponseService {
     }
 
     List<SendMessage> handleBookTitle(Long chatId, String title) {
-        List<LitresBookDto> books = litresService.searchBooks(title)
-                .stream().limit(maxCountBooks).toList();
+        SearchResultPager.Page page = searchResultPager.first(title, maxCountBooks);
+        List<LitresBookDto> books = page.books();
+
+        if (page.degraded()) {
+            return handleLitresUnavailable(chatId, title, books);
+        }
 
         if (books.isEmpty()) {
             return List.of(messageService.buildNoBooksFoundMessage(chatId));
         }
 
         userStateService.setState(chatId, UserState.NONE);
-        userStateService.saveSearchResults(chatId, books);
-        return List.of(messageService.buildBookSearchResults(chatId, books));
+        userStateService.saveSearchCursor(chatId, new SearchCursor(title, 0));
+        return List.of(messageService.buildBookSearchResults(chatId, books, page.offset(), page.hasMore() ? 1 : -1));
+    }
+
+    // litres не ответил: предлагаем то, что нашлось локально, состояние ожидания названия не сбрасываем
+    private List<SendMessage> handleLitresUnavailable(Long chatId, String title, List<LitresBookDto> books) {
+        if (books.isEmpty()) {
+            return List.of(messageService.buildSearchUnavailableMessage(chatId));
+        }
+
+        userStateService.saveSearchCursor(chatId, new SearchCursor(title, 0));
+        return List.of(messageService.buildOfflineSearchResults(chatId, books));
+    }
+
+    List<SendMessage> handleMoreResults(Long chatId, long requestedPage) {
+        SearchCursor cursor = userStateService.getSearchCursor(chatId);
+        if (cursor == null) {
+            return List.of(messageService.buildBookNotFoundByIndexMessage(chatId));
+        }
+        // номер страницы берём из кнопки: повторное нажатие на старое сообщение покажет ту же страницу
+        int pageNumber = requestedPage >= 0 ? (int) requestedPage : cursor.page() + 1;
+        SearchResultPager.Page page = searchResultPager.page(cursor.query(), pageNumber, maxCountBooks);
+        if (page.books().isEmpty()) {
+            return List.of(messageService.buildNoMoreResultsMessage(chatId));
+        }
+
+        userStateService.saveSearchCursor(chatId, new SearchCursor(cursor.query(), pageNumber));
+        return List.of(messageService.buildBookSearchResults(chatId, page.books(), page.offset(),
+                page.hasMore() ? pageNumber + 1 : -1));
     }
 
     private Book getBookAndClearState(Long chatId) {
         userStateService.setState(chatId, UserState.NONE);
         Long bookId = userStateService.getBookIdForChange(chatId);
-        return bookService.getBookById(bookId);
+        // сессия могла истечь, пока пользователь думал
+        return bookId != null ? bookService.getBookById(bookId) : null;
     }
 
     public List<SendMessage> handlePageInput(Long chatId, String messageText) {
@@ -83,6 +125,9 @@ public class BotResponseService {
                     "Похоже, что-то пошло не так 😔 Пожалуйста, отправьте номер страницы числом"));
         }
         Book book = getBookAndClearState(chatId);
+        if (book == null) {
+            return List.of(messageService.createSimpleMessage(chatId, "Книга не выбрана для изменения страницы"));
+        }
         int page = Integer.parseInt(messageText);
         if (book.getCurrentPage() == null && book.getStatus() == BookStatus.PLANNED) {
             book.setStatus(BookStatus.READING);
@@ -106,6 +151,9 @@ public class BotResponseService {
                     "Упс! Оценка должна быть числом от 1 до 10 🌟 Попробуйте ещё раз."));
         }
         Book book = getBookAndClearState(chatId);
+        if (book == null) {
+            return List.of(messageService.createSimpleMessage(chatId, "Книга не выбрана для оценки"));
+        }
         int rating = Integer.parseInt(messageText);
         bookService.updateRating(book, rating);
 
@@ -121,78 +169,112 @@ public class BotResponseService {
         }
     }
 
+    /**
+     * Полный ответ на нажатие кнопки: либо редактирование исходного сообщения,
+     * либо новые сообщения и, при необходимости, удаление исходного.
+     */
+    public List<BotApiMethod<?>> handleCallbackResponse(Update update) {
+        List<SendMessage> messages = handleCallbackQuery(update);
+        CallbackRoute route = CallbackCodec.route(update.getCallbackQuery().getData());
+
+        if (editInPlace && route != null && route.editable() && messages.size() == 1) {
+            Message original = update.getCallbackQuery().getMessage();
+            return List.of(messageService.buildEditMessage(messages.get(0), original.getMessageId(), original.getText()));
+        }
+
+        List<BotApiMethod<?>> responses = new ArrayList<>(messages);
+        DeleteMessage messageToDelete = handleDeleteMessage(update);
+        if (messageToDelete != null) {
+            responses.add(messageToDelete);
+        }
+        return responses;
+    }
+
     public List<SendMessage> handleCallbackQuery(Update update) {
         Long chatId = update.getCallbackQuery().getMessage().getChatId();
         String data = update.getCallbackQuery().getData();
-        String command = data.contains(":") ? data.split(":")[0] : data;
+        CallbackRoute route = CallbackCodec.route(data);
+        if (route == null) {
+            return List.of(messageService.buildUnknownCallbackMessage(chatId));
+        }
 
-        switch (command) {
-            case "add_book" -> {
+        switch (route) {
+            case ADD_BOOK -> {
                 userStateService.setState(chatId, UserState.WAITING_FOR_TITLE);
                 return List.of(messageService.buildRequestBookTitleMessage(chatId));
             }
-            case "cancel_added_book" -> {
+            case CANCEL_ADDED_BOOK -> {
                 userStateService.setState(chatId, UserState.NONE);
-                userStateService.clearSearchResults(chatId);
+                userStateService.clearSearchCursor(chatId);
                 return List.of(messageService.buildCancelledMessage(chatId));
             }
-            case "show_books" -> {
+            case SHOW_BOOKS -> {
                 userStateService.setBookIdForChange(chatId, null);
                 return List.of(buildBookListMessage(chatId));
             }
-            case "select_book" -> {
-                return handleBookSelection(chatId, data);
+            case SELECT_BOOK -> {
+                return handleBookSelection(chatId, CallbackCodec.argument(data, 0), CallbackCodec.argument(data, 1));
             }
-            case "books_next_page" -> {
-                userStateService.incrementPage(chatId);
-                return List.of(buildBookListMessage(chatId));
+            case MORE_RESULTS -> {
+                return handleMoreResults(chatId, CallbackCodec.argument(data, 0));
             }
-            case "books_prev_page" -> {
-                userStateService.decrementPage(chatId);
-                return List.of(buildBookListMessage(chatId));
+            case BOOKS_NEXT_PAGE -> {
+                return List.of(buildBookListMessage(chatId, CallbackCodec.argument(data, 0), -1));
             }
-            case "change_filter" -> {
+            case BOOKS_PREV_PAGE -> {
+                return List.of(buildBookListMessage(chatId, -1, CallbackCodec.argument(data, 0)));
+            }
+            case CHANGE_FILTER -> {
                 return List.of(buildStatusFilterButtons(chatId));
             }
-            case "filter_status_clear" -> {
+            case FILTER_STATUS_CLEAR -> {
                 userStateService.setBookStatusFilter(chatId, null);
                 return List.of(buildBookListMessage(chatId));
             }
-            case "filter_by_status" -> {
-                String statusKey = data.substring("filter_by_status:".length());
-                BookStatus status = BookStatus.valueOf(statusKey);
+            case FILTER_BY_STATUS -> {
+                BookStatus status = statusArgument(data);
+                if (status == null) {
+                    return List.of(messageService.buildUnknownCallbackMessage(chatId));
+                }
                 userStateService.setBookStatusFilter(chatId, status);
                 return List.of(buildBookListMessage(chatId));
             }
-            case "manage_book" -> {
-                Long bookId = extractBookId(data);
-                userStateService.setBookIdForChange(chatId, bookId);
-                Optional<Book> optionalBook = bookService.getBookOptionalById(bookId);
+            case MANAGE_BOOK -> {
+                Long bookId = bookIdArgument(chatId, data);
+                Optional<Book> optionalBook = bookId == null ? Optional.empty() : bookService.getBookOfUser(chatId, bookId);
                 return List.of(messageService.buildBookMenuMessage(chatId, optionalBook));
             }
-            case "change_status" -> {
+            case CHANGE_STATUS -> {
+                if (bookIdArgument(chatId, data) == null) {
+                    return List.of(messageService.buildUnknownCallbackMessage(chatId));
+                }
                 return handleChangeStatus(chatId);
             }
-            case "update_page" -> {
+            case UPDATE_PAGE -> {
+                if (bookIdArgument(chatId, data) == null) {
+                    return List.of(messageService.buildUnknownCallbackMessage(chatId));
+                }
                 userStateService.setState(chatId, UserState.WAITING_FOR_PAGE);
                 return List.of(messageService.buildRequestPageInputMessage(chatId));
             }
-            case "rate_book" -> {
+            case RATE_BOOK -> {
+                if (bookIdArgument(chatId, data) == null) {
+                    return List.of(messageService.buildUnknownCallbackMessage(chatId));
+                }
                 userStateService.setState(chatId, UserState.WAITING_FOR_RATING);
                 return List.of(messageService.buildRequestRatingInputMessage(chatId));
             }
-            case "delete_book" -> {
-                return handleDeleteBook(chatId, data);
+            case DELETE_BOOK -> {
+                return handleDeleteBook(chatId, CallbackCodec.argument(data, 0));
             }
-
-            case "set_status" -> {
-                return handleSetStatusCallback(chatId, data);
+            case SET_STATUS -> {
+                return handleSetStatusCallback(chatId, statusArgument(data));
             }
-            case "cancel_update_book" -> {
+            case CANCEL_UPDATE_BOOK -> {
                 userStateService.setState(chatId, UserState.NONE);
                 return handleCancelUpdateBook(chatId);
             }
-            case "show_stats" -> {
+            case SHOW_STATS -> {
                 return List.of(buildStatisticsMessage(chatId));
             }
             default -> {
@@ -201,41 +283,58 @@ public class BotResponseService {
         }
     }
 
-    public Long extractBookId(String data) {
-        return Long.parseLong(data.split(":")[1]);
+    /**
+     * Действия, повтор которых недопустим: второе добавление или удаление той же книги.
+     */
+    public boolean requiresIdempotency(Update update) {
+        CallbackRoute route = CallbackCodec.route(update.getCallbackQuery().getData());
+        return route != null && route.requiresIdempotency();
     }
 
+    // id книги из кнопки запоминаем в сессии, чтобы следующий шаг не зависел от того, жива ли ещё сессия.
+    // Чужую книгу не запоминаем: id в кнопке мог прийти откуда угодно
+    private Long bookIdArgument(Long chatId, String data) {
+        long bookId = CallbackCodec.argument(data, 0);
+        if (bookId < 0) {
+            return userStateService.getBookIdForChange(chatId);
+        }
+        if (bookService.getBookOfUser(chatId, bookId).isEmpty()) {
+            return null;
+        }
+        userStateService.setBookIdForChange(chatId, bookId);
+        return bookId;
+    }
+
+    private BookStatus statusArgument(String data) {
+        long ordinal = CallbackCodec.argument(data, 0);
+        BookStatus[] statuses = BookStatus.values();
+        return ordinal >= 0 && ordinal < statuses.length ? statuses[(int) ordinal] : null;
+    }
 
     public DeleteMessage handleDeleteMessage(Update update) {
-        Long chatId = update.getCallbackQuery().getMessage().getChatId();
-        Integer messageId = update.getCallbackQuery().getMessage().getMessageId();
-        String data = update.getCallbackQuery().getData();
-        List<String> commandToDelete = List.of("cancel",
-                "add_book",
-                "books_prev_page",
-                "books_next_page",
-                "change_filter",
-                "delete_book",
-                "select_book");
-        boolean needDeletePreviousMessage = commandToDelete.stream().anyMatch(data::startsWith);
-        if (needDeletePreviousMessage) {
+        CallbackRoute route = CallbackCodec.route(update.getCallbackQuery().getData());
+        if (route != null && route.deletesMessage()) {
+            Long chatId = update.getCallbackQuery().getMessage().getChatId();
+            Integer messageId = update.getCallbackQuery().getMessage().getMessageId();
             return new DeleteMessage(chatId.toString(), messageId);
         }
 
         return null;
     }
 
-    List<SendMessage> handleBookSelection(Long chatId, String data) {
-        int index = Integer.parseInt(data.substring("select_book:".length()));
-        List<LitresBookDto> books = userStateService.getSearchResults(chatId);
+    List<SendMessage> handleBookSelection(Long chatId, long index, long selectionKey) {
+        SearchCursor cursor = userStateService.getSearchCursor(chatId);
+        Optional<LitresBookDto> found = cursor == null || index < 0 || index > Integer.MAX_VALUE
+                ? Optional.empty()
+                : searchResultPager.book(cursor.query(), (int) index, selectionKey);
 
-        if (index >= books.size()) {
-            return List.of(messageService.buildBookNotFoundByIndexMessage(chatId));
+        if (found.isEmpty()) {
+            return List.of(messageService.buildSearchExpiredMessage(chatId));
         }
 
-        LitresBookDto selectedBook = books.get(index);
+        LitresBookDto selectedBook = found.get();
         bookService.addBook(chatId, selectedBook.getTitle(), selectedBook.getAuthor(), selectedBook.getTotalPages());
-        userStateService.clearSearchResults(chatId);
+        userStateService.clearSearchCursor(chatId);
 
         SendMessage addedMessage = messageService.buildBookAddedMessage(chatId, selectedBook.getTitle());
         SendMessage listMessage = buildBookListMessage(chatId);
@@ -245,23 +344,38 @@ public class BotResponseService {
     }
 
     public SendMessage buildBookListMessage(Long chatId) {
-        List<Book> allBooks = bookService.getAllBooksOfUser(chatId);
+        return buildBookListMessage(chatId, -1, -1);
+    }
 
+    /**
+     * Список книг текущей страницы. Фильтр и страница применяются в базе:
+     * afterId/beforeId из кнопок листания дают соседнюю страницу по ключу, без них страница начинается
+     * с первой книги, запомненной в сессии при прошлом показе, - тоже по ключу, без offset.
+     * Кнопки листания показываются по тому, есть ли книги до и после страницы.
+     */
+    SendMessage buildBookListMessage(Long chatId, long afterId, long beforeId) {
         BookStatus filter = userStateService.getBookStatusFilter(chatId);
-        int currentPage = userStateService.getCurrentPage(chatId);
-
-        // Фильтрация
-        List<Book> filteredBooks = (filter == null)
-                ? allBooks
-                : allBooks.stream()
-                .filter(book -> book.getStatus() == filter)
-                .collect(Collectors.toList());
-
-        // Пагинация
-        int pageSize = 10;
-        int fromIndex = Math.min(currentPage * pageSize, filteredBooks.size());
-        int toIndex = Math.min(fromIndex + pageSize, filteredBooks.size());
-        List<Book> booksOnPage = filteredBooks.subList(fromIndex, toIndex);
+        long pageStartId = userStateService.getPageStartId(chatId);
+
+        int pageSize = BOOK_LIST_PAGE_SIZE;
+        BookPage page;
+        if (afterId >= 0) {
+            page = bookService.getBooksAfter(chatId, filter, afterId, pageSize);
+        } else if (beforeId >= 0) {
+            page = bookService.getBooksBefore(chatId, filter, beforeId, pageSize);
+        } else {
+            page = bookService.getBooksFrom(chatId, filter, pageStartId, pageSize);
+        }
+        if (page.books().isEmpty() && (afterId >= 0 || beforeId >= 0 || pageStartId > 0)) {
+            // книги рядом с кнопкой успели удалить: показываем начало списка
+            page = bookService.getBooksFrom(chatId, filter, 0, pageSize);
+        }
+        // первая страница запоминается как 0, чтобы с неё не уезжать, если перед ней добавят книги
+        long shownStartId = page.hasPrevious() ? page.books().get(0).getId() : 0;
+        if (shownStartId != pageStartId) {
+            userStateService.setPageStartId(chatId, shownStartId);
+        }
+        List<Book> booksOnPage = page.books();
 
         // Сборка текста
         String text = messageService.buildBooksText(booksOnPage, filter);
@@ -269,7 +383,7 @@ public class BotResponseService {
         // Сборка кнопок
         List<List<InlineKeyboardButton>> rows = new ArrayList<>(messageService.buildBookButtons(booksOnPage));
 
-        List<InlineKeyboardButton> pagination = messageService.buildPaginationButtons(currentPage, filteredBooks.size(), pageSize);
+        List<InlineKeyboardButton> pagination = messageService.buildPaginationButtons(page.hasPrevious(), page.hasNext(), booksOnPage);
         if (!pagination.isEmpty()) {
             rows.add(pagination);
         }
@@ -294,7 +408,7 @@ public class BotResponseService {
 
         for (BookStatus status : BookStatus.values()) {
             InlineKeyboardButton button = new InlineKeyboardButton(status.getDisplayNameRu());
-            button.setCallbackData("filter_by_status:" + status.name());
+            button.setCallbackData(CallbackCodec.encode(CallbackRoute.FILTER_BY_STATUS, status.ordinal()));
             currentRow.add(button);
 
             if (currentRow.size() == 2) {
@@ -309,11 +423,11 @@ public class BotResponseService {
         }
 
         InlineKeyboardButton clearFilter = new InlineKeyboardButton("📋 Показать все");
-        clearFilter.setCallbackData("filter_status_clear");
+        clearFilter.setCallbackData(CallbackCodec.encode(CallbackRoute.FILTER_STATUS_CLEAR));
         rows.add(List.of(clearFilter));
 
         InlineKeyboardButton back = new InlineKeyboardButton("🔙 Назад");
-        back.setCallbackData("show_books");
+        back.setCallbackData(CallbackCodec.encode(CallbackRoute.SHOW_BOOKS));
         rows.add(List.of(back));
 
         return SendMessage.builder()
@@ -327,7 +441,8 @@ public class BotResponseService {
         InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
         List<List<InlineKeyboardButton>> rows = Arrays.stream(BookStatus.values())
                 .map(status -> List.of(
-                        ButtonUtils.createButton(status.getDisplayNameRu(), "set_status:" + status.name())
+                        ButtonUtils.createButton(status.getDisplayNameRu(),
+                                CallbackCodec.encode(CallbackRoute.SET_STATUS, status.ordinal()))
                 ))
                 .toList();
 
@@ -341,20 +456,17 @@ public class BotResponseService {
         return List.of(message);
     }
 
-    private List<SendMessage> handleDeleteBook(Long chatId, String data) {
-        Long bookId = extractBookId(data);
+    private List<SendMessage> handleDeleteBook(Long chatId, long bookId) {
+        if (bookId < 0 || bookService.getBookOfUser(chatId, bookId).isEmpty()) {
+            return List.of(messageService.buildUnknownCallbackMessage(chatId));
+        }
         bookService.deleteBook(bookId);
         return List.of(messageService.buildDeletedBookMessage(chatId));
     }
 
-    List<SendMessage> handleSetStatusCallback(Long chatId, String data) {
-        String statusStr = data.replace("set_status:", "").trim();
-
-        BookStatus status;
-        try {
-            status = BookStatus.valueOf(statusStr);
-        } catch (IllegalArgumentException e) {
-            return List.of(messageService.createSimpleMessage(chatId, "Неизвестный статус: " + statusStr));
+    List<SendMessage> handleSetStatusCallback(Long chatId, BookStatus status) {
+        if (status == null) {
+            return List.of(messageService.createSimpleMessage(chatId, "Неизвестный статус"));
         }
 
         Long bookId = userStateService.getBookIdForChange(chatId);
@@ -393,7 +505,7 @@ public class BotResponseService {
                 "«" + stats.biggestBookTitle() + "» — " + stats.biggestBookPages() + " стр.\n\n" +
                 "💬 _Каждая страница — шаг к новым мирам. Так держать!_ ✨";
 
-        InlineKeyboardButton backButton = ButtonUtils.createButton("⬅ Назад", "show_books");
+        InlineKeyboardButton backButton = ButtonUtils.createButton("⬅ Назад", CallbackCodec.encode(CallbackRoute.SHOW_BOOKS));
         InlineKeyboardMarkup markup = new InlineKeyboardMarkup(List.of(List.of(backButton)));
 
         return SendMessage.builder()
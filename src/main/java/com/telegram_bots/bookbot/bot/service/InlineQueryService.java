@@ -0,0 +1,238 @@
+package com.telegram_bots.bookbot.bot.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.model.entities.Book;
+import com.telegram_bots.bookbot.service.BookCatalogService;
+import com.telegram_bots.bookbot.service.BookLibraryChangedEvent;
+import com.telegram_bots.bookbot.service.BookService;
+import com.telegram_bots.bookbot.utils.PrefixIndex;
+import com.telegram_bots.bookbot.utils.SearchQueryNormalizer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.telegram.telegrambots.meta.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.InlineQuery;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.inputmessagecontent.InputTextMessageContent;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.result.InlineQueryResult;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.result.InlineQueryResultArticle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Подсказки для inline-режима (@bot название): книги из библиотеки пользователя, затем из каталога.
+ * <p>
+ * Inline-запрос приходит на каждое нажатие клавиши, поэтому ответ собирается только из памяти:
+ * по каталогу держится {@link PrefixIndex}, который перестраивается в фоне, когда каталог пополнился,
+ * а библиотека пользователя кэшируется на library-ttl и сбрасывается, когда пользователь добавил или удалил книгу. Если библиотеки в кэше нет, она читается из базы
+ * на отдельном пуле, а ответ сразу уходит по одному каталогу и без кэширования на стороне Telegram:
+ * поток приёма апдейтов базу не ждёт.
+ * Ключи индекса - название с каждого слова, так что "марг" находит "Мастер и Маргарита".
+ */
+@Slf4j
+@Service
+public class InlineQueryService {
+
+    // первое слово названия ставим выше совпадений с середины
+    private static final int TITLE_START_WEIGHT = 1;
+
+    private final BookCatalogService bookCatalogService;
+    private final BookService bookService;
+    private final int maxResults;
+    private final int cacheSeconds;
+    private final AsyncCache<Long, PrefixIndex<LitresBookDto>> libraries;
+    private final Executor libraryExecutor;
+    private final Timer answerTimer;
+
+    private volatile PrefixIndex<LitresBookDto> catalogIndex = PrefixIndex.empty();
+    private volatile long indexedCatalogVersion = -1;
+
+    @Autowired
+    public InlineQueryService(BookCatalogService bookCatalogService,
+                              BookService bookService,
+                              @Value("${bot.inline.max-results:10}") int maxResults,
+                              @Value("${bot.inline.cache-seconds:30}") int cacheSeconds,
+                              @Value("${bot.inline.library-ttl-seconds:60}") long libraryTtlSeconds,
+                              @Value("${bot.inline.library-threads:2}") int libraryThreads,
+                              MeterRegistry meterRegistry) {
+        this(bookCatalogService, bookService, maxResults, cacheSeconds, libraryTtlSeconds,
+                libraryExecutor(libraryThreads), meterRegistry);
+    }
+
+    /**
+     * @param libraryExecutor где читать библиотеки пользователей из базы
+     */
+    public InlineQueryService(BookCatalogService bookCatalogService,
+                              BookService bookService,
+                              int maxResults,
+                              int cacheSeconds,
+                              long libraryTtlSeconds,
+                              Executor libraryExecutor,
+                              MeterRegistry meterRegistry) {
+        this.bookCatalogService = bookCatalogService;
+        this.bookService = bookService;
+        // Telegram принимает не больше 50 результатов
+        this.maxResults = Math.max(1, Math.min(50, maxResults));
+        this.cacheSeconds = cacheSeconds;
+        this.libraryExecutor = libraryExecutor;
+        this.libraries = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofSeconds(libraryTtlSeconds))
+                .executor(libraryExecutor)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, libraries.synchronous(), "inline-libraries");
+        Gauge.builder("bot.inline.index.size", this, service -> service.catalogIndex.size()).register(meterRegistry);
+        this.answerTimer = Timer.builder("bot.inline.answer")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    private static ExecutorService libraryExecutor(int threads) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "inline-library-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (libraryExecutor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${bot.inline.rebuild-interval-ms:30000}")
+    public void rebuildCatalogIndex() {
+        // версию читаем до снимка: изменение во время сборки даст ещё одну перестройку, а не потерю книги
+        long version = bookCatalogService.version();
+        if (version == indexedCatalogVersion) {
+            return;
+        }
+        long started = System.nanoTime();
+        List<LitresBookDto> books = bookCatalogService.snapshot();
+        catalogIndex = buildIndex(books);
+        indexedCatalogVersion = version;
+        log.debug("Индекс подсказок перестроен: {} книг за {} мс", books.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /**
+     * Библиотека пользователя изменилась: следующий запрос прочитает её заново.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLibraryChanged(BookLibraryChangedEvent event) {
+        libraries.synchronous().invalidate(event.telegramId());
+    }
+
+    public AnswerInlineQuery answer(InlineQuery inlineQuery) {
+        long started = System.nanoTime();
+        PrefixIndex<LitresBookDto> library = library(inlineQuery.getFrom().getId());
+        List<LitresBookDto> books = suggest(library, inlineQuery.getQuery());
+
+        List<InlineQueryResult> results = new ArrayList<>(books.size());
+        for (int i = 0; i < books.size(); i++) {
+            results.add(toArticle(String.valueOf(i), books.get(i)));
+        }
+        AnswerInlineQuery answer = AnswerInlineQuery.builder()
+                .inlineQueryId(inlineQuery.getId())
+                .results(results)
+                // без библиотеки ответ неполный, кэшировать его у Telegram нельзя
+                .cacheTime(library != null ? cacheSeconds : 0)
+                // в выдаче есть книги из библиотеки пользователя
+                .isPersonal(true)
+                .build();
+        answerTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        return answer;
+    }
+
+    List<LitresBookDto> suggest(Long userId, String query) {
+        return suggest(library(userId), query);
+    }
+
+    // библиотека из кэша или null, если она ещё загружается; загрузка запускается при первом обращении
+    private PrefixIndex<LitresBookDto> library(Long userId) {
+        if (userId == null) {
+            return null;
+        }
+        CompletableFuture<PrefixIndex<LitresBookDto>> library = libraries.get(userId, this::loadLibrary);
+        return library.isCompletedExceptionally() ? null : library.getNow(null);
+    }
+
+    private List<LitresBookDto> suggest(PrefixIndex<LitresBookDto> library, String query) {
+        String prefix = SearchQueryNormalizer.normalize(query);
+        // одна книга из библиотеки и каталога может отличаться числом страниц, поэтому сравниваем по ключу каталога
+        Map<String, LitresBookDto> books = new LinkedHashMap<>();
+        if (library != null) {
+            library.search(prefix, maxResults).forEach(book -> books.putIfAbsent(bookKey(book), book));
+        }
+        if (books.size() < maxResults) {
+            catalogIndex.search(prefix, maxResults).forEach(book -> books.putIfAbsent(bookKey(book), book));
+        }
+        return books.values().stream().limit(maxResults).toList();
+    }
+
+    private static String bookKey(LitresBookDto book) {
+        return SearchQueryNormalizer.bookKey(book.getTitle(), book.getAuthor());
+    }
+
+    private PrefixIndex<LitresBookDto> loadLibrary(Long userId) {
+        List<LitresBookDto> books = new ArrayList<>();
+        for (Book book : bookService.getAllBooksOfUser(userId)) {
+            books.add(new LitresBookDto(book.getTitle(), book.getAuthor(), book.getTotalPages()));
+        }
+        return buildIndex(books);
+    }
+
+    private PrefixIndex<LitresBookDto> buildIndex(List<LitresBookDto> books) {
+        PrefixIndex.Builder<LitresBookDto> builder = PrefixIndex.builder(maxResults);
+        for (LitresBookDto book : books) {
+            String title = SearchQueryNormalizer.normalize(book.getTitle());
+            int word = 0;
+            while (word >= 0) {
+                builder.add(title.substring(word), book, word == 0 ? TITLE_START_WEIGHT : 0);
+                int space = title.indexOf(' ', word);
+                word = space >= 0 ? space + 1 : -1;
+            }
+        }
+        return builder.build();
+    }
+
+    private static InlineQueryResultArticle toArticle(String id, LitresBookDto book) {
+        String author = book.getAuthor() != null && !book.getAuthor().isBlank() ? book.getAuthor() : "Автор неизвестен";
+        String description = book.getTotalPages() != null && book.getTotalPages() > 0
+                ? author + ", " + book.getTotalPages() + " стр."
+                : author;
+        return InlineQueryResultArticle.builder()
+                .id(id)
+                .title(book.getTitle())
+                .description(description)
+                .inputMessageContent(InputTextMessageContent.builder()
+                        .messageText(book.getTitle())
+                        .build())
+                .build();
+    }
+}
@@ -1,11 +1,17 @@
 package com.telegram_bots.bookbot.bot.service;
 
+import com.telegram_bots.bookbot.bot.callback.CallbackCodec;
+import com.telegram_bots.bookbot.bot.callback.CallbackRoute;
 import com.telegram_bots.bookbot.model.dto.LitresBookDto;
 import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
+import com.telegram_bots.bookbot.service.SearchResultPager;
 import com.telegram_bots.bookbot.utils.ButtonUtils;
 import com.telegram_bots.bookbot.utils.WelcomeMessageProvider;
 import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageReplyMarkup;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import com.telegram_bots.bookbot.model.entities.Book;
@@ -40,9 +46,9 @@ public class MessageService {
     public SendMessage buildWelcomeMessage(String chatId) {
         InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
         List<InlineKeyboardButton> row = new ArrayList<>();
-        row.add(ButtonUtils.createButton("Посмотреть мои книги", "show_books"));
-        row.add(ButtonUtils.createButton("Добавить книгу", "add_book"));
-        row.add(ButtonUtils.createButton("Статистика", "show_stats"));
+        row.add(ButtonUtils.createButton("Посмотреть мои книги", CallbackCodec.encode(CallbackRoute.SHOW_BOOKS)));
+        row.add(ButtonUtils.createButton("Добавить книгу", CallbackCodec.encode(CallbackRoute.ADD_BOOK)));
+        row.add(ButtonUtils.createButton("Статистика", CallbackCodec.encode(CallbackRoute.SHOW_STATS)));
         markup.setKeyboard(List.of(row));
 
         return SendMessage.builder()
@@ -67,22 +73,58 @@ public class MessageService {
     }
 
     public SendMessage buildBookSearchResults(String chatId, List<LitresBookDto> books) {
+        return buildBookSearchResults(chatId, books, "Выберите книгу:", 0, -1);
+    }
+
+    /**
+     * Страница выдачи поиска.
+     *
+     * @param offset   номер первой книги страницы во всей выдаче, он же уходит в кнопку выбора вместе с ключом книги
+     * @param nextPage номер следующей страницы для кнопки "ещё", -1 - кнопки нет
+     */
+    public SendMessage buildBookSearchResults(Long chatId, List<LitresBookDto> books, int offset, int nextPage) {
+        return buildBookSearchResults(String.valueOf(chatId), books, "Выберите книгу:", offset, nextPage);
+    }
+
+    public SendMessage buildOfflineSearchResults(Long chatId, List<LitresBookDto> books) {
+        return buildBookSearchResults(String.valueOf(chatId), books,
+                "Litres сейчас не отвечает 😔\nВот что нашлось среди книг, которые боту уже знакомы:", 0, -1);
+    }
+
+    public SendMessage buildNoMoreResultsMessage(Long chatId) {
+        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
+        List<InlineKeyboardButton> row = List.of(ButtonUtils.createButton("❌ Отмена", CallbackCodec.encode(CallbackRoute.CANCEL_ADDED_BOOK)));
+        markup.setKeyboard(List.of(row));
+
+        return SendMessage.builder()
+                .chatId(String.valueOf(chatId))
+                .text("Больше ничего не нашлось 😢")
+                .replyMarkup(markup)
+                .build();
+    }
+
+    private SendMessage buildBookSearchResults(String chatId, List<LitresBookDto> books, String header,
+                                               int offset, int nextPage) {
         List<List<InlineKeyboardButton>> rows = new ArrayList<>();
 
         for (int i = 0; i < books.size(); i++) {
             LitresBookDto book = books.get(i);
             String text = book.getTitle() + " - " + book.getAuthor();
-            String callback = "select_book:" + i;
+            String callback = CallbackCodec.encode(CallbackRoute.SELECT_BOOK, offset + i, SearchResultPager.selectionKey(book));
             rows.add(List.of(ButtonUtils.createButton(text, callback)));
         }
 
-        rows.add(List.of(ButtonUtils.createButton("❌ Отмена", "cancel_added_book")));
+        if (nextPage >= 0) {
+            rows.add(List.of(ButtonUtils.createButton("➡ Ещё результаты", CallbackCodec.encode(CallbackRoute.MORE_RESULTS, nextPage))));
+        }
+
+        rows.add(List.of(ButtonUtils.createButton("❌ Отмена", CallbackCodec.encode(CallbackRoute.CANCEL_ADDED_BOOK))));
 
         InlineKeyboardMarkup markup = InlineKeyboardMarkup.builder().keyboard(rows).build();
 
         return SendMessage.builder()
                 .chatId(chatId)
-                .text("Выберите книгу:")
+                .text(header)
                 .replyMarkup(markup)
                 .build();
     }
@@ -93,7 +135,7 @@ public class MessageService {
 
     public SendMessage buildNoBooksFoundMessage(String chatId) {
         InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
-        List<InlineKeyboardButton> row = List.of(ButtonUtils.createButton("❌ Отмена", "cancel_added_book"));
+        List<InlineKeyboardButton> row = List.of(ButtonUtils.createButton("❌ Отмена", CallbackCodec.encode(CallbackRoute.CANCEL_ADDED_BOOK)));
         markup.setKeyboard(List.of(row));
 
         return SendMessage.builder()
@@ -103,6 +145,18 @@ public class MessageService {
                 .build();
     }
 
+    public SendMessage buildSearchUnavailableMessage(Long chatId) {
+        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
+        List<InlineKeyboardButton> row = List.of(ButtonUtils.createButton("❌ Отмена", CallbackCodec.encode(CallbackRoute.CANCEL_ADDED_BOOK)));
+        markup.setKeyboard(List.of(row));
+
+        return SendMessage.builder()
+                .chatId(String.valueOf(chatId))
+                .text("Поиск книг сейчас недоступен 😔\nПопробуй отправить название ещё раз чуть позже.")
+                .replyMarkup(markup)
+                .build();
+    }
+
     public SendMessage buildCancelledMessage(Long chatId) {
         return buildCancelledMessage(String.valueOf(chatId));
     }
@@ -110,8 +164,8 @@ public class MessageService {
     public SendMessage buildCancelledMessage(String chatId) {
         InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
         List<InlineKeyboardButton> row = new ArrayList<>();
-        row.add(ButtonUtils.createButton("Посмотреть мои книги", "show_books"));
-        row.add(ButtonUtils.createButton("Добавить книгу", "add_book"));
+        row.add(ButtonUtils.createButton("Посмотреть мои книги", CallbackCodec.encode(CallbackRoute.SHOW_BOOKS)));
+        row.add(ButtonUtils.createButton("Добавить книгу", CallbackCodec.encode(CallbackRoute.ADD_BOOK)));
         markup.setKeyboard(List.of(row));
 
         return SendMessage.builder()
@@ -153,6 +207,10 @@ public class MessageService {
         return createSimpleMessage(chatId, "Не удалось найти книгу по выбранному индексу.");
     }
 
+    public SendMessage buildSearchExpiredMessage(Long chatId) {
+        return createSimpleMessage(String.valueOf(chatId), "Результаты поиска устарели 🕰 Поищите книгу ещё раз.");
+    }
+
     public String buildBooksText(List<Book> books, BookStatus filter) {
         StringBuilder text = new StringBuilder("📚 *Список книг*");
         if (filter != null) {
@@ -179,26 +237,41 @@ public class MessageService {
     public List<List<InlineKeyboardButton>> buildBookButtons(List<Book> books) {
         return books.stream()
                 .map(book ->
-                        List.of(ButtonUtils.createButton(book.getTitle(), "manage_book:" + book.getId())))
+                        List.of(ButtonUtils.createButton(book.getTitle(), bookCallback(CallbackRoute.MANAGE_BOOK, book))))
                 .collect(Collectors.toList());
     }
 
     public List<InlineKeyboardButton> buildPaginationButtons(int currentPage, int totalBooks, int pageSize) {
+        return buildPaginationButtons(currentPage > 0, (long) (currentPage + 1) * pageSize < totalBooks, List.of());
+    }
+
+    /**
+     * Кнопки листания. В кнопки записываются id первой и последней книги страницы,
+     * чтобы соседняя страница читалась из базы по ключу, а не через offset.
+     */
+    public List<InlineKeyboardButton> buildPaginationButtons(boolean hasPrevious, boolean hasNext, List<Book> booksOnPage) {
         List<InlineKeyboardButton> buttons = new ArrayList<>();
+        boolean anchored = !booksOnPage.isEmpty() && booksOnPage.get(0).getId() != null;
 
-        if (currentPage > 0) {
-            buttons.add(ButtonUtils.createButton("⬅️ Назад", "books_prev_page"));
+        if (hasPrevious) {
+            String callback = anchored
+                    ? CallbackCodec.encode(CallbackRoute.BOOKS_PREV_PAGE, booksOnPage.get(0).getId())
+                    : CallbackCodec.encode(CallbackRoute.BOOKS_PREV_PAGE);
+            buttons.add(ButtonUtils.createButton("⬅️ Назад", callback));
         }
-        if ((currentPage + 1) * pageSize < totalBooks) {
-            buttons.add(ButtonUtils.createButton("Вперёд ➡️", "books_next_page"));
+        if (hasNext) {
+            String callback = anchored
+                    ? CallbackCodec.encode(CallbackRoute.BOOKS_NEXT_PAGE, booksOnPage.get(booksOnPage.size() - 1).getId())
+                    : CallbackCodec.encode(CallbackRoute.BOOKS_NEXT_PAGE);
+            buttons.add(ButtonUtils.createButton("Вперёд ➡️", callback));
         }
         return buttons;
     }
 
     public List<List<InlineKeyboardButton>> buildFilterAndAddButtons() {
         List<List<InlineKeyboardButton>> rows = new ArrayList<>();
-        rows.add(List.of(ButtonUtils.createButton("📂 Изменить фильтр", "change_filter")));
-        rows.add(List.of(ButtonUtils.createButton("➕ Добавить книгу", "add_book")));
+        rows.add(List.of(ButtonUtils.createButton("📂 Изменить фильтр", CallbackCodec.encode(CallbackRoute.CHANGE_FILTER))));
+        rows.add(List.of(ButtonUtils.createButton("➕ Добавить книгу", CallbackCodec.encode(CallbackRoute.ADD_BOOK))));
         return rows;
     }
 
@@ -227,11 +300,11 @@ public class MessageService {
         InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
         List<List<InlineKeyboardButton>> rows = new ArrayList<>();
 
-        rows.add(List.of(ButtonUtils.createButton("📊 Изменить статус", "change_status:" + book.getId())));
-        rows.add(List.of(ButtonUtils.createButton("📈 Обновить страницу", "update_page:" + book.getId())));
-        rows.add(List.of(ButtonUtils.createButton("⭐️ Поставить оценку", "rate_book:" + book.getId())));
-        rows.add(List.of(ButtonUtils.createButton("🗑 Удалить", "delete_book:" + book.getId())));
-        rows.add(List.of(ButtonUtils.createButton("⬅️ Назад", "show_books")));
+        rows.add(List.of(ButtonUtils.createButton("📊 Изменить статус", bookCallback(CallbackRoute.CHANGE_STATUS, book))));
+        rows.add(List.of(ButtonUtils.createButton("📈 Обновить страницу", bookCallback(CallbackRoute.UPDATE_PAGE, book))));
+        rows.add(List.of(ButtonUtils.createButton("⭐️ Поставить оценку", bookCallback(CallbackRoute.RATE_BOOK, book))));
+        rows.add(List.of(ButtonUtils.createButton("🗑 Удалить", bookCallback(CallbackRoute.DELETE_BOOK, book))));
+        rows.add(List.of(ButtonUtils.createButton("⬅️ Назад", CallbackCodec.encode(CallbackRoute.SHOW_BOOKS))));
 
         markup.setKeyboard(rows);
 
@@ -244,6 +317,10 @@ public class MessageService {
         return message;
     }
 
+    private static String bookCallback(CallbackRoute route, Book book) {
+        return book.getId() == null ? CallbackCodec.encode(route) : CallbackCodec.encode(route, book.getId());
+    }
+
     public SendMessage buildRequestPageInputMessage(Long chatId) {
         return buildRequestPageInputMessage(String.valueOf(chatId));
     }
@@ -282,4 +359,60 @@ public class MessageService {
         SendMessage menuMessage = buildBookMenuMessage(chatId, book);
         return List.of(updateMessage, menuMessage);
     }
+
+    /**
+     * Превращает готовое сообщение в редактирование уже отправленного.
+     * Если текст не поменялся, достаточно обновить только кнопки.
+     *
+     * @param currentText текст сообщения, как его вернул Telegram: без разметки и пробелов по краям
+     */
+    public BotApiMethod<?> buildEditMessage(SendMessage message, Integer messageId, String currentText) {
+        InlineKeyboardMarkup markup = message.getReplyMarkup() instanceof InlineKeyboardMarkup inline ? inline : null;
+
+        if (currentText != null && renderedText(message).equals(currentText)) {
+            return EditMessageReplyMarkup.builder()
+                    .chatId(message.getChatId())
+                    .messageId(messageId)
+                    .replyMarkup(markup)
+                    .build();
+        }
+
+        return EditMessageText.builder()
+                .chatId(message.getChatId())
+                .messageId(messageId)
+                .text(message.getText())
+                .parseMode(message.getParseMode())
+                .replyMarkup(markup)
+                .build();
+    }
+
+    // текст так, как его покажет Telegram: разметка Markdown снята, пробелы по краям обрезаны
+    static String renderedText(SendMessage message) {
+        String text = message.getText();
+        if (!"Markdown".equalsIgnoreCase(message.getParseMode())) {
+            return text.strip();
+        }
+        StringBuilder plain = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length() && "_*`[".indexOf(text.charAt(i + 1)) >= 0) {
+                plain.append(text.charAt(++i));
+            } else if (c == '*' || c == '_' || c == '`') {
+                // маркеры выделения в текст не попадают
+            } else if (c == '[') {
+                // [текст](ссылка) - остаётся только текст
+                int close = text.indexOf("](", i);
+                int end = close < 0 ? -1 : text.indexOf(')', close);
+                if (end < 0) {
+                    plain.append(c);
+                    continue;
+                }
+                plain.append(text, i + 1, close);
+                i = end;
+            } else {
+                plain.append(c);
+            }
+        }
+        return plain.toString().strip();
+    }
 }
@@ -1,76 +1,108 @@
 package com.telegram_bots.bookbot.bot.service;
 
-import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.bot.session.SessionStore;
 import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
+import com.telegram_bots.bookbot.model.session.SearchCursor;
 import com.telegram_bots.bookbot.model.session.UserSession;
 import com.telegram_bots.bookbot.model.session.enums.UserState;
 import org.springframework.stereotype.Service;
 
 
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
+/**
+ * Сессии пользователей поверх {@link SessionStore}.
+ * Отсутствующая или истёкшая сессия читается как новая (состояние NONE).
+ */
 @Service
 public class UserStateService {
 
-    //ключ - chatId
-    private final Map<Long, UserSession> userSessions = new ConcurrentHashMap<>();
+    private final SessionStore sessionStore;
+    // растёт при каждом изменении, по нему снапшот понимает, что писать нечего
+    private final AtomicLong modifications = new AtomicLong();
 
-    private UserSession getSession(Long userId) {
-        return userSessions.computeIfAbsent(userId, id -> new UserSession());
+    public UserStateService(SessionStore sessionStore) {
+        this.sessionStore = sessionStore;
     }
 
-    public void saveSearchResults(Long userId, List<LitresBookDto> results) {
-        getSession(userId).setSearchResults(results);
+    private void update(Long chatId, Consumer<UserSession> mutation) {
+        modifications.incrementAndGet();
+        sessionStore.update(chatId, mutation);
     }
 
-    public List<LitresBookDto> getSearchResults(Long userId) {
-        return getSession(userId).getSearchResults();
+    // для чтения не создаём сессию: если её нет, отдаём значения по умолчанию
+    private UserSession findSession(Long userId) {
+        return sessionStore.find(userId);
     }
 
-    public void clearSearchResults(Long userId) {
-        getSession(userId).setSearchResults(Collections.emptyList());
+    public long getActiveSessionCount() {
+        return sessionStore.size();
     }
 
-    public int getCurrentPage(Long chatId) {
-        return getSession(chatId).getCurrentPage();
+    public long getModificationCount() {
+        return modifications.get();
     }
 
-    public void setCurrentPage(Long chatId, int page) {
-        getSession(chatId).setCurrentPage(page);
+    public void forEachSession(BiConsumer<Long, UserSession> action) {
+        sessionStore.forEach(action);
     }
 
-    public void incrementPage(Long chatId) {
-        setCurrentPage(chatId, getCurrentPage(chatId) + 1);
+    // живая сессия важнее восстановленной: апдейт мог прийти раньше, чем дочитался снапшот
+    public void restoreSession(Long chatId, UserSession session) {
+        sessionStore.restore(chatId, session);
     }
 
-    public void decrementPage(Long chatId) {
-        setCurrentPage(chatId, Math.max(0, getCurrentPage(chatId) - 1));
+    public void saveSearchCursor(Long userId, SearchCursor cursor) {
+        update(userId, session -> session.setSearchCursor(cursor));
+    }
+
+    public SearchCursor getSearchCursor(Long userId) {
+        UserSession session = findSession(userId);
+        return session != null ? session.getSearchCursor() : null;
+    }
+
+    public void clearSearchCursor(Long userId) {
+        UserSession session = findSession(userId);
+        if (session != null && session.getSearchCursor() != null) {
+            update(userId, current -> current.setSearchCursor(null));
+        }
+    }
+
+    public long getPageStartId(Long chatId) {
+        UserSession session = findSession(chatId);
+        return session != null ? session.getPageStartId() : 0;
+    }
+
+    public void setPageStartId(Long chatId, long bookId) {
+        update(chatId, session -> session.setPageStartId(bookId));
     }
 
     public BookStatus getBookStatusFilter(Long chatId) {
-        return getSession(chatId).getBookStatusFilter();
+        UserSession session = findSession(chatId);
+        return session != null ? session.getBookStatusFilter() : null;
     }
 
     public void setBookStatusFilter(Long chatId, BookStatus status) {
-        getSession(chatId).setBookStatusFilter(status);
+        update(chatId, session -> session.setBookStatusFilter(status));
     }
 
     public UserState getState(Long chatId) {
-        return getSession(chatId).getState();
+        UserSession session = findSession(chatId);
+        return session != null ? session.getState() : UserState.NONE;
     }
     public void setState(Long chatId, UserState state) {
-        getSession(chatId).setState(state);
+        update(chatId, session -> session.setState(state));
     }
 
     public void setBookIdForChange(Long chatId, Long bookId) {
-        getSession(chatId).setBookIdForChange(bookId);
+        update(chatId, session -> session.setBookIdForChange(bookId));
     }
 
     public Long getBookIdForChange(Long chatId) {
-        return getSession(chatId).getBookIdForChange();
+        UserSession session = findSession(chatId);
+        return session != null ? session.getBookIdForChange() : null;
     }
 
 }
@@ -0,0 +1,306 @@
+package com.telegram_bots.bookbot.bot.session;
+
+import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
+import com.telegram_bots.bookbot.model.session.SearchCursor;
+import com.telegram_bots.bookbot.model.session.UserSession;
+import com.telegram_bots.bookbot.model.session.enums.UserState;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Компактное хранилище сессий в памяти: chatId не упаковывается в Long,
+ * сессия хранится в нескольких примитивных полях {@link LongSessionMap} (около 40 байт на чат),
+ * а курсор поиска лежит в отдельном пуле и в сессии записан только его номер.
+ * <p>
+ * Таблица разбита на сегменты со своими мониторами. При переполнении сегмента вытесняется
+ * самая давно не использованная сессия из небольшой выборки, истёкшие по простою удаляются при чтении
+ * и периодической чисткой. {@link UserSession} создаётся только на время чтения или изменения.
+ */
+@Component
+@ConditionalOnProperty(name = "bot.session.store", havingValue = "compact")
+public class CompactSessionStore implements SessionStore {
+
+    private static final int SEGMENTS = 16;
+    private static final int EVICTION_SAMPLES = 16;
+
+    // раскладка packed: 3 бита состояние, 3 бита фильтр (0 - нет)
+    private static final int STATE_BITS = 3;
+    private static final int FILTER_BITS = 3;
+
+    private static final UserState[] STATES = UserState.values();
+    private static final BookStatus[] STATUSES = BookStatus.values();
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final int idleTtlSeconds;
+    private final LongSupplier clock;
+    private final long startedAt;
+    private final Counter evictionCounter;
+
+    @Autowired
+    public CompactSessionStore(@Value("${bot.session.max-size:100000}") long maxSize,
+                               @Value("${bot.session.idle-ttl-minutes:60}") long idleTtlMinutes,
+                               MeterRegistry meterRegistry) {
+        this(maxSize, Duration.ofMinutes(idleTtlMinutes), System::currentTimeMillis, meterRegistry);
+    }
+
+    CompactSessionStore(long maxSize, Duration idleTtl, LongSupplier clock, MeterRegistry meterRegistry) {
+        int segmentMaxSize = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 2, maxSize / SEGMENTS));
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentMaxSize);
+        }
+        this.idleTtlSeconds = (int) Math.min(Integer.MAX_VALUE, idleTtl.toSeconds());
+        this.clock = clock;
+        this.startedAt = clock.getAsLong();
+
+        Gauge.builder("bot.session.compact.size", this, CompactSessionStore::approximateSize).register(meterRegistry);
+        this.evictionCounter = meterRegistry.counter("bot.session.compact.evictions");
+    }
+
+    @Override
+    public UserSession find(Long chatId) {
+        Segment segment = segmentFor(chatId);
+        synchronized (segment) {
+            int slot = segment.liveSlot(chatId, now());
+            return slot >= 0 ? segment.materialize(slot) : null;
+        }
+    }
+
+    @Override
+    public void update(Long chatId, Consumer<UserSession> mutation) {
+        Segment segment = segmentFor(chatId);
+        synchronized (segment) {
+            int now = now();
+            int slot = segment.liveSlot(chatId, now);
+            if (slot < 0) {
+                slot = segment.create(chatId, now);
+            }
+            UserSession session = segment.materialize(slot);
+            mutation.accept(session);
+            segment.store(slot, session);
+        }
+    }
+
+    @Override
+    public void restore(Long chatId, UserSession session) {
+        Segment segment = segmentFor(chatId);
+        synchronized (segment) {
+            int now = now();
+            if (segment.liveSlot(chatId, now) < 0) {
+                segment.store(segment.create(chatId, now), session);
+            }
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<Long, UserSession> action) {
+        for (Segment segment : segments) {
+            // собираем под монитором, а отдаём уже без него, чтобы не держать воркеры
+            List<Long> chatIds;
+            List<UserSession> sessions;
+            synchronized (segment) {
+                LongSessionMap map = segment.map;
+                chatIds = new ArrayList<>(map.size());
+                sessions = new ArrayList<>(map.size());
+                int now = now();
+                for (int slot = 0; slot < map.capacity(); slot++) {
+                    if (map.keys[slot] != LongSessionMap.EMPTY && !isExpired(map.accessedAt[slot], now)) {
+                        chatIds.add(map.keys[slot]);
+                        sessions.add(segment.materialize(slot));
+                    }
+                }
+            }
+            for (int i = 0; i < chatIds.size(); i++) {
+                action.accept(chatIds.get(i), sessions.get(i));
+            }
+        }
+    }
+
+    @Override
+    public long size() {
+        removeExpired();
+        return approximateSize();
+    }
+
+    @Scheduled(fixedDelayString = "${bot.session.cleanup-interval-ms:600000}")
+    public void removeExpired() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.removeExpired(now());
+            }
+        }
+    }
+
+    private long approximateSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.map.size();
+        }
+        return size;
+    }
+
+    private Segment segmentFor(long chatId) {
+        long h = chatId * 0xC2B2AE3D27D4EB4FL;
+        return segments[(int) (h >>> 60) & (SEGMENTS - 1)];
+    }
+
+    private int now() {
+        return (int) ((clock.getAsLong() - startedAt) / 1000);
+    }
+
+    private boolean isExpired(int accessedAt, int now) {
+        return now - accessedAt > idleTtlSeconds;
+    }
+
+    private final class Segment {
+        private final LongSessionMap map;
+        private final int maxSize;
+
+        // пул курсоров поиска, номер 0 означает "поиска нет"
+        private final List<SearchCursor> cursors = new ArrayList<>();
+        private int[] freeRefs = new int[16];
+        private int freeCount;
+
+        private Segment(int maxSize) {
+            this.maxSize = maxSize;
+            this.map = new LongSessionMap(Math.min(maxSize, 1024));
+            cursors.add(null);
+        }
+
+        private int liveSlot(long chatId, int now) {
+            int slot = map.indexOf(chatId);
+            if (slot < 0) {
+                return -1;
+            }
+            if (isExpired(map.accessedAt[slot], now)) {
+                remove(slot);
+                return -1;
+            }
+            map.accessedAt[slot] = now;
+            return slot;
+        }
+
+        private int create(long chatId, int now) {
+            if (map.size() >= maxSize) {
+                evictOne(now);
+            }
+            int slot = map.insert(chatId);
+            map.bookIds[slot] = -1;
+            map.packed[slot] = pack(UserState.NONE, null);
+            map.accessedAt[slot] = now;
+            return slot;
+        }
+
+        private UserSession materialize(int slot) {
+            int packed = map.packed[slot];
+            UserSession session = new UserSession();
+            session.setState(STATES[packed & ((1 << STATE_BITS) - 1)]);
+            int filter = (packed >>> STATE_BITS) & ((1 << FILTER_BITS) - 1);
+            session.setBookStatusFilter(filter > 0 ? STATUSES[filter - 1] : null);
+            session.setPageStartId(map.pageStartIds[slot]);
+            long bookId = map.bookIds[slot];
+            session.setBookIdForChange(bookId >= 0 ? bookId : null);
+            int ref = map.cursorRefs[slot];
+            session.setSearchCursor(ref > 0 ? cursors.get(ref) : null);
+            return session;
+        }
+
+        private void store(int slot, UserSession session) {
+            map.packed[slot] = pack(session.getState(), session.getBookStatusFilter());
+            map.pageStartIds[slot] = session.getPageStartId();
+            Long bookId = session.getBookIdForChange();
+            map.bookIds[slot] = bookId != null ? bookId : -1;
+
+            int ref = map.cursorRefs[slot];
+            SearchCursor current = ref > 0 ? cursors.get(ref) : null;
+            SearchCursor next = session.getSearchCursor();
+            if (next == current) {
+                return;
+            }
+            release(ref);
+            map.cursorRefs[slot] = next != null ? allocate(next) : 0;
+        }
+
+        private void remove(int slot) {
+            release(map.cursorRefs[slot]);
+            map.removeAt(slot);
+        }
+
+        private void removeExpired(int now) {
+            int slot = 0;
+            while (slot < map.capacity()) {
+                if (map.keys[slot] != LongSessionMap.EMPTY && isExpired(map.accessedAt[slot], now)) {
+                    // на место удалённого мог сдвинуться следующий элемент, проверяем ячейку ещё раз
+                    remove(slot);
+                } else {
+                    slot++;
+                }
+            }
+        }
+
+        // приближённый LRU: из нескольких занятых ячеек со случайного места выкидываем самую старую
+        private void evictOne(int now) {
+            int capacity = map.capacity();
+            int slot = ThreadLocalRandom.current().nextInt(capacity);
+            int victim = -1;
+            int sampled = 0;
+            for (int scanned = 0; scanned < capacity && sampled < EVICTION_SAMPLES; scanned++) {
+                if (map.keys[slot] != LongSessionMap.EMPTY) {
+                    if (victim < 0 || map.accessedAt[slot] < map.accessedAt[victim]) {
+                        victim = slot;
+                    }
+                    sampled++;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+            if (victim >= 0) {
+                if (!isExpired(map.accessedAt[victim], now)) {
+                    evictionCounter.increment();
+                }
+                remove(victim);
+            }
+        }
+
+        private int allocate(SearchCursor cursor) {
+            if (freeCount > 0) {
+                int ref = freeRefs[--freeCount];
+                cursors.set(ref, cursor);
+                return ref;
+            }
+            cursors.add(cursor);
+            return cursors.size() - 1;
+        }
+
+        private void release(int ref) {
+            if (ref <= 0) {
+                return;
+            }
+            cursors.set(ref, null);
+            if (freeCount == freeRefs.length) {
+                int[] grown = new int[freeRefs.length << 1];
+                System.arraycopy(freeRefs, 0, grown, 0, freeCount);
+                freeRefs = grown;
+            }
+            freeRefs[freeCount++] = ref;
+        }
+    }
+
+    private static int pack(UserState state, BookStatus filter) {
+        int stateBits = (state != null ? state : UserState.NONE).ordinal();
+        int filterBits = filter != null ? filter.ordinal() + 1 : 0;
+        return stateBits | filterBits << STATE_BITS;
+    }
+}
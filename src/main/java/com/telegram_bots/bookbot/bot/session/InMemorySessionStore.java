@@ -0,0 +1,77 @@
+package com.telegram_bots.bookbot.bot.session;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.telegram_bots.bookbot.model.session.UserSession;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Сессии в памяти процесса.
+ * Кэш ограничен по размеру и по времени простоя, вытесненная сессия читается как новая (состояние NONE).
+ * Сессии одного чата меняются только из его полосы диспетчера, поэтому правим объект на месте.
+ */
+@Component
+@ConditionalOnProperty(name = "bot.session.store", havingValue = "memory", matchIfMissing = true)
+public class InMemorySessionStore implements SessionStore {
+
+    //ключ - chatId
+    private final Cache<Long, UserSession> userSessions;
+
+    @Autowired
+    public InMemorySessionStore(@Value("${bot.session.max-size:100000}") long maxSize,
+                                @Value("${bot.session.idle-ttl-minutes:60}") long idleTtlMinutes,
+                                MeterRegistry meterRegistry) {
+        this(maxSize, Duration.ofMinutes(idleTtlMinutes), Ticker.systemTicker(), null);
+        CaffeineCacheMetrics.monitor(meterRegistry, userSessions, "user-sessions");
+    }
+
+    public InMemorySessionStore(long maxSize, Duration idleTtl, Ticker ticker, Executor executor) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(idleTtl)
+                .ticker(ticker)
+                .recordStats();
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        this.userSessions = builder.build();
+    }
+
+    @Override
+    public UserSession find(Long chatId) {
+        return userSessions.getIfPresent(chatId);
+    }
+
+    @Override
+    public void update(Long chatId, Consumer<UserSession> mutation) {
+        mutation.accept(userSessions.get(chatId, id -> new UserSession()));
+    }
+
+    @Override
+    public void restore(Long chatId, UserSession session) {
+        userSessions.asMap().putIfAbsent(chatId, session);
+    }
+
+    // обход без продления жизни сессий
+    @Override
+    public void forEach(BiConsumer<Long, UserSession> action) {
+        userSessions.asMap().forEach(action);
+    }
+
+    @Override
+    public long size() {
+        userSessions.cleanUp();
+        return userSessions.estimatedSize();
+    }
+}
@@ -0,0 +1,182 @@
+package com.telegram_bots.bookbot.bot.session;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.telegram_bots.bookbot.model.session.UserSession;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Сессии в общей базе, чтобы одни и те же чаты могли обслуживать несколько экземпляров бота.
+ * <p>
+ * Каждая строка хранит версию, изменение записывается через compare-and-set по версии,
+ * при конфликте сессия перечитывается из базы и изменение применяется заново.
+ * Чтения идут через короткоживущий near-cache, поэтому видят чужие изменения с задержкой не больше его TTL.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "bot.session.store", havingValue = "jdbc")
+public class JdbcSessionStore implements SessionStore {
+
+    private static final int MAX_ATTEMPTS = 5;
+
+    // версия 0 - строки в базе нет
+    private static final Versioned ABSENT = new Versioned(0, null);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Cache<Long, Versioned> nearCache;
+    private final long idleTtlMillis;
+    private final LongSupplier clock;
+    private final Counter conflictCounter;
+
+    @Autowired
+    public JdbcSessionStore(JdbcTemplate jdbcTemplate,
+                            @Value("${bot.session.near-cache.ttl-ms:500}") long nearCacheTtlMillis,
+                            @Value("${bot.session.near-cache.max-size:10000}") long nearCacheMaxSize,
+                            @Value("${bot.session.idle-ttl-minutes:60}") long idleTtlMinutes,
+                            MeterRegistry meterRegistry) {
+        this(jdbcTemplate, nearCacheTtlMillis, nearCacheMaxSize, Duration.ofMinutes(idleTtlMinutes),
+                System::currentTimeMillis, meterRegistry);
+        CaffeineCacheMetrics.monitor(meterRegistry, nearCache, "user-sessions-near");
+    }
+
+    JdbcSessionStore(JdbcTemplate jdbcTemplate, long nearCacheTtlMillis, long nearCacheMaxSize,
+                     Duration idleTtl, LongSupplier clock, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.nearCache = Caffeine.newBuilder()
+                .maximumSize(nearCacheMaxSize)
+                .expireAfterWrite(Duration.ofMillis(nearCacheTtlMillis))
+                .recordStats()
+                .build();
+        this.idleTtlMillis = idleTtl.toMillis();
+        this.clock = clock;
+        this.conflictCounter = meterRegistry.counter("bot.session.conflicts");
+    }
+
+    @PostConstruct
+    public void createTable() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS user_session (" +
+                "chat_id BIGINT PRIMARY KEY, " +
+                "version BIGINT NOT NULL, " +
+                "data BYTEA NOT NULL, " +
+                "updated_at BIGINT NOT NULL)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_user_session_updated_at ON user_session (updated_at)");
+    }
+
+    @Override
+    public UserSession find(Long chatId) {
+        return load(chatId, true).session();
+    }
+
+    @Override
+    public void update(Long chatId, Consumer<UserSession> mutation) {
+        boolean useCache = true;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            Versioned current = load(chatId, useCache);
+            UserSession next = current.session() != null ? current.session().copy() : new UserSession();
+            mutation.accept(next);
+
+            byte[] data = SessionCodec.toBytes(next);
+            long now = clock.getAsLong();
+            if (current.version() == 0 ? insert(chatId, data, now) : compareAndSet(chatId, current.version(), data, now)) {
+                nearCache.put(chatId, new Versioned(current.version() + 1, next));
+                return;
+            }
+
+            // сессию успели поменять на другом узле, перечитываем из базы мимо кэша
+            conflictCounter.increment();
+            nearCache.invalidate(chatId);
+            useCache = false;
+        }
+        throw new IllegalStateException("Не удалось обновить сессию чата " + chatId + " из-за конкурентных изменений");
+    }
+
+    @Override
+    public void restore(Long chatId, UserSession session) {
+        if (insert(chatId, SessionCodec.toBytes(session), clock.getAsLong())) {
+            nearCache.invalidate(chatId);
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<Long, UserSession> action) {
+        jdbcTemplate.query("SELECT chat_id, data FROM user_session WHERE updated_at >= ?",
+                rs -> {
+                    action.accept(rs.getLong("chat_id"), SessionCodec.fromBytes(rs.getBytes("data")));
+                },
+                cutoff());
+    }
+
+    @Override
+    public long size() {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_session WHERE updated_at >= ?",
+                Long.class, cutoff());
+        return count != null ? count : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${bot.session.cleanup-interval-ms:600000}")
+    public void deleteExpired() {
+        int deleted = jdbcTemplate.update("DELETE FROM user_session WHERE updated_at < ?", cutoff());
+        if (deleted > 0) {
+            log.debug("Удалено истёкших сессий: {}", deleted);
+        }
+    }
+
+    private Versioned load(Long chatId, boolean useCache) {
+        if (useCache) {
+            Versioned cached = nearCache.getIfPresent(chatId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        List<Versioned> rows = jdbcTemplate.query(
+                "SELECT version, data, updated_at FROM user_session WHERE chat_id = ?",
+                (rs, rowNum) -> rs.getLong("updated_at") < cutoff()
+                        // истёкшая строка ещё лежит в базе: версию сохраняем, чтобы перезаписать её через CAS
+                        ? new Versioned(rs.getLong("version"), null)
+                        : new Versioned(rs.getLong("version"), SessionCodec.fromBytes(rs.getBytes("data"))),
+                chatId);
+        Versioned loaded = rows.isEmpty() ? ABSENT : rows.get(0);
+        nearCache.put(chatId, loaded);
+        return loaded;
+    }
+
+    private boolean insert(Long chatId, byte[] data, long now) {
+        try {
+            jdbcTemplate.update("INSERT INTO user_session (chat_id, version, data, updated_at) VALUES (?, 1, ?, ?)",
+                    chatId, data, now);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    private boolean compareAndSet(Long chatId, long expectedVersion, byte[] data, long now) {
+        return jdbcTemplate.update(
+                "UPDATE user_session SET version = version + 1, data = ?, updated_at = ? WHERE chat_id = ? AND version = ?",
+                data, now, chatId, expectedVersion) == 1;
+    }
+
+    private long cutoff() {
+        return clock.getAsLong() - idleTtlMillis;
+    }
+
+    private record Versioned(long version, UserSession session) {
+    }
+}
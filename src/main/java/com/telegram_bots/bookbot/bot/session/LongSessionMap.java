@@ -0,0 +1,146 @@
+package com.telegram_bots.bookbot.bot.session;
+
+import java.util.Arrays;
+
+/**
+ * Хэш-таблица с открытой адресацией по long-ключу без упаковки в Long.
+ * Поля сессии лежат в параллельных массивах примитивов, объект на запись не создаётся.
+ * Линейное пробирование, удаление со сдвигом назад, поэтому надгробия не нужны.
+ * Не потокобезопасна, синхронизация на вызывающей стороне.
+ */
+final class LongSessionMap {
+
+    // chatId не бывает таким, поэтому им помечаем пустые ячейки
+    static final long EMPTY = Long.MIN_VALUE;
+
+    private static final float LOAD_FACTOR = 0.7f;
+
+    long[] keys;
+    long[] bookIds;
+    long[] pageStartIds;
+    int[] packed;
+    int[] cursorRefs;
+    int[] accessedAt;
+
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    LongSessionMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    int indexOf(long key) {
+        for (int slot = slotFor(key); ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+            if (current == key) {
+                return slot;
+            }
+            if (current == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Добавляет ключ, которого ещё нет, и возвращает его ячейку с нулевыми полями.
+     */
+    int insert(long key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Недопустимый ключ " + key);
+        }
+        if (size >= resizeAt) {
+            grow();
+        }
+        int slot = slotFor(key);
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        size++;
+        return slot;
+    }
+
+    void removeAt(int slot) {
+        size--;
+        // сдвигаем назад следующие элементы цепочки, чтобы поиск не обрывался на дыре
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = slotFor(keys[next]);
+            // элемент можно перенести в дыру, если его домашняя ячейка не лежит между дырой и им
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                move(next, hole);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        clear(hole);
+    }
+
+    private void move(int from, int to) {
+        keys[to] = keys[from];
+        bookIds[to] = bookIds[from];
+        pageStartIds[to] = pageStartIds[from];
+        packed[to] = packed[from];
+        cursorRefs[to] = cursorRefs[from];
+        accessedAt[to] = accessedAt[from];
+    }
+
+    private void clear(int slot) {
+        keys[slot] = EMPTY;
+        bookIds[slot] = 0;
+        pageStartIds[slot] = 0;
+        packed[slot] = 0;
+        cursorRefs[slot] = 0;
+        accessedAt[slot] = 0;
+    }
+
+    private int slotFor(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        bookIds = new long[capacity];
+        pageStartIds = new long[capacity];
+        packed = new int[capacity];
+        cursorRefs = new int[capacity];
+        accessedAt = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldBookIds = bookIds;
+        long[] oldPageStartIds = pageStartIds;
+        int[] oldPacked = packed;
+        int[] oldCursorRefs = cursorRefs;
+        int[] oldAccessedAt = accessedAt;
+
+        allocate(oldKeys.length << 1);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = insert(oldKeys[i]);
+                bookIds[slot] = oldBookIds[i];
+                pageStartIds[slot] = oldPageStartIds[i];
+                packed[slot] = oldPacked[i];
+                cursorRefs[slot] = oldCursorRefs[i];
+                accessedAt[slot] = oldAccessedAt[i];
+            }
+        }
+    }
+}
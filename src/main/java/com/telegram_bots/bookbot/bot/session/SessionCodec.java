@@ -0,0 +1,123 @@
+package com.telegram_bots.bookbot.bot.session;
+
+import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
+import com.telegram_bots.bookbot.model.session.SearchCursor;
+import com.telegram_bots.bookbot.model.session.UserSession;
+import com.telegram_bots.bookbot.model.session.enums.UserState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Бинарное представление одной сессии, общее для снапшота и внешнего хранилища (big-endian):
+ * <pre>
+ * byte state, byte фильтр (0 - нет), int 0 (раньше номер страницы списка), long bookId (-1 - нет),
+ * short -2, long id первой книги страницы списка, строка запроса (null - поиска нет), int страница выдачи
+ * строка: short длина в байтах UTF-8 (-1 - null), байты
+ * </pre>
+ * В записях с short -1 вместо -2 первой книги страницы нет, список открывается с начала.
+ * Раньше вместо курсора хранились сами результаты: short их число (не меньше 0), затем по каждому
+ * строка title, строка author, int страниц. Такие записи читаются, результаты пропускаются.
+ * Перечисления пишутся по ordinal, поэтому при изменении порядка их значений нужно поднять версию снапшота.
+ */
+final class SessionCodec {
+
+    private static final UserState[] STATES = UserState.values();
+    private static final BookStatus[] STATUSES = BookStatus.values();
+
+    // отличает курсор от числа результатов в старом формате
+    private static final short CURSOR_MARKER = -1;
+    // то же, но перед курсором записано начало страницы списка
+    private static final short PAGE_START_MARKER = -2;
+
+    private SessionCodec() {
+    }
+
+    static byte[] toBytes(UserSession session) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(out, session);
+        } catch (IOException e) {
+            // в память писать не может не получиться
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static UserSession fromBytes(byte[] bytes) {
+        return read(ByteBuffer.wrap(bytes));
+    }
+
+    static void write(DataOutput out, UserSession session) throws IOException {
+        UserState state = session.getState() != null ? session.getState() : UserState.NONE;
+        BookStatus filter = session.getBookStatusFilter();
+        Long bookId = session.getBookIdForChange();
+        SearchCursor cursor = session.getSearchCursor();
+
+        out.writeByte(state.ordinal());
+        out.writeByte(filter != null ? filter.ordinal() + 1 : 0);
+        out.writeInt(0);
+        out.writeLong(bookId != null ? bookId : -1);
+        out.writeShort(PAGE_START_MARKER);
+        out.writeLong(session.getPageStartId());
+        writeString(out, cursor != null ? cursor.query() : null);
+        out.writeInt(cursor != null ? cursor.page() : 0);
+    }
+
+    static UserSession read(ByteBuffer buffer) {
+        UserSession session = new UserSession();
+        int state = buffer.get();
+        session.setState(state >= 0 && state < STATES.length ? STATES[state] : UserState.NONE);
+        int filter = buffer.get();
+        session.setBookStatusFilter(filter > 0 && filter <= STATUSES.length ? STATUSES[filter - 1] : null);
+        // номер страницы из старых записей не переводится в книгу, список откроется с начала
+        buffer.getInt();
+        long bookId = buffer.getLong();
+        session.setBookIdForChange(bookId >= 0 ? bookId : null);
+
+        int marker = buffer.getShort();
+        if (marker == PAGE_START_MARKER) {
+            session.setPageStartId(Math.max(0, buffer.getLong()));
+            marker = CURSOR_MARKER;
+        }
+        if (marker == CURSOR_MARKER) {
+            String query = readString(buffer);
+            int page = buffer.getInt();
+            session.setSearchCursor(query != null ? new SearchCursor(query, page) : null);
+            return session;
+        }
+        // старый формат: marker - число сохранённых результатов, курсор по ним не восстановить
+        for (int i = 0; i < marker; i++) {
+            readString(buffer);
+            readString(buffer);
+            buffer.getInt();
+        }
+        return session;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, Short.MAX_VALUE);
+        out.writeShort(length);
+        out.write(bytes, 0, length);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
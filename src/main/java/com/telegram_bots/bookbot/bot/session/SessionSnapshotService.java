@@ -0,0 +1,191 @@
+package com.telegram_bots.bookbot.bot.session;
+
+import com.telegram_bots.bookbot.bot.service.UserStateService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Сохраняет сессии пользователей в бинарный файл и поднимает их при старте,
+ * чтобы после деплоя не терялись состояния вроде WAITING_FOR_PAGE.
+ * <p>
+ * Формат (big-endian):
+ * <pre>
+ * заголовок: int magic "BBSS", short версия, short резерв, long время записи (epoch millis)
+ * запись:    long chatId, сессия в формате {@link SessionCodec}
+ * хвост:     int число записей, long CRC32 всего, что перед ним
+ * </pre>
+ * Снапшот нужен только хранилищам в памяти: внешнее хранилище переживает рестарт само.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("${bot.session.snapshot.enabled:true} and '${bot.session.store:memory}' != 'jdbc'")
+public class SessionSnapshotService {
+
+    static final int MAGIC = 0x42425353;
+    static final short VERSION = 2;
+    // в версии 1 сессии хранили результаты поиска, SessionCodec читает и их
+    private static final short LEGACY_VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int TRAILER_SIZE = 12;
+
+    private final UserStateService userStateService;
+    private final Path path;
+    private final Duration maxAge;
+
+    private long savedModifications = -1;
+
+    public SessionSnapshotService(UserStateService userStateService,
+                                  @Value("${bot.session.snapshot.path:data/sessions.snapshot}") String path,
+                                  @Value("${bot.session.idle-ttl-minutes:60}") long idleTtlMinutes) {
+        this.userStateService = userStateService;
+        this.path = Path.of(path);
+        // сессии старше idle TTL всё равно бы истекли, такой снапшот не поднимаем
+        this.maxAge = Duration.ofMinutes(idleTtlMinutes);
+    }
+
+    @PostConstruct
+    public void restore() {
+        if (!Files.exists(path)) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            int restored = read(path);
+            log.info("Восстановлено сессий из снапшота: {} за {} мс", restored,
+                    Duration.ofNanos(System.nanoTime() - started).toMillis());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось прочитать снапшот сессий {}: {}", path, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${bot.session.snapshot.interval-ms:60000}",
+            initialDelayString = "${bot.session.snapshot.interval-ms:60000}")
+    public void snapshot() {
+        save();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        save();
+    }
+
+    synchronized void save() {
+        long modifications = userStateService.getModificationCount();
+        if (modifications == savedModifications) {
+            return;
+        }
+        try {
+            int written = write(path);
+            savedModifications = modifications;
+            log.debug("Снапшот сессий записан: {}", written);
+        } catch (IOException e) {
+            log.error("Ошибка при записи снапшота сессий: ", e);
+        }
+    }
+
+    int write(Path target) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        CRC32 crc = new CRC32();
+        int count;
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new CheckedOutputStream(file, crc), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            out.writeLong(System.currentTimeMillis());
+
+            int[] written = {0};
+            IOException[] failure = {null};
+            userStateService.forEachSession((chatId, session) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    out.writeLong(chatId);
+                    SessionCodec.write(out, session);
+                    written[0]++;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            count = written[0];
+
+            out.writeInt(count);
+            out.flush();
+            out.writeLong(crc.getValue());
+            out.flush();
+            // до переименования данные должны лежать на диске, иначе после сбоя получим пустой файл
+            file.getFD().sync();
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    int read(Path source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException("файл слишком короткий");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("неизвестный формат");
+            }
+            short version = buffer.getShort(4);
+            if (version != VERSION && version != LEGACY_VERSION) {
+                throw new IOException("неподдерживаемая версия " + version);
+            }
+
+            int checked = (int) size - Long.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(0, checked));
+            if (crc.getValue() != buffer.getLong(checked)) {
+                throw new IOException("не совпала контрольная сумма");
+            }
+
+            long writtenAt = buffer.getLong(8);
+            if (System.currentTimeMillis() - writtenAt > maxAge.toMillis()) {
+                log.info("Снапшот сессий устарел, пропускаем");
+                return 0;
+            }
+
+            int count = buffer.getInt(checked - Integer.BYTES);
+            buffer.position(HEADER_SIZE);
+            for (int i = 0; i < count; i++) {
+                long chatId = buffer.getLong();
+                userStateService.restoreSession(chatId, SessionCodec.read(buffer));
+            }
+            return count;
+        }
+    }
+}
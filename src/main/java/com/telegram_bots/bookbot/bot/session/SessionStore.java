@@ -0,0 +1,34 @@
+package com.telegram_bots.bookbot.bot.session;
+
+import com.telegram_bots.bookbot.model.session.UserSession;
+
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище сессий пользователей, ключ - chatId.
+ * Реализация выбирается свойством bot.session.store: memory (по умолчанию) или jdbc.
+ */
+public interface SessionStore {
+
+    /**
+     * Сессия чата или null, если её нет или она истекла.
+     * Возвращённый объект только для чтения, менять сессию нужно через {@link #update}.
+     */
+    UserSession find(Long chatId);
+
+    /**
+     * Применяет изменение к сессии чата, создавая её при необходимости.
+     * Изменение может быть вызвано повторно, если сессию одновременно поменял другой узел.
+     */
+    void update(Long chatId, Consumer<UserSession> mutation);
+
+    /**
+     * Кладёт сессию, только если у чата её ещё нет.
+     */
+    void restore(Long chatId, UserSession session);
+
+    void forEach(BiConsumer<Long, UserSession> action);
+
+    long size();
+}
@@ -0,0 +1,66 @@
+package com.telegram_bots.bookbot.controller;
+
+import com.telegram_bots.bookbot.bot.MyTelegramBot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Приём апдейтов в режиме webhook (bot.mode=webhook).
+ * Апдейт сразу уходит в тот же конвейер, что и при long polling, а Telegram получает ответ без ожидания обработки.
+ * <p>
+ * Адрес закрыт секретом в последнем сегменте пути: bot.webhook.secret или, если он не задан, производный от токена.
+ * Тот же секрет дописывается к bot.webhook.url при setWebhook, поэтому знает его только Telegram;
+ * запрос с другим сегментом получает 403 и до обработки не доходит.
+ */
+@RestController
+@ConditionalOnProperty(name = "bot.mode", havingValue = "webhook")
+public class TelegramWebhookController {
+
+    private final MyTelegramBot myTelegramBot;
+    private final byte[] secret;
+
+    public TelegramWebhookController(MyTelegramBot myTelegramBot,
+                                     @Value("${bot.webhook.secret:}") String secret,
+                                     @Value("${bot.token}") String botToken) {
+        this.myTelegramBot = myTelegramBot;
+        this.secret = secret(secret, botToken).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PostMapping("${bot.webhook.path:/telegram/webhook}/{secret}")
+    public ResponseEntity<Void> onUpdate(@PathVariable("secret") String secret, @RequestBody Update update) {
+        // сравнение за постоянное время, чтобы секрет нельзя было подобрать по времени ответа
+        if (!MessageDigest.isEqual(this.secret, secret.getBytes(StandardCharsets.UTF_8))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        myTelegramBot.onUpdateReceived(update);
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * Секрет пути webhook: заданный в конфигурации или SHA-256 от токена бота.
+     */
+    public static String secret(String configured, String botToken) {
+        if (configured != null && !configured.isBlank()) {
+            return configured.trim();
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(("webhook:" + botToken).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.telegram_bots.bookbot.model.dto;
+
+import com.telegram_bots.bookbot.model.entities.Book;
+
+import java.util.List;
+
+/**
+ * Страница списка книг пользователя и есть ли книги под текущим фильтром до и после неё.
+ */
+public record BookPage(List<Book> books, boolean hasPrevious, boolean hasNext) {
+}
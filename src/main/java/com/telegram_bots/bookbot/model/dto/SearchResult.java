@@ -0,0 +1,17 @@
+package com.telegram_bots.bookbot.model.dto;
+
+import java.util.List;
+
+/**
+ * Результат поиска книг. degraded - внешний поиск недоступен и книги найдены локально (или не найдены вовсе).
+ */
+public record SearchResult(List<LitresBookDto> books, boolean degraded) {
+
+    public static SearchResult of(List<LitresBookDto> books) {
+        return new SearchResult(books, false);
+    }
+
+    public static SearchResult degraded(List<LitresBookDto> books) {
+        return new SearchResult(books, true);
+    }
+}
@@ -0,0 +1,36 @@
+package com.telegram_bots.bookbot.model.dto;
+
+/**
+ * Строка агрегатного запроса статистики, см. BookRepository#aggregateStatistics.
+ */
+public interface StatisticsView {
+    long getFinishedBooks();
+
+    long getTodayBooks();
+
+    long getTodayPages();
+
+    long getMonthBooks();
+
+    long getMonthPages();
+
+    long getYearBooks();
+
+    long getYearPages();
+
+    String getBiggestBookTitle();
+
+    long getBiggestBookPages();
+
+    default Statistics toStatistics() {
+        // без прочитанных книг самой большой нет, как и в пересчёте по книгам
+        boolean hasBiggest = getFinishedBooks() > 0;
+        return new Statistics(
+                (int) getTodayBooks(), (int) getTodayPages(),
+                (int) getMonthBooks(), (int) getMonthPages(),
+                (int) getYearBooks(), (int) getYearPages(),
+                hasBiggest ? getBiggestBookTitle() : "-",
+                hasBiggest ? (int) getBiggestBookPages() : 0
+        );
+    }
+}
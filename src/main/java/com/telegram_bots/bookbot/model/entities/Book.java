@@ -1,6 +1,7 @@
 package com.telegram_bots.bookbot.model.entities;
 
 import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
+import com.telegram_bots.bookbot.utils.SearchQueryNormalizer;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -12,6 +13,10 @@ import java.sql.Timestamp;
 import java.time.LocalDate;
 
 @Entity
+// список книг пользователя фильтруется по статусу и листается по id;
+// одна книга с таким названием у пользователя - на этом индексе держится вставка без дубликатов, см. BookRepositoryCustom
+@Table(indexes = @Index(name = "idx_book_user_status_id", columnList = "user_id, status, id"),
+        uniqueConstraints = @UniqueConstraint(name = "uk_book_user_title", columnNames = {"user_id", "normalized_title"}))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -22,6 +27,9 @@ public class Book {
     private Long id;
 
     private String title; // Название книги
+
+    @Column(name = "normalized_title")
+    private String normalizedTitle; // Название без регистра и пунктуации, по нему отсекаются дубликаты
     private String author; // Автор книги
 
     @Enumerated(EnumType.STRING)
@@ -45,6 +53,20 @@ public class Book {
     @UpdateTimestamp
     private Timestamp modifiedAt; // Дата, когда информация по книге была обновлена
 
+    @PrePersist
+    void fillNormalizedTitle() {
+        normalizedTitle = SearchQueryNormalizer.normalize(title);
+    }
+
+    // старый дубликат, которому при заполнении колонки не досталось названия, остаётся без него:
+    // иначе любое сохранение такой книги упрётся в uk_book_user_title
+    @PreUpdate
+    void refreshNormalizedTitle() {
+        if (normalizedTitle != null) {
+            normalizedTitle = SearchQueryNormalizer.normalize(title);
+        }
+    }
+
     public Book(String title, String author, BookStatus status) {
         this.title = title;
         this.author = author;
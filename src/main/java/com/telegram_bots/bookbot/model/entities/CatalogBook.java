@@ -0,0 +1,32 @@
+package com.telegram_bots.bookbot.model.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Книга из внешнего поиска, сохранённая в локальный каталог.
+ * Не привязана к пользователю, в отличие от {@link Book}.
+ */
+@Entity
+@Table(name = "catalog_book")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CatalogBook {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String title; // Название книги
+    private String author; // Автор книги
+
+    @Column(name = "total_pages")
+    private Integer totalPages;
+
+    @Column(name = "catalog_key", nullable = false, unique = true)
+    private String catalogKey; // Нормализованные название и автор, по ним отсекаются дубликаты
+}
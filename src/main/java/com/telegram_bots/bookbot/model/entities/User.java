@@ -11,7 +11,8 @@ import java.util.UUID;
 
 @Entity
 @Data
-@Table(name = "users")
+// один пользователь на telegramId: на этом индексе держится создание без гонок, см. UserResolver
+@Table(name = "users", uniqueConstraints = @UniqueConstraint(name = "uk_users_telegram_id", columnNames = "telegram_id"))
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
@@ -0,0 +1,48 @@
+package com.telegram_bots.bookbot.model.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+
+/**
+ * Статистика чтения пользователя, которая обновляется вместе с книгами.
+ * Счётчики относятся к окну, начало которого записано рядом: если день, месяц или год уже сменились,
+ * значение устарело и читается как 0.
+ */
+@Entity
+@Table(name = "user_reading_stats")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserReadingStats {
+    @Id
+    @Column(name = "telegram_id")
+    private Long telegramId;
+
+    private LocalDate dayStart; // День, к которому относятся дневные счётчики
+    private int dayBooks;
+    private int dayPages;
+
+    private LocalDate monthStart; // Первое число месяца для месячных счётчиков
+    private int monthBooks;
+    private int monthPages;
+
+    private LocalDate yearStart; // Первое января для годовых счётчиков
+    private int yearBooks;
+    private int yearPages;
+
+    private Long biggestBookId; // Самая большая прочитанная книга, null - прочитанных нет
+    private String biggestBookTitle;
+    private int biggestBookPages;
+
+    @Column(name = "modified_at")
+    @UpdateTimestamp
+    private Timestamp modifiedAt;
+}
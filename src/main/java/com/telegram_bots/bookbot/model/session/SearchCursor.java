@@ -0,0 +1,8 @@
+package com.telegram_bots.bookbot.model.session;
+
+/**
+ * Позиция пользователя в выдаче поиска: запрос и номер показанной страницы.
+ * Сами книги лежат в общем кэше выдач ({@link com.telegram_bots.bookbot.service.SearchResultPager}).
+ */
+public record SearchCursor(String query, int page) {
+}
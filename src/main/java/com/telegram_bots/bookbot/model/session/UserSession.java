@@ -1,23 +1,32 @@
 package com.telegram_bots.bookbot.model.session;
 
-import com.telegram_bots.bookbot.model.dto.LitresBookDto;
 import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
 import com.telegram_bots.bookbot.model.session.enums.UserState;
 import lombok.Data;
 
-import java.util.ArrayList;
-import java.util.List;
-
 @Data
 public class UserSession {
 
     private UserState state = UserState.NONE;
 
-    private List<LitresBookDto> searchResults = new ArrayList<>();
+    // null - поиска нет
+    private SearchCursor searchCursor;
 
-    private int currentPage = 0;
+    // id первой книги показанной страницы списка, 0 - начало списка
+    private long pageStartId = 0;
 
     private BookStatus bookStatusFilter = null;
 
     private Long bookIdForChange;
+
+    // курсор неизменяемый, поэтому копия может делить его с оригиналом
+    public UserSession copy() {
+        UserSession copy = new UserSession();
+        copy.setState(state);
+        copy.setSearchCursor(searchCursor);
+        copy.setPageStartId(pageStartId);
+        copy.setBookStatusFilter(bookStatusFilter);
+        copy.setBookIdForChange(bookIdForChange);
+        return copy;
+    }
 }
@@ -1,14 +1,87 @@
 package com.telegram_bots.bookbot.repository;
 
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.model.dto.Statistics;
+import com.telegram_bots.bookbot.model.dto.StatisticsView;
 import com.telegram_bots.bookbot.model.entities.Book;
 import com.telegram_bots.bookbot.model.entities.User;
+import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
-public interface BookRepository extends CrudRepository<Book, Long> {
+public interface BookRepository extends CrudRepository<Book, Long>, BookRepositoryCustom {
+
+    // статистика одним запросом по прочитанным книгам пользователя; окна - полуинтервалы [начало, следующее начало).
+    // id пользователя берётся подзапросом, а не join, чтобы книги читались по индексу на user_id
+    String STATISTICS_SQL = "SELECT COUNT(*) AS finishedBooks, " +
+            "COUNT(*) FILTER (WHERE b.finish_date = :today) AS todayBooks, " +
+            "COALESCE(SUM(COALESCE(b.current_page, 0)) FILTER (WHERE b.finish_date = :today), 0) AS todayPages, " +
+            "COUNT(*) FILTER (WHERE b.finish_date >= :monthStart AND b.finish_date < :nextMonth) AS monthBooks, " +
+            "COALESCE(SUM(COALESCE(b.current_page, 0)) FILTER (WHERE b.finish_date >= :monthStart AND b.finish_date < :nextMonth), 0) AS monthPages, " +
+            "COUNT(*) FILTER (WHERE b.finish_date >= :yearStart AND b.finish_date < :nextYear) AS yearBooks, " +
+            "COALESCE(SUM(COALESCE(b.current_page, 0)) FILTER (WHERE b.finish_date >= :yearStart AND b.finish_date < :nextYear), 0) AS yearPages, " +
+            "COALESCE(MAX(COALESCE(b.current_page, 0)), 0) AS biggestBookPages, " +
+            "(SELECT t.title FROM book t WHERE t.user_id = (SELECT id FROM users WHERE telegram_id = :telegramId) " +
+            "AND t.finish_date IS NOT NULL ORDER BY COALESCE(t.current_page, 0) DESC, t.id LIMIT 1) AS biggestBookTitle " +
+            "FROM book b WHERE b.user_id = (SELECT id FROM users WHERE telegram_id = :telegramId) " +
+            "AND b.finish_date IS NOT NULL";
+
     List<Book> findAll();
-    Optional<Book> findByTitleAndUser(String title, User user);
     List<Book> findByUser(User user);
+    Optional<Book> findByIdAndUserTelegramId(Long id, Long telegramId);
+
+    // книги без числа страниц, по одной строке на название и автора - для фонового дозаполнения:
+    // keyset по (title, author) после переданной пары, автор null возвращается пустой строкой
+    @Query("SELECT DISTINCT new com.telegram_bots.bookbot.model.dto.LitresBookDto(b.title, COALESCE(b.author, '')) " +
+            "FROM Book b WHERE (b.totalPages IS NULL OR b.totalPages = 0) " +
+            "AND (b.title > :afterTitle OR (b.title = :afterTitle AND COALESCE(b.author, '') > :afterAuthor)) " +
+            "ORDER BY b.title, COALESCE(b.author, '')")
+    List<LitresBookDto> findWithUnknownTotalPages(@Param("afterTitle") String afterTitle,
+                                                  @Param("afterAuthor") String afterAuthor,
+                                                  Pageable pageable);
+
+    // список книг пользователя по страницам: keyset по id, status null - без фильтра
+    @Query("SELECT b FROM Book b WHERE b.user.telegramId = :telegramId " +
+            "AND (:status IS NULL OR b.status = :status) AND b.id > :afterId ORDER BY b.id")
+    List<Book> findPageAfter(@Param("telegramId") Long telegramId, @Param("status") BookStatus status,
+                             @Param("afterId") long afterId, Pageable pageable);
+
+    // предыдущая страница: идём от первой книги текущей в обратную сторону
+    @Query("SELECT b FROM Book b WHERE b.user.telegramId = :telegramId " +
+            "AND (:status IS NULL OR b.status = :status) AND b.id < :beforeId ORDER BY b.id DESC")
+    List<Book> findPageBefore(@Param("telegramId") Long telegramId, @Param("status") BookStatus status,
+                              @Param("beforeId") long beforeId, Pageable pageable);
+
+    // прочитанные книги пользователя - для полного пересчёта статистики
+    @Query("SELECT b FROM Book b WHERE b.user.telegramId = :telegramId AND b.finishDate IS NOT NULL ORDER BY b.id")
+    List<Book> findFinishedByOwner(@Param("telegramId") Long telegramId);
+
+    // самая большая прочитанная книга, при равенстве - добавленная раньше
+    @Query("SELECT b FROM Book b WHERE b.user.telegramId = :telegramId AND b.finishDate IS NOT NULL " +
+            "ORDER BY COALESCE(b.currentPage, 0) DESC, b.id")
+    List<Book> findBiggestFinished(@Param("telegramId") Long telegramId, Pageable pageable);
+
+    @Query(value = STATISTICS_SQL, nativeQuery = true)
+    StatisticsView aggregateStatistics(@Param("telegramId") Long telegramId,
+                                       @Param("today") LocalDate today,
+                                       @Param("monthStart") LocalDate monthStart,
+                                       @Param("nextMonth") LocalDate nextMonth,
+                                       @Param("yearStart") LocalDate yearStart,
+                                       @Param("nextYear") LocalDate nextYear);
+
+    /**
+     * Статистика пользователя на день today, посчитанная в базе без загрузки книг.
+     */
+    default Statistics statisticsOf(Long telegramId, LocalDate today) {
+        LocalDate monthStart = today.withDayOfMonth(1);
+        LocalDate yearStart = today.withDayOfYear(1);
+        return aggregateStatistics(telegramId, today, monthStart, monthStart.plusMonths(1),
+                yearStart, yearStart.plusYears(1)).toStatistics();
+    }
 }
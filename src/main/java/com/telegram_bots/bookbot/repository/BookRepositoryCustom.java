@@ -0,0 +1,24 @@
+package com.telegram_bots.bookbot.repository;
+
+import com.telegram_bots.bookbot.model.entities.Book;
+
+import java.util.Optional;
+
+public interface BookRepositoryCustom {
+
+    /**
+     * Добавляет книгу одним запросом, если у пользователя ещё нет книги с тем же нормализованным названием.
+     * Повтор отсекает уникальный индекс (user_id, normalized_title), поэтому параллельные добавления не дают дублей.
+     *
+     * @return добавленная книга с id или пустой, если такая книга уже есть
+     */
+    Optional<Book> insertIfAbsent(Book book);
+
+    /**
+     * Заполняет normalized_title у книг, добавленных до появления колонки, пачками по batchSize.
+     * Книга, название которой у пользователя уже занято, остаётся с null: дубликат отсекает занявшая его строка.
+     *
+     * @return сколько книг получили нормализованное название
+     */
+    int fillNormalizedTitles(int batchSize);
+}
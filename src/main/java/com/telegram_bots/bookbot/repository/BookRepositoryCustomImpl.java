@@ -0,0 +1,99 @@
+package com.telegram_bots.bookbot.repository;
+
+import com.telegram_bots.bookbot.model.entities.Book;
+import com.telegram_bots.bookbot.utils.SearchQueryNormalizer;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.Optional;
+
+class BookRepositoryCustomImpl implements BookRepositoryCustom {
+
+    private static final String INSERT = "INSERT INTO book (title, normalized_title, author, status, added_date, " +
+            "total_pages, user_id, modified_at) VALUES (?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)";
+
+    private static final String INSERT_IF_ABSENT = INSERT +
+            " ON CONFLICT (user_id, normalized_title) DO NOTHING RETURNING id";
+
+    private static final String SELECT_WITHOUT_NORMALIZED_TITLE = "SELECT id, title FROM book " +
+            "WHERE normalized_title IS NULL AND id > ? ORDER BY id LIMIT ?";
+
+    private static final String FILL_NORMALIZED_TITLE = "UPDATE book SET normalized_title = ? " +
+            "WHERE id = ? AND normalized_title IS NULL AND NOT EXISTS (SELECT 1 FROM book other " +
+            "WHERE other.user_id = book.user_id AND other.normalized_title = ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlDialect dialect;
+
+    BookRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = new SqlDialect(jdbcTemplate);
+    }
+
+    @Override
+    public Optional<Book> insertIfAbsent(Book book) {
+        book.setNormalizedTitle(SearchQueryNormalizer.normalize(book.getTitle()));
+        Object[] args = {
+                book.getTitle(),
+                book.getNormalizedTitle(),
+                book.getAuthor(),
+                book.getStatus() != null ? book.getStatus().name() : null,
+                book.getAddedDate(),
+                book.getTotalPages(),
+                book.getUser().getId()
+        };
+
+        Long id;
+        if (dialect.isPostgres()) {
+            List<Long> ids = jdbcTemplate.query(INSERT_IF_ABSENT, (rs, rowNum) -> rs.getLong(1), args);
+            id = ids.isEmpty() ? null : ids.get(0);
+        } else {
+            id = insertReturningKey(args);
+        }
+        if (id == null) {
+            return Optional.empty();
+        }
+        book.setId(id);
+        return Optional.of(book);
+    }
+
+    @Override
+    public int fillNormalizedTitles(int batchSize) {
+        int filled = 0;
+        long afterId = 0;
+        List<Object[]> rows;
+        while (!(rows = jdbcTemplate.query(SELECT_WITHOUT_NORMALIZED_TITLE,
+                (rs, rowNum) -> new Object[]{rs.getLong(1), rs.getString(2)}, afterId, batchSize)).isEmpty()) {
+            for (Object[] row : rows) {
+                String normalizedTitle = SearchQueryNormalizer.normalize((String) row[1]);
+                try {
+                    filled += jdbcTemplate.update(FILL_NORMALIZED_TITLE, normalizedTitle, row[0], normalizedTitle);
+                } catch (DuplicateKeyException e) {
+                    // ту же книгу только что добавили, пусть эта строка остаётся без названия
+                }
+            }
+            afterId = (Long) rows.get(rows.size() - 1)[0];
+        }
+        return filled;
+    }
+
+    private Long insertReturningKey(Object[] args) {
+        KeyHolder keys = new GeneratedKeyHolder();
+        try {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(INSERT, new String[]{"id"});
+                new ArgumentPreparedStatementSetter(args).setValues(statement);
+                return statement;
+            }, keys);
+        } catch (DuplicateKeyException e) {
+            return null;
+        }
+        Number key = keys.getKey();
+        return key != null ? key.longValue() : null;
+    }
+}
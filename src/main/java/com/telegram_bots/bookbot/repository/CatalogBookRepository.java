@@ -0,0 +1,10 @@
+package com.telegram_bots.bookbot.repository;
+
+import com.telegram_bots.bookbot.model.entities.CatalogBook;
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.List;
+
+public interface CatalogBookRepository extends CrudRepository<CatalogBook, Long> {
+    List<CatalogBook> findAll();
+}
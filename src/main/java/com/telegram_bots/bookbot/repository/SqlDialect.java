@@ -0,0 +1,31 @@
+package com.telegram_bots.bookbot.repository;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Locale;
+
+/**
+ * Какая база под приложением: вставки без дубликатов на PostgreSQL идут через ON CONFLICT,
+ * на остальных (H2 в тестах) - обычным INSERT с разбором нарушения уникальности.
+ */
+final class SqlDialect {
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Boolean postgres;
+
+    SqlDialect(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    boolean isPostgres() {
+        Boolean detected = postgres;
+        if (detected == null) {
+            String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                    connection.getMetaData().getDatabaseProductName());
+            detected = product != null && product.toLowerCase(Locale.ROOT).contains("postgres");
+            postgres = detected;
+        }
+        return detected;
+    }
+}
@@ -0,0 +1,27 @@
+package com.telegram_bots.bookbot.repository;
+
+import com.telegram_bots.bookbot.model.entities.UserReadingStats;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface UserReadingStatsRepository extends CrudRepository<UserReadingStats, Long>, UserReadingStatsRepositoryCustom {
+
+    // строка блокируется до конца транзакции, чтобы параллельные изменения книг не потеряли приращения
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM UserReadingStats s WHERE s.telegramId = :telegramId")
+    Optional<UserReadingStats> findForUpdate(@Param("telegramId") Long telegramId);
+
+    List<UserReadingStats> findByTelegramIdGreaterThanOrderByTelegramId(Long telegramId, Pageable pageable);
+
+    // владельцы книг, для которых статистика ещё не посчитана, - для заполнения после обновления
+    @Query("SELECT DISTINCT b.user.telegramId FROM Book b WHERE b.user.telegramId IS NOT NULL " +
+            "AND NOT EXISTS (SELECT s FROM UserReadingStats s WHERE s.telegramId = b.user.telegramId)")
+    List<Long> findOwnersWithoutStats(Pageable pageable);
+}
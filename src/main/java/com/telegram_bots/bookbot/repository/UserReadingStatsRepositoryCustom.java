@@ -0,0 +1,11 @@
+package com.telegram_bots.bookbot.repository;
+
+public interface UserReadingStatsRepositoryCustom {
+
+    /**
+     * Вставляет пустую строку статистики пользователя, если её ещё нет.
+     * Параллельная вставка той же строки не падает на первичном ключе, а ждёт первую и ничего не делает,
+     * поэтому транзакция, в которой меняется книга, не откатывается из-за гонки.
+     */
+    void insertIfAbsent(Long telegramId);
+}
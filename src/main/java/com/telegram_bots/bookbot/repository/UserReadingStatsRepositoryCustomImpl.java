@@ -0,0 +1,34 @@
+package com.telegram_bots.bookbot.repository;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+class UserReadingStatsRepositoryCustomImpl implements UserReadingStatsRepositoryCustom {
+
+    private static final String INSERT = "INSERT INTO user_reading_stats (telegram_id, day_books, day_pages, " +
+            "month_books, month_pages, year_books, year_pages, biggest_book_pages, modified_at) " +
+            "VALUES (?, 0, 0, 0, 0, 0, 0, 0, CURRENT_TIMESTAMP)";
+
+    private static final String INSERT_IF_ABSENT = INSERT + " ON CONFLICT (telegram_id) DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlDialect dialect;
+
+    UserReadingStatsRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = new SqlDialect(jdbcTemplate);
+    }
+
+    @Override
+    public void insertIfAbsent(Long telegramId) {
+        if (dialect.isPostgres()) {
+            jdbcTemplate.update(INSERT_IF_ABSENT, telegramId);
+            return;
+        }
+        try {
+            jdbcTemplate.update(INSERT, telegramId);
+        } catch (DuplicateKeyException e) {
+            // строку уже вставил параллельный запрос
+        }
+    }
+}
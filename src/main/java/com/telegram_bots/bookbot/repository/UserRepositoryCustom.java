@@ -0,0 +1,12 @@
+package com.telegram_bots.bookbot.repository;
+
+import com.telegram_bots.bookbot.model.entities.User;
+
+public interface UserRepositoryCustom {
+
+    /**
+     * Пользователь с этим telegramId: создаётся, если его ещё нет, а при гонке возвращается уже созданный.
+     * В возвращённом объекте заполнены только id и telegramId.
+     */
+    User upsertByTelegramId(Long telegramId);
+}
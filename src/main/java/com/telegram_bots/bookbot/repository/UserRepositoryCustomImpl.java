@@ -0,0 +1,47 @@
+package com.telegram_bots.bookbot.repository;
+
+import com.telegram_bots.bookbot.model.entities.User;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.UUID;
+
+class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+    private static final String INSERT = "INSERT INTO users (id, telegram_id, modified_at) VALUES (?, ?, CURRENT_TIMESTAMP)";
+
+    // на конфликте строка "обновляется" без изменений, чтобы RETURNING отдал id существующего пользователя
+    private static final String UPSERT = INSERT +
+            " ON CONFLICT (telegram_id) DO UPDATE SET telegram_id = EXCLUDED.telegram_id RETURNING id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlDialect dialect;
+
+    UserRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = new SqlDialect(jdbcTemplate);
+    }
+
+    @Override
+    public User upsertByTelegramId(Long telegramId) {
+        UUID id;
+        if (dialect.isPostgres()) {
+            id = jdbcTemplate.queryForObject(UPSERT, (rs, rowNum) -> rs.getObject(1, UUID.class),
+                    UUID.randomUUID(), telegramId);
+        } else {
+            id = insertOrFind(telegramId);
+        }
+        return User.builder().id(id).telegramId(telegramId).build();
+    }
+
+    private UUID insertOrFind(Long telegramId) {
+        UUID id = UUID.randomUUID();
+        try {
+            jdbcTemplate.update(INSERT, id, telegramId);
+            return id;
+        } catch (DuplicateKeyException e) {
+            return jdbcTemplate.queryForObject("SELECT id FROM users WHERE telegram_id = ?",
+                    (rs, rowNum) -> rs.getObject(1, UUID.class), telegramId);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.telegram_bots.bookbot.service;
+
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.model.entities.CatalogBook;
+import com.telegram_bots.bookbot.repository.CatalogBookRepository;
+import com.telegram_bots.bookbot.utils.SearchQueryNormalizer;
+import com.telegram_bots.bookbot.utils.TrigramIndex;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Локальный каталог книг, которые когда-либо находились на litres.
+ * <p>
+ * Книги хранятся в таблице catalog_book, а в памяти держится триграммный индекс по названию,
+ * поэтому поиск по каталогу не ходит ни в базу, ни в сеть. Индекс строится при старте
+ * и пополняется через {@link #remember(List)}.
+ */
+@Slf4j
+@Service
+public class BookCatalogService {
+
+    public record Match(LitresBookDto book, double score) {
+    }
+
+    private final CatalogBookRepository catalogBookRepository;
+    private final double minScore;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TrigramIndex index = new TrigramIndex();
+    private final List<LitresBookDto> books = new ArrayList<>();
+    // нормализованные названия в том же порядке, что и books
+    private final List<String> titles = new ArrayList<>();
+    // ключ каталога -> номер книги в books
+    private final Map<String, Integer> keys = new HashMap<>();
+    // растёт при каждом изменении books, по нему видно, что построенные по каталогу индексы устарели
+    private long version;
+
+    public BookCatalogService(CatalogBookRepository catalogBookRepository,
+                              @Value("${book.catalog.min-score:0.3}") double minScore,
+                              MeterRegistry meterRegistry) {
+        this.catalogBookRepository = catalogBookRepository;
+        this.minScore = minScore;
+        Gauge.builder("book.catalog.size", this, BookCatalogService::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void load() {
+        List<CatalogBook> stored = catalogBookRepository.findAll();
+        lock.writeLock().lock();
+        try {
+            for (CatalogBook book : stored) {
+                index(book.getCatalogKey(), new LitresBookDto(book.getTitle(), book.getAuthor(), book.getTotalPages()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Каталог книг загружен: {}", stored.size());
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return books.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Номер версии каталога: меняется вместе с любым изменением списка книг.
+     */
+    public long version() {
+        lock.readLock().lock();
+        try {
+            return version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Копия всех книг каталога в порядке добавления.
+     */
+    public List<LitresBookDto> snapshot() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(books);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Похожие по названию книги из каталога, лучшие первыми.
+     */
+    public List<Match> search(String query, int limit) {
+        String normalized = SearchQueryNormalizer.normalize(query);
+        lock.readLock().lock();
+        try {
+            List<Match> matches = new ArrayList<>();
+            for (TrigramIndex.Match match : index.search(normalized, minScore, limit)) {
+                matches.add(new Match(books.get(match.document()), match.score()));
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Книги, в названии которых встречается query, в порядке добавления в каталог.
+     * Запасной поиск, пока внешние источники недоступны: перебор названий в памяти, без базы.
+     */
+    public List<LitresBookDto> findContaining(String query, int limit) {
+        String normalized = SearchQueryNormalizer.normalize(query);
+        if (normalized.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            List<LitresBookDto> found = new ArrayList<>();
+            for (int i = 0; i < titles.size() && found.size() < limit; i++) {
+                if (titles.get(i).contains(normalized)) {
+                    found.add(books.get(i));
+                }
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Книга каталога с точно такими же (после нормализации) названием и автором.
+     */
+    public Optional<LitresBookDto> find(String title, String author) {
+        String key = catalogKey(new LitresBookDto(title, author));
+        lock.readLock().lock();
+        try {
+            Integer position = keys.get(key);
+            return position != null ? Optional.of(books.get(position)) : Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Сохраняет в каталог книги, которых в нём ещё нет.
+     */
+    public void remember(List<LitresBookDto> found) {
+        List<CatalogBook> added = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            for (LitresBookDto book : found) {
+                String key = catalogKey(book);
+                if (!key.isEmpty() && index(key, book)) {
+                    added.add(CatalogBook.builder()
+                            .title(book.getTitle())
+                            .author(book.getAuthor())
+                            .totalPages(book.getTotalPages())
+                            .catalogKey(key)
+                            .build());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        for (CatalogBook book : added) {
+            try {
+                catalogBookRepository.save(book);
+            } catch (DataIntegrityViolationException e) {
+                // книгу уже сохранил другой экземпляр бота
+                log.debug("Книга уже есть в каталоге: {}", book.getCatalogKey());
+            }
+        }
+    }
+
+    // вызывается под блокировкой записи
+    private boolean index(String key, LitresBookDto book) {
+        if (keys.putIfAbsent(key, books.size()) != null) {
+            return false;
+        }
+        String title = SearchQueryNormalizer.normalize(book.getTitle());
+        index.add(title);
+        books.add(book);
+        titles.add(title);
+        version++;
+        return true;
+    }
+
+    static String catalogKey(LitresBookDto book) {
+        return SearchQueryNormalizer.bookKey(book.getTitle(), book.getAuthor());
+    }
+}
@@ -0,0 +1,244 @@
+package com.telegram_bots.bookbot.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.telegram_bots.bookbot.bot.outbound.TokenBucket;
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.repository.BookRepository;
+import com.telegram_bots.bookbot.utils.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.nodes.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Фоновое дозаполнение числа страниц у книг, для которых оно неизвестно (null или 0).
+ * <p>
+ * Добавление книги не ждёт litres: отдельный поток раз в interval берёт из базы очередную порцию книг без страниц
+ * (keyset по названию и автору, дойдя до конца таблицы, начинает сначала),
+ * сначала ищет их в каталоге, затем в выдаче litres и, если там объёма нет, на карточке книги.
+ * Запросы к litres ограничены token bucket, при разомкнутом предохранителе поиска цикл пропускается.
+ * Найденные значения записываются одним batch-обновлением по названию и автору.
+ * Книгу, которую не удалось дозаполнить, повторно пробуем не раньше чем через retry-after.
+ */
+@Slf4j
+@Service
+public class BookEnrichmentService {
+
+    // сколько книг без страниц читаем из базы за цикл, чтобы посчитать очередь
+    private static final int SCAN_SIZE = 500;
+    // начало таблицы для keyset: пустые названия всё равно пропускаются
+    private static final LitresBookDto SCAN_START = new LitresBookDto("", "");
+
+    private static final String UPDATE_TOTAL_PAGES = "UPDATE book SET total_pages = ?, modified_at = CURRENT_TIMESTAMP " +
+            "WHERE title = ? AND COALESCE(author, '') = ? AND (total_pages IS NULL OR total_pages = 0)";
+
+    private final BookRepository bookRepository;
+    private final BookCatalogService bookCatalogService;
+    private final LitresService litresService;
+    private final LitresHttpClient litresHttpClient;
+    private final JdbcTemplate jdbcTemplate;
+    private final LitresPageParser pageParser = new LitresPageParser(0);
+    private final int batchSize;
+    private final long intervalMillis;
+    private final TokenBucket rateLimiter;
+    private final Cache<String, Boolean> attempted;
+    private final ScheduledExecutorService executor;
+
+    // последняя просмотренная книга, следующий цикл читает после неё
+    private LitresBookDto scanCursor = SCAN_START;
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final Counter enrichedCounter;
+    private final Counter notFoundCounter;
+    private final Counter failedCounter;
+    private final Counter updatedRowsCounter;
+    private final Timer fetchTimer;
+
+    public BookEnrichmentService(BookRepository bookRepository,
+                                 BookCatalogService bookCatalogService,
+                                 LitresService litresService,
+                                 LitresHttpClient litresHttpClient,
+                                 JdbcTemplate jdbcTemplate,
+                                 @Value("${book.enrichment.batch-size:20}") int batchSize,
+                                 @Value("${book.enrichment.rate-per-second:0.5}") double ratePerSecond,
+                                 @Value("${book.enrichment.retry-after-hours:24}") long retryAfterHours,
+                                 @Value("${book.enrichment.interval-ms:30000}") long intervalMillis,
+                                 MeterRegistry meterRegistry) {
+        this.bookRepository = bookRepository;
+        this.bookCatalogService = bookCatalogService;
+        this.litresService = litresService;
+        this.litresHttpClient = litresHttpClient;
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = Math.max(1, batchSize);
+        this.intervalMillis = intervalMillis;
+        this.rateLimiter = new TokenBucket(1, ratePerSecond);
+        this.attempted = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofHours(retryAfterHours))
+                .maximumSize(100_000)
+                .build();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "book-enrichment");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("book.enrichment.queue.size", queueSize, AtomicInteger::get).register(meterRegistry);
+        this.enrichedCounter = meterRegistry.counter("book.enrichment.enriched");
+        this.notFoundCounter = meterRegistry.counter("book.enrichment.not.found");
+        this.failedCounter = meterRegistry.counter("book.enrichment.failed");
+        this.updatedRowsCounter = meterRegistry.counter("book.enrichment.updated.rows");
+        this.fetchTimer = meterRegistry.timer("book.enrichment.fetch");
+    }
+
+    /**
+     * Запускает периодическое дозаполнение, interval-ms 0 - выключено.
+     */
+    @PostConstruct
+    public void start() {
+        if (intervalMillis > 0) {
+            executor.scheduleWithFixedDelay(this::runSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Книги без страниц, которые ещё ждут попытки дозаполнения (по последнему циклу).
+     */
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    /**
+     * Один цикл дозаполнения: не больше batch-size книг.
+     *
+     * @return сколько строк таблицы book обновлено
+     */
+    public synchronized int enrichBatch() {
+        if (litresService.getCircuitState() == CircuitBreaker.State.OPEN) {
+            log.debug("Litres недоступен, дозаполнение страниц отложено");
+            return 0;
+        }
+        List<LitresBookDto> page = bookRepository.findWithUnknownTotalPages(
+                scanCursor.getTitle(), scanCursor.getAuthor(), PageRequest.of(0, SCAN_SIZE));
+        List<LitresBookDto> queue = page.stream()
+                .filter(book -> book.getTitle() != null && !book.getTitle().isBlank())
+                .filter(book -> attempted.getIfPresent(BookCatalogService.catalogKey(book)) == null)
+                .toList();
+        queueSize.set(queue.size());
+
+        List<Object[]> updates = new ArrayList<>();
+        int processed = 0;
+        for (LitresBookDto book : queue) {
+            if (processed >= batchSize || Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            processed++;
+            attempted.put(BookCatalogService.catalogKey(book), Boolean.TRUE);
+            scanCursor = book;
+
+            int totalPages = resolveTotalPages(book);
+            if (totalPages > 0) {
+                enrichedCounter.increment();
+                String author = book.getAuthor() != null ? book.getAuthor() : "";
+                updates.add(new Object[]{totalPages, book.getTitle(), author});
+            } else if (totalPages == 0) {
+                notFoundCounter.increment();
+            }
+        }
+        queueSize.set(queue.size() - processed);
+        if (processed == queue.size()) {
+            // порция разобрана целиком: дальше следующая, после последней - снова с начала
+            scanCursor = page.size() < SCAN_SIZE ? SCAN_START : page.get(page.size() - 1);
+        }
+
+        if (updates.isEmpty()) {
+            return 0;
+        }
+        int updated = 0;
+        for (int rows : jdbcTemplate.batchUpdate(UPDATE_TOTAL_PAGES, updates)) {
+            // драйвер может не знать число строк (SUCCESS_NO_INFO = -2)
+            updated += Math.max(rows, 0);
+        }
+        updatedRowsCounter.increment(updated);
+        log.info("Дозаполнено число страниц: книг {}, строк {}", updates.size(), updated);
+        return updated;
+    }
+
+    private void runSafely() {
+        try {
+            enrichBatch();
+        } catch (Exception e) {
+            // исключение остановило бы scheduleWithFixedDelay
+            log.warn("Ошибка фонового дозаполнения страниц", e);
+        }
+    }
+
+    // число страниц, 0 - нигде не указано, -1 - ошибка загрузки
+    private int resolveTotalPages(LitresBookDto book) {
+        Optional<LitresBookDto> known = bookCatalogService.find(book.getTitle(), book.getAuthor());
+        if (known.isPresent() && known.get().getTotalPages() != null && known.get().getTotalPages() > 0) {
+            return known.get().getTotalPages();
+        }
+        try {
+            return fetchTimer.recordCallable(() -> fetchTotalPages(book));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (Exception e) {
+            failedCounter.increment();
+            log.debug("Не удалось узнать число страниц книги '{}': {}", book.getTitle(), e.toString());
+            return -1;
+        }
+    }
+
+    private int fetchTotalPages(LitresBookDto book) throws IOException, InterruptedException {
+        String query = book.getAuthor() != null && !book.getAuthor().isBlank()
+                ? book.getTitle() + " " + book.getAuthor()
+                : book.getTitle();
+        awaitPermit();
+        Document searchPage = litresHttpClient.fetch(query);
+        Optional<LitresPageParser.Card> card = pageParser.findCard(searchPage, book.getTitle());
+        if (card.isEmpty()) {
+            return 0;
+        }
+        Integer fromSearch = card.get().book().getTotalPages();
+        if (fromSearch != null && fromSearch > 0) {
+            return fromSearch;
+        }
+        if (card.get().detailUrl() == null) {
+            return 0;
+        }
+        awaitPermit();
+        return LitresPageParser.detailTotalPages(litresHttpClient.fetchPage(card.get().detailUrl()));
+    }
+
+    // поток свой, поэтому ждать токен можно прямо в нём
+    private void awaitPermit() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = rateLimiter.tryAcquire()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
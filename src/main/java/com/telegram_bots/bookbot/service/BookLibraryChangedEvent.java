@@ -0,0 +1,7 @@
+package com.telegram_bots.bookbot.service;
+
+/**
+ * Книги пользователя добавились или удалились; публикуется {@link BookService}.
+ */
+public record BookLibraryChangedEvent(Long telegramId) {
+}
@@ -0,0 +1,75 @@
+package com.telegram_bots.bookbot.service;
+
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.model.dto.SearchResult;
+import com.telegram_bots.bookbot.service.search.SearchFanOut;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Поиск книги по названию для бота.
+ * <p>
+ * Сначала смотрим в локальный каталог ({@link BookCatalogService}): если лучшее совпадение
+ * достаточно уверенное, отвечаем сразу. Иначе опрашиваем внешние источники ({@link SearchFanOut}),
+ * а найденное складываем в каталог. Когда ни один источник не ответил, отдаём похожие книги из каталога,
+ * а если таких нет - книги каталога, в названии которых есть запрос. Всё это из памяти, база не нужна.
+ */
+@Service
+public class BookSearchService {
+
+    private final BookCatalogService bookCatalogService;
+    private final SearchFanOut searchFanOut;
+    private final double confidentScore;
+
+    private final Counter catalogHits;
+    private final Counter catalogMisses;
+
+    public BookSearchService(BookCatalogService bookCatalogService,
+                             SearchFanOut searchFanOut,
+                             @Value("${book.catalog.confident-score:0.8}") double confidentScore,
+                             MeterRegistry meterRegistry) {
+        this.bookCatalogService = bookCatalogService;
+        this.searchFanOut = searchFanOut;
+        this.confidentScore = confidentScore;
+        this.catalogHits = meterRegistry.counter("book.catalog.hits");
+        this.catalogMisses = meterRegistry.counter("book.catalog.misses");
+    }
+
+    public SearchResult search(String query, int limit) {
+        List<BookCatalogService.Match> matches = bookCatalogService.search(query, limit);
+        if (!matches.isEmpty() && matches.get(0).score() >= confidentScore) {
+            catalogHits.increment();
+            return SearchResult.of(books(matches));
+        }
+        catalogMisses.increment();
+
+        SearchResult remote = searchFanOut.search(query);
+        if (!remote.degraded()) {
+            bookCatalogService.remember(remote.books());
+            return SearchResult.of(remote.books().stream().limit(limit).toList());
+        }
+
+        List<LitresBookDto> local = !matches.isEmpty() ? books(matches) : bookCatalogService.findContaining(query, limit);
+        return SearchResult.degraded(local);
+    }
+
+    /**
+     * Продолжение выдачи: только внешние источники, не меньше limit книг от каждого.
+     * Найденное тоже складывается в каталог.
+     */
+    public SearchResult searchMore(String query, int limit) {
+        SearchResult remote = searchFanOut.search(query, limit);
+        if (!remote.degraded()) {
+            bookCatalogService.remember(remote.books());
+        }
+        return remote;
+    }
+
+    private static List<LitresBookDto> books(List<BookCatalogService.Match> matches) {
+        return matches.stream().map(BookCatalogService.Match::book).toList();
+    }
+}
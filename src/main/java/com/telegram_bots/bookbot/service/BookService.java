@@ -1,28 +1,57 @@
 package com.telegram_bots.bookbot.service;
 
+import com.telegram_bots.bookbot.model.dto.BookPage;
 import com.telegram_bots.bookbot.model.dto.Statistics;
 import com.telegram_bots.bookbot.model.entities.Book;
 import com.telegram_bots.bookbot.model.entities.User;
 import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
 import com.telegram_bots.bookbot.repository.BookRepository;
-import com.telegram_bots.bookbot.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
-import java.time.YearMonth;
 import java.util.*;
 
+@Slf4j
 @Service
 public class BookService {
 
+    private static final int BACKFILL_BATCH_SIZE = 500;
+
     private final BookRepository bookRepository;
-    private final UserRepository userRepository;
+    private final UserResolver userResolver;
+    private final ReadingStatsService readingStatsService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public BookService(UserRepository userRepository, BookRepository bookRepository) {
-        this.userRepository = userRepository;
+    public BookService(UserResolver userResolver, BookRepository bookRepository, ReadingStatsService readingStatsService,
+                       ApplicationEventPublisher eventPublisher) {
+        this.userResolver = userResolver;
         this.bookRepository = bookRepository;
+        this.readingStatsService = readingStatsService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Книги, добавленные до появления normalized_title, получают его после запуска,
+     * иначе уникальный индекс не отсекает повторное добавление такой книги.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillNormalizedTitles() {
+        try {
+            int filled = bookRepository.fillNormalizedTitles(BACKFILL_BATCH_SIZE);
+            if (filled > 0) {
+                log.info("Заполнено нормализованное название у {} книг", filled);
+            }
+        } catch (Exception e) {
+            log.warn("Не удалось заполнить нормализованные названия книг", e);
+        }
     }
 
     public List<Book> getAllBooks() {
@@ -30,7 +59,7 @@ public class BookService {
     }
 
     public List<Book> getAllBooksOfUser(Long telegramId) {
-        Optional<User> optionalUser = userRepository.findByTelegramId(telegramId);
+        Optional<User> optionalUser = userResolver.find(telegramId);
 
         if (optionalUser.isPresent()) {
             return bookRepository.findByUser(optionalUser.get());
@@ -38,17 +67,69 @@ public class BookService {
         return new ArrayList<>();
     }
 
+    /**
+     * Страница списка книг пользователя, начиная с книги firstId (0 - с начала). status null - все книги.
+     */
+    public BookPage getBooksFrom(Long telegramId, BookStatus status, long firstId, int pageSize) {
+        return getBooksAfter(telegramId, status, Math.max(0, firstId - 1), pageSize);
+    }
+
+    /**
+     * Следующая страница после книги afterId: база не перебирает пропущенные строки, как при offset.
+     */
+    public BookPage getBooksAfter(Long telegramId, BookStatus status, long afterId, int pageSize) {
+        // на книгу больше страницы: по лишней видно, есть ли следующая
+        List<Book> books = bookRepository.findPageAfter(telegramId, status, afterId, PageRequest.of(0, pageSize + 1));
+        boolean hasNext = books.size() > pageSize;
+        books = hasNext ? books.subList(0, pageSize) : books;
+        boolean hasPrevious = !books.isEmpty() && hasBooksBefore(telegramId, status, books.get(0).getId());
+        return new BookPage(books, hasPrevious, hasNext);
+    }
+
+    /**
+     * Предыдущая страница перед книгой beforeId, в обычном порядке.
+     */
+    public BookPage getBooksBefore(Long telegramId, BookStatus status, long beforeId, int pageSize) {
+        List<Book> books = new ArrayList<>(bookRepository.findPageBefore(telegramId, status, beforeId, PageRequest.of(0, pageSize + 1)));
+        boolean hasPrevious = books.size() > pageSize;
+        if (hasPrevious) {
+            books.remove(pageSize);
+        }
+        Collections.reverse(books);
+        boolean hasNext = !books.isEmpty() && hasBooksAfter(telegramId, status, books.get(books.size() - 1).getId());
+        return new BookPage(books, hasPrevious, hasNext);
+    }
+
+    private boolean hasBooksBefore(Long telegramId, BookStatus status, long bookId) {
+        return !bookRepository.findPageBefore(telegramId, status, bookId, PageRequest.of(0, 1)).isEmpty();
+    }
+
+    private boolean hasBooksAfter(Long telegramId, BookStatus status, long bookId) {
+        return !bookRepository.findPageAfter(telegramId, status, bookId, PageRequest.of(0, 1)).isEmpty();
+    }
+
     public Optional<Book> getBookOptionalById(Long id) {
         return bookRepository.findById(id);
     }
 
+    /**
+     * Книга пользователя по id, пустой - если книги нет или она принадлежит другому пользователю.
+     */
+    public Optional<Book> getBookOfUser(Long telegramId, Long bookId) {
+        return bookRepository.findByIdAndUserTelegramId(bookId, telegramId);
+    }
+
     public Book getBookById(Long bookId) {
         return bookRepository.findById(bookId)
                 .orElseThrow(() -> new RuntimeException("Book not found with id " + bookId));
     }
 
+    @Transactional
     public Book addBook(Book book) {
-        return bookRepository.save(book);
+        Book saved = bookRepository.save(book);
+        readingStatsService.onBookChanged(ownerOf(saved), null, ReadingStatsService.Contribution.of(saved));
+        libraryChanged(ownerOf(saved));
+        return saved;
     }
 
     public Book addBook(Long telegramId, String title, String author) {
@@ -56,20 +137,7 @@ public class BookService {
     }
 
     public Book addBook(Long telegramId, String title, String author, Integer totalPages) {
-        Optional<User> optionalUser = userRepository.findByTelegramId(telegramId);
-        User user;
-
-        if (optionalUser.isPresent()) {
-            user = optionalUser.get();
-            Optional<Book> existingBook = bookRepository.findByTitleAndUser(title, user);
-            if (existingBook.isPresent()) {
-                return null;
-            }
-        } else {
-            user = new User();
-            user.setTelegramId(telegramId);
-            userRepository.save(user);
-        }
+        User user = userResolver.getOrCreate(telegramId);
 
         Book book = new Book();
         book.setTitle(title);
@@ -79,13 +147,19 @@ public class BookService {
         book.setAddedDate(LocalDate.now());
         book.setTotalPages(totalPages);
 
-        return bookRepository.save(book);
+        // один INSERT: дубликат отсекает уникальный индекс, null - такая книга уже есть
+        Optional<Book> inserted = bookRepository.insertIfAbsent(book);
+        inserted.ifPresent(saved -> libraryChanged(telegramId));
+        return inserted.orElse(null);
     }
 
+    @Transactional
     public Book updateBook(Long id, Book book) {
         // Проверяем, существует ли книга с таким id
         Book existingBook = bookRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Book not found with id " + id));
+        Long previousOwner = ownerOf(existingBook);
+        ReadingStatsService.Contribution before = ReadingStatsService.Contribution.of(existingBook);
 
         existingBook.setTitle(book.getTitle());
         existingBook.setAuthor(book.getAuthor());
@@ -94,16 +168,37 @@ public class BookService {
         existingBook.setRating(book.getRating());
         existingBook.setCurrentPage(book.getCurrentPage());
 
-        return bookRepository.save(existingBook);
+        Book saved = bookRepository.save(existingBook);
+        ReadingStatsService.Contribution after = ReadingStatsService.Contribution.of(saved);
+        Long owner = ownerOf(saved);
+        if (Objects.equals(previousOwner, owner)) {
+            readingStatsService.onBookChanged(owner, before, after);
+        } else {
+            readingStatsService.onBookChanged(previousOwner, before, null);
+            readingStatsService.onBookChanged(owner, null, after);
+            libraryChanged(previousOwner);
+        }
+        libraryChanged(owner);
+        return saved;
     }
 
+    @Transactional
     public void deleteBook(Long id) {
+        Optional<Book> existing = bookRepository.findById(id);
         bookRepository.deleteById(id);
+        existing.ifPresent(book -> {
+            readingStatsService.onBookChanged(ownerOf(book), ReadingStatsService.Contribution.of(book), null);
+            libraryChanged(ownerOf(book));
+        });
     }
 
+    @Transactional
     public Book updatePage(Book book, int newPage) {
+        ReadingStatsService.Contribution before = ReadingStatsService.Contribution.of(book);
         book.setCurrentPage(newPage);
-        return bookRepository.save(book);
+        Book saved = bookRepository.save(book);
+        readingStatsService.onBookChanged(ownerOf(saved), before, ReadingStatsService.Contribution.of(saved));
+        return saved;
     }
 
     public Book updateRating(Book book, int rating) {
@@ -111,64 +206,36 @@ public class BookService {
         return bookRepository.save(book);
     }
 
+    @Transactional
     public Book updateStatus(Book book, BookStatus status) {
+        ReadingStatsService.Contribution before = ReadingStatsService.Contribution.of(book);
         book.setStatus(status);
         if (status == BookStatus.READING && book.getStartDate() == null) {
             book.setStartDate(LocalDate.now());
         } else if (status == BookStatus.READ && book.getFinishDate() == null) {
             book.setFinishDate(LocalDate.now());
         }
-        return bookRepository.save(book);
+        Book saved = bookRepository.save(book);
+        readingStatsService.onBookChanged(ownerOf(saved), before, ReadingStatsService.Contribution.of(saved));
+        return saved;
     }
 
+    /**
+     * Статистика чтения - одна строка агрегата, см. {@link ReadingStatsService}.
+     */
     public Statistics getStatisticsForUser(Long userId) {
-        List<Book> books = getAllBooksOfUser(userId);
-
-        LocalDate today = LocalDate.now();
-        YearMonth thisMonth = YearMonth.now();
-        int thisYear = today.getYear();
-
-        int todayBooks = 0;
-        int todayPages = 0;
-        int monthBooks = 0;
-        int monthPages = 0;
-        int yearBooks = 0;
-        int yearPages = 0;
-
-        Book biggestBook = null;
-
-        for (Book book : books) {
-            LocalDate finished = book.getFinishDate();
-            if (finished == null) {
-                continue;
-            }
-            int pages = safeInt(book.getCurrentPage());
-
-            if (finished.isEqual(today)) {
-                todayBooks++;
-                todayPages += pages;
-            }
-            if (YearMonth.from(finished).equals(thisMonth)) {
-                monthBooks++;
-                monthPages += pages;
-            }
-            if (finished.getYear() == thisYear) {
-                yearBooks++;
-                yearPages += pages;
-            }
+        return readingStatsService.getStatistics(userId);
+    }
 
-            if (biggestBook == null || pages > safeInt(biggestBook.getCurrentPage())) {
-                biggestBook = book;
-            }
+    // кэши библиотеки (inline-подсказки) сбрасываются после коммита, см. BookLibraryChangedEvent
+    private void libraryChanged(Long telegramId) {
+        if (telegramId != null) {
+            eventPublisher.publishEvent(new BookLibraryChangedEvent(telegramId));
         }
+    }
 
-        return new Statistics(
-                todayBooks, todayPages,
-                monthBooks, monthPages,
-                yearBooks, yearPages,
-                biggestBook != null ? biggestBook.getTitle() : "-",
-                biggestBook != null ? safeInt(biggestBook.getCurrentPage()) : 0
-        );
+    private static Long ownerOf(Book book) {
+        return book.getUser() != null ? book.getUser().getTelegramId() : null;
     }
 
     public static int safeInt(Integer value) {
@@ -0,0 +1,274 @@
+package com.telegram_bots.bookbot.service;
+
+import jakarta.annotation.PreDestroy;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * HTTP-доступ к поиску litres.ru.
+ * <p>
+ * Режим задаётся свойством litres.http.client:
+ * jsoup (по умолчанию) - блокирующий Jsoup.connect с общим таймаутом;
+ * http - java.net.http.HttpClient с HTTP/2, пулом keep-alive соединений, таймаутом на соединение
+ * и общим дедлайном на запрос, включая чтение тела. Разбор страницы идёт на отдельном пуле, а не в потоке I/O.
+ * <p>
+ * Блокирующие загрузки jsoup выполняются на своём пуле I/O (litres.io.threads) с ограниченной очередью:
+ * они не занимают пул разбора, а время в очереди входит в дедлайн запроса.
+ */
+@Component
+public class LitresHttpClient {
+
+    /**
+     * Разбор страницы из потока, см. {@link #fetchStreamAsync}.
+     */
+    @FunctionalInterface
+    public interface StreamHandler<T> {
+        T handle(StreamParser parser) throws IOException;
+    }
+
+    private static final String USER_AGENT = "Mozilla/5.0 (compatible; BookBot)";
+
+    private final String baseUrl;
+    private final boolean async;
+    private final Duration requestTimeout;
+    private final HttpClient httpClient;
+    private final ExecutorService parseExecutor;
+    private final ThreadPoolExecutor ioExecutor;
+
+    public LitresHttpClient(String baseUrl, String mode, long connectTimeoutMillis, long requestTimeoutMillis,
+                            int parseThreads) {
+        this(baseUrl, mode, connectTimeoutMillis, requestTimeoutMillis, parseThreads, 16, 64);
+    }
+
+    @Autowired
+    public LitresHttpClient(@Value("${litres.base-url:https://www.litres.ru}") String baseUrl,
+                            @Value("${litres.http.client:jsoup}") String mode,
+                            @Value("${litres.http.connect-timeout-ms:3000}") long connectTimeoutMillis,
+                            @Value("${litres.http.request-timeout-ms:10000}") long requestTimeoutMillis,
+                            @Value("${litres.parse.threads:2}") int parseThreads,
+                            @Value("${litres.io.threads:16}") int ioThreads,
+                            @Value("${litres.io.queue-size:64}") int ioQueueSize) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.async = "http".equalsIgnoreCase(mode);
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.parseExecutor = Executors.newFixedThreadPool(Math.max(1, parseThreads), runnable -> {
+            Thread thread = new Thread(runnable, "litres-parse-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // потоки I/O почти всё время ждут сеть, поэтому их больше, чем ядер; переполненная очередь сразу даёт ошибку
+        AtomicInteger ioThreadCounter = new AtomicInteger();
+        int ioPoolSize = Math.max(1, ioThreads);
+        this.ioExecutor = new ThreadPoolExecutor(ioPoolSize, ioPoolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, ioQueueSize)), runnable -> {
+            Thread thread = new Thread(runnable, "litres-io-" + ioThreadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ioExecutor.allowCoreThreadTimeOut(true);
+        this.httpClient = async
+                ? HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .build()
+                : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        parseExecutor.shutdownNow();
+        ioExecutor.shutdownNow();
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Можно ли сейчас начать ещё одну загрузку, не вставая в очередь: в режиме http всегда,
+     * в режиме jsoup - если в пуле I/O есть свободный поток.
+     */
+    public boolean hasIdleCapacity() {
+        return async || (ioExecutor.getActiveCount() < ioExecutor.getMaximumPoolSize() && ioExecutor.getQueue().isEmpty());
+    }
+
+    public String searchUrl(String query) {
+        return baseUrl + "/pages/rmd_search/?q=" + URLEncoder.encode(query, StandardCharsets.UTF_8);
+    }
+
+    public Document fetch(String query) throws IOException {
+        return fetchPage(searchUrl(query));
+    }
+
+    /**
+     * Загружает страницу litres, например карточку книги. Адреса других сайтов не загружаются.
+     */
+    public Document fetchPage(String url) throws IOException {
+        if (!url.startsWith(baseUrl + "/")) {
+            throw new IOException("Адрес не относится к litres: " + url);
+        }
+        if (!async) {
+            return Jsoup.connect(url)
+                    .userAgent(USER_AGENT)
+                    .timeout((int) requestTimeout.toMillis())
+                    .get();
+        }
+        try {
+            return Jsoup.parse(fetchBodyAsync(url).get(requestTimeout.toMillis(), TimeUnit.MILLISECONDS), url);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Запрос к litres прерван", e);
+        } catch (Exception e) {
+            throw new IOException("Не удалось получить страницу litres " + url, e);
+        }
+    }
+
+    /**
+     * Загружает и разбирает страницу поиска, не занимая вызывающий поток.
+     * В режиме jsoup блокирующая загрузка выполняется на пуле I/O.
+     */
+    public <T> CompletableFuture<T> fetchAsync(String query, Function<Document, T> parser) {
+        String url = searchUrl(query);
+        if (!async) {
+            return submit(() -> parser.apply(fetch(query)));
+        }
+        return fetchBodyAsync(url)
+                .thenApplyAsync(body -> parser.apply(Jsoup.parse(body, url)), parseExecutor);
+    }
+
+    /**
+     * Разбирает страницу по мере загрузки на пуле разбора. Когда handler вернул результат, соединение
+     * закрывается, и недочитанный хвост страницы не скачивается. Дедлайн запроса покрывает и чтение тела.
+     */
+    public <T> CompletableFuture<T> fetchStreamAsync(String query, StreamHandler<T> handler) {
+        String url = searchUrl(query);
+        if (!async) {
+            return submit(() -> {
+                Connection.Response response = Jsoup.connect(url)
+                        .userAgent(USER_AGENT)
+                        .timeout((int) requestTimeout.toMillis())
+                        .execute();
+                try (StreamParser parser = response.streamParser()) {
+                    return handler.handle(parser);
+                }
+            });
+        }
+
+        AtomicReference<InputStream> body = new AtomicReference<>();
+        return httpClient.sendAsync(request(url), HttpResponse.BodyHandlers.ofInputStream())
+                .thenApplyAsync(response -> {
+                    body.set(response.body());
+                    if (response.statusCode() >= 400) {
+                        throw new IllegalStateException("litres ответил " + response.statusCode());
+                    }
+                    try (StreamParser parser = new StreamParser(Parser.htmlParser())
+                            .parse(new InputStreamReader(response.body(), StandardCharsets.UTF_8), url)) {
+                        return handler.handle(parser);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, parseExecutor)
+                .orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> {
+                    // поток разбора мог застрять на чтении: закрываем тело, чтобы он освободился
+                    if (error != null) {
+                        closeQuietly(body.get());
+                    }
+                });
+    }
+
+    /**
+     * Выполняет блокирующую загрузку на пуле I/O. Результат ждёт не дольше таймаута запроса с момента вызова,
+     * задача, простоявшая в очереди дольше него, не запускается. Если очередь полна, future сразу завершается ошибкой.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        long deadline = System.nanoTime() + requestTimeout.toNanos();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                if (System.nanoTime() - deadline >= 0) {
+                    throw new CompletionException(new TimeoutException("Запрос к litres простоял в очереди дольше таймаута"));
+                }
+                try {
+                    return task.call();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, ioExecutor).orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private HttpRequest request(String url) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("User-Agent", USER_AGENT)
+                // таймаут запроса покрывает только ожидание заголовков, общий дедлайн ставится отдельно
+                .timeout(requestTimeout)
+                .GET()
+                .build();
+    }
+
+    private CompletableFuture<String> fetchBodyAsync(String url) {
+        return httpClient.sendAsync(request(url), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .thenApply(response -> {
+                    if (response.statusCode() >= 400) {
+                        throw new IllegalStateException("litres ответил " + response.statusCode());
+                    }
+                    return response.body();
+                })
+                .orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+            // соединение и так закрывается
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.telegram_bots.bookbot.service;
+
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.utils.SearchQueryNormalizer;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.StreamParser;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Разбор страницы поиска litres.
+ * <p>
+ * Два режима: по готовому DOM и потоковый, когда карточки книг достаются из {@link StreamParser}
+ * по мере чтения ответа. Потоковый разбор останавливается, как только набрано limit книг,
+ * остаток страницы не читается и в дерево не попадает. Селекторы и регулярное выражение
+ * компилируются один раз.
+ */
+public class LitresPageParser {
+
+    private static final int CHARACTERS_PER_PAGE = 1800;
+
+    // Пример строки: "Объем: 350 тыс. знаков"
+    private static final Pattern VOLUME = Pattern.compile("Объем:\\s*(\\d+)\\s*тыс\\. знаков");
+    // на карточке книги объём бывает указан сразу в страницах: "Объем: 290 стр."
+    private static final Pattern VOLUME_PAGES = Pattern.compile("Объ[её]м:\\s*(\\d+)\\s*стр\\.");
+
+    private static final Evaluator ITEM = QueryParser.parse(".art-item");
+    private static final Evaluator TITLE = QueryParser.parse(".art-item__name a");
+    private static final Evaluator AUTHOR = QueryParser.parse(".art-item__author a");
+    private static final Evaluator ANNOTATION = QueryParser.parse(".art-item__annotation");
+    private static final Evaluator ANNOTATION_BLOCK = QueryParser.parse("div[data-test-id=annotation]");
+
+    /**
+     * Книга из выдачи и адрес её карточки на litres (null, если ссылки нет).
+     */
+    public record Card(LitresBookDto book, String detailUrl) {
+    }
+
+    private final int limit;
+
+    /**
+     * @param limit сколько книг достаточно, 0 - все
+     */
+    public LitresPageParser(int limit) {
+        this.limit = limit > 0 ? limit : Integer.MAX_VALUE;
+    }
+
+    public List<LitresBookDto> parse(Document doc) {
+        List<LitresBookDto> result = new ArrayList<>();
+        Matcher matcher = VOLUME.matcher("");
+        for (Element book : doc.select(ITEM)) {
+            LitresBookDto found = book(book, matcher);
+            if (found != null) {
+                result.add(found);
+                if (result.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Достаёт книги из потока и закрывает его, как только их набралось достаточно.
+     */
+    public List<LitresBookDto> parse(StreamParser parser) throws IOException {
+        List<LitresBookDto> result = new ArrayList<>();
+        Matcher matcher = VOLUME.matcher("");
+        Element book;
+        while (result.size() < limit && (book = parser.selectNext(ITEM)) != null) {
+            LitresBookDto found = book(book, matcher);
+            if (found != null) {
+                result.add(found);
+            }
+            // разобранная карточка больше не нужна, не держим её в дереве
+            book.remove();
+        }
+        parser.stop();
+        return result;
+    }
+
+    /**
+     * Первая книга выдачи с таким же (после нормализации) названием.
+     */
+    public Optional<Card> findCard(Document doc, String title) {
+        String expected = SearchQueryNormalizer.normalize(title);
+        Matcher matcher = VOLUME.matcher("");
+        for (Element book : doc.select(ITEM)) {
+            Element link = book.selectFirst(TITLE);
+            if (link == null || !SearchQueryNormalizer.normalize(link.text()).equals(expected)) {
+                continue;
+            }
+            String annotation = text(book, ANNOTATION);
+            LitresBookDto found = new LitresBookDto(link.text(), text(book, AUTHOR), totalPages(matcher, annotation));
+            String detailUrl = link.absUrl("href");
+            return Optional.of(new Card(found, detailUrl.isEmpty() ? null : detailUrl));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Число страниц по карточке книги или 0, если объём на ней не указан.
+     */
+    public static int detailTotalPages(Document doc) {
+        String text = doc.text();
+        Matcher pages = VOLUME_PAGES.matcher(text);
+        if (pages.find()) {
+            return Integer.parseInt(pages.group(1));
+        }
+        return totalPages(VOLUME.matcher(""), text);
+    }
+
+    // книга из карточки выдачи, null - карточка без названия
+    private static LitresBookDto book(Element book, Matcher matcher) {
+        String title = text(book, TITLE);
+        if (title.isEmpty()) {
+            return null;
+        }
+        String annotation = text(book, ANNOTATION);
+        if (annotation.isEmpty()) {
+            Element annotationElement = book.selectFirst(ANNOTATION_BLOCK);
+            if (annotationElement != null) {
+                annotation = annotationElement.text();
+            }
+        }
+        return new LitresBookDto(title, text(book, AUTHOR), totalPages(matcher, annotation));
+    }
+
+    private static String text(Element element, Evaluator evaluator) {
+        return element.select(evaluator).text();
+    }
+
+    private static int totalPages(Matcher matcher, String annotation) {
+        if (!matcher.reset(annotation).find()) {
+            return 0;
+        }
+        int thousands = Integer.parseInt(matcher.group(1));
+        int totalChars = thousands * 1000;
+        return (int) Math.ceil((double) totalChars / CHARACTERS_PER_PAGE);
+    }
+}
@@ -1,70 +1,279 @@
 package com.telegram_bots.bookbot.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
 import com.telegram_bots.bookbot.model.dto.LitresBookDto;
-import org.jsoup.Jsoup;
+import com.telegram_bots.bookbot.model.dto.SearchResult;
+import com.telegram_bots.bookbot.utils.CircuitBreaker;
+import com.telegram_bots.bookbot.utils.Hedging;
+import com.telegram_bots.bookbot.utils.LatencyTracker;
+import com.telegram_bots.bookbot.utils.SearchQueryNormalizer;
+import com.telegram_bots.bookbot.utils.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.time.Duration;
 import java.util.List;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 
+/**
+ * Поиск книг на litres.ru.
+ * <p>
+ * Результаты кэшируются по нормализованному запросу ({@link SearchQueryNormalizer}).
+ * Если задан refresh-after, устаревшая запись отдаётся сразу, а в фоне перезапрашивается (stale-while-revalidate).
+ * Одновременные запросы с одинаковым ключом делят одну загрузку, в том числе при выключенном кэше (max-size 0).
+ * <p>
+ * Загрузка идёт через предохранитель: после серии ошибок litres какое-то время не дёргаем
+ * и сразу отвечаем {@link SearchResult} с флагом degraded. Если включено хеджирование,
+ * при задержке выше заданного перцентиля отправляется второй запрос.
+ * Страница по умолчанию разбирается потоком и только до нужного числа книг ({@link LitresPageParser}).
+ * Сетевой доступ и таймауты - в {@link LitresHttpClient}.
+ */
+@Slf4j
 @Service
 public class LitresService {
 
-    private static final int CHARACTERS_PER_PAGE = 1800;
+    private static final int LATENCY_WINDOW = 256;
+
+    private final LitresHttpClient litresHttpClient;
+    private final LitresPageParser pageParser;
+    private final int maxResults;
+    private final boolean streaming;
+    private final Cache<String, CachedResult> searchCache;
+    private final Ticker ticker;
+    private final long refreshAfterNanos;
+    private final SingleFlight<String, List<LitresBookDto>> searchFlights = new SingleFlight<>();
+    private final CircuitBreaker circuitBreaker;
+    private final Hedging hedging;
+
+    private final Counter refreshCounter;
+    private final Counter coalescedCounter;
+    private final Counter requestCounter;
+    private final Counter rejectedCounter;
+
+    @Autowired
+    public LitresService(LitresHttpClient litresHttpClient,
+                         @Value("${litres.cache.max-size:1000}") long maxSize,
+                         @Value("${litres.cache.ttl-minutes:60}") long ttlMinutes,
+                         @Value("${litres.cache.refresh-after-minutes:0}") long refreshAfterMinutes,
+                         @Value("${litres.breaker.failure-threshold:5}") int failureThreshold,
+                         @Value("${litres.breaker.open-seconds:30}") long openSeconds,
+                         @Value("${litres.hedge.percentile:0}") double hedgePercentile,
+                         @Value("${litres.hedge.min-delay-ms:200}") long hedgeMinDelayMillis,
+                         @Value("${litres.parse.mode:stream}") String parseMode,
+                         @Value("${book.searchResult.maxCount:0}") int maxResults,
+                         MeterRegistry meterRegistry) {
+        this(litresHttpClient, maxSize, Duration.ofMinutes(ttlMinutes), Duration.ofMinutes(refreshAfterMinutes),
+                new CircuitBreaker(failureThreshold, Duration.ofSeconds(openSeconds)),
+                hedgePercentile, Duration.ofMillis(hedgeMinDelayMillis), "stream".equalsIgnoreCase(parseMode),
+                maxResults, Ticker.systemTicker(), meterRegistry);
+    }
+
+    public LitresService(LitresHttpClient litresHttpClient, long maxSize, Duration ttl, Duration refreshAfter,
+                         Ticker ticker, MeterRegistry meterRegistry) {
+        this(litresHttpClient, maxSize, ttl, refreshAfter, new CircuitBreaker(5, Duration.ofSeconds(30)),
+                0, Duration.ZERO, ticker, meterRegistry);
+    }
+
+    public LitresService(LitresHttpClient litresHttpClient, long maxSize, Duration ttl, Duration refreshAfter,
+                         CircuitBreaker circuitBreaker, double hedgePercentile, Duration hedgeMinDelay,
+                         Ticker ticker, MeterRegistry meterRegistry) {
+        this(litresHttpClient, maxSize, ttl, refreshAfter, circuitBreaker, hedgePercentile, hedgeMinDelay,
+                false, 0, ticker, meterRegistry);
+    }
+
+    /**
+     * @param hedgePercentile перцентиль задержки, после которого уходит второй запрос, 0 - без хеджирования
+     * @param streaming       разбирать страницу потоком вместо построения DOM через {@link #fetchDocument}
+     * @param maxResults      сколько книг достаточно с одной страницы, 0 - все
+     */
+    public LitresService(LitresHttpClient litresHttpClient, long maxSize, Duration ttl, Duration refreshAfter,
+                         CircuitBreaker circuitBreaker, double hedgePercentile, Duration hedgeMinDelay,
+                         boolean streaming, int maxResults, Ticker ticker, MeterRegistry meterRegistry) {
+        this.litresHttpClient = litresHttpClient;
+        this.pageParser = new LitresPageParser(maxResults);
+        this.maxResults = maxResults;
+        this.streaming = streaming;
+        this.ticker = ticker;
+        this.searchCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, searchCache, "litres-search");
+
+        // обновлять позже, чем запись истечёт, бессмысленно
+        boolean staleWhileRevalidate = !refreshAfter.isZero() && refreshAfter.compareTo(ttl) < 0;
+        this.refreshAfterNanos = staleWhileRevalidate ? refreshAfter.toNanos() : Long.MAX_VALUE;
+
+        this.circuitBreaker = circuitBreaker;
+        Counter hedgeCounter = meterRegistry.counter("litres.search.hedged");
+        this.hedging = hedgePercentile > 0
+                ? new Hedging(new LatencyTracker(LATENCY_WINDOW), hedgePercentile, hedgeMinDelay, hedgeCounter::increment)
+                : null;
+
+        this.refreshCounter = meterRegistry.counter("litres.search.refreshes");
+        this.coalescedCounter = meterRegistry.counter("litres.search.coalesced");
+        this.requestCounter = meterRegistry.counter("litres.search.requests");
+        this.rejectedCounter = meterRegistry.counter("litres.breaker.rejected");
+        Gauge.builder("litres.search.in.flight", searchFlights, SingleFlight::getInFlightCount).register(meterRegistry);
+        // 0 - замкнут, 1 - пробный вызов, 2 - разомкнут
+        Gauge.builder("litres.breaker.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Запросы, которые сейчас выполняются, и сколько вызовов ждёт каждый из них.
+     */
+    public Map<String, Integer> getInFlightSearches() {
+        return searchFlights.getWaiterCounts();
+    }
+
+    /**
+     * Сколько поиск ждёт litres, прежде чем ответить degraded.
+     */
+    public Duration getRequestTimeout() {
+        return litresHttpClient.getRequestTimeout();
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
 
     public Document fetchDocument(String query) throws IOException {
-        String url = "https://www.litres.ru/pages/rmd_search/?q=" + URLEncoder.encode(query, StandardCharsets.UTF_8);
-        return Jsoup.connect(url).get();
+        return litresHttpClient.fetch(query);
     }
 
     public List<LitresBookDto> searchBooks(String query) {
-        List<LitresBookDto> result = new ArrayList<>();
-        try {
-            Document doc = fetchDocument(query);
-            Elements bookBlocks = doc.select(".art-item");
-
-            for (Element book : bookBlocks) {
-                String title = book.select(".art-item__name a").text();
-                String author = book.select(".art-item__author a").text();
-
-                String annotation = book.select(".art-item__annotation").text();
-
-                if (annotation.isEmpty()) {
-                    Element annotationElement = book.selectFirst("div[data-test-id=annotation]");
-                    if (annotationElement != null) {
-                        annotation = annotationElement.text();
-                    }
-                }
+        return search(query).books();
+    }
 
-                int totalPages = 0;
-                // Пример строки: "Объем: 350 тыс. знаков"
-                Pattern pattern = Pattern.compile("Объем:\\s*(\\d+)\\s*тыс\\. знаков");
-                Matcher matcher = pattern.matcher(annotation);
+    /**
+     * Асинхронный вариант {@link #searchBooks}: при ошибке или дедлайне завершается пустым списком.
+     */
+    public CompletableFuture<List<LitresBookDto>> searchBooksAsync(String query) {
+        return searchAsync(query).thenApply(SearchResult::books);
+    }
 
-                if (matcher.find()) {
-                    int thousands = Integer.parseInt(matcher.group(1));
-                    int totalChars = thousands * 1000;
-                    totalPages = (int) Math.ceil((double) totalChars / CHARACTERS_PER_PAGE);
-                }
+    /**
+     * Поиск с признаком деградации: если litres недоступен, книги пустые, а degraded = true.
+     * Ждёт не дольше дедлайна запроса из {@link LitresHttpClient}.
+     */
+    public SearchResult search(String query) {
+        return searchAsync(query)
+                .completeOnTimeout(SearchResult.degraded(List.of()), getRequestTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .join();
+    }
+
+    public CompletableFuture<SearchResult> searchAsync(String query) {
+        return searchAsync(query, 0);
+    }
 
-                if (!title.isEmpty()) {
-                    result.add(new LitresBookDto(title, author, totalPages));
+    /**
+     * Поиск, которому нужно не меньше limit книг (если столько есть на странице), например для следующей
+     * страницы выдачи бота. Лимит меньше настроенного ничего не меняет, 0 - настроенный лимит.
+     */
+    public CompletableFuture<SearchResult> searchAsync(String query, int limit) {
+        // при потоковом разборе больший лимит значит дочитать страницу дальше, поэтому он часть ключа
+        int effectiveLimit = maxResults == 0 || limit <= maxResults ? maxResults : limit;
+        LitresPageParser parser = effectiveLimit == maxResults ? pageParser : new LitresPageParser(effectiveLimit);
+        String normalized = SearchQueryNormalizer.normalize(query);
+        String key = normalized.isEmpty() || effectiveLimit == maxResults ? normalized : normalized + "#" + effectiveLimit;
+        if (!key.isEmpty()) {
+            CachedResult cached = searchCache.getIfPresent(key);
+            if (cached != null) {
+                if (ticker.read() - cached.loadedAt() >= refreshAfterNanos) {
+                    refresh(key, query, parser);
                 }
+                return CompletableFuture.completedFuture(SearchResult.of(cached.books()));
             }
+        }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (!circuitBreaker.tryAcquire()) {
+            rejectedCounter.increment();
+            return CompletableFuture.completedFuture(SearchResult.degraded(List.of()));
         }
+        CompletableFuture<List<LitresBookDto>> search = key.isEmpty() ? fetchGuarded(query, parser) : load(key, query, parser);
+        return search.handle((books, error) -> {
+            if (error == null) {
+                return SearchResult.of(books);
+            }
+            // ошибку не кэшируем, следующий запрос снова пойдёт на сайт
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            log.warn("Не удалось выполнить поиск на litres по запросу '{}': {}", query, cause.toString());
+            return SearchResult.degraded(List.of());
+        });
+    }
+
+    private CompletableFuture<List<LitresBookDto>> load(String key, String query, LitresPageParser parser) {
+        boolean[] leader = {false};
+        CompletableFuture<List<LitresBookDto>> flight = searchFlights.executeAsync(key, () -> {
+            leader[0] = true;
+            return fetchGuarded(query, parser).thenApply(books -> {
+                searchCache.put(key, new CachedResult(books, ticker.read()));
+                return books;
+            });
+        });
+        if (!leader[0]) {
+            coalescedCounter.increment();
+        }
+        return flight;
+    }
+
+    private void refresh(String key, String query, LitresPageParser parser) {
+        if (searchFlights.getWaiterCounts().containsKey(key) || !circuitBreaker.tryAcquire()) {
+            return;
+        }
+        load(key, query, parser).whenComplete((books, error) -> {
+            if (error == null) {
+                refreshCounter.increment();
+            } else {
+                // старый результат доживёт до конца TTL
+                log.debug("Не удалось обновить результаты поиска '{}': {}", query, error.getMessage());
+            }
+        });
+    }
+
+    // вызывается только после circuitBreaker.tryAcquire()
+    private CompletableFuture<List<LitresBookDto>> fetchGuarded(String query, LitresPageParser parser) {
+        requestCounter.increment();
+        CompletableFuture<List<LitresBookDto>> fetch = hedging != null
+                ? hedging.execute(() -> fetchBooks(query, parser), litresHttpClient::hasIdleCapacity)
+                : fetchBooks(query, parser);
+        return fetch.whenComplete((books, error) -> {
+            if (error == null) {
+                circuitBreaker.onSuccess();
+            } else {
+                circuitBreaker.onFailure();
+            }
+        });
+    }
+
+    private CompletableFuture<List<LitresBookDto>> fetchBooks(String query, LitresPageParser parser) {
+        if (streaming) {
+            return litresHttpClient.fetchStreamAsync(query, stream -> List.copyOf(parser.parse(stream)));
+        }
+        if (litresHttpClient.isAsync()) {
+            return litresHttpClient.fetchAsync(query, document -> List.copyOf(parser.parse(document)));
+        }
+        // блокирующий jsoup уходит на пул I/O клиента, вызывающий поток ждёт не дольше его таймаута
+        return litresHttpClient.submit(() -> List.copyOf(parser.parse(fetchDocument(query))));
+    }
 
-        return result;
+    private record CachedResult(List<LitresBookDto> books, long loadedAt) {
     }
 }
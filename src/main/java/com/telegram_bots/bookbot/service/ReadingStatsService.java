@@ -0,0 +1,337 @@
+package com.telegram_bots.bookbot.service;
+
+import com.telegram_bots.bookbot.model.dto.Statistics;
+import com.telegram_bots.bookbot.model.entities.Book;
+import com.telegram_bots.bookbot.model.entities.UserReadingStats;
+import com.telegram_bots.bookbot.repository.BookRepository;
+import com.telegram_bots.bookbot.repository.UserReadingStatsRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Статистика чтения из агрегата {@link UserReadingStats}: показ статистики - чтение одной строки.
+ * <p>
+ * {@link BookService} сообщает сюда о каждом изменении даты окончания или страницы книги в той же транзакции,
+ * и счётчики сдвигаются на разницу между старым и новым вкладом книги. Самую большую книгу при уменьшении
+ * приходится искать заново, но это один запрос с LIMIT 1.
+ * Пользователям без агрегата он считается по книгам при первом обращении и в фоне после запуска,
+ * а периодическая сверка сравнивает агрегаты пачками с {@link BookRepository#statisticsOf} и чинит расхождения,
+ * блокируя каждого пользователя в отдельной транзакции.
+ * Отсутствующая строка агрегата сначала вставляется пустой без гонки на первичном ключе и только потом
+ * пересчитывается под блокировкой, поэтому параллельный первый пересчёт не откатывает изменение книги.
+ * <p>
+ * Режим задаётся свойством book.stats.source: aggregate (по умолчанию) - строка агрегата;
+ * query - статистика читается одним агрегатным SQL-запросом по книгам, время которого растёт с библиотекой.
+ * Агрегат поддерживается в обоих режимах, чтобы режим можно было переключить без пересчёта.
+ */
+@Slf4j
+@Service
+public class ReadingStatsService {
+
+    /**
+     * Вклад книги в статистику. null вместо вклада - книга не прочитана или удалена.
+     */
+    public record Contribution(Long bookId, String title, LocalDate finishDate, int pages) {
+
+        public static Contribution of(Book book) {
+            if (book == null || book.getFinishDate() == null) {
+                return null;
+            }
+            int pages = book.getCurrentPage() != null ? book.getCurrentPage() : 0;
+            return new Contribution(book.getId(), book.getTitle(), book.getFinishDate(), pages);
+        }
+    }
+
+    private final UserReadingStatsRepository statsRepository;
+    private final BookRepository bookRepository;
+    private final int batchSize;
+    private final boolean backfillOnStartup;
+    private final boolean querySource;
+    private final Clock clock;
+    private final TransactionOperations transactionOperations;
+
+    private final Counter rebuiltCounter;
+    private final Counter checkedCounter;
+    private final Counter mismatchCounter;
+
+    // последний сверенный пользователь, сверка идёт по кругу
+    private long checkCursor = Long.MIN_VALUE;
+
+    @Autowired
+    public ReadingStatsService(UserReadingStatsRepository statsRepository,
+                               BookRepository bookRepository,
+                               @Value("${book.stats.batch-size:200}") int batchSize,
+                               @Value("${book.stats.backfill-on-startup:true}") boolean backfillOnStartup,
+                               @Value("${book.stats.source:aggregate}") String source,
+                               TransactionOperations transactionOperations,
+                               MeterRegistry meterRegistry) {
+        this(statsRepository, bookRepository, batchSize, backfillOnStartup, source, Clock.systemDefaultZone(),
+                transactionOperations, meterRegistry);
+    }
+
+    public ReadingStatsService(UserReadingStatsRepository statsRepository,
+                               BookRepository bookRepository,
+                               int batchSize,
+                               boolean backfillOnStartup,
+                               String source,
+                               Clock clock,
+                               TransactionOperations transactionOperations,
+                               MeterRegistry meterRegistry) {
+        this.statsRepository = statsRepository;
+        this.bookRepository = bookRepository;
+        this.batchSize = Math.max(1, batchSize);
+        this.backfillOnStartup = backfillOnStartup;
+        this.querySource = "query".equalsIgnoreCase(source);
+        this.clock = clock;
+        this.transactionOperations = transactionOperations;
+
+        this.rebuiltCounter = meterRegistry.counter("book.stats.rebuilt");
+        this.checkedCounter = meterRegistry.counter("book.stats.checked");
+        this.mismatchCounter = meterRegistry.counter("book.stats.mismatches");
+    }
+
+    @Transactional
+    public Statistics getStatistics(Long telegramId) {
+        if (querySource) {
+            return bookRepository.statisticsOf(telegramId, LocalDate.now(clock));
+        }
+        UserReadingStats stats = statsRepository.findById(telegramId)
+                .orElseGet(() -> saveRebuilt(telegramId));
+        return toStatistics(stats, LocalDate.now(clock));
+    }
+
+    /**
+     * Сдвигает агрегат пользователя на изменение одной книги. Вызывается после сохранения книги в её транзакции.
+     */
+    @Transactional
+    public void onBookChanged(Long telegramId, Contribution before, Contribution after) {
+        if (telegramId == null || Objects.equals(before, after)) {
+            return;
+        }
+        Optional<UserReadingStats> locked = statsRepository.findForUpdate(telegramId);
+        if (locked.isEmpty()) {
+            // агрегата ещё нет: книга уже сохранена, поэтому пересчёт её учтёт
+            saveRebuilt(telegramId);
+            return;
+        }
+        UserReadingStats stats = locked.get();
+        roll(stats, LocalDate.now(clock));
+        if (before != null) {
+            apply(stats, before, -1);
+        }
+        if (after != null) {
+            apply(stats, after, 1);
+        }
+        updateBiggest(stats, telegramId, before, after);
+        statsRepository.save(stats);
+    }
+
+    /**
+     * Пересчитывает агрегат пользователя по книгам и сохраняет его.
+     */
+    @Transactional
+    public void rebuildUser(Long telegramId) {
+        saveRebuilt(telegramId);
+    }
+
+    /**
+     * Заполняет агрегаты пользователей, у которых их ещё нет, например после обновления бота.
+     *
+     * @return сколько агрегатов посчитано
+     */
+    public int backfill() {
+        int rebuilt = 0;
+        List<Long> owners;
+        while (!(owners = statsRepository.findOwnersWithoutStats(PageRequest.of(0, batchSize))).isEmpty()) {
+            for (Long telegramId : owners) {
+                // пользователь мог как раз изменить книгу и сам создать строку
+                statsRepository.insertIfAbsent(telegramId);
+                statsRepository.save(rebuild(telegramId));
+                rebuilt++;
+            }
+        }
+        if (rebuilt > 0) {
+            log.info("Посчитана статистика чтения для {} пользователей", rebuilt);
+        }
+        return rebuilt;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        if (!backfillOnStartup) {
+            return;
+        }
+        try {
+            backfill();
+        } catch (Exception e) {
+            // недостающие агрегаты всё равно посчитаются при первом показе статистики
+            log.warn("Не удалось заполнить статистику чтения", e);
+        }
+    }
+
+    /**
+     * Сверяет очередную пачку агрегатов с агрегатным запросом по книгам и пересчитывает разошедшиеся.
+     * Каждый пользователь сверяется в своей транзакции, чтобы не держать блокировки всей пачки до её конца.
+     *
+     * @return сколько агрегатов разошлось с книгами
+     */
+    @Scheduled(fixedDelayString = "${book.stats.check-interval-ms:3600000}",
+            initialDelayString = "${book.stats.check-interval-ms:3600000}")
+    public int checkConsistency() {
+        List<UserReadingStats> batch = statsRepository.findByTelegramIdGreaterThanOrderByTelegramId(
+                checkCursor, PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) {
+            checkCursor = Long.MIN_VALUE;
+            return 0;
+        }
+        checkCursor = batch.get(batch.size() - 1).getTelegramId();
+
+        LocalDate today = LocalDate.now(clock);
+        int mismatches = 0;
+        for (UserReadingStats stored : batch) {
+            Boolean mismatch = transactionOperations.execute(status -> checkUser(stored.getTelegramId(), today));
+            if (Boolean.TRUE.equals(mismatch)) {
+                mismatches++;
+            }
+        }
+        checkedCounter.increment(batch.size());
+        mismatchCounter.increment(mismatches);
+        return mismatches;
+    }
+
+    // вызывается в транзакции: блокировка строки держится только на время сверки одного пользователя
+    private boolean checkUser(Long telegramId, LocalDate today) {
+        // под блокировкой, чтобы не перезаписать параллельное изменение книги
+        Optional<UserReadingStats> current = statsRepository.findForUpdate(telegramId);
+        if (current.isEmpty()) {
+            return false;
+        }
+        // сверяем с агрегатным запросом, книги загружаем только для расходящихся
+        Statistics expected = bookRepository.statisticsOf(telegramId, today);
+        if (toStatistics(current.get(), today).equals(expected)) {
+            return false;
+        }
+        log.warn("Статистика чтения пользователя {} разошлась с книгами, пересчитана", telegramId);
+        statsRepository.save(rebuild(telegramId));
+        return true;
+    }
+
+    // вызывается в транзакции: строка вставляется без гонки на ключе, пересчёт идёт под её блокировкой
+    private UserReadingStats saveRebuilt(Long telegramId) {
+        statsRepository.insertIfAbsent(telegramId);
+        statsRepository.findForUpdate(telegramId);
+        return statsRepository.save(rebuild(telegramId));
+    }
+
+    private UserReadingStats rebuild(Long telegramId) {
+        LocalDate today = LocalDate.now(clock);
+        UserReadingStats stats = UserReadingStats.builder().telegramId(telegramId).build();
+        roll(stats, today);
+        for (Book book : bookRepository.findFinishedByOwner(telegramId)) {
+            Contribution contribution = Contribution.of(book);
+            apply(stats, contribution, 1);
+            if (stats.getBiggestBookId() == null || contribution.pages() > stats.getBiggestBookPages()) {
+                setBiggest(stats, contribution);
+            }
+        }
+        rebuiltCounter.increment();
+        return stats;
+    }
+
+    // окно, которое уже закончилось, начинаем заново с сегодняшнего дня
+    private static void roll(UserReadingStats stats, LocalDate today) {
+        if (!today.equals(stats.getDayStart())) {
+            stats.setDayStart(today);
+            stats.setDayBooks(0);
+            stats.setDayPages(0);
+        }
+        LocalDate month = today.withDayOfMonth(1);
+        if (!month.equals(stats.getMonthStart())) {
+            stats.setMonthStart(month);
+            stats.setMonthBooks(0);
+            stats.setMonthPages(0);
+        }
+        LocalDate year = today.withDayOfYear(1);
+        if (!year.equals(stats.getYearStart())) {
+            stats.setYearStart(year);
+            stats.setYearBooks(0);
+            stats.setYearPages(0);
+        }
+    }
+
+    private static void apply(UserReadingStats stats, Contribution contribution, int sign) {
+        LocalDate finished = contribution.finishDate();
+        int pages = sign * contribution.pages();
+        if (finished.equals(stats.getDayStart())) {
+            stats.setDayBooks(stats.getDayBooks() + sign);
+            stats.setDayPages(stats.getDayPages() + pages);
+        }
+        if (finished.withDayOfMonth(1).equals(stats.getMonthStart())) {
+            stats.setMonthBooks(stats.getMonthBooks() + sign);
+            stats.setMonthPages(stats.getMonthPages() + pages);
+        }
+        if (finished.withDayOfYear(1).equals(stats.getYearStart())) {
+            stats.setYearBooks(stats.getYearBooks() + sign);
+            stats.setYearPages(stats.getYearPages() + pages);
+        }
+    }
+
+    private void updateBiggest(UserReadingStats stats, Long telegramId, Contribution before, Contribution after) {
+        Long biggestId = stats.getBiggestBookId();
+        boolean wasBiggest = before != null && biggestId != null && biggestId.equals(before.bookId());
+        if (wasBiggest && (after == null || after.pages() < before.pages())) {
+            // максимум на месте не уменьшить: ищем новую самую большую книгу
+            Contribution top = bookRepository.findBiggestFinished(telegramId, PageRequest.of(0, 1)).stream()
+                    .findFirst()
+                    .map(Contribution::of)
+                    .orElse(null);
+            setBiggest(stats, top);
+        } else if (after != null && (biggestId == null || biggestId.equals(after.bookId()) || outranks(after, stats))) {
+            setBiggest(stats, after);
+        }
+    }
+
+    // тот же порядок, что в findBiggestFinished: больше страниц, при равенстве меньший id
+    private static boolean outranks(Contribution contribution, UserReadingStats stats) {
+        if (contribution.pages() != stats.getBiggestBookPages()) {
+            return contribution.pages() > stats.getBiggestBookPages();
+        }
+        return contribution.bookId() != null && contribution.bookId() < stats.getBiggestBookId();
+    }
+
+    private static void setBiggest(UserReadingStats stats, Contribution contribution) {
+        stats.setBiggestBookId(contribution != null ? contribution.bookId() : null);
+        stats.setBiggestBookTitle(contribution != null ? contribution.title() : null);
+        stats.setBiggestBookPages(contribution != null ? contribution.pages() : 0);
+    }
+
+    private static Statistics toStatistics(UserReadingStats stats, LocalDate today) {
+        boolean sameDay = today.equals(stats.getDayStart());
+        boolean sameMonth = today.withDayOfMonth(1).equals(stats.getMonthStart());
+        boolean sameYear = today.withDayOfYear(1).equals(stats.getYearStart());
+        boolean hasBiggest = stats.getBiggestBookId() != null;
+        return new Statistics(
+                sameDay ? stats.getDayBooks() : 0, sameDay ? stats.getDayPages() : 0,
+                sameMonth ? stats.getMonthBooks() : 0, sameMonth ? stats.getMonthPages() : 0,
+                sameYear ? stats.getYearBooks() : 0, sameYear ? stats.getYearPages() : 0,
+                hasBiggest ? stats.getBiggestBookTitle() : "-",
+                hasBiggest ? stats.getBiggestBookPages() : 0
+        );
+    }
+}
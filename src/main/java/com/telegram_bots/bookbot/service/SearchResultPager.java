@@ -0,0 +1,259 @@
+package com.telegram_bots.bookbot.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.model.dto.SearchResult;
+import com.telegram_bots.bookbot.utils.SearchQueryNormalizer;
+import com.telegram_bots.bookbot.utils.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Постраничная выдача поиска для бота.
+ * <p>
+ * Найденные книги копятся в общем кэше по нормализованному запросу, в сессии пользователя лежит
+ * только курсор (запрос и номер страницы), а книга при выборе достаётся отсюда по номеру и
+ * сверяется с ключом из кнопки ({@link #selectionKey}). Заново выдача при выборе не собирается:
+ * другой источник или порядок дали бы не ту книгу, что была на кнопке.
+ * Первая страница - обычный {@link BookSearchService#search}, следующие - {@link BookSearchService#searchMore}
+ * с большим лимитом, новые книги дописываются в конец, поэтому номера уже показанных не меняются.
+ * Как только страница показана, следующая загружается в фоне, и кнопка "ещё" обычно отвечает из памяти.
+ * Выдача живёт не дольше кэша Litres, считая от поиска первой страницы: догрузка страниц срок не продлевает.
+ */
+@Slf4j
+@Service
+public class SearchResultPager {
+
+    /**
+     * Страница выдачи. offset - номер первой книги страницы во всей выдаче.
+     */
+    public record Page(List<LitresBookDto> books, int offset, boolean hasMore, boolean degraded) {
+    }
+
+    private static final long SELECTION_KEY_MASK = (1 << 20) - 1;
+
+    private final BookSearchService bookSearchService;
+    private final Ticker ticker;
+    private final Cache<String, Results> results;
+    private final SingleFlight<String, Results> loads = new SingleFlight<>();
+    private final ExecutorService prefetchExecutor;
+
+    private final Counter prefetchCounter;
+    private final Counter prefetchHitCounter;
+
+    @Autowired
+    public SearchResultPager(BookSearchService bookSearchService,
+                             @Value("${book.search.pager.ttl-minutes:30}") long ttlMinutes,
+                             @Value("${litres.cache.ttl-minutes:60}") long litresTtlMinutes,
+                             @Value("${book.search.pager.max-size:10000}") long maxSize,
+                             @Value("${book.search.pager.threads:2}") int threads,
+                             MeterRegistry meterRegistry) {
+        this(bookSearchService, Duration.ofMinutes(Math.min(ttlMinutes, litresTtlMinutes)), maxSize, threads,
+                Ticker.systemTicker(), meterRegistry);
+    }
+
+    public SearchResultPager(BookSearchService bookSearchService, Duration ttl, long maxSize, int threads,
+                             Ticker ticker, MeterRegistry meterRegistry) {
+        this.bookSearchService = bookSearchService;
+        this.ticker = ticker;
+        this.results = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new FirstPageExpiry(ttl.toNanos()))
+                .ticker(ticker)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, results, "search-pages");
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.prefetchExecutor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "search-prefetch-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.prefetchCounter = meterRegistry.counter("book.search.pages.prefetched");
+        this.prefetchHitCounter = meterRegistry.counter("book.search.pages.prefetch.hits");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Первая страница. Если этот запрос недавно уже искали, выдача берётся из кэша,
+     * чтобы номера книг у всех, кто её листает, совпадали.
+     */
+    public Page first(String query, int pageSize) {
+        int size = Math.max(1, pageSize);
+        String key = SearchQueryNormalizer.normalize(query);
+        Results cached = key.isEmpty() ? null : results.getIfPresent(key);
+        if (cached == null || cached.degraded()) {
+            SearchResult found = bookSearchService.search(query, size);
+            List<LitresBookDto> books = found.books().stream().limit(size).toList();
+            // неполная первая страница значит, что больше искать нечего
+            cached = new Results(books, found.degraded() || books.size() < size, found.degraded(), ticker.read());
+            if (!key.isEmpty()) {
+                results.put(key, cached);
+            }
+        }
+        return slice(key, query, cached, 0, size);
+    }
+
+    /**
+     * Страница с номером page (с нуля). Недостающие книги догружаются, если выдача не закончилась.
+     */
+    public Page page(String query, int page, int pageSize) {
+        int size = Math.max(1, pageSize);
+        String key = SearchQueryNormalizer.normalize(query);
+        return slice(key, query, resolve(key, query, (page + 1) * size), page, size);
+    }
+
+    /**
+     * Короткий ключ книги для кнопки выбора: 20 бит хэша названия и автора.
+     */
+    public static long selectionKey(LitresBookDto book) {
+        return SearchQueryNormalizer.bookKey(book.getTitle(), book.getAuthor()).hashCode() & SELECTION_KEY_MASK;
+    }
+
+    /**
+     * Книга по номеру во всей выдаче и ключу из кнопки.
+     * Если выдача успела смениться, книга ищется по ключу; пустой - выдача истекла или книги в ней больше нет.
+     */
+    public Optional<LitresBookDto> book(String query, int index, long selectionKey) {
+        String key = SearchQueryNormalizer.normalize(query);
+        Results cached = key.isEmpty() ? null : results.getIfPresent(key);
+        if (cached == null || selectionKey < 0) {
+            return Optional.empty();
+        }
+        List<LitresBookDto> books = cached.books();
+        if (index >= 0 && index < books.size() && selectionKey(books.get(index)) == selectionKey) {
+            return Optional.of(books.get(index));
+        }
+        return books.stream().filter(book -> selectionKey(book) == selectionKey).findFirst();
+    }
+
+    private Results resolve(String key, String query, int needed) {
+        if (key.isEmpty()) {
+            return Results.empty(ticker.read());
+        }
+        Results cached = results.getIfPresent(key);
+        if (cached != null && (cached.books().size() >= needed || cached.exhausted())) {
+            return cached;
+        }
+        boolean prefetched = loads.getWaiterCounts().containsKey(flightKey(key, needed));
+        Results loaded = load(key, query, needed).join();
+        if (prefetched) {
+            prefetchHitCounter.increment();
+        }
+        return loaded;
+    }
+
+    private Page slice(String key, String query, Results loaded, int page, int size) {
+        List<LitresBookDto> books = loaded.books();
+        int from = Math.min(page * size, books.size());
+        int to = Math.min(from + size, books.size());
+        boolean hasMore = to < books.size() || !loaded.exhausted();
+
+        int nextNeeded = to + size;
+        if (!key.isEmpty() && !loaded.exhausted() && books.size() < nextNeeded) {
+            prefetch(key, query, nextNeeded);
+        }
+        return new Page(books.subList(from, to), from, hasMore, loaded.degraded());
+    }
+
+    private void prefetch(String key, String query, int needed) {
+        if (loads.getWaiterCounts().containsKey(flightKey(key, needed))) {
+            return;
+        }
+        prefetchCounter.increment();
+        load(key, query, needed).whenComplete((loaded, error) -> {
+            if (error != null) {
+                log.debug("Не удалось заранее загрузить выдачу '{}': {}", query, error.toString());
+            }
+        });
+    }
+
+    private CompletableFuture<Results> load(String key, String query, int needed) {
+        return loads.executeAsync(flightKey(key, needed), () -> CompletableFuture.supplyAsync(() -> {
+            SearchResult found = bookSearchService.searchMore(query, needed);
+            return results.asMap().compute(key, (k, current) -> (current != null ? current : Results.empty(ticker.read()))
+                    .append(found, needed));
+        }, prefetchExecutor));
+    }
+
+    private static String flightKey(String key, int needed) {
+        return key + "#" + needed;
+    }
+
+    /**
+     * Срок выдачи отсчитывается от loadedAt, поэтому дописывание страниц его не сбрасывает.
+     */
+    private record FirstPageExpiry(long ttlNanos) implements Expiry<String, Results> {
+
+        @Override
+        public long expireAfterCreate(String key, Results value, long currentTime) {
+            return Math.max(0, ttlNanos - (currentTime - value.loadedAt()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Results value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Results value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * Накопленная выдача. exhausted - больше книг нет, degraded - найдено локально, пока внешний поиск лежал,
+     * loadedAt - время поиска первой страницы по тикеру кэша.
+     */
+    private record Results(List<LitresBookDto> books, boolean exhausted, boolean degraded, long loadedAt) {
+
+        private static Results empty(long loadedAt) {
+            return new Results(List.of(), false, false, loadedAt);
+        }
+
+        private Results append(SearchResult found, int requested) {
+            if (found.degraded()) {
+                // источники не ответили: оставляем что есть, следующая попытка снова пойдёт за книгами
+                return this;
+            }
+            Set<String> keys = new HashSet<>();
+            for (LitresBookDto book : books) {
+                keys.add(SearchQueryNormalizer.bookKey(book.getTitle(), book.getAuthor()));
+            }
+            List<LitresBookDto> merged = new ArrayList<>(books);
+            for (LitresBookDto book : found.books()) {
+                String bookKey = SearchQueryNormalizer.bookKey(book.getTitle(), book.getAuthor());
+                if (!bookKey.isEmpty() && keys.add(bookKey)) {
+                    merged.add(book);
+                }
+            }
+            // источники отдали меньше, чем просили, - дальше искать нечего
+            return new Results(List.copyOf(merged), found.books().size() < requested, false, loadedAt);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.telegram_bots.bookbot.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.telegram_bots.bookbot.model.entities.User;
+import com.telegram_bots.bookbot.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Кэш соответствия telegramId -> {@link User}: связка не меняется, поэтому база нужна только при первом обращении.
+ * <p>
+ * Отсутствие пользователя тоже кэшируется, но ненадолго (negative-ttl): пользователя может создать
+ * другой экземпляр бота. Создание - upsert по уникальному telegram_id, см. {@link UserRepository#upsertByTelegramId}:
+ * если параллельный запрос успел раньше, возвращается уже созданная запись.
+ */
+@Service
+public class UserResolver {
+
+    private final UserRepository userRepository;
+    private final Cache<Long, Optional<User>> users;
+
+    @Autowired
+    public UserResolver(UserRepository userRepository,
+                        @Value("${book.user-cache.max-size:100000}") long maxSize,
+                        @Value("${book.user-cache.ttl-hours:24}") long ttlHours,
+                        @Value("${book.user-cache.negative-ttl-seconds:30}") long negativeTtlSeconds,
+                        MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+
+        long ttlNanos = Duration.ofHours(ttlHours).toNanos();
+        long negativeTtlNanos = Duration.ofSeconds(negativeTtlSeconds).toNanos();
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<Long, Optional<User>>() {
+                    @Override
+                    public long expireAfterCreate(Long key, Optional<User> value, long currentTime) {
+                        return value.isPresent() ? ttlNanos : negativeTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Long key, Optional<User> value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Long key, Optional<User> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+    }
+
+    /**
+     * Пользователь по telegramId, пустой - если он ещё ничего не добавлял.
+     */
+    public Optional<User> find(Long telegramId) {
+        if (telegramId == null) {
+            return Optional.empty();
+        }
+        return users.get(telegramId, userRepository::findByTelegramId);
+    }
+
+    /**
+     * Пользователь по telegramId, при необходимости создаётся.
+     */
+    public User getOrCreate(Long telegramId) {
+        Optional<User> cached = users.getIfPresent(telegramId);
+        if (cached != null && cached.isPresent()) {
+            return cached.get();
+        }
+        // upsert возвращает и уже существующего пользователя, отдельный поиск перед ним не нужен
+        User created = userRepository.upsertByTelegramId(telegramId);
+        users.put(telegramId, Optional.of(created));
+        return created;
+    }
+
+    /**
+     * Забыть закэшированного пользователя, например после удаления.
+     */
+    public void evict(Long telegramId) {
+        users.invalidate(telegramId);
+    }
+}
@@ -0,0 +1,57 @@
+package com.telegram_bots.bookbot.service.search;
+
+import com.telegram_bots.bookbot.model.dto.SearchResult;
+import com.telegram_bots.bookbot.service.LitresService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Поиск на litres через {@link LitresService} с его кэшем и предохранителем.
+ * Если дедлайн не задан явно, провайдера ждут столько же, сколько сам сервис ждёт litres,
+ * чтобы обычный медленный ответ не превращался в "поиск недоступен".
+ */
+@Component
+@Order(0)
+public class LitresSearchProvider implements SearchProvider {
+
+    private static final Duration DEADLINE_GRACE = Duration.ofMillis(200);
+
+    private final LitresService litresService;
+    private final Duration deadline;
+
+    public LitresSearchProvider(LitresService litresService,
+                                @Value("${book.search.litres.deadline-ms:0}") long deadlineMillis) {
+        this.litresService = litresService;
+        Duration requestTimeout = litresService.getRequestTimeout();
+        if (deadlineMillis > 0) {
+            this.deadline = Duration.ofMillis(deadlineMillis);
+        } else {
+            // небольшой запас, чтобы ответ, пришедший на самой границе таймаута, успел попасть в выдачу
+            this.deadline = requestTimeout != null ? requestTimeout.plus(DEADLINE_GRACE) : null;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "litres";
+    }
+
+    @Override
+    public CompletableFuture<SearchResult> searchAsync(String query) {
+        return litresService.searchAsync(query);
+    }
+
+    @Override
+    public CompletableFuture<SearchResult> searchAsync(String query, int limit) {
+        return litresService.searchAsync(query, limit);
+    }
+
+    @Override
+    public Duration deadline() {
+        return deadline;
+    }
+}
@@ -0,0 +1,115 @@
+package com.telegram_bots.bookbot.service.search;
+
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.model.dto.SearchResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Параллельный поиск по всем {@link SearchProvider}.
+ * <p>
+ * Запросы уходят всем провайдерам сразу, каждого ждём не дольше его дедлайна. Что пришло к дедлайну,
+ * сводится {@link SearchResultMerger}, опоздавшие и упавшие провайдеры просто не попадают в выдачу,
+ * поэтому время ответа не зависит от самого медленного источника.
+ * Результат degraded, только если ни один провайдер не ответил нормально.
+ * <p>
+ * Если провайдер один, сводить нечего: его ждём до его собственного дедлайна, а без него - пока он
+ * не ответит сам (по контракту {@link SearchProvider} он завершается по своему таймауту).
+ * Общий дедлайн по умолчанию не меньше таймаута запроса к litres.
+ */
+@Slf4j
+@Service
+public class SearchFanOut {
+
+    private static final long NO_DEADLINE = -1;
+
+    private final List<ProviderCall> providers;
+
+    public SearchFanOut(List<SearchProvider> providers,
+                        @Value("${book.search.deadline-ms:10000}") long deadlineMillis,
+                        MeterRegistry meterRegistry) {
+        Duration defaultDeadline = Duration.ofMillis(deadlineMillis);
+        boolean single = providers.size() == 1;
+        this.providers = new ArrayList<>(providers.size());
+        for (SearchProvider provider : providers) {
+            Duration deadline = provider.deadline() != null ? provider.deadline() : defaultDeadline;
+            long deadlineMs = single && provider.deadline() == null ? NO_DEADLINE : deadline.toMillis();
+            this.providers.add(new ProviderCall(provider, deadlineMs,
+                    meterRegistry.timer("book.search.provider.latency", "provider", provider.name()),
+                    meterRegistry.counter("book.search.provider.timeouts", "provider", provider.name()),
+                    meterRegistry.counter("book.search.provider.failures", "provider", provider.name())));
+        }
+    }
+
+    public SearchResult search(String query) {
+        return search(query, 0);
+    }
+
+    /**
+     * @param limit сколько книг нужно от каждого провайдера, 0 - сколько он отдаёт обычно
+     */
+    public SearchResult search(String query, int limit) {
+        List<CompletableFuture<SearchResult>> pending = new ArrayList<>(providers.size());
+        for (ProviderCall call : providers) {
+            pending.add(call.start(query, limit));
+        }
+        // каждый future завершается не позже дедлайна своего провайдера или его собственного таймаута
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+
+        List<List<LitresBookDto>> rankings = new ArrayList<>(pending.size());
+        boolean degraded = true;
+        for (CompletableFuture<SearchResult> future : pending) {
+            SearchResult result = future.join();
+            if (result != null) {
+                rankings.add(result.books());
+                degraded &= result.degraded();
+            }
+        }
+        List<LitresBookDto> merged = SearchResultMerger.merge(rankings);
+        return degraded ? SearchResult.degraded(merged) : SearchResult.of(merged);
+    }
+
+    private record ProviderCall(SearchProvider provider, long deadlineMillis,
+                                Timer latency, Counter timeouts, Counter failures) {
+
+        // null - провайдер не успел к дедлайну
+        private CompletableFuture<SearchResult> start(String query, int limit) {
+            long startedAt = System.nanoTime();
+            CompletableFuture<SearchResult> search;
+            try {
+                search = limit > 0 ? provider.searchAsync(query, limit) : provider.searchAsync(query);
+            } catch (RuntimeException e) {
+                search = CompletableFuture.failedFuture(e);
+            }
+            // handle даёт новую стадию, так что completeOnTimeout не трогает future провайдера
+            CompletableFuture<SearchResult> call = search.handle((result, error) -> {
+                latency.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                if (error != null) {
+                    failures.increment();
+                    log.warn("Провайдер поиска {} упал на запросе '{}': {}", provider.name(), query, error.toString());
+                    return SearchResult.degraded(List.of());
+                }
+                return result;
+            });
+            if (deadlineMillis != NO_DEADLINE) {
+                call.completeOnTimeout(null, deadlineMillis, TimeUnit.MILLISECONDS);
+            }
+            return call.whenComplete((result, error) -> {
+                if (result == null) {
+                    timeouts.increment();
+                    log.debug("Провайдер поиска {} не успел за {} мс", provider.name(), deadlineMillis);
+                }
+            });
+        }
+    }
+}
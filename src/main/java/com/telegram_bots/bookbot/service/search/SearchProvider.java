@@ -0,0 +1,37 @@
+package com.telegram_bots.bookbot.service.search;
+
+import com.telegram_bots.bookbot.model.dto.SearchResult;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Источник книг для {@link SearchFanOut}. Все бины этого типа опрашиваются параллельно.
+ * <p>
+ * searchAsync не должен блокировать вызывающий поток: загрузку провайдер выполняет сам
+ * и завершает future результатом с degraded = true, если источник недоступен или не ответил за свой таймаут.
+ */
+public interface SearchProvider {
+
+    /**
+     * Имя для логов и тега метрик.
+     */
+    String name();
+
+    CompletableFuture<SearchResult> searchAsync(String query);
+
+    /**
+     * Поиск, которому нужно не меньше limit книг, например для следующей страницы выдачи.
+     * Провайдер без постраничной выдачи отвечает как обычно.
+     */
+    default CompletableFuture<SearchResult> searchAsync(String query, int limit) {
+        return searchAsync(query);
+    }
+
+    /**
+     * Сколько ждать этого провайдера, null - общий дедлайн поиска.
+     */
+    default Duration deadline() {
+        return null;
+    }
+}
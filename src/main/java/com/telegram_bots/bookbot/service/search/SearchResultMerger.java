@@ -0,0 +1,80 @@
+package com.telegram_bots.bookbot.service.search;
+
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.utils.SearchQueryNormalizer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Сводит выдачи нескольких провайдеров в один список.
+ * <p>
+ * Дубликаты определяются по нормализованным названию и автору ({@link SearchQueryNormalizer#bookKey}).
+ * Порядок - reciprocal rank fusion: книга получает 1 / (60 + позиция) от каждой выдачи, где она есть,
+ * так что найденное несколькими источниками и стоящее выше поднимается. При равенстве раньше идёт
+ * книга из выдачи провайдера, стоящего первым. Если у копии нет числа страниц, берётся из другой выдачи.
+ */
+public final class SearchResultMerger {
+
+    private static final int RANK_CONSTANT = 60;
+
+    private SearchResultMerger() {
+    }
+
+    /**
+     * @param rankings выдачи в порядке провайдеров, каждая отсортирована по релевантности
+     */
+    public static List<LitresBookDto> merge(List<List<LitresBookDto>> rankings) {
+        Map<String, Candidate> candidates = new LinkedHashMap<>();
+        for (List<LitresBookDto> ranking : rankings) {
+            Set<String> seen = new HashSet<>();
+            int position = 0;
+            for (LitresBookDto book : ranking) {
+                String key = SearchQueryNormalizer.bookKey(book.getTitle(), book.getAuthor());
+                // книги без названия и повторы внутри одной выдачи не считаем
+                if (key.isEmpty() || !seen.add(key)) {
+                    continue;
+                }
+                position++;
+                Candidate candidate = candidates.computeIfAbsent(key, k -> new Candidate(book, candidates.size()));
+                candidate.score += 1.0 / (RANK_CONSTANT + position);
+                candidate.fillTotalPages(book);
+            }
+        }
+
+        List<Candidate> ranked = new ArrayList<>(candidates.values());
+        ranked.sort(Comparator.comparingDouble((Candidate c) -> -c.score).thenComparingInt(c -> c.order));
+        List<LitresBookDto> merged = new ArrayList<>(ranked.size());
+        for (Candidate candidate : ranked) {
+            merged.add(candidate.book);
+        }
+        return merged;
+    }
+
+    private static boolean hasTotalPages(LitresBookDto book) {
+        return book.getTotalPages() != null && book.getTotalPages() > 0;
+    }
+
+    private static final class Candidate {
+        private final int order;
+        private LitresBookDto book;
+        private double score;
+
+        private Candidate(LitresBookDto book, int order) {
+            this.book = book;
+            this.order = order;
+        }
+
+        private void fillTotalPages(LitresBookDto other) {
+            if (!hasTotalPages(book) && hasTotalPages(other)) {
+                // объекты провайдеров могут лежать в их кэшах, поэтому не меняем, а копируем
+                book = new LitresBookDto(book.getTitle(), book.getAuthor(), other.getTotalPages());
+            }
+        }
+    }
+}
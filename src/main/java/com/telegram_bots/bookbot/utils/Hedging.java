@@ -0,0 +1,90 @@
+package com.telegram_bots.bookbot.utils;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Хеджирование запросов: если первая попытка не ответила за заданный перцентиль задержки,
+ * запускается вторая, и берётся тот ответ, что придёт раньше.
+ * Пока замеров мало, второй запрос не отправляется.
+ */
+public class Hedging {
+
+    private static final int MIN_SAMPLES = 20;
+
+    private final LatencyTracker latencyTracker;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final Runnable onHedge;
+
+    public Hedging(LatencyTracker latencyTracker, double percentile, Duration minDelay, Runnable onHedge) {
+        this.latencyTracker = latencyTracker;
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.onHedge = onHedge;
+    }
+
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> attempt) {
+        return execute(attempt, () -> true);
+    }
+
+    /**
+     * @param hedgeAllowed проверяется перед второй попыткой: если она только встанет в очередь за первой, её не шлём
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> attempt, BooleanSupplier hedgeAllowed) {
+        CompletableFuture<T> first = timed(attempt);
+        long delay = hedgeDelayNanos();
+        if (delay < 0) {
+            return first;
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        // ошибку отдаём, только когда упали все запущенные попытки
+        BiConsumer<T, Throwable> onDone = (value, error) -> {
+            if (error == null) {
+                result.complete(value);
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(error);
+            }
+        };
+        first.whenComplete(onDone);
+
+        CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+            if (result.isDone() || !hedgeAllowed.getAsBoolean()) {
+                return;
+            }
+            pending.incrementAndGet();
+            onHedge.run();
+            timed(attempt).whenComplete(onDone);
+        });
+        return result;
+    }
+
+    long hedgeDelayNanos() {
+        if (latencyTracker.getCount() < MIN_SAMPLES) {
+            return -1;
+        }
+        return Math.max(minDelayNanos, latencyTracker.percentile(percentile));
+    }
+
+    private <T> CompletableFuture<T> timed(Supplier<CompletableFuture<T>> attempt) {
+        long started = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = attempt.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((value, error) -> {
+            if (error == null) {
+                latencyTracker.record(System.nanoTime() - started);
+            }
+        });
+    }
+}
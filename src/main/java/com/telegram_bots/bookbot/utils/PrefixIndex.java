@@ -0,0 +1,174 @@
+package com.telegram_bots.bookbot.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Неизменяемое сжатое префиксное дерево (radix trie) для подсказок по мере набора.
+ * <p>
+ * В каждом узле заранее сохранены topK лучших значений его поддерева, поэтому поиск по префиксу
+ * стоит O(длина префикса) и не обходит поддерево. Одно значение можно добавить под несколькими ключами
+ * (например, с каждого слова названия), в выдаче оно встретится один раз.
+ * Строится целиком через {@link Builder}, для обновления строится заново.
+ */
+public final class PrefixIndex<V> {
+
+    private static final PrefixIndex<?> EMPTY = new PrefixIndex<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PrefixIndex(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PrefixIndex<V> empty() {
+        return (PrefixIndex<V>) EMPTY;
+    }
+
+    public static <V> Builder<V> builder(int topK) {
+        return new Builder<>(topK);
+    }
+
+    /**
+     * Число ключей в индексе.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Лучшие значения среди ключей, начинающихся с prefix, но не больше topK.
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> search(String prefix, int limit) {
+        Node node = root;
+        int position = 0;
+        while (node != null) {
+            String label = node.label;
+            int common = Math.min(label.length(), prefix.length() - position);
+            if (!label.regionMatches(0, prefix, position, common)) {
+                return List.of();
+            }
+            position += common;
+            if (position == prefix.length()) {
+                Entry[] top = node.top;
+                List<V> result = new ArrayList<>(Math.min(limit, top.length));
+                for (int i = 0; i < top.length && i < limit; i++) {
+                    result.add((V) top[i].value());
+                }
+                return result;
+            }
+            int child = Arrays.binarySearch(node.firstChars, prefix.charAt(position));
+            node = child >= 0 ? node.children[child] : null;
+        }
+        return List.of();
+    }
+
+    private static final class Node {
+        private final String label;
+        private final char[] firstChars;
+        private final Node[] children;
+        // лучшее вхождение каждого из topK значений поддерева
+        private final Entry[] top;
+
+        private Node(String label, char[] firstChars, Node[] children, Entry[] top) {
+            this.label = label;
+            this.firstChars = firstChars;
+            this.children = children;
+            this.top = top;
+        }
+    }
+
+    private record Entry(String key, Object value, int weight, int order) {
+    }
+
+    public static final class Builder<V> {
+        private final int topK;
+        private final List<Entry> entries = new ArrayList<>();
+
+        private Builder(int topK) {
+            this.topK = Math.max(1, topK);
+        }
+
+        /**
+         * @param weight чем больше, тем выше значение в выдаче; при равенстве выше добавленное раньше
+         */
+        public Builder<V> add(String key, V value, int weight) {
+            if (key != null && !key.isEmpty()) {
+                entries.add(new Entry(key, value, weight, entries.size()));
+            }
+            return this;
+        }
+
+        public PrefixIndex<V> build() {
+            if (entries.isEmpty()) {
+                return empty();
+            }
+            Entry[] sorted = entries.toArray(new Entry[0]);
+            Arrays.sort(sorted, Comparator.comparing(Entry::key));
+            return new PrefixIndex<>(build(sorted, 0, sorted.length, 0), sorted.length);
+        }
+
+        // ключи sorted[from, to) совпадают в первых depth символах
+        private Node build(Entry[] sorted, int from, int to, int depth) {
+            String first = sorted[from].key();
+            String last = sorted[to - 1].key();
+            // у отсортированного диапазона общий префикс всех ключей равен общему префиксу крайних
+            int end = depth;
+            int max = Math.min(first.length(), last.length());
+            while (end < max && first.charAt(end) == last.charAt(end)) {
+                end++;
+            }
+
+            List<Entry> candidates = new ArrayList<>();
+            int i = from;
+            // ключи, которые заканчиваются в этом узле, при сортировке идут первыми
+            while (i < to && sorted[i].key().length() == end) {
+                candidates.add(sorted[i++]);
+            }
+
+            List<Character> firstChars = new ArrayList<>();
+            List<Node> children = new ArrayList<>();
+            while (i < to) {
+                char next = sorted[i].key().charAt(end);
+                int groupEnd = i + 1;
+                while (groupEnd < to && sorted[groupEnd].key().charAt(end) == next) {
+                    groupEnd++;
+                }
+                Node child = build(sorted, i, groupEnd, end);
+                firstChars.add(next);
+                children.add(child);
+                candidates.addAll(Arrays.asList(child.top));
+                i = groupEnd;
+            }
+
+            char[] chars = new char[firstChars.size()];
+            for (int c = 0; c < chars.length; c++) {
+                chars[c] = firstChars.get(c);
+            }
+            return new Node(first.substring(depth, end), chars, children.toArray(new Node[0]), top(candidates));
+        }
+
+        private Entry[] top(List<Entry> candidates) {
+            candidates.sort(BY_RANK);
+            List<Entry> top = new ArrayList<>(Math.min(topK, candidates.size()));
+            for (Entry entry : candidates) {
+                if (top.size() == topK) {
+                    break;
+                }
+                if (top.stream().noneMatch(taken -> taken.value().equals(entry.value()))) {
+                    top.add(entry);
+                }
+            }
+            return top.toArray(new Entry[0]);
+        }
+
+        private static final Comparator<Entry> BY_RANK = Comparator.comparingInt(Entry::weight).reversed()
+                .thenComparingInt(Entry::order);
+    }
+}
@@ -0,0 +1,45 @@
+package com.telegram_bots.bookbot.utils;
+
+/**
+ * Приводит поисковый запрос к каноническому виду для ключей кэша:
+ * нижний регистр, ё → е, пунктуация и пробелы схлопываются в один пробел.
+ * "  Мастер и Маргарита!" и "мастер  и маргарита" дают один и тот же ключ.
+ */
+public final class SearchQueryNormalizer {
+
+    private SearchQueryNormalizer() {
+    }
+
+    public static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(query.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < query.length(); ) {
+            int codePoint = query.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (!Character.isLetterOrDigit(codePoint)) {
+                // разделитель пишем только между словами, чтобы не было пробелов по краям
+                pendingSpace = normalized.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+            int lower = Character.toLowerCase(codePoint);
+            normalized.appendCodePoint(lower == 'ё' ? 'е' : lower);
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Ключ книги для поиска дубликатов: нормализованные название и автор, пустая строка - без названия.
+     */
+    public static String bookKey(String title, String author) {
+        String normalizedTitle = normalize(title);
+        return normalizedTitle.isEmpty() ? "" : normalizedTitle + "|" + normalize(author);
+    }
+}
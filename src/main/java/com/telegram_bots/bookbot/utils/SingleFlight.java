@@ -0,0 +1,103 @@
+package com.telegram_bots.bookbot.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Склеивает одновременные вызовы с одинаковым ключом: первый вызов выполняет загрузку,
+ * остальные ждут его результат (или его исключение), а не запускают свою.
+ * После завершения ключ освобождается, следующий вызов снова пойдёт в загрузку.
+ */
+public final class SingleFlight<K, V> {
+
+    private final Map<K, Call<V>> inFlight = new ConcurrentHashMap<>();
+
+    public V execute(K key, Callable<V> loader) throws Exception {
+        Call<V> call = new Call<>();
+        Call<V> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            V value = loader.call();
+            call.future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            call.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    /**
+     * То же для асинхронной загрузки: ожидающие получают копию общего future.
+     * Синхронные и асинхронные вызовы с одним ключом делят одну загрузку.
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> loader) {
+        Call<V> call = new Call<>();
+        Call<V> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            existing.waiters.incrementAndGet();
+            return existing.future.whenComplete((value, error) -> existing.waiters.decrementAndGet());
+        }
+
+        CompletableFuture<V> started;
+        try {
+            started = loader.get();
+        } catch (Throwable e) {
+            started = CompletableFuture.failedFuture(e);
+        }
+        started.whenComplete((value, error) -> {
+            inFlight.remove(key, call);
+            if (error != null) {
+                call.future.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            } else {
+                call.future.complete(value);
+            }
+        });
+        return call.future.copy();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Сколько вызовов сейчас ждут чужую загрузку, по ключам.
+     */
+    public Map<K, Integer> getWaiterCounts() {
+        Map<K, Integer> waiters = new HashMap<>();
+        inFlight.forEach((key, call) -> waiters.put(key, call.waiters.get()));
+        return waiters;
+    }
+
+    private V await(Call<V> call) throws Exception {
+        call.waiters.incrementAndGet();
+        try {
+            return call.future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            throw (Error) cause;
+        } finally {
+            call.waiters.decrementAndGet();
+        }
+    }
+
+    private static final class Call<V> {
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger();
+    }
+}
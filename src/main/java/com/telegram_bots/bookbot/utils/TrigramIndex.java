@@ -0,0 +1,130 @@
+package com.telegram_bots.bookbot.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Инвертированный индекс по триграммам для нечёткого поиска по коротким строкам.
+ * <p>
+ * Как в pg_trgm: каждое слово дополняется двумя пробелами слева и одним справа,
+ * похожесть - коэффициент Дайса 2 * общие / (триграммы запроса + триграммы документа).
+ * Документы нумеруются по порядку добавления. Тексты ожидаются уже нормализованными
+ * ({@link SearchQueryNormalizer}). Не потокобезопасен, синхронизация на вызывающей стороне.
+ */
+public class TrigramIndex {
+
+    public record Match(int document, double score) {
+    }
+
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private int[] trigramCounts = new int[16];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Добавляет документ и возвращает его номер.
+     */
+    public int add(String text) {
+        int document = size++;
+        if (document == trigramCounts.length) {
+            trigramCounts = Arrays.copyOf(trigramCounts, document << 1);
+        }
+        long[] trigrams = trigrams(text);
+        trigramCounts[document] = trigrams.length;
+        for (long trigram : trigrams) {
+            postings.computeIfAbsent(trigram, key -> new Postings()).add(document);
+        }
+        return document;
+    }
+
+    /**
+     * Документы с похожестью не ниже minScore, лучшие первыми.
+     */
+    public List<Match> search(String query, double minScore, int limit) {
+        long[] queryTrigrams = trigrams(query);
+        if (queryTrigrams.length == 0 || limit <= 0) {
+            return List.of();
+        }
+
+        int[] common = new int[size];
+        int[] touched = new int[16];
+        int touchedCount = 0;
+        for (long trigram : queryTrigrams) {
+            Postings list = postings.get(trigram);
+            if (list == null) {
+                continue;
+            }
+            for (int i = 0; i < list.size; i++) {
+                int document = list.documents[i];
+                if (common[document]++ == 0) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount << 1);
+                    }
+                    touched[touchedCount++] = document;
+                }
+            }
+        }
+
+        List<Match> matches = new ArrayList<>();
+        for (int i = 0; i < touchedCount; i++) {
+            int document = touched[i];
+            double score = 2.0 * common[document] / (queryTrigrams.length + trigramCounts[document]);
+            if (score >= minScore) {
+                matches.add(new Match(document, score));
+            }
+        }
+        matches.sort((a, b) -> a.score() != b.score()
+                ? Double.compare(b.score(), a.score())
+                : Integer.compare(a.document(), b.document()));
+        return matches.size() > limit ? matches.subList(0, limit) : matches;
+    }
+
+    // уникальные триграммы строки, символ занимает 16 бит
+    static long[] trigrams(String text) {
+        if (text == null || text.isBlank()) {
+            return new long[0];
+        }
+        long[] result = new long[text.length() * 2 + 4];
+        int count = 0;
+        for (String word : text.split(" ")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                long trigram = (long) padded.charAt(i) << 32 | (long) padded.charAt(i + 1) << 16 | padded.charAt(i + 2);
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count << 1);
+                }
+                result[count++] = trigram;
+            }
+        }
+        long[] unique = Arrays.copyOf(result, count);
+        Arrays.sort(unique);
+        int distinct = 0;
+        for (int i = 0; i < unique.length; i++) {
+            if (i == 0 || unique[i] != unique[i - 1]) {
+                unique[distinct++] = unique[i];
+            }
+        }
+        return Arrays.copyOf(unique, distinct);
+    }
+
+    private static final class Postings {
+        private int[] documents = new int[4];
+        private int size;
+
+        private void add(int document) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size << 1);
+            }
+            documents[size++] = document;
+        }
+    }
+}
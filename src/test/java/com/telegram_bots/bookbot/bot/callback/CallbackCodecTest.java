@@ -0,0 +1,80 @@
+package com.telegram_bots.bookbot.bot.callback;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallbackCodecTest {
+
+    @Test
+    void testRouteWithoutArguments() {
+        String data = CallbackCodec.encode(CallbackRoute.SHOW_BOOKS);
+
+        assertEquals(2, data.length());
+        assertEquals(CallbackRoute.SHOW_BOOKS, CallbackCodec.route(data));
+        assertEquals(-1, CallbackCodec.argument(data, 0));
+    }
+
+    @Test
+    void testArgumentsRoundTrip() {
+        long[] values = {0, 1, 31, 32, 1023, 1024, 123_456_789L, Long.MAX_VALUE};
+        for (long value : values) {
+            String data = CallbackCodec.encode(CallbackRoute.DELETE_BOOK, value, 7);
+
+            assertEquals(CallbackRoute.DELETE_BOOK, CallbackCodec.route(data));
+            assertEquals(value, CallbackCodec.argument(data, 0));
+            assertEquals(7, CallbackCodec.argument(data, 1));
+            assertEquals(-1, CallbackCodec.argument(data, 2));
+        }
+    }
+
+    @Test
+    void testEncodedDataFitsTelegramLimit() {
+        String data = CallbackCodec.encode(CallbackRoute.MANAGE_BOOK, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        assertTrue(data.length() <= CallbackCodec.MAX_LENGTH);
+        assertTrue(data.chars().allMatch(c -> c < 128));
+    }
+
+    @Test
+    void testSmallIdsAreShort() {
+        assertEquals(3, CallbackCodec.encode(CallbackRoute.SELECT_BOOK, 4).length());
+        assertEquals(5, CallbackCodec.encode(CallbackRoute.MANAGE_BOOK, 20_000).length());
+    }
+
+    @Test
+    void testUnknownOrLegacyDataHasNoRoute() {
+        assertNull(CallbackCodec.route(null));
+        assertNull(CallbackCodec.route(""));
+        assertNull(CallbackCodec.route("Ж"));
+        assertNull(CallbackCodec.route(String.valueOf(CallbackCodec.VERSION)));
+        assertNull(CallbackCodec.route(CallbackCodec.VERSION + "d:42"));
+        assertEquals(-1, CallbackCodec.argument("d:42", 0));
+    }
+
+    @Test
+    void testLegacyButtonsHaveNoRoute() {
+        String[] legacy = {
+                "add_book", "cancel_added_book", "show_books", "select_book:0", "books_next_page",
+                "books_prev_page", "change_filter", "filter_status_clear", "filter_by_status:READ",
+                "manage_book:5", "change_status:5", "update_page:5", "rate_book:5", "delete_book:42",
+                "set_status:READING", "cancel_update_book", "show_stats"
+        };
+        for (String data : legacy) {
+            assertNull(CallbackCodec.route(data), data);
+            assertEquals(-1, CallbackCodec.argument(data, 0), data);
+        }
+    }
+
+    @Test
+    void testNegativeArgumentIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> CallbackCodec.encode(CallbackRoute.SELECT_BOOK, -1));
+    }
+
+    @Test
+    void testOpcodesAreUnique() {
+        for (CallbackRoute route : CallbackRoute.values()) {
+            assertEquals(route, CallbackRoute.byOpcode(route.getOpcode()));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.telegram_bots.bookbot.bot.dispatcher;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateDeduplicatorTest {
+
+    private UpdateDeduplicator deduplicator;
+
+    @BeforeEach
+    void setUp() {
+        deduplicator = new UpdateDeduplicator(128, 64, 60, new SimpleMeterRegistry());
+    }
+
+    private static CallbackQuery callback(long chatId, int messageId, String data) {
+        Chat chat = new Chat();
+        chat.setId(chatId);
+        Message message = new Message();
+        message.setChat(chat);
+        message.setMessageId(messageId);
+
+        CallbackQuery callbackQuery = new CallbackQuery();
+        callbackQuery.setMessage(message);
+        callbackQuery.setData(data);
+        return callbackQuery;
+    }
+
+    @Test
+    void testRepeatedUpdateIsDropped() {
+        assertTrue(deduplicator.markUpdate(10));
+        assertTrue(deduplicator.markUpdate(11));
+        assertFalse(deduplicator.markUpdate(10));
+        assertFalse(deduplicator.markUpdate(11));
+    }
+
+    @Test
+    void testOutOfOrderUpdatesInsideWindowAreAccepted() {
+        assertTrue(deduplicator.markUpdate(20));
+        assertTrue(deduplicator.markUpdate(18));
+        assertTrue(deduplicator.markUpdate(19));
+        assertFalse(deduplicator.markUpdate(18));
+    }
+
+    @Test
+    void testWindowSlidesForward() {
+        assertTrue(deduplicator.markUpdate(1));
+        for (int id = 2; id <= 500; id++) {
+            assertTrue(deduplicator.markUpdate(id));
+        }
+        assertFalse(deduplicator.markUpdate(500 - 100));
+        // id на границе окна уже не отличить от повтора, поэтому он отбрасывается
+        assertFalse(deduplicator.markUpdate(500 - 128));
+        assertTrue(deduplicator.markUpdate(501));
+    }
+
+    @Test
+    void testForwardJumpResetsWindow() {
+        assertTrue(deduplicator.markUpdate(5));
+        assertTrue(deduplicator.markUpdate(1_000_000));
+        assertFalse(deduplicator.markUpdate(1_000_000));
+        assertTrue(deduplicator.markUpdate(1_000_001));
+    }
+
+    @Test
+    void testStaleUpdateDoesNotReopenRecentOnes() {
+        for (int id = 1000; id <= 1010; id++) {
+            assertTrue(deduplicator.markUpdate(id));
+        }
+
+        assertFalse(deduplicator.markUpdate(5));
+
+        assertFalse(deduplicator.markUpdate(1005));
+        assertFalse(deduplicator.markUpdate(1010));
+        assertTrue(deduplicator.markUpdate(1011));
+    }
+
+    @Test
+    void testRepeatedCallbackOnSameMessageIsDropped() {
+        assertTrue(deduplicator.markCallback(callback(1L, 100, "delete_book:42")));
+        assertFalse(deduplicator.markCallback(callback(1L, 100, "delete_book:42")));
+
+        assertTrue(deduplicator.markCallback(callback(1L, 101, "delete_book:42")));
+        assertTrue(deduplicator.markCallback(callback(2L, 100, "delete_book:42")));
+        assertTrue(deduplicator.markCallback(callback(1L, 100, "select_book:0")));
+    }
+
+    @Test
+    void testRecentKeySetEvictsOldestWhenFull() {
+        RecentKeySet set = new RecentKeySet(16);
+        for (long key = 1; key <= 1000; key++) {
+            assertTrue(set.add(key, key, 1_000_000));
+        }
+        assertFalse(set.add(1000, 1001, 1_000_000));
+    }
+
+    @Test
+    void testRecentKeySetForgetsExpiredKeys() {
+        RecentKeySet set = new RecentKeySet(16);
+        assertTrue(set.add(7, 0, 10));
+        assertFalse(set.add(7, 5, 10));
+        assertTrue(set.add(7, 11, 10));
+    }
+}
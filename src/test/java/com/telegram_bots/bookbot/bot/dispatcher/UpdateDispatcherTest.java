@@ -0,0 +1,125 @@
+package com.telegram_bots.bookbot.bot.dispatcher;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateDispatcherTest {
+
+    private UpdateDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new UpdateDispatcher(4, 8, 2000, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testTasksOfSameChatKeepOrder() throws InterruptedException {
+        int tasks = 1000;
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(tasks);
+
+        for (int i = 0; i < tasks; i++) {
+            int number = i;
+            dispatcher.dispatch(42L, () -> {
+                processed.add(number);
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < tasks; i++) {
+            assertEquals(i, processed.get(i));
+        }
+    }
+
+    @Test
+    void testSlowChatDoesNotBlockOtherChats() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherDone = new CountDownLatch(1);
+
+        long slowChat = 1L;
+        long otherChat = 2L;
+        assertNotEquals(dispatcher.stripeIndex(slowChat), dispatcher.stripeIndex(otherChat));
+
+        dispatcher.dispatch(slowChat, () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        dispatcher.dispatch(otherChat, otherDone::countDown);
+
+        assertTrue(otherDone.await(2, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    void testFailedTaskDoesNotStopStripe() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+
+        dispatcher.dispatch(7L, () -> {
+            throw new IllegalStateException("boom");
+        });
+        dispatcher.dispatch(7L, done::countDown);
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testFullStripeRejectsNewTasks() throws InterruptedException {
+        UpdateDispatcher small = new UpdateDispatcher(1, 1, 2, new SimpleMeterRegistry());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            assertTrue(small.dispatch(1L, () -> {
+                started.countDown();
+                awaitQuietly(release);
+            }));
+            assertTrue(started.await(2, TimeUnit.SECONDS));
+            assertTrue(small.dispatch(1L, () -> { }));
+            assertTrue(small.dispatch(1L, () -> { }));
+
+            assertFalse(small.dispatch(1L, () -> { }));
+        } finally {
+            release.countDown();
+            small.shutdown();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void testStatsAreReportedPerStripe() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        dispatcher.dispatch(3L, done::countDown);
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+
+        List<UpdateDispatcher.StripeStats> stats = dispatcher.getStats();
+        assertEquals(8, stats.size());
+
+        UpdateDispatcher.StripeStats stripe = stats.get(dispatcher.stripeIndex(3L));
+        assertEquals(0, stripe.queueDepth());
+    }
+}
@@ -0,0 +1,173 @@
+package com.telegram_bots.bookbot.bot.outbound;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.ApiResponse;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class OutboundMessageQueueTest {
+
+    private AbsSender sender;
+    private OutboundMessageQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        sender = mock(AbsSender.class);
+        queue = new OutboundMessageQueue(1000, 1000, 1000, 3, 10, new SimpleMeterRegistry());
+        queue.attach(sender);
+        queue.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        queue.stop();
+    }
+
+    private static SendMessage message(String chatId, String text) {
+        return SendMessage.builder().chatId(chatId).text(text).build();
+    }
+
+    @Test
+    void testMessagesOfChatAreSentInOrder() throws Exception {
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(5);
+        doAnswer(invocation -> {
+            sent.add(((SendMessage) invocation.getArgument(0)).getText());
+            done.countDown();
+            return CompletableFuture.completedFuture(new Message());
+        }).when(sender).executeAsync(any(BotApiMethod.class));
+
+        for (int i = 0; i < 5; i++) {
+            queue.submit("1", message("1", "m" + i));
+        }
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of("m0", "m1", "m2", "m3", "m4"), sent);
+    }
+
+    @Test
+    void testRetriesOnlyThrottledMessage() throws Exception {
+        ApiResponse<?> response = mock(ApiResponse.class);
+        when(response.getErrorCode()).thenReturn(429);
+        when(response.getErrorDescription()).thenReturn("Too Many Requests");
+        when(response.getParameters()).thenReturn(new ResponseParameters(null, 0));
+
+        AtomicInteger firstAttempts = new AtomicInteger();
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(2);
+        doAnswer(invocation -> {
+            String text = ((SendMessage) invocation.getArgument(0)).getText();
+            if ("first".equals(text) && firstAttempts.incrementAndGet() == 1) {
+                return CompletableFuture.failedFuture(new TelegramApiRequestException("throttled", response));
+            }
+            sent.add(text);
+            done.countDown();
+            return CompletableFuture.completedFuture(new Message());
+        }).when(sender).executeAsync(any(BotApiMethod.class));
+
+        queue.submit("1", message("1", "first"));
+        queue.submit("1", message("1", "second"));
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of("first", "second"), sent);
+        assertEquals(2, firstAttempts.get());
+        verify(sender, times(3)).executeAsync(any(BotApiMethod.class));
+    }
+
+    @Test
+    void testThrottlingDoesNotUseUpFailureAttempts() throws Exception {
+        ApiResponse<?> response = mock(ApiResponse.class);
+        when(response.getErrorCode()).thenReturn(429);
+        when(response.getErrorDescription()).thenReturn("Too Many Requests");
+        when(response.getParameters()).thenReturn(new ResponseParameters(null, 0));
+
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            // 429 больше раз, чем max-attempts
+            if (attempts.incrementAndGet() <= 5) {
+                return CompletableFuture.failedFuture(new TelegramApiRequestException("throttled", response));
+            }
+            done.countDown();
+            return CompletableFuture.completedFuture(new Message());
+        }).when(sender).executeAsync(any(BotApiMethod.class));
+
+        queue.submit("1", message("1", "throttled"));
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(6, attempts.get());
+    }
+
+    @Test
+    void testThrottlingPausesOtherChats() throws Exception {
+        ApiResponse<?> response = mock(ApiResponse.class);
+        when(response.getErrorCode()).thenReturn(429);
+        when(response.getErrorDescription()).thenReturn("Too Many Requests");
+        when(response.getParameters()).thenReturn(new ResponseParameters(null, 1));
+
+        AtomicInteger throttled = new AtomicInteger();
+        CountDownLatch throttledOnce = new CountDownLatch(1);
+        CountDownLatch otherSent = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            String text = ((SendMessage) invocation.getArgument(0)).getText();
+            if ("first".equals(text) && throttled.incrementAndGet() == 1) {
+                throttledOnce.countDown();
+                return CompletableFuture.failedFuture(new TelegramApiRequestException("throttled", response));
+            }
+            if ("other".equals(text)) {
+                otherSent.countDown();
+            }
+            return CompletableFuture.completedFuture(new Message());
+        }).when(sender).executeAsync(any(BotApiMethod.class));
+
+        queue.submit("1", message("1", "first"));
+        assertTrue(throttledOnce.await(2, TimeUnit.SECONDS));
+        long started = System.nanoTime();
+        queue.submit("2", message("2", "other"));
+
+        assertTrue(otherSent.await(3, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    void testPermanentErrorDoesNotBlockFollowingMessages() throws Exception {
+        ApiResponse<?> response = mock(ApiResponse.class);
+        when(response.getErrorCode()).thenReturn(400);
+        when(response.getErrorDescription()).thenReturn("Bad Request");
+
+        CountDownLatch done = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            String text = ((SendMessage) invocation.getArgument(0)).getText();
+            if ("broken".equals(text)) {
+                return CompletableFuture.failedFuture(new TelegramApiRequestException("bad", response));
+            }
+            done.countDown();
+            return CompletableFuture.completedFuture(new Message());
+        }).when(sender).executeAsync(any(BotApiMethod.class));
+
+        queue.submit("1", message("1", "broken"));
+        queue.submit("1", message("1", "ok"));
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        verify(sender, times(2)).executeAsync(any(BotApiMethod.class));
+    }
+}
@@ -0,0 +1,62 @@
+package com.telegram_bots.bookbot.bot.outbound;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void testBurstThenWait() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(2, 1, clock::get);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+
+        long wait = bucket.tryAcquire();
+        assertTrue(wait > 0);
+        assertTrue(wait <= TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void testRefillOverTime() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(1, 2, clock::get);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(0, bucket.tryAcquire());
+    }
+
+    @Test
+    void testRefillNeverExceedsCapacity() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(2, 10, clock::get);
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(60));
+
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+    }
+
+    @Test
+    void testPauseWithholdsTokensUntilItEnds() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(5, 10, clock::get);
+
+        bucket.pause(TimeUnit.SECONDS.toNanos(2));
+
+        assertTrue(bucket.tryAcquire() > TimeUnit.SECONDS.toNanos(2));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertTrue(bucket.tryAcquire() > 0);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(0, bucket.tryAcquire());
+    }
+}
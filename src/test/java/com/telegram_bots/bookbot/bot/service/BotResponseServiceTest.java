@@ -3,12 +3,16 @@ package com.telegram_bots.bookbot.bot.service;
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.telegram_bots.bookbot.bot.callback.CallbackCodec;
+import com.telegram_bots.bookbot.bot.callback.CallbackRoute;
+import com.telegram_bots.bookbot.model.dto.BookPage;
 import com.telegram_bots.bookbot.model.dto.LitresBookDto;
 import com.telegram_bots.bookbot.model.entities.Book;
 import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
+import com.telegram_bots.bookbot.model.session.SearchCursor;
 import com.telegram_bots.bookbot.model.session.enums.UserState;
 import com.telegram_bots.bookbot.service.BookService;
-import com.telegram_bots.bookbot.service.LitresService;
+import com.telegram_bots.bookbot.service.SearchResultPager;
 import com.telegram_bots.bookbot.utils.WelcomeMessageProvider;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
@@ -16,8 +20,11 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
@@ -25,12 +32,13 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMa
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 
 import java.util.List;
+import java.util.Optional;
 
 @ExtendWith(MockitoExtension.class)
 class BotResponseServiceTest {
 
     @Mock private UserStateService userStateService;
-    @Mock private LitresService litresService;
+    @Mock private SearchResultPager searchResultPager;
     @Mock private BookService bookService;
     @Mock private Update update;
 
@@ -41,7 +49,7 @@ class BotResponseServiceTest {
     void setUp() {
         MockitoAnnotations.openMocks(this);
         MessageService messageService = new MessageService(new WelcomeMessageProvider());
-        botResponseService = spy(new BotResponseService(userStateService, litresService, messageService, bookService));
+        botResponseService = spy(new BotResponseService(userStateService, searchResultPager, messageService, bookService));
 
     }
 
@@ -69,7 +77,8 @@ class BotResponseServiceTest {
         when(message.getChatId()).thenReturn(chatId);
         when(message.getText()).thenReturn(messageText);
         when(userStateService.getState(chatId)).thenReturn(UserState.WAITING_FOR_TITLE);
-        when(litresService.searchBooks(messageText)).thenReturn(List.of(new LitresBookDto("Book Title", "Author Name")));
+        when(searchResultPager.first(eq(messageText), anyInt()))
+                .thenReturn(new SearchResultPager.Page(List.of(new LitresBookDto("Book Title", "Author Name")), 0, false, false));
 
         List<SendMessage> result = botResponseService.handleTextMessage(update);
 
@@ -111,7 +120,7 @@ class BotResponseServiceTest {
     void testHandleDeleteMessage() {
         Long chatId = 123L;
         Integer messageId = 456;
-        String data = "cancel";
+        String data = CallbackCodec.encode(CallbackRoute.CANCEL_ADDED_BOOK);
 
         Message message = mock(Message.class);
         CallbackQuery callbackQuery = mock(CallbackQuery.class);
@@ -130,10 +139,25 @@ class BotResponseServiceTest {
     }
 
     @Test
-    void testExtractBookId() {
-        String data = "delete_book:42";
-        Long result = botResponseService.extractBookId(data);
-        assertEquals(42L, result);
+    void testHandleDeleteMessage_notForMenuNavigation() {
+        CallbackQuery callbackQuery = mock(CallbackQuery.class);
+
+        when(update.getCallbackQuery()).thenReturn(callbackQuery);
+        when(callbackQuery.getData()).thenReturn(CallbackCodec.encode(CallbackRoute.MANAGE_BOOK, 42));
+
+        assertNull(botResponseService.handleDeleteMessage(update));
+    }
+
+    @Test
+    void testHandleDeleteMessage_notForFilterTaps() {
+        CallbackQuery callbackQuery = mock(CallbackQuery.class);
+
+        when(update.getCallbackQuery()).thenReturn(callbackQuery);
+        when(callbackQuery.getData()).thenReturn(CallbackCodec.encode(CallbackRoute.FILTER_BY_STATUS, 0));
+        assertNull(botResponseService.handleDeleteMessage(update));
+
+        when(callbackQuery.getData()).thenReturn(CallbackCodec.encode(CallbackRoute.FILTER_STATUS_CLEAR));
+        assertNull(botResponseService.handleDeleteMessage(update));
     }
 
     @Test
@@ -163,12 +187,11 @@ class BotResponseServiceTest {
     void testHandleSetStatusCallback() {
         Long chatId = 123L;
         Long bookId = 1L;
-        String data = "set_status:READ";
 
         when(userStateService.getBookIdForChange(chatId)).thenReturn(bookId);
         when(bookService.getBookById(bookId)).thenReturn(book);
 
-        List<SendMessage> result = botResponseService.handleSetStatusCallback(chatId, data);
+        List<SendMessage> result = botResponseService.handleSetStatusCallback(chatId, BookStatus.READ);
 
         assertEquals(2, result.size());
         assertNotNull(result.get(0).getText());
@@ -177,15 +200,40 @@ class BotResponseServiceTest {
     @Test
     void testHandleBookSelection() {
         Long chatId = 123L;
-        String data = "select_book:0";
-
         LitresBookDto bookDto = new LitresBookDto("Title", "Author");
 
-        when(userStateService.getSearchResults(chatId)).thenReturn(List.of(bookDto));
+        when(userStateService.getSearchCursor(chatId)).thenReturn(new SearchCursor("Title", 0));
+        long key = SearchResultPager.selectionKey(bookDto);
+        when(searchResultPager.book("Title", 0, key)).thenReturn(Optional.of(bookDto));
+        when(bookService.getBooksFrom(eq(chatId), any(), anyLong(), anyInt())).thenReturn(new BookPage(List.of(), false, false));
 
-        List<SendMessage> result = botResponseService.handleBookSelection(chatId, data);
+        List<SendMessage> result = botResponseService.handleBookSelection(chatId, 0, key);
 
         assertEquals(2, result.size());
+        verify(bookService).addBook(chatId, "Title", "Author", null);
+        verify(userStateService).clearSearchCursor(chatId);
+    }
+
+    @Test
+    void testHandleBookSelection_NoSearch() {
+        Long chatId = 123L;
+
+        List<SendMessage> result = botResponseService.handleBookSelection(chatId, 0, 0);
+
+        assertEquals(1, result.size());
+        verifyNoInteractions(searchResultPager, bookService);
+    }
+
+    @Test
+    void testHandleBookSelection_ExpiredResults() {
+        Long chatId = 123L;
+        when(userStateService.getSearchCursor(chatId)).thenReturn(new SearchCursor("Title", 0));
+        when(searchResultPager.book("Title", 0, 5L)).thenReturn(Optional.empty());
+
+        List<SendMessage> result = botResponseService.handleBookSelection(chatId, 0, 5L);
+
+        assertTrue(result.get(0).getText().contains("устарели"));
+        verifyNoInteractions(bookService);
     }
 
     @Test
@@ -209,16 +257,97 @@ class BotResponseServiceTest {
     void testHandleBookTitle() {
         long chatId = 123L;
         String title = "BookTitle";
+        when(searchResultPager.first(eq(title), anyInt())).thenReturn(new SearchResultPager.Page(List.of(), 0, false, false));
+
+        List<SendMessage> result = botResponseService.handleBookTitle(chatId, title);
+
+        assertEquals(1, result.size());
+    }
+
+    @Test
+    void testHandleBookTitle_LitresUnavailable_OffersKnownBooks() {
+        long chatId = 123L;
+        String title = "Мастер";
+        List<LitresBookDto> known = List.of(new LitresBookDto("Мастер и Маргарита", "Булгаков", 480));
+        ReflectionTestUtils.setField(botResponseService, "maxCountBooks", 5);
+        when(searchResultPager.first(title, 5)).thenReturn(new SearchResultPager.Page(known, 0, false, true));
+
+        List<SendMessage> result = botResponseService.handleBookTitle(chatId, title);
+
+        assertEquals(1, result.size());
+        assertTrue(result.get(0).getText().startsWith("Litres сейчас не отвечает"));
+        verify(userStateService).saveSearchCursor(chatId, new SearchCursor(title, 0));
+        // название можно прислать ещё раз, когда litres поднимется
+        verify(userStateService, never()).setState(chatId, UserState.NONE);
+    }
+
+    @Test
+    void testHandleBookTitle_LitresUnavailable_NothingKnown() {
+        long chatId = 123L;
+        String title = "Мастер";
+        when(searchResultPager.first(eq(title), anyInt())).thenReturn(new SearchResultPager.Page(List.of(), 0, false, true));
 
         List<SendMessage> result = botResponseService.handleBookTitle(chatId, title);
 
         assertEquals(1, result.size());
+        assertTrue(result.get(0).getText().startsWith("Поиск книг сейчас недоступен"));
+        verify(userStateService, never()).saveSearchCursor(anyLong(), any());
+    }
+
+    @Test
+    void testHandleBookTitle_FullPageOffersMoreResults() {
+        long chatId = 123L;
+        String title = "Булгаков";
+        List<LitresBookDto> books = List.of(new LitresBookDto("Мастер и Маргарита", "Булгаков"),
+                new LitresBookDto("Собачье сердце", "Булгаков"));
+        ReflectionTestUtils.setField(botResponseService, "maxCountBooks", 2);
+        when(searchResultPager.first(title, 2)).thenReturn(new SearchResultPager.Page(books, 0, true, false));
+
+        List<SendMessage> result = botResponseService.handleBookTitle(chatId, title);
+
+        List<List<InlineKeyboardButton>> rows = ((InlineKeyboardMarkup) result.get(0).getReplyMarkup()).getKeyboard();
+        assertEquals(CallbackCodec.encode(CallbackRoute.SELECT_BOOK, 1, SearchResultPager.selectionKey(books.get(1))),
+                rows.get(1).get(0).getCallbackData());
+        assertEquals(CallbackCodec.encode(CallbackRoute.MORE_RESULTS, 1), rows.get(2).get(0).getCallbackData());
+        verify(userStateService).saveSearchCursor(chatId, new SearchCursor(title, 0));
+    }
+
+    @Test
+    void testHandleMoreResults_ShowsNextPageWithAbsoluteIndexes() {
+        long chatId = 123L;
+        ReflectionTestUtils.setField(botResponseService, "maxCountBooks", 2);
+        when(userStateService.getSearchCursor(chatId)).thenReturn(new SearchCursor("Булгаков", 0));
+        when(searchResultPager.page("Булгаков", 1, 2))
+                .thenReturn(new SearchResultPager.Page(List.of(new LitresBookDto("Белая гвардия", "Булгаков")), 2, false, false));
+
+        List<SendMessage> result = botResponseService.handleMoreResults(chatId, 1);
+
+        List<List<InlineKeyboardButton>> rows = ((InlineKeyboardMarkup) result.get(0).getReplyMarkup()).getKeyboard();
+        assertEquals(CallbackCodec.encode(CallbackRoute.SELECT_BOOK, 2,
+                        SearchResultPager.selectionKey(new LitresBookDto("Белая гвардия", "Булгаков"))),
+                rows.get(0).get(0).getCallbackData());
+        // дальше страниц нет: после книги сразу отмена
+        assertEquals(CallbackCodec.encode(CallbackRoute.CANCEL_ADDED_BOOK), rows.get(1).get(0).getCallbackData());
+        verify(userStateService).saveSearchCursor(chatId, new SearchCursor("Булгаков", 1));
+    }
+
+    @Test
+    void testHandleMoreResults_NothingMore() {
+        long chatId = 123L;
+        when(userStateService.getSearchCursor(chatId)).thenReturn(new SearchCursor("Булгаков", 3));
+        when(searchResultPager.page(eq("Булгаков"), eq(4), anyInt()))
+                .thenReturn(new SearchResultPager.Page(List.of(), 0, false, false));
+
+        List<SendMessage> result = botResponseService.handleMoreResults(chatId, -1);
+
+        assertEquals("Больше ничего не нашлось 😢", result.get(0).getText());
+        verify(userStateService, never()).saveSearchCursor(anyLong(), any());
     }
 
     @Test
     void testBuildBookListMessage_callbackDataGeneratedCorrectly() {
         Long chatId = 123L;
-        int currentPage = 0;
+        long pageStartId = 0;
         BookStatus filter = BookStatus.READING;
 
         Book book1 = new Book();
@@ -231,8 +360,8 @@ class BotResponseServiceTest {
         book2.setTitle("Книга 2");
         book2.setStatus(BookStatus.READING);
 
-        when(bookService.getAllBooksOfUser(chatId)).thenReturn(List.of(book1, book2));
-        when(userStateService.getCurrentPage(chatId)).thenReturn(currentPage);
+        when(bookService.getBooksFrom(chatId, filter, pageStartId, 10)).thenReturn(new BookPage(List.of(book1, book2), false, false));
+        when(userStateService.getPageStartId(chatId)).thenReturn(pageStartId);
         when(userStateService.getBookStatusFilter(chatId)).thenReturn(filter);
 
         SendMessage result = botResponseService.buildBookListMessage(chatId);
@@ -244,10 +373,122 @@ class BotResponseServiceTest {
         InlineKeyboardButton button2 = rows.get(1).get(0);
 
         assertEquals("Книга 1", button1.getText());
-        assertEquals("manage_book:1", button1.getCallbackData());
+        assertEquals(CallbackCodec.encode(CallbackRoute.MANAGE_BOOK, 1), button1.getCallbackData());
 
         assertEquals("Книга 2", button2.getText());
-        assertEquals("manage_book:2", button2.getCallbackData());
+        assertEquals(CallbackCodec.encode(CallbackRoute.MANAGE_BOOK, 2), button2.getCallbackData());
+    }
+
+    @Test
+    void testBuildBookListMessage_nextPageReadsAfterAnchor() {
+        Long chatId = 123L;
+        Book book = new Book();
+        book.setId(11L);
+        book.setTitle("Книга 11");
+        book.setStatus(BookStatus.READ);
+
+        when(userStateService.getBookStatusFilter(chatId)).thenReturn(BookStatus.READ);
+        when(bookService.getBooksAfter(chatId, BookStatus.READ, 10L, 10)).thenReturn(new BookPage(List.of(book), true, false));
+
+        SendMessage result = botResponseService.buildBookListMessage(chatId, 10L, -1);
+
+        List<List<InlineKeyboardButton>> rows = ((InlineKeyboardMarkup) result.getReplyMarkup()).getKeyboard();
+        assertEquals(CallbackCodec.encode(CallbackRoute.MANAGE_BOOK, 11), rows.get(0).get(0).getCallbackData());
+        assertEquals(CallbackCodec.encode(CallbackRoute.BOOKS_PREV_PAGE, 11), rows.get(1).get(0).getCallbackData());
+        verify(bookService, never()).getBooksFrom(any(), any(), anyLong(), anyInt());
+        // следующий показ списка начнётся с первой книги этой страницы
+        verify(userStateService).setPageStartId(chatId, 11L);
+    }
+
+    @Test
+    void testBuildBookListMessage_rerenderStartsFromRememberedBook() {
+        Long chatId = 123L;
+        Book book = new Book();
+        book.setId(21L);
+        book.setTitle("Книга 21");
+        book.setStatus(BookStatus.READ);
+        when(userStateService.getPageStartId(chatId)).thenReturn(21L);
+        when(bookService.getBooksFrom(chatId, null, 21L, 10)).thenReturn(new BookPage(List.of(book), true, false));
+
+        SendMessage result = botResponseService.buildBookListMessage(chatId);
+
+        List<List<InlineKeyboardButton>> rows = ((InlineKeyboardMarkup) result.getReplyMarkup()).getKeyboard();
+        assertEquals(CallbackCodec.encode(CallbackRoute.MANAGE_BOOK, 21), rows.get(0).get(0).getCallbackData());
+        verify(userStateService, never()).setPageStartId(anyLong(), anyLong());
+    }
+
+    @Test
+    void testBuildBookListMessage_prevButtonFollowsKeysetNotSessionPage() {
+        Long chatId = 123L;
+        Book book = new Book();
+        book.setId(3L);
+        book.setTitle("Книга 3");
+        book.setStatus(BookStatus.READ);
+        // в сессии начало второй страницы, а перед книгой 3 книг уже нет
+        when(userStateService.getPageStartId(chatId)).thenReturn(7L);
+        when(bookService.getBooksBefore(chatId, null, 5L, 10)).thenReturn(new BookPage(List.of(book), false, true));
+
+        SendMessage result = botResponseService.buildBookListMessage(chatId, -1, 5L);
+
+        List<InlineKeyboardButton> pagination = ((InlineKeyboardMarkup) result.getReplyMarkup()).getKeyboard().get(1);
+        assertEquals(1, pagination.size());
+        assertEquals(CallbackCodec.encode(CallbackRoute.BOOKS_NEXT_PAGE, 3), pagination.get(0).getCallbackData());
+        verify(userStateService).setPageStartId(chatId, 0);
+    }
+
+    @Test
+    void testBuildBookListMessage_emptyNeighbourPageFallsBackToStart() {
+        Long chatId = 123L;
+        when(bookService.getBooksAfter(chatId, null, 40L, 10)).thenReturn(new BookPage(List.of(), false, false));
+        when(bookService.getBooksFrom(chatId, null, 0, 10)).thenReturn(new BookPage(List.of(), false, false));
+
+        botResponseService.buildBookListMessage(chatId, 40L, -1);
+
+        verify(bookService).getBooksFrom(chatId, null, 0, 10);
+    }
+
+    @Test
+    void testHandleCallbackResponse_editsPaginationInPlace() {
+        Long chatId = 123L;
+        Message message = mock(Message.class);
+        CallbackQuery callbackQuery = mock(CallbackQuery.class);
+
+        when(update.getCallbackQuery()).thenReturn(callbackQuery);
+        when(callbackQuery.getMessage()).thenReturn(message);
+        when(callbackQuery.getData()).thenReturn(CallbackCodec.encode(CallbackRoute.BOOKS_NEXT_PAGE));
+        when(message.getChatId()).thenReturn(chatId);
+        when(bookService.getBooksFrom(eq(chatId), any(), anyLong(), anyInt())).thenReturn(new BookPage(List.of(), false, false));
+        when(message.getMessageId()).thenReturn(77);
+        when(message.getText()).thenReturn("старый текст");
+        ReflectionTestUtils.setField(botResponseService, "editInPlace", true);
+
+        List<BotApiMethod<?>> result = botResponseService.handleCallbackResponse(update);
+
+        assertEquals(1, result.size());
+        EditMessageText edit = assertInstanceOf(EditMessageText.class, result.get(0));
+        assertEquals(77, edit.getMessageId());
+        assertEquals(String.valueOf(chatId), edit.getChatId());
+    }
+
+    @Test
+    void testHandleCallbackResponse_sendsAndDeletesWhenEditDisabled() {
+        Long chatId = 123L;
+        Message message = mock(Message.class);
+        CallbackQuery callbackQuery = mock(CallbackQuery.class);
+
+        when(update.getCallbackQuery()).thenReturn(callbackQuery);
+        when(callbackQuery.getMessage()).thenReturn(message);
+        when(callbackQuery.getData()).thenReturn(CallbackCodec.encode(CallbackRoute.BOOKS_NEXT_PAGE));
+        when(message.getChatId()).thenReturn(chatId);
+        when(bookService.getBooksFrom(eq(chatId), any(), anyLong(), anyInt())).thenReturn(new BookPage(List.of(), false, false));
+        when(message.getMessageId()).thenReturn(77);
+        ReflectionTestUtils.setField(botResponseService, "editInPlace", false);
+
+        List<BotApiMethod<?>> result = botResponseService.handleCallbackResponse(update);
+
+        assertEquals(2, result.size());
+        assertInstanceOf(SendMessage.class, result.get(0));
+        assertInstanceOf(DeleteMessage.class, result.get(1));
     }
 
     @Nested
@@ -256,7 +497,7 @@ class BotResponseServiceTest {
         @Test
         void testHandleCallbackQuery_AddBook() {
             Long chatId = 123L;
-            String data = "add_book";
+            String data = CallbackCodec.encode(CallbackRoute.ADD_BOOK);
 
             Message message = mock(Message.class);
             CallbackQuery callbackQuery = mock(CallbackQuery.class);
@@ -275,7 +516,7 @@ class BotResponseServiceTest {
         @Test
         void testHandleCallbackQuery_setStatus() {
             Long chatId = 123L;
-            String data = "set_status:READ";
+            String data = CallbackCodec.encode(CallbackRoute.SET_STATUS, BookStatus.READ.ordinal());
             Long bookId = 1L;
 
             Message message = mock(Message.class);
@@ -296,7 +537,7 @@ class BotResponseServiceTest {
         @Test
         void testHandleCallbackQuery_cancelAddedBook() {
             Long chatId = 123L;
-            String data = "cancel_added_book";
+            String data = CallbackCodec.encode(CallbackRoute.CANCEL_ADDED_BOOK);
 
             CallbackQuery callbackQuery = mock(CallbackQuery.class);
             Message message = mock(Message.class);
@@ -316,13 +557,13 @@ class BotResponseServiceTest {
             assertTrue(actual.getText().contains("книжка") || actual.getText().contains("подождёт"));
 
             verify(userStateService).setState(chatId, UserState.NONE);
-            verify(userStateService).clearSearchResults(chatId);
+            verify(userStateService).clearSearchCursor(chatId);
         }
 
         @Test
         void testHandleCallbackQuery_showBooks() {
             Long chatId = 123L;
-            String data = "show_books";
+            String data = CallbackCodec.encode(CallbackRoute.SHOW_BOOKS);
 
             CallbackQuery callbackQuery = mock(CallbackQuery.class);
             Message message = mock(Message.class);
@@ -345,7 +586,7 @@ class BotResponseServiceTest {
         @Test
         void testHandleCallbackQuery_selectBook() {
             Long chatId = 123L;
-            String data = "select_book:1";
+            String data = CallbackCodec.encode(CallbackRoute.SELECT_BOOK, 1, 9);
 
             CallbackQuery callbackQuery = mock(CallbackQuery.class);
             Message message = mock(Message.class);
@@ -356,7 +597,7 @@ class BotResponseServiceTest {
             when(message.getChatId()).thenReturn(chatId);
 
             List<SendMessage> expected = List.of(new SendMessage());
-            doReturn(expected).when(botResponseService).handleBookSelection(chatId, data);
+            doReturn(expected).when(botResponseService).handleBookSelection(chatId, 1, 9);
 
             List<SendMessage> result = botResponseService.handleCallbackQuery(update);
 
@@ -367,7 +608,7 @@ class BotResponseServiceTest {
         void testHandleCallbackQuery_deleteBook() {
             Long chatId = 123L;
             Long bookId = 42L;
-            String data = "delete_book:" + bookId;
+            String data = CallbackCodec.encode(CallbackRoute.DELETE_BOOK, bookId);
 
             CallbackQuery callbackQuery = mock(CallbackQuery.class);
             Message message = mock(Message.class);
@@ -376,11 +617,65 @@ class BotResponseServiceTest {
             when(callbackQuery.getMessage()).thenReturn(message);
             when(callbackQuery.getData()).thenReturn(data);
             when(message.getChatId()).thenReturn(chatId);
+            when(bookService.getBookOfUser(chatId, bookId)).thenReturn(Optional.of(book));
 
             List<SendMessage> result = botResponseService.handleCallbackQuery(update);
 
             verify(bookService).deleteBook(bookId);
         }
+
+        @Test
+        void testHandleCallbackQuery_deleteForeignBookIsRefused() {
+            Long chatId = 123L;
+            CallbackQuery callbackQuery = mock(CallbackQuery.class);
+            Message message = mock(Message.class);
+
+            when(update.getCallbackQuery()).thenReturn(callbackQuery);
+            when(callbackQuery.getMessage()).thenReturn(message);
+            when(callbackQuery.getData()).thenReturn(CallbackCodec.encode(CallbackRoute.DELETE_BOOK, 42));
+            when(message.getChatId()).thenReturn(chatId);
+            when(bookService.getBookOfUser(chatId, 42L)).thenReturn(Optional.empty());
+
+            List<SendMessage> result = botResponseService.handleCallbackQuery(update);
+
+            verify(bookService, never()).deleteBook(anyLong());
+            assertTrue(result.get(0).getText().startsWith("Неизвестное действие"));
+        }
+
+        @Test
+        void testHandleCallbackQuery_updatePageOfForeignBookIsRefused() {
+            Long chatId = 123L;
+            CallbackQuery callbackQuery = mock(CallbackQuery.class);
+            Message message = mock(Message.class);
+
+            when(update.getCallbackQuery()).thenReturn(callbackQuery);
+            when(callbackQuery.getMessage()).thenReturn(message);
+            when(callbackQuery.getData()).thenReturn(CallbackCodec.encode(CallbackRoute.UPDATE_PAGE, 42));
+            when(message.getChatId()).thenReturn(chatId);
+            when(bookService.getBookOfUser(chatId, 42L)).thenReturn(Optional.empty());
+
+            botResponseService.handleCallbackQuery(update);
+
+            verify(userStateService, never()).setBookIdForChange(anyLong(), any());
+            verify(userStateService, never()).setState(chatId, UserState.WAITING_FOR_PAGE);
+        }
+
+        @Test
+        void testHandleCallbackQuery_legacyDataIsUnknown() {
+            Long chatId = 123L;
+            CallbackQuery callbackQuery = mock(CallbackQuery.class);
+            Message message = mock(Message.class);
+
+            when(update.getCallbackQuery()).thenReturn(callbackQuery);
+            when(callbackQuery.getMessage()).thenReturn(message);
+            when(callbackQuery.getData()).thenReturn("delete_book:42");
+            when(message.getChatId()).thenReturn(chatId);
+
+            List<SendMessage> result = botResponseService.handleCallbackQuery(update);
+
+            assertTrue(result.get(0).getText().startsWith("Неизвестное действие"));
+            verifyNoInteractions(bookService);
+        }
     }
 }
 
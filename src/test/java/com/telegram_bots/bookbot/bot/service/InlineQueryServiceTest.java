@@ -0,0 +1,151 @@
+package com.telegram_bots.bookbot.bot.service;
+
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.model.entities.Book;
+import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
+import com.telegram_bots.bookbot.service.BookCatalogService;
+import com.telegram_bots.bookbot.service.BookLibraryChangedEvent;
+import com.telegram_bots.bookbot.service.BookService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.telegram.telegrambots.meta.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.InlineQuery;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.result.InlineQueryResultArticle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InlineQueryServiceTest {
+
+    @Mock
+    private BookCatalogService bookCatalogService;
+
+    @Mock
+    private BookService bookService;
+
+    private InlineQueryService inlineQueryService;
+
+    // загрузки библиотек копятся здесь и выполняются тестом явно
+    private final List<Runnable> libraryLoads = new ArrayList<>();
+
+    private final LitresBookDto master = new LitresBookDto("Мастер и Маргарита", "Михаил Булгаков", 500);
+    private final LitresBookDto heart = new LitresBookDto("Собачье сердце", "Михаил Булгаков", 120);
+
+    @BeforeEach
+    void setUp() {
+        inlineQueryService = new InlineQueryService(bookCatalogService, bookService, 10, 30, 60,
+                libraryLoads::add, new SimpleMeterRegistry());
+        when(bookCatalogService.version()).thenReturn(2L);
+        when(bookCatalogService.snapshot()).thenReturn(List.of(master, heart));
+        inlineQueryService.rebuildCatalogIndex();
+    }
+
+    @Test
+    void testSuggestsByAnyWordPrefix() {
+        assertEquals(List.of(master), inlineQueryService.suggest(null, "Марг"));
+        assertEquals(List.of(heart), inlineQueryService.suggest(null, "серд"));
+        assertEquals(List.of(master, heart), inlineQueryService.suggest(null, ""));
+        assertTrue(inlineQueryService.suggest(null, "война").isEmpty());
+    }
+
+    @Test
+    void testUserLibraryComesFirstAndIsLoadedOnce() {
+        Book own = new Book("Мастерство рассказа", "Автор", BookStatus.PLANNED);
+        when(bookService.getAllBooksOfUser(7L)).thenReturn(List.of(own));
+        inlineQueryService.suggest(7L, "мастер");
+        List.copyOf(libraryLoads).forEach(Runnable::run);
+
+        List<LitresBookDto> first = inlineQueryService.suggest(7L, "мастер");
+        List<LitresBookDto> second = inlineQueryService.suggest(7L, "мастерс");
+
+        assertEquals("Мастерство рассказа", first.get(0).getTitle());
+        assertEquals(master, first.get(1));
+        assertEquals(1, second.size());
+        verify(bookService, times(1)).getAllBooksOfUser(7L);
+    }
+
+    @Test
+    void testSameBookFromLibraryAndCatalogIsSuggestedOnce() {
+        // в библиотеке у книги другое число страниц, но это та же книга
+        Book own = new Book("Мастер и Маргарита", "Михаил Булгаков", BookStatus.READING);
+        own.setTotalPages(480);
+        when(bookService.getAllBooksOfUser(7L)).thenReturn(List.of(own));
+        inlineQueryService.suggest(7L, "мастер");
+        List.copyOf(libraryLoads).forEach(Runnable::run);
+
+        List<LitresBookDto> books = inlineQueryService.suggest(7L, "мастер");
+
+        assertEquals(1, books.size());
+        assertEquals(480, books.get(0).getTotalPages());
+    }
+
+    @Test
+    void testChangedLibraryIsLoadedAgain() {
+        when(bookService.getAllBooksOfUser(7L))
+                .thenReturn(List.of())
+                .thenReturn(List.of(new Book("Мастерство рассказа", "Автор", BookStatus.PLANNED)));
+        inlineQueryService.suggest(7L, "мастер");
+        List.copyOf(libraryLoads).forEach(Runnable::run);
+        assertEquals(List.of(master), inlineQueryService.suggest(7L, "мастер"));
+
+        inlineQueryService.onLibraryChanged(new BookLibraryChangedEvent(7L));
+        libraryLoads.clear();
+        inlineQueryService.suggest(7L, "мастер");
+        List.copyOf(libraryLoads).forEach(Runnable::run);
+
+        assertEquals("Мастерство рассказа", inlineQueryService.suggest(7L, "мастер").get(0).getTitle());
+        verify(bookService, times(2)).getAllBooksOfUser(7L);
+    }
+
+    @Test
+    void testLibraryMissAnswersFromCatalogWithoutTouchingDatabase() {
+        assertEquals(List.of(master), inlineQueryService.suggest(7L, "мастер"));
+        assertEquals(List.of(master), inlineQueryService.suggest(7L, "мастер"));
+
+        verifyNoInteractions(bookService);
+        List.copyOf(libraryLoads).forEach(Runnable::run);
+        verify(bookService, times(1)).getAllBooksOfUser(7L);
+    }
+
+    @Test
+    void testIndexIsRebuiltOnlyWhenCatalogChanges() {
+        inlineQueryService.rebuildCatalogIndex();
+        verify(bookCatalogService, times(1)).snapshot();
+
+        LitresBookDto war = new LitresBookDto("Война и мир", "Лев Толстой", 1300);
+        when(bookCatalogService.version()).thenReturn(3L);
+        when(bookCatalogService.snapshot()).thenReturn(List.of(master, heart, war));
+        inlineQueryService.rebuildCatalogIndex();
+
+        assertEquals(List.of(war), inlineQueryService.suggest(null, "мир"));
+    }
+
+    @Test
+    void testAnswerBuildsArticles() {
+        InlineQuery inlineQuery = new InlineQuery();
+        inlineQuery.setId("q-1");
+        inlineQuery.setQuery("собач");
+        User from = new User();
+        from.setId(8L);
+        inlineQuery.setFrom(from);
+
+        AnswerInlineQuery answer = inlineQueryService.answer(inlineQuery);
+
+        assertEquals("q-1", answer.getInlineQueryId());
+        assertTrue(answer.getIsPersonal());
+        // библиотека ещё не загружена, неполный ответ Telegram не кэширует
+        assertEquals(0, answer.getCacheTime());
+        InlineQueryResultArticle article = assertInstanceOf(InlineQueryResultArticle.class, answer.getResults().get(0));
+        assertEquals("Собачье сердце", article.getTitle());
+        assertEquals("Михаил Булгаков, 120 стр.", article.getDescription());
+    }
+}
@@ -1,12 +1,17 @@
 package com.telegram_bots.bookbot.bot.service;
 
+import com.telegram_bots.bookbot.bot.callback.CallbackCodec;
+import com.telegram_bots.bookbot.bot.callback.CallbackRoute;
 import com.telegram_bots.bookbot.model.dto.LitresBookDto;
 import com.telegram_bots.bookbot.model.entities.Book;
 import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
 import com.telegram_bots.bookbot.utils.WelcomeMessageProvider;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageReplyMarkup;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 
@@ -193,7 +198,7 @@ public class MessageServiceTest {
 
             assertThat(buttons).hasSize(2);
             assertThat(buttons.get(0).get(0).getText()).isEqualTo("Книга 1");
-            assertThat(buttons.get(0).get(0).getCallbackData()).isEqualTo("manage_book:1");
+            assertThat(buttons.get(0).get(0).getCallbackData()).isEqualTo(CallbackCodec.encode(CallbackRoute.MANAGE_BOOK, 1));
         }
 
         @Test
@@ -218,6 +223,17 @@ public class MessageServiceTest {
             assertThat(buttons.get(0).getText()).contains("Назад");
         }
 
+        @Test
+        void buildPaginationButtons_ShouldCarryPageBoundaryIds() {
+            Book first = Book.builder().id(21L).title("Первая").build();
+            Book last = Book.builder().id(35L).title("Последняя").build();
+
+            List<InlineKeyboardButton> buttons = messageService.buildPaginationButtons(true, true, List.of(first, last));
+
+            assertThat(buttons.get(0).getCallbackData()).isEqualTo(CallbackCodec.encode(CallbackRoute.BOOKS_PREV_PAGE, 21));
+            assertThat(buttons.get(1).getCallbackData()).isEqualTo(CallbackCodec.encode(CallbackRoute.BOOKS_NEXT_PAGE, 35));
+        }
+
         @Test
         void buildFilterAndAddButtons_ShouldReturnTwoRows() {
             List<List<InlineKeyboardButton>> rows = messageService.buildFilterAndAddButtons();
@@ -226,4 +242,46 @@ public class MessageServiceTest {
             assertThat(rows.get(1).get(0).getText()).contains("Добавить книгу");
         }
     }
+
+    @Nested
+    class EditMessageTests {
+        @Test
+        void buildEditMessage_ShouldEditTextAndKeyboard() {
+            SendMessage message = messageService.buildCancelledMessage("123");
+
+            BotApiMethod<?> edit = messageService.buildEditMessage(message, 10, "другой текст");
+
+            assertThat(edit).isInstanceOf(EditMessageText.class);
+            EditMessageText editText = (EditMessageText) edit;
+            assertThat(editText.getMessageId()).isEqualTo(10);
+            assertThat(editText.getText()).isEqualTo(message.getText());
+            assertThat(editText.getReplyMarkup()).isSameAs(message.getReplyMarkup());
+        }
+
+        @Test
+        void buildEditMessage_ShouldEditOnlyKeyboardWhenTextIsSame() {
+            SendMessage message = messageService.buildCancelledMessage("123");
+
+            BotApiMethod<?> edit = messageService.buildEditMessage(message, 10, message.getText());
+
+            assertThat(edit).isInstanceOf(EditMessageReplyMarkup.class);
+            assertThat(((EditMessageReplyMarkup) edit).getMessageId()).isEqualTo(10);
+        }
+
+        @Test
+        void buildEditMessage_ShouldCompareMarkdownListWithPlainText() {
+            Book book = Book.builder().title("Мастер и Маргарита").author("Булгаков").status(BookStatus.READING).build();
+            SendMessage message = SendMessage.builder()
+                    .chatId("123")
+                    .text(messageService.buildBooksText(List.of(book), null))
+                    .parseMode("Markdown")
+                    .build();
+            // так список возвращает Telegram: без звёздочек и без перевода строки в конце
+            String shown = "📚 Список книг:\n\nМастер и Маргарита - Булгаков - " + BookStatus.READING.getDisplayNameRu();
+
+            BotApiMethod<?> edit = messageService.buildEditMessage(message, 10, shown);
+
+            assertThat(edit).isInstanceOf(EditMessageReplyMarkup.class);
+        }
+    }
 }
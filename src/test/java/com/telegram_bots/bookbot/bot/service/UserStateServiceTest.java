@@ -1,20 +1,26 @@
 package com.telegram_bots.bookbot.bot.service;
 
-import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.telegram_bots.bookbot.bot.session.InMemorySessionStore;
+import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
+import com.telegram_bots.bookbot.model.session.SearchCursor;
 import com.telegram_bots.bookbot.model.session.enums.UserState;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import java.util.List;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class UserStateServiceTest {
     private UserStateService userStateService;
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = nanos::get;
 
     @BeforeEach
     void setUp() {
-        userStateService = new UserStateService();
+        userStateService = new UserStateService(new InMemorySessionStore(3, Duration.ofMinutes(10), ticker, Runnable::run));
     }
 
     @Test
@@ -31,28 +37,71 @@ public class UserStateServiceTest {
     }
 
     @Test
-    void testSaveAndRetrieveSearchResults() {
+    void testSaveAndRetrieveSearchCursor() {
         long chatId = 456L;
-        LitresBookDto book = new LitresBookDto("Название", "Автор");
 
-        userStateService.saveSearchResults(chatId, List.of(book));
+        userStateService.saveSearchCursor(chatId, new SearchCursor("Название", 1));
 
-        List<LitresBookDto> results = userStateService.getSearchResults(chatId);
-        assertNotNull(results);
-        assertEquals(1, results.size());
-        assertEquals("Название", results.get(0).getTitle());
-        assertEquals("Автор", results.get(0).getAuthor());
+        SearchCursor cursor = userStateService.getSearchCursor(chatId);
+        assertNotNull(cursor);
+        assertEquals("Название", cursor.query());
+        assertEquals(1, cursor.page());
     }
 
     @Test
-    void testClearSearchResults() {
+    void testClearSearchCursor() {
         long chatId = 789L;
-        LitresBookDto book = new LitresBookDto("Book to clear", "Автор");
 
-        userStateService.saveSearchResults(chatId, List.of(book));
-        assertFalse(userStateService.getSearchResults(chatId).isEmpty());
+        userStateService.saveSearchCursor(chatId, new SearchCursor("Book to clear", 0));
+        assertNotNull(userStateService.getSearchCursor(chatId));
 
-        userStateService.clearSearchResults(chatId);
-        assertTrue(userStateService.getSearchResults(chatId).isEmpty());
+        userStateService.clearSearchCursor(chatId);
+        assertNull(userStateService.getSearchCursor(chatId));
+    }
+
+    @Test
+    void testIdleSessionExpiresToDefaults() {
+        long chatId = 1L;
+        userStateService.setState(chatId, UserState.WAITING_FOR_PAGE);
+        userStateService.setBookIdForChange(chatId, 5L);
+        userStateService.setBookStatusFilter(chatId, BookStatus.READ);
+
+        nanos.addAndGet(Duration.ofMinutes(11).toNanos());
+
+        assertEquals(UserState.NONE, userStateService.getState(chatId));
+        assertNull(userStateService.getBookIdForChange(chatId));
+        assertNull(userStateService.getBookStatusFilter(chatId));
+        assertNull(userStateService.getSearchCursor(chatId));
+        assertEquals(0, userStateService.getPageStartId(chatId));
+    }
+
+    @Test
+    void testAccessKeepsSessionAlive() {
+        long chatId = 2L;
+        userStateService.setState(chatId, UserState.WAITING_FOR_TITLE);
+
+        nanos.addAndGet(Duration.ofMinutes(6).toNanos());
+        assertEquals(UserState.WAITING_FOR_TITLE, userStateService.getState(chatId));
+        nanos.addAndGet(Duration.ofMinutes(6).toNanos());
+
+        assertEquals(UserState.WAITING_FOR_TITLE, userStateService.getState(chatId));
+    }
+
+    @Test
+    void testSessionCountIsBounded() {
+        for (long chatId = 0; chatId < 50; chatId++) {
+            userStateService.setPageStartId(chatId, 1);
+        }
+
+        assertTrue(userStateService.getActiveSessionCount() <= 3);
+    }
+
+    @Test
+    void testReadsDoNotCreateSessions() {
+        userStateService.getState(10L);
+        userStateService.getSearchCursor(11L);
+        userStateService.getBookIdForChange(12L);
+
+        assertEquals(0, userStateService.getActiveSessionCount());
     }
 }
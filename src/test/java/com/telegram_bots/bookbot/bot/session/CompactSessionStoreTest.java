@@ -0,0 +1,120 @@
+package com.telegram_bots.bookbot.bot.session;
+
+import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
+import com.telegram_bots.bookbot.model.session.SearchCursor;
+import com.telegram_bots.bookbot.model.session.UserSession;
+import com.telegram_bots.bookbot.model.session.enums.UserState;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactSessionStoreTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private SimpleMeterRegistry meterRegistry;
+    private CompactSessionStore store;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        store = new CompactSessionStore(1600, Duration.ofMinutes(10), now::get, meterRegistry);
+    }
+
+    @Test
+    void testAllFieldsSurvivePacking() {
+        SearchCursor cursor = new SearchCursor("Книга", 2);
+
+        store.update(-1001234567890L, session -> {
+            session.setState(UserState.WAITING_FOR_RATING);
+            session.setBookStatusFilter(BookStatus.ON_HOLD);
+            session.setPageStartId(5_000_000_000L);
+            session.setBookIdForChange(987654321L);
+            session.setSearchCursor(cursor);
+        });
+
+        UserSession session = store.find(-1001234567890L);
+        assertEquals(UserState.WAITING_FOR_RATING, session.getState());
+        assertEquals(BookStatus.ON_HOLD, session.getBookStatusFilter());
+        assertEquals(5_000_000_000L, session.getPageStartId());
+        assertEquals(987654321L, session.getBookIdForChange());
+        assertSame(cursor, session.getSearchCursor());
+    }
+
+    @Test
+    void testNewSessionHasDefaults() {
+        assertNull(store.find(1L));
+
+        store.update(1L, session -> session.setPageStartId(1));
+
+        UserSession session = store.find(1L);
+        assertEquals(UserState.NONE, session.getState());
+        assertNull(session.getBookStatusFilter());
+        assertNull(session.getBookIdForChange());
+        assertNull(session.getSearchCursor());
+    }
+
+    @Test
+    void testSearchCursorIsReplacedAndCleared() {
+        store.update(1L, session -> session.setSearchCursor(new SearchCursor("A", 0)));
+        SearchCursor second = new SearchCursor("A", 1);
+        store.update(1L, session -> session.setSearchCursor(second));
+        assertSame(second, store.find(1L).getSearchCursor());
+
+        store.update(1L, session -> session.setSearchCursor(null));
+        assertNull(store.find(1L).getSearchCursor());
+    }
+
+    @Test
+    void testIdleSessionsExpire() {
+        store.update(1L, session -> session.setState(UserState.WAITING_FOR_PAGE));
+        store.update(2L, session -> session.setState(UserState.WAITING_FOR_PAGE));
+
+        now.addAndGet(Duration.ofMinutes(6).toMillis());
+        assertNotNull(store.find(1L));
+        now.addAndGet(Duration.ofMinutes(6).toMillis());
+
+        assertNotNull(store.find(1L));
+        assertNull(store.find(2L));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void testSizeIsBoundedAndEvictsOldest() {
+        for (long chatId = 0; chatId < 10_000; chatId++) {
+            now.addAndGet(50);
+            store.update(chatId, session -> session.setPageStartId(1));
+        }
+
+        assertTrue(store.size() <= 1600);
+        assertTrue(meterRegistry.counter("bot.session.compact.evictions").count() > 0);
+        // самые свежие сессии переживают вытеснение
+        assertNotNull(store.find(9_999L));
+    }
+
+    @Test
+    void testForEachAndRestore() {
+        Map<Long, UserState> expected = new HashMap<>();
+        for (long chatId = 1; chatId <= 100; chatId++) {
+            UserState state = UserState.values()[(int) (chatId % UserState.values().length)];
+            store.update(chatId, session -> session.setState(state));
+            expected.put(chatId, state);
+        }
+
+        CompactSessionStore copy = new CompactSessionStore(1600, Duration.ofMinutes(10), now::get, meterRegistry);
+        copy.update(1L, session -> session.setState(UserState.WAITING_FOR_TITLE));
+        store.forEach(copy::restore);
+
+        assertEquals(100, copy.size());
+        assertEquals(UserState.WAITING_FOR_TITLE, copy.find(1L).getState());
+        for (long chatId = 2; chatId <= 100; chatId++) {
+            assertEquals(expected.get(chatId), copy.find(chatId).getState());
+        }
+    }
+}
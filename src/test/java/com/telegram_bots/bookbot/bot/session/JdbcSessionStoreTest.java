@@ -0,0 +1,133 @@
+package com.telegram_bots.bookbot.bot.session;
+
+import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
+import com.telegram_bots.bookbot.model.session.SearchCursor;
+import com.telegram_bots.bookbot.model.session.UserSession;
+import com.telegram_bots.bookbot.model.session.enums.UserState;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JdbcSessionStoreTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private SimpleMeterRegistry meterRegistry;
+
+    // два узла над одной базой, near-cache живёт дольше теста
+    private JdbcSessionStore nodeA;
+    private JdbcSessionStore nodeB;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        meterRegistry = new SimpleMeterRegistry();
+        nodeA = store();
+        nodeB = store();
+        nodeA.createTable();
+        nodeB.createTable();
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    private JdbcSessionStore store() {
+        return new JdbcSessionStore(jdbcTemplate, 60_000, 100, Duration.ofMinutes(60), now::get, meterRegistry);
+    }
+
+    @Test
+    void testUpdateCreatesAndChangesSession() {
+        assertNull(nodeA.find(1L));
+
+        nodeA.update(1L, session -> session.setState(UserState.WAITING_FOR_PAGE));
+        nodeA.update(1L, session -> session.setBookIdForChange(42L));
+
+        UserSession session = nodeB.find(1L);
+        assertEquals(UserState.WAITING_FOR_PAGE, session.getState());
+        assertEquals(42L, session.getBookIdForChange());
+        assertEquals(1, nodeB.size());
+    }
+
+    @Test
+    void testConcurrentNodesDoNotLoseUpdates() {
+        nodeA.update(1L, session -> session.setPageStartId(1));
+        // узел A закэшировал версию 1, узел B меняет сессию за его спиной
+        nodeB.update(1L, session -> session.setBookStatusFilter(BookStatus.READ));
+
+        nodeA.update(1L, session -> session.setPageStartId(session.getPageStartId() + 1));
+
+        UserSession session = store().find(1L);
+        assertEquals(2, session.getPageStartId());
+        assertEquals(BookStatus.READ, session.getBookStatusFilter());
+        assertEquals(1.0, meterRegistry.counter("bot.session.conflicts").count());
+    }
+
+    @Test
+    void testConcurrentCreationRetriesAsUpdate() {
+        // оба узла видят, что сессии нет
+        assertNull(nodeA.find(1L));
+        nodeB.update(1L, session -> session.setState(UserState.WAITING_FOR_TITLE));
+
+        nodeA.update(1L, session -> session.setPageStartId(5));
+
+        UserSession session = store().find(1L);
+        assertEquals(UserState.WAITING_FOR_TITLE, session.getState());
+        assertEquals(5, session.getPageStartId());
+    }
+
+    @Test
+    void testSearchCursorIsStored() {
+        nodeA.update(1L, session -> session.setSearchCursor(new SearchCursor("Мастер и Маргарита", 3)));
+
+        assertEquals(new SearchCursor("Мастер и Маргарита", 3), nodeB.find(1L).getSearchCursor());
+    }
+
+    @Test
+    void testIdleSessionExpiresAndIsDeleted() {
+        nodeA.update(1L, session -> session.setState(UserState.WAITING_FOR_RATING));
+        now.addAndGet(Duration.ofMinutes(61).toMillis());
+
+        JdbcSessionStore fresh = store();
+        assertNull(fresh.find(1L));
+        assertEquals(0, fresh.size());
+
+        fresh.update(1L, session -> session.setPageStartId(3));
+        UserSession session = store().find(1L);
+        assertEquals(UserState.NONE, session.getState());
+        assertEquals(3, session.getPageStartId());
+
+        now.addAndGet(Duration.ofMinutes(61).toMillis());
+        fresh.deleteExpired();
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_session", Integer.class));
+    }
+
+    @Test
+    void testRestoreKeepsExistingSession() {
+        nodeA.update(1L, session -> session.setState(UserState.WAITING_FOR_TITLE));
+
+        UserSession restored = new UserSession();
+        restored.setState(UserState.WAITING_FOR_PAGE);
+        nodeB.restore(1L, restored);
+        nodeB.restore(2L, restored);
+
+        assertEquals(UserState.WAITING_FOR_TITLE, store().find(1L).getState());
+        assertEquals(UserState.WAITING_FOR_PAGE, store().find(2L).getState());
+    }
+}
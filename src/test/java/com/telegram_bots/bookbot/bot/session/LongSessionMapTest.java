@@ -0,0 +1,68 @@
+package com.telegram_bots.bookbot.bot.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongSessionMapTest {
+
+    @Test
+    void testInsertFindAndGrow() {
+        LongSessionMap map = new LongSessionMap(4);
+        for (long key = -500; key < 500; key++) {
+            int slot = map.insert(key);
+            map.bookIds[slot] = key * 10;
+        }
+
+        assertEquals(1000, map.size());
+        for (long key = -500; key < 500; key++) {
+            int slot = map.indexOf(key);
+            assertTrue(slot >= 0);
+            assertEquals(key * 10, map.bookIds[slot]);
+        }
+        assertEquals(-1, map.indexOf(10_000));
+    }
+
+    @Test
+    void testRemovalKeepsProbeChainsIntact() {
+        LongSessionMap map = new LongSessionMap(64);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            // узкий диапазон ключей, чтобы было много коллизий и удалений
+            long key = random.nextInt(200) - 100L;
+            int slot = map.indexOf(key);
+            if (random.nextBoolean()) {
+                if (slot < 0) {
+                    slot = map.insert(key);
+                }
+                map.bookIds[slot] = i;
+                expected.put(key, (long) i);
+            } else if (slot >= 0) {
+                map.removeAt(slot);
+                expected.remove(key);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (long key = -100; key < 100; key++) {
+            int slot = map.indexOf(key);
+            if (expected.containsKey(key)) {
+                assertEquals(expected.get(key), map.bookIds[slot]);
+            } else {
+                assertEquals(-1, slot);
+            }
+        }
+    }
+
+    @Test
+    void testEmptyMarkerIsRejected() {
+        LongSessionMap map = new LongSessionMap(4);
+        assertThrows(IllegalArgumentException.class, () -> map.insert(LongSessionMap.EMPTY));
+    }
+}
@@ -0,0 +1,78 @@
+package com.telegram_bots.bookbot.bot.session;
+
+import com.telegram_bots.bookbot.model.session.SearchCursor;
+import com.telegram_bots.bookbot.model.session.UserSession;
+import com.telegram_bots.bookbot.model.session.enums.UserState;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionCodecTest {
+
+    @Test
+    void testCursorRoundTrip() {
+        UserSession session = new UserSession();
+        session.setState(UserState.WAITING_FOR_TITLE);
+        session.setSearchCursor(new SearchCursor("Мастер и Маргарита", 4));
+        session.setPageStartId(5_000_000_000L);
+
+        UserSession read = SessionCodec.fromBytes(SessionCodec.toBytes(session));
+
+        assertEquals(UserState.WAITING_FOR_TITLE, read.getState());
+        assertEquals(5_000_000_000L, read.getPageStartId());
+        assertEquals(new SearchCursor("Мастер и Маргарита", 4), read.getSearchCursor());
+        assertNull(SessionCodec.fromBytes(SessionCodec.toBytes(new UserSession())).getSearchCursor());
+    }
+
+    @Test
+    void testCursorWithoutPageStartIsRead() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(UserState.WAITING_FOR_TITLE.ordinal());
+            out.writeByte(0);
+            out.writeInt(3);
+            out.writeLong(-1);
+            out.writeShort(-1);
+            byte[] query = "Книга".getBytes(StandardCharsets.UTF_8);
+            out.writeShort(query.length);
+            out.write(query);
+            out.writeInt(1);
+        }
+
+        UserSession read = SessionCodec.fromBytes(bytes.toByteArray());
+
+        assertEquals(new SearchCursor("Книга", 1), read.getSearchCursor());
+        assertEquals(0, read.getPageStartId());
+        assertNull(read.getBookIdForChange());
+    }
+
+    @Test
+    void testSessionWithStoredResultsFromOldFormatIsRead() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(UserState.WAITING_FOR_PAGE.ordinal());
+            out.writeByte(0);
+            out.writeInt(2);
+            out.writeLong(42);
+            out.writeShort(1);
+            byte[] title = "Книга".getBytes(StandardCharsets.UTF_8);
+            out.writeShort(title.length);
+            out.write(title);
+            out.writeShort(-1);
+            out.writeInt(100);
+        }
+
+        UserSession read = SessionCodec.fromBytes(bytes.toByteArray());
+
+        assertEquals(UserState.WAITING_FOR_PAGE, read.getState());
+        // номер страницы из старой записи не переносится, список откроется с начала
+        assertEquals(0, read.getPageStartId());
+        assertEquals(42L, read.getBookIdForChange());
+        assertNull(read.getSearchCursor());
+    }
+}
@@ -0,0 +1,110 @@
+package com.telegram_bots.bookbot.bot.session;
+
+import com.telegram_bots.bookbot.bot.service.UserStateService;
+import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
+import com.telegram_bots.bookbot.model.session.SearchCursor;
+import com.telegram_bots.bookbot.model.session.enums.UserState;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionSnapshotServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private UserStateService source;
+    private UserStateService target;
+
+    @BeforeEach
+    void setUp() {
+        file = dir.resolve("sessions.snapshot");
+        source = new UserStateService(new InMemorySessionStore(1000, 60, new SimpleMeterRegistry()));
+        target = new UserStateService(new InMemorySessionStore(1000, 60, new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        source.setState(1L, UserState.WAITING_FOR_PAGE);
+        source.setBookIdForChange(1L, 77L);
+        source.setBookStatusFilter(2L, BookStatus.READING);
+        source.setPageStartId(2L, 3);
+        source.saveSearchCursor(3L, new SearchCursor("Мастер и Маргарита", 2));
+
+        assertEquals(3, new SessionSnapshotService(source, file.toString(), 60).write(file));
+        assertEquals(3, new SessionSnapshotService(target, file.toString(), 60).read(file));
+
+        assertEquals(UserState.WAITING_FOR_PAGE, target.getState(1L));
+        assertEquals(77L, target.getBookIdForChange(1L));
+        assertEquals(BookStatus.READING, target.getBookStatusFilter(2L));
+        assertEquals(3, target.getPageStartId(2L));
+        assertNull(target.getBookIdForChange(2L));
+
+        assertEquals(new SearchCursor("Мастер и Маргарита", 2), target.getSearchCursor(3L));
+        assertNull(target.getSearchCursor(1L));
+    }
+
+    @Test
+    void testRestoreDoesNotOverrideLiveSession() throws IOException {
+        source.setState(1L, UserState.WAITING_FOR_RATING);
+        new SessionSnapshotService(source, file.toString(), 60).write(file);
+
+        target.setState(1L, UserState.WAITING_FOR_TITLE);
+        new SessionSnapshotService(target, file.toString(), 60).read(file);
+
+        assertEquals(UserState.WAITING_FOR_TITLE, target.getState(1L));
+    }
+
+    @Test
+    void testCorruptedSnapshotIsRejected() throws IOException {
+        source.setState(1L, UserState.WAITING_FOR_PAGE);
+        new SessionSnapshotService(source, file.toString(), 60).write(file);
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[20] ^= 0x7f;
+        Files.write(file, bytes);
+
+        SessionSnapshotService service = new SessionSnapshotService(target, file.toString(), 60);
+        assertThrows(IOException.class, () -> service.read(file));
+        service.restore();
+        assertEquals(UserState.NONE, target.getState(1L));
+    }
+
+    @Test
+    void testUnknownVersionIsRejected() throws IOException {
+        new SessionSnapshotService(source, file.toString(), 60).write(file);
+
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putShort(4, (short) (SessionSnapshotService.VERSION + 1));
+        Files.write(file, bytes);
+
+        IOException error = assertThrows(IOException.class,
+                () -> new SessionSnapshotService(target, file.toString(), 60).read(file));
+        assertTrue(error.getMessage().contains("версия"));
+    }
+
+    @Test
+    void testSaveSkipsWhenNothingChanged() throws IOException {
+        SessionSnapshotService service = new SessionSnapshotService(source, file.toString(), 60);
+        source.setState(1L, UserState.WAITING_FOR_PAGE);
+        service.save();
+        assertTrue(Files.exists(file));
+
+        Files.delete(file);
+        service.save();
+        assertFalse(Files.exists(file));
+
+        source.setState(1L, UserState.NONE);
+        service.save();
+        assertTrue(Files.exists(file));
+    }
+}
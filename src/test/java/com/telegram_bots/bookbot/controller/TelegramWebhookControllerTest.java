@@ -0,0 +1,155 @@
+package com.telegram_bots.bookbot.controller;
+
+import com.telegram_bots.bookbot.bot.MyTelegramBot;
+import com.telegram_bots.bookbot.bot.dispatcher.UpdateDeduplicator;
+import com.telegram_bots.bookbot.bot.dispatcher.UpdateDispatcher;
+import com.telegram_bots.bookbot.bot.outbound.OutboundMessageQueue;
+import com.telegram_bots.bookbot.bot.service.BotResponseService;
+import com.telegram_bots.bookbot.bot.service.InlineQueryService;
+import com.telegram_bots.bookbot.support.FakeTelegramServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.telegram.telegrambots.meta.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class TelegramWebhookControllerTest {
+
+    private static final String UPDATE_JSON = """
+            {"update_id": 100,
+             "message": {"message_id": 7, "date": 0,
+                         "chat": {"id": 555, "type": "private"},
+                         "text": "/start"}}
+            """;
+
+    private static final String SECRET = "s3cret";
+
+    private FakeTelegramServer telegram;
+    private UpdateDispatcher dispatcher;
+    private OutboundMessageQueue outbound;
+    private BotResponseService botResponseService;
+    private InlineQueryService inlineQueryService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        telegram = new FakeTelegramServer();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        dispatcher = new UpdateDispatcher(2, 4, 100, meterRegistry);
+        outbound = new OutboundMessageQueue(100, 100, 10, 3, 10, meterRegistry);
+        outbound.start();
+        botResponseService = mock(BotResponseService.class);
+        inlineQueryService = mock(InlineQueryService.class);
+
+        UpdateDeduplicator deduplicator = new UpdateDeduplicator(1024, 64, 60, meterRegistry);
+        MyTelegramBot bot = new MyTelegramBot(botResponseService, inlineQueryService, dispatcher, deduplicator, outbound, 2, telegram.getBaseUrl());
+        ReflectionTestUtils.setField(bot, "botToken", "123:TEST");
+        bot.init();
+
+        mockMvc = MockMvcBuilders.standaloneSetup(new TelegramWebhookController(bot, SECRET, "123:TEST"))
+                .addPlaceholderValue("bot.webhook.path", "/telegram/webhook")
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        outbound.stop();
+        dispatcher.shutdown();
+        telegram.close();
+    }
+
+    @Test
+    void testUpdateIsAcknowledgedAndAnsweredThroughBotApi() throws Exception {
+        when(botResponseService.handleTextMessage(any(Update.class)))
+                .thenReturn(List.of(SendMessage.builder().chatId("555").text("Привет из теста").build()));
+
+        mockMvc.perform(post("/telegram/webhook/" + SECRET)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(UPDATE_JSON))
+                .andExpect(status().isOk());
+
+        FakeTelegramServer.ApiCall call = telegram.awaitCall("sendmessage", 5, TimeUnit.SECONDS);
+        assertNotNull(call);
+        assertTrue(call.body().contains("Привет из теста"));
+        verify(botResponseService).handleTextMessage(argThat(update -> update.getUpdateId() == 100));
+    }
+
+    @Test
+    void testInlineQueryIsAnsweredDirectly() throws Exception {
+        when(inlineQueryService.answer(any())).thenAnswer(invocation -> AnswerInlineQuery.builder()
+                .inlineQueryId("q-1")
+                .results(List.of())
+                .build());
+
+        mockMvc.perform(post("/telegram/webhook/" + SECRET)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"update_id": 101,
+                                 "inline_query": {"id": "q-1", "query": "маст", "offset": "",
+                                                  "from": {"id": 555, "is_bot": false, "first_name": "Читатель"}}}
+                                """))
+                .andExpect(status().isOk());
+
+        FakeTelegramServer.ApiCall call = telegram.awaitCall("answerInlineQuery", 5, TimeUnit.SECONDS);
+        assertNotNull(call);
+        assertTrue(call.body().contains("q-1"));
+        verifyNoInteractions(botResponseService);
+    }
+
+    @Test
+    void testInlineMessageCallbackIsOnlyAnswered() throws Exception {
+        mockMvc.perform(post("/telegram/webhook/" + SECRET)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"update_id": 102,
+                                 "callback_query": {"id": "cb-1", "inline_message_id": "im-1", "data": "~a",
+                                                    "chat_instance": "1",
+                                                    "from": {"id": 555, "is_bot": false, "first_name": "Читатель"}}}
+                                """))
+                .andExpect(status().isOk());
+
+        FakeTelegramServer.ApiCall call = telegram.awaitCall("answercallbackquery", 5, TimeUnit.SECONDS);
+        assertNotNull(call);
+        assertTrue(call.body().contains("cb-1"));
+        verifyNoInteractions(botResponseService);
+    }
+
+    @Test
+    void testUpdateWithWrongSecretIsRejected() throws Exception {
+        mockMvc.perform(post("/telegram/webhook/guess")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(UPDATE_JSON))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/telegram/webhook")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(UPDATE_JSON))
+                .andExpect(status().isNotFound());
+
+        verifyNoInteractions(botResponseService);
+    }
+
+    @Test
+    void testSecretIsDerivedFromTokenWhenNotConfigured() {
+        String derived = TelegramWebhookController.secret("", "123:TEST");
+
+        assertEquals(64, derived.length());
+        assertEquals(derived, TelegramWebhookController.secret(null, "123:TEST"));
+        assertNotEquals(derived, TelegramWebhookController.secret("", "456:OTHER"));
+        assertEquals(SECRET, TelegramWebhookController.secret(SECRET, "123:TEST"));
+    }
+}
@@ -1,5 +1,7 @@
 package com.telegram_bots.bookbot.repository;
 
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.model.dto.Statistics;
 import com.telegram_bots.bookbot.model.entities.Book;
 import com.telegram_bots.bookbot.model.entities.User;
 import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
@@ -8,6 +10,9 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.sql.SQLException;
@@ -29,6 +34,12 @@ class BookRepositoryTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
     private User createAndSaveUser() {
         User user = new User();
         user.setTelegramId(123L);
@@ -60,19 +71,6 @@ class BookRepositoryTest {
         userRepository.deleteAll();
     }
 
-    @Test
-    @DisplayName("Сохранение и поиск книги по title и user")
-    void findByTitleAndUser() {
-        User user = createAndSaveUser();
-        Book book = createBook("Test Book", user);
-        bookRepository.save(book);
-
-        Optional<Book> found = bookRepository.findByTitleAndUser("Test Book", user);
-
-        assertThat(found).isPresent();
-        assertThat(found.get().getAuthor()).isEqualTo("Author Name");
-    }
-
     @Test
     @DisplayName("Поиск всех книг")
     void findAllBooks() {
@@ -107,4 +105,146 @@ class BookRepositoryTest {
         assertThat(user1Books).hasSize(2);
         assertThat(user2Books).hasSize(1);
     }
+
+    @Test
+    @DisplayName("Книги без числа страниц - по одной на название и автора")
+    void findWithUnknownTotalPages() {
+        User user = createAndSaveUser();
+        Book known = createBook("Мастер и Маргарита", user);
+        known.setTotalPages(500);
+        bookRepository.save(known);
+        Book zero = createBook("Собачье сердце", user);
+        zero.setTotalPages(0);
+        bookRepository.save(zero);
+        User other = userRepository.save(User.builder()
+                .telegramId(456L)
+                .username("otheruser")
+                .modifiedAt(Timestamp.from(Instant.now()))
+                .build());
+        bookRepository.save(createBook("Белая гвардия", user));
+        bookRepository.save(createBook("Белая гвардия", other));
+
+        List<LitresBookDto> found = bookRepository.findWithUnknownTotalPages("", "", PageRequest.of(0, 10));
+
+        assertThat(found).extracting(LitresBookDto::getTitle)
+                .containsExactly("Белая гвардия", "Собачье сердце");
+        assertThat(bookRepository.findWithUnknownTotalPages("Белая гвардия", found.get(0).getAuthor(),
+                PageRequest.of(0, 10))).extracting(LitresBookDto::getTitle).containsExactly("Собачье сердце");
+    }
+
+    @Test
+    @DisplayName("Страницы книг пользователя по ключу с фильтром по статусу")
+    void findPagesByKeyset() {
+        User user = createAndSaveUser();
+        User other = userRepository.save(User.builder()
+                .telegramId(456L)
+                .username("otheruser")
+                .modifiedAt(Timestamp.from(Instant.now()))
+                .build());
+        Book first = bookRepository.save(createBook("Первая", user));
+        Book read = createBook("Прочитанная", user);
+        read.setStatus(BookStatus.READ);
+        read = bookRepository.save(read);
+        Book third = bookRepository.save(createBook("Третья", user));
+        bookRepository.save(createBook("Чужая", other));
+
+        List<Book> firstPage = bookRepository.findPageAfter(123L, null, 0, PageRequest.of(0, 2));
+        assertThat(firstPage).extracting(Book::getTitle).containsExactly("Первая", "Прочитанная");
+
+        List<Book> nextPage = bookRepository.findPageAfter(123L, null, read.getId(), PageRequest.of(0, 2));
+        assertThat(nextPage).extracting(Book::getTitle).containsExactly("Третья");
+
+        List<Book> previous = bookRepository.findPageBefore(123L, null, third.getId(), PageRequest.of(0, 2));
+        assertThat(previous).extracting(Book::getTitle).containsExactly("Прочитанная", "Первая");
+
+        List<Book> reading = bookRepository.findPageAfter(123L, BookStatus.READING, first.getId(), PageRequest.of(0, 10));
+        assertThat(reading).extracting(Book::getTitle).containsExactly("Третья");
+    }
+
+    @Test
+    @DisplayName("Статистика одним агрегатным запросом")
+    void statisticsOf() {
+        User user = createAndSaveUser();
+        LocalDate today = LocalDate.of(2025, 5, 15);
+        Book todayBook = createBook("Сегодня", user);
+        todayBook.setFinishDate(today);
+        todayBook.setCurrentPage(100);
+        Book monthBook = createBook("В этом месяце", user);
+        monthBook.setFinishDate(today.minusDays(3));
+        monthBook.setCurrentPage(300);
+        Book lastYear = createBook("В прошлом году", user);
+        lastYear.setFinishDate(today.minusYears(1));
+        lastYear.setCurrentPage(50);
+        Book noPages = createBook("Без страниц", user);
+        noPages.setFinishDate(today.minusMonths(2));
+        noPages.setCurrentPage(null);
+        bookRepository.saveAll(List.of(todayBook, monthBook, lastYear, noPages, createBook("Не дочитана", user)));
+
+        assertThat(bookRepository.statisticsOf(123L, today))
+                .isEqualTo(new Statistics(1, 100, 2, 400, 3, 400, "В этом месяце", 300));
+        assertThat(bookRepository.statisticsOf(456L, today))
+                .isEqualTo(new Statistics(0, 0, 0, 0, 0, 0, "-", 0));
+    }
+
+    @Test
+    @DisplayName("Книга с тем же нормализованным названием у пользователя не добавляется второй раз")
+    void insertIfAbsentSkipsDuplicateTitle() {
+        User user = userRepository.upsertByTelegramId(321L);
+
+        Optional<Book> added = bookRepository.insertIfAbsent(createBook("Мастер и Маргарита", user));
+        Optional<Book> duplicate = bookRepository.insertIfAbsent(createBook("  мастер и маргарита!", user));
+
+        assertThat(added).isPresent();
+        assertThat(added.get().getId()).isNotNull();
+        assertThat(duplicate).isEmpty();
+        assertThat(bookRepository.findPageAfter(321L, null, 0, PageRequest.of(0, 10))).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("Старые книги получают нормализованное название, занятое название остаётся за первой")
+    void fillNormalizedTitles() {
+        User user = createAndSaveUser();
+        Book first = bookRepository.save(createBook("Мастер и Маргарита", user));
+        Book second = bookRepository.save(createBook("Собачье сердце", user));
+        entityManager.flush();
+        // дубликат мог появиться, пока индекс ничего не проверял
+        jdbcTemplate.update("UPDATE book SET normalized_title = NULL");
+        Book legacyDuplicate = bookRepository.save(createBook("Собачье сердце", user));
+        entityManager.flush();
+        jdbcTemplate.update("UPDATE book SET normalized_title = NULL");
+
+        assertThat(bookRepository.fillNormalizedTitles(2)).isEqualTo(2);
+
+        assertThat(normalizedTitleOf(first)).isEqualTo("мастер и маргарита");
+        assertThat(normalizedTitleOf(second)).isEqualTo("собачье сердце");
+        assertThat(normalizedTitleOf(legacyDuplicate)).isNull();
+        assertThat(bookRepository.insertIfAbsent(createBook("мастер и маргарита", user))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Старый дубликат без нормализованного названия сохраняется после изменения")
+    void legacyDuplicateCanBeUpdated() {
+        User user = createAndSaveUser();
+        bookRepository.save(createBook("Собачье сердце", user));
+        entityManager.flush();
+        jdbcTemplate.update("UPDATE book SET normalized_title = NULL");
+        Book legacyDuplicate = bookRepository.save(createBook("Собачье сердце", user));
+        entityManager.flush();
+        jdbcTemplate.update("UPDATE book SET normalized_title = NULL WHERE id = ?", legacyDuplicate.getId());
+        bookRepository.fillNormalizedTitles(10);
+        entityManager.clear();
+
+        Book loaded = bookRepository.findById(legacyDuplicate.getId()).orElseThrow();
+        loaded.setStatus(BookStatus.READ);
+        loaded.setCurrentPage(120);
+        bookRepository.save(loaded);
+        entityManager.flush();
+
+        assertThat(normalizedTitleOf(loaded)).isNull();
+        assertThat(bookRepository.findById(legacyDuplicate.getId()).orElseThrow().getStatus()).isEqualTo(BookStatus.READ);
+    }
+
+    private String normalizedTitleOf(Book book) {
+        return jdbcTemplate.queryForObject("SELECT normalized_title FROM book WHERE id = ?", String.class, book.getId());
+    }
 }
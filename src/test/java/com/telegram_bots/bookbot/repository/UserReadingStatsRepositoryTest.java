@@ -0,0 +1,79 @@
+package com.telegram_bots.bookbot.repository;
+
+import com.telegram_bots.bookbot.model.entities.Book;
+import com.telegram_bots.bookbot.model.entities.User;
+import com.telegram_bots.bookbot.model.entities.UserReadingStats;
+import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("test")
+class UserReadingStatsRepositoryTest {
+
+    @Autowired
+    private UserReadingStatsRepository statsRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User saveUser(long telegramId) {
+        return userRepository.save(User.builder()
+                .telegramId(telegramId)
+                .modifiedAt(Timestamp.from(Instant.now()))
+                .build());
+    }
+
+    private Book saveFinishedBook(String title, int pages, User user) {
+        return bookRepository.save(Book.builder()
+                .title(title)
+                .status(BookStatus.READ)
+                .finishDate(LocalDate.now())
+                .currentPage(pages)
+                .user(user)
+                .build());
+    }
+
+    @Test
+    @DisplayName("Владельцы книг без статистики и самая большая прочитанная книга")
+    void findOwnersWithoutStatsAndBiggestBook() {
+        User counted = saveUser(1L);
+        User missing = saveUser(2L);
+        saveFinishedBook("Первая", 100, counted);
+        saveFinishedBook("Толстая", 700, missing);
+        saveFinishedBook("Тонкая", 50, missing);
+        statsRepository.save(UserReadingStats.builder().telegramId(1L).build());
+
+        assertThat(statsRepository.findOwnersWithoutStats(PageRequest.of(0, 10))).containsExactly(2L);
+        assertThat(statsRepository.findForUpdate(1L)).isPresent();
+
+        List<Book> biggest = bookRepository.findBiggestFinished(2L, PageRequest.of(0, 1));
+        assertThat(biggest).extracting(Book::getTitle).containsExactly("Толстая");
+        assertThat(bookRepository.findFinishedByOwner(2L)).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("Повторная вставка пустой статистики не падает на первичном ключе")
+    void insertIfAbsentIgnoresExistingRow() {
+        statsRepository.insertIfAbsent(3L);
+        statsRepository.insertIfAbsent(3L);
+
+        assertThat(statsRepository.findById(3L)).get()
+                .extracting(UserReadingStats::getDayBooks, UserReadingStats::getBiggestBookId)
+                .containsExactly(0, null);
+    }
+}
@@ -1,11 +1,13 @@
 package com.telegram_bots.bookbot.repository;
 
 import com.telegram_bots.bookbot.model.entities.User;
+import jakarta.persistence.PersistenceException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.sql.Timestamp;
@@ -13,6 +15,7 @@ import java.time.Instant;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @DataJpaTest
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
@@ -22,6 +25,9 @@ class UserRepositoryTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private TestEntityManager entityManager;
+
     @Test
     @DisplayName("Поиск пользователя по Telegram ID")
     void findByTelegramId() {
@@ -38,4 +44,25 @@ class UserRepositoryTest {
         assertThat(found).isPresent();
         assertThat(found.get().getUsername()).isEqualTo("testuser");
     }
+
+    @Test
+    @DisplayName("Второй пользователь с тем же Telegram ID не сохраняется")
+    void telegramIdIsUnique() {
+        userRepository.save(User.builder().telegramId(777L).build());
+        entityManager.flush();
+
+        userRepository.save(User.builder().telegramId(777L).build());
+
+        assertThatThrownBy(entityManager::flush).isInstanceOf(PersistenceException.class);
+    }
+
+    @Test
+    @DisplayName("Повторный upsert возвращает того же пользователя")
+    void upsertByTelegramIdReturnsExistingUser() {
+        User created = userRepository.upsertByTelegramId(888L);
+        User again = userRepository.upsertByTelegramId(888L);
+
+        assertThat(again.getId()).isEqualTo(created.getId());
+        assertThat(userRepository.findByTelegramId(888L)).map(User::getId).contains(created.getId());
+    }
 }
@@ -0,0 +1,94 @@
+package com.telegram_bots.bookbot.services;
+
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.model.entities.CatalogBook;
+import com.telegram_bots.bookbot.repository.CatalogBookRepository;
+import com.telegram_bots.bookbot.service.BookCatalogService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BookCatalogServiceTest {
+
+    @Mock
+    private CatalogBookRepository catalogBookRepository;
+
+    private BookCatalogService catalog;
+
+    @BeforeEach
+    void setUp() {
+        catalog = new BookCatalogService(catalogBookRepository, 0.3, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testLoadIndexesStoredBooks() {
+        when(catalogBookRepository.findAll()).thenReturn(List.of(
+                new CatalogBook(1L, "Мастер и Маргарита", "Михаил Булгаков", 500, "мастер и маргарита|михаил булгаков")));
+
+        catalog.load();
+
+        List<BookCatalogService.Match> matches = catalog.search("мастер и маргарита!", 5);
+        assertEquals(1, matches.size());
+        assertEquals("Михаил Булгаков", matches.get(0).book().getAuthor());
+        assertEquals(500, matches.get(0).book().getTotalPages());
+    }
+
+    @Test
+    void testRememberSavesOnlyNewBooks() {
+        LitresBookDto master = new LitresBookDto("Мастер и Маргарита", "Михаил Булгаков", 500);
+        LitresBookDto heart = new LitresBookDto("Собачье сердце", "Михаил Булгаков", 120);
+
+        catalog.remember(List.of(master, heart));
+        long version = catalog.version();
+        catalog.remember(List.of(new LitresBookDto("мастер и маргарита", "Михаил  Булгаков", 500)));
+
+        assertEquals(2, catalog.size());
+        // повтор ничего не изменил - индексам по каталогу перестраиваться незачем
+        assertEquals(version, catalog.version());
+        verify(catalogBookRepository, times(2)).save(any(CatalogBook.class));
+        assertEquals("Собачье сердце", catalog.search("собачье сердце", 5).get(0).book().getTitle());
+    }
+
+    @Test
+    void testDuplicateFromAnotherInstanceIsIgnored() {
+        when(catalogBookRepository.save(any(CatalogBook.class))).thenThrow(new DataIntegrityViolationException("dup"));
+
+        catalog.remember(List.of(new LitresBookDto("Мастер и Маргарита", "Михаил Булгаков", 500)));
+
+        assertEquals(1, catalog.size());
+    }
+
+    @Test
+    void testFindContainingMatchesAnyPartOfTitleLiterally() {
+        catalog.remember(List.of(
+                new LitresBookDto("Мастер и Маргарита", "Михаил Булгаков", 500),
+                new LitresBookDto("Собачье сердце", "Михаил Булгаков", 120),
+                new LitresBookDto("Сердце тьмы", "Джозеф Конрад", 200)));
+
+        assertEquals(List.of("Собачье сердце", "Сердце тьмы"),
+                catalog.findContaining("СЕРДЦЕ", 10).stream().map(LitresBookDto::getTitle).toList());
+        assertEquals(1, catalog.findContaining("сердце", 1).size());
+        // символы шаблонов LIKE здесь ничего не значат
+        assertTrue(catalog.findContaining("%", 10).isEmpty());
+        assertTrue(catalog.findContaining("  ", 10).isEmpty());
+    }
+
+    @Test
+    void testFindByTitleAndAuthor() {
+        catalog.remember(List.of(new LitresBookDto("Мастер и Маргарита", "Михаил Булгаков", 500)));
+
+        assertEquals(500, catalog.find("мастер и маргарита", "Михаил  Булгаков").orElseThrow().getTotalPages());
+        assertTrue(catalog.find("Мастер и Маргарита", "Другой автор").isEmpty());
+    }
+}
@@ -0,0 +1,149 @@
+package com.telegram_bots.bookbot.services;
+
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.repository.BookRepository;
+import com.telegram_bots.bookbot.service.BookCatalogService;
+import com.telegram_bots.bookbot.service.BookEnrichmentService;
+import com.telegram_bots.bookbot.service.LitresHttpClient;
+import com.telegram_bots.bookbot.service.LitresService;
+import com.telegram_bots.bookbot.utils.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BookEnrichmentServiceTest {
+
+    private static final String BASE_URL = "https://www.litres.ru";
+
+    @Mock
+    private BookRepository bookRepository;
+
+    @Mock
+    private BookCatalogService bookCatalogService;
+
+    @Mock
+    private LitresService litresService;
+
+    @Mock
+    private LitresHttpClient litresHttpClient;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private BookEnrichmentService enrichmentService;
+
+    private final LitresBookDto master = new LitresBookDto("Мастер и Маргарита", "Михаил Булгаков");
+    private final LitresBookDto heart = new LitresBookDto("Собачье сердце", null);
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // interval 0 - фоновый поток не запускается, циклы вызываем вручную
+        enrichmentService = new BookEnrichmentService(bookRepository, bookCatalogService, litresService,
+                litresHttpClient, jdbcTemplate, 1, 1000, 24, 0, meterRegistry);
+        lenient().when(litresService.getCircuitState()).thenReturn(CircuitBreaker.State.CLOSED);
+        lenient().when(bookCatalogService.find(anyString(), any())).thenReturn(Optional.empty());
+    }
+
+    @Test
+    void testCatalogAndDetailPageAreUsedAndBatchUpdated() throws IOException {
+        enrichmentService = new BookEnrichmentService(bookRepository, bookCatalogService, litresService,
+                litresHttpClient, jdbcTemplate, 20, 1000, 24, 0, meterRegistry);
+        when(bookRepository.findWithUnknownTotalPages(anyString(), anyString(), any(Pageable.class))).thenReturn(List.of(master, heart));
+        when(bookCatalogService.find("Мастер и Маргарита", "Михаил Булгаков"))
+                .thenReturn(Optional.of(new LitresBookDto("Мастер и Маргарита", "Михаил Булгаков", 500)));
+        when(litresHttpClient.fetch("Собачье сердце")).thenReturn(Jsoup.parse("""
+                <div class="art-item">
+                  <div class="art-item__name"><a href="/book/sobache-serdce/">Собачье сердце</a></div>
+                </div>
+                """, BASE_URL + "/pages/rmd_search/"));
+        when(litresHttpClient.fetchPage(BASE_URL + "/book/sobache-serdce/"))
+                .thenReturn(Jsoup.parse("<div>Объём: 120 стр.</div>"));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{2, 1});
+
+        assertEquals(3, enrichmentService.enrichBatch());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> updates = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("UPDATE book SET total_pages"), updates.capture());
+        assertArrayEquals(new Object[]{500, "Мастер и Маргарита", "Михаил Булгаков"}, updates.getValue().get(0));
+        assertArrayEquals(new Object[]{120, "Собачье сердце", ""}, updates.getValue().get(1));
+        verify(litresHttpClient, never()).fetch("Мастер и Маргарита Михаил Булгаков");
+        assertEquals(2, meterRegistry.counter("book.enrichment.enriched").count());
+        assertEquals(3, meterRegistry.counter("book.enrichment.updated.rows").count());
+        assertEquals(0, enrichmentService.getQueueSize());
+    }
+
+    @Test
+    void testBatchSizeLimitsCycleAndFailedBookIsNotRetriedSoon() throws IOException {
+        when(bookRepository.findWithUnknownTotalPages(anyString(), anyString(), any(Pageable.class))).thenReturn(List.of(master, heart));
+        when(litresHttpClient.fetch(anyString())).thenThrow(new IOException("timeout"));
+
+        assertEquals(0, enrichmentService.enrichBatch());
+        assertEquals(1, enrichmentService.getQueueSize());
+        verify(litresHttpClient).fetch("Мастер и Маргарита Михаил Булгаков");
+
+        // второй цикл берёт следующую книгу, неудачную не повторяет
+        enrichmentService.enrichBatch();
+        verify(litresHttpClient).fetch("Собачье сердце");
+        verify(litresHttpClient, times(2)).fetch(anyString());
+        assertEquals(2, meterRegistry.counter("book.enrichment.failed").count());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testScanContinuesAfterLastProcessedBookAndWrapsAround() throws IOException {
+        when(bookRepository.findWithUnknownTotalPages(anyString(), anyString(), any(Pageable.class)))
+                .thenReturn(List.of(master, heart), List.of());
+        when(litresHttpClient.fetch(anyString())).thenThrow(new IOException("timeout"));
+
+        enrichmentService.enrichBatch();
+        enrichmentService.enrichBatch();
+        enrichmentService.enrichBatch();
+
+        InOrder inOrder = inOrder(bookRepository);
+        inOrder.verify(bookRepository).findWithUnknownTotalPages(eq(""), eq(""), any(Pageable.class));
+        inOrder.verify(bookRepository).findWithUnknownTotalPages(eq("Мастер и Маргарита"), eq("Михаил Булгаков"),
+                any(Pageable.class));
+        // пустая порция - конец таблицы, следующий цикл снова с начала
+        inOrder.verify(bookRepository).findWithUnknownTotalPages(eq(""), eq(""), any(Pageable.class));
+    }
+
+    @Test
+    void testBookMissingOnLitresCountsAsNotFound() throws IOException {
+        when(bookRepository.findWithUnknownTotalPages(anyString(), anyString(), any(Pageable.class))).thenReturn(List.of(heart));
+        when(litresHttpClient.fetch("Собачье сердце")).thenReturn(Jsoup.parse("<div class=\"art-item\"></div>"));
+
+        assertEquals(0, enrichmentService.enrichBatch());
+
+        assertEquals(1, meterRegistry.counter("book.enrichment.not.found").count());
+        verify(litresHttpClient, never()).fetchPage(anyString());
+    }
+
+    @Test
+    void testOpenCircuitSkipsCycle() {
+        when(litresService.getCircuitState()).thenReturn(CircuitBreaker.State.OPEN);
+
+        assertEquals(0, enrichmentService.enrichBatch());
+
+        verifyNoInteractions(bookRepository, litresHttpClient, jdbcTemplate);
+    }
+}
@@ -0,0 +1,99 @@
+package com.telegram_bots.bookbot.services;
+
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.model.dto.SearchResult;
+import com.telegram_bots.bookbot.service.BookCatalogService;
+import com.telegram_bots.bookbot.service.BookSearchService;
+import com.telegram_bots.bookbot.service.search.SearchFanOut;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BookSearchServiceTest {
+
+    @Mock
+    private BookCatalogService bookCatalogService;
+
+    @Mock
+    private SearchFanOut searchFanOut;
+
+    private BookSearchService bookSearchService;
+
+    private final LitresBookDto master = new LitresBookDto("Мастер и Маргарита", "Михаил Булгаков", 500);
+
+    @BeforeEach
+    void setUp() {
+        bookSearchService = new BookSearchService(bookCatalogService, searchFanOut, 0.8,
+                new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testConfidentCatalogMatchSkipsRemoteSearch() {
+        when(bookCatalogService.search("мастер и маргарита", 5))
+                .thenReturn(List.of(new BookCatalogService.Match(master, 1.0)));
+
+        SearchResult result = bookSearchService.search("мастер и маргарита", 5);
+
+        assertFalse(result.degraded());
+        assertEquals(List.of(master), result.books());
+        verifyNoInteractions(searchFanOut);
+    }
+
+    @Test
+    void testWeakCatalogMatchGoesToRemoteSearchAndRemembers() {
+        LitresBookDto other = new LitresBookDto("Мастер", "Другой автор", 100);
+        when(bookCatalogService.search("мастер", 5)).thenReturn(List.of(new BookCatalogService.Match(master, 0.5)));
+        when(searchFanOut.search("мастер")).thenReturn(SearchResult.of(List.of(master, other)));
+
+        SearchResult result = bookSearchService.search("мастер", 5);
+
+        assertEquals(List.of(master, other), result.books());
+        verify(bookCatalogService).remember(List.of(master, other));
+    }
+
+    @Test
+    void testRemoteSearchUnavailableFallsBackToCatalog() {
+        when(bookCatalogService.search("мастер", 5)).thenReturn(List.of(new BookCatalogService.Match(master, 0.5)));
+        when(searchFanOut.search("мастер")).thenReturn(SearchResult.degraded(List.of()));
+
+        SearchResult result = bookSearchService.search("мастер", 5);
+
+        assertTrue(result.degraded());
+        assertEquals(List.of(master), result.books());
+        verify(bookCatalogService, never()).findContaining(anyString(), anyInt());
+    }
+
+    @Test
+    void testRemoteSearchUnavailableAndNoSimilarBooksSearchesCatalogTitles() {
+        when(bookCatalogService.search(anyString(), eq(5))).thenReturn(List.of());
+        when(searchFanOut.search("мастер")).thenReturn(SearchResult.degraded(List.of()));
+        when(bookCatalogService.findContaining("мастер", 5)).thenReturn(List.of(master));
+
+        SearchResult result = bookSearchService.search("мастер", 5);
+
+        assertTrue(result.degraded());
+        assertEquals(List.of(master), result.books());
+        verify(bookCatalogService, never()).remember(anyList());
+    }
+
+    @Test
+    void testSearchMoreSkipsCatalogAndRemembers() {
+        when(searchFanOut.search("мастер", 10)).thenReturn(SearchResult.of(List.of(master)));
+
+        SearchResult result = bookSearchService.searchMore("мастер", 10);
+
+        assertEquals(List.of(master), result.books());
+        verify(bookCatalogService).remember(List.of(master));
+        verify(bookCatalogService, never()).search(anyString(), anyInt());
+    }
+}
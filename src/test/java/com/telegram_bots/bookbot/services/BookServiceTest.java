@@ -1,16 +1,20 @@
 package com.telegram_bots.bookbot.services;
 
+import com.telegram_bots.bookbot.model.dto.BookPage;
 import com.telegram_bots.bookbot.model.entities.Book;
 import com.telegram_bots.bookbot.model.entities.User;
 import com.telegram_bots.bookbot.model.entities.enums.BookStatus;
 import com.telegram_bots.bookbot.repository.BookRepository;
-import com.telegram_bots.bookbot.repository.UserRepository;
+import com.telegram_bots.bookbot.service.BookLibraryChangedEvent;
 import com.telegram_bots.bookbot.service.BookService;
+import com.telegram_bots.bookbot.service.ReadingStatsService;
+import com.telegram_bots.bookbot.service.UserResolver;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.List;
 import java.util.Optional;
@@ -22,7 +26,13 @@ class BookServiceTest {
     private BookRepository bookRepository;
 
     @Mock
-    private UserRepository userRepository;
+    private UserResolver userResolver;
+
+    @Mock
+    private ReadingStatsService readingStatsService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
 
     @InjectMocks
     private BookService bookService;
@@ -41,7 +51,7 @@ class BookServiceTest {
     void testGetAllBooksOfUser_WhenUserExists() {
         Long telegramId = 123L;
         User user = new User();
-        Mockito.when(userRepository.findByTelegramId(telegramId)).thenReturn(Optional.of(user));
+        Mockito.when(userResolver.find(telegramId)).thenReturn(Optional.of(user));
         List<Book> books = List.of(new Book(), new Book());
         Mockito.when(bookRepository.findByUser(user)).thenReturn(books);
 
@@ -52,7 +62,7 @@ class BookServiceTest {
 
     @Test
     void testGetAllBooksOfUser_WhenUserDoesNotExist() {
-        Mockito.when(userRepository.findByTelegramId(123L)).thenReturn(Optional.empty());
+        Mockito.when(userResolver.find(123L)).thenReturn(Optional.empty());
 
         List<Book> result = bookService.getAllBooksOfUser(123L);
 
@@ -87,11 +97,10 @@ class BookServiceTest {
         String title = "Test";
         String author = "Author";
 
-        Mockito.when(userRepository.findByTelegramId(telegramId)).thenReturn(Optional.empty());
+        Mockito.when(userResolver.getOrCreate(telegramId)).thenReturn(User.builder().telegramId(telegramId).build());
 
-        Mockito.when(userRepository.save(Mockito.any(User.class))).thenAnswer(inv -> inv.getArgument(0));
-
-        Mockito.when(bookRepository.save(Mockito.any(Book.class))).thenAnswer(inv -> inv.getArgument(0));
+        Mockito.when(bookRepository.insertIfAbsent(Mockito.any(Book.class)))
+                .thenAnswer(inv -> Optional.of(inv.getArgument(0)));
 
         Book result = bookService.addBook(telegramId, title, author);
 
@@ -99,6 +108,7 @@ class BookServiceTest {
         Assertions.assertEquals(title, result.getTitle());
         Assertions.assertEquals(author, result.getAuthor());
         Assertions.assertEquals(BookStatus.PLANNED, result.getStatus());
+        Mockito.verify(eventPublisher).publishEvent(new BookLibraryChangedEvent(telegramId));
     }
 
     @Test
@@ -107,14 +117,15 @@ class BookServiceTest {
         String title = "Test";
         String author = "Author";
         User user = new User();
-        Book book = new Book();
 
-        Mockito.when(userRepository.findByTelegramId(telegramId)).thenReturn(Optional.of(user));
-        Mockito.when(bookRepository.findByTitleAndUser(title, user)).thenReturn(Optional.of(book));
+        Mockito.when(userResolver.getOrCreate(telegramId)).thenReturn(user);
+        // уникальный индекс (user_id, normalized_title) отклонил вставку
+        Mockito.when(bookRepository.insertIfAbsent(Mockito.any(Book.class))).thenReturn(Optional.empty());
 
         Book result = bookService.addBook(telegramId, title, author);
 
         Assertions.assertNull(result);
+        Mockito.verifyNoInteractions(eventPublisher);
     }
 
     @Test
@@ -154,5 +165,73 @@ class BookServiceTest {
         bookService.deleteBook(1L);
         Mockito.verify(bookRepository).deleteById(1L);
     }
-}
 
+    @Test
+    void testDeleteBook_NotifiesOwnerLibrary() {
+        Book book = Book.builder().id(1L).title("Тест").user(User.builder().telegramId(5L).build()).build();
+        Mockito.when(bookRepository.findById(1L)).thenReturn(Optional.of(book));
+
+        bookService.deleteBook(1L);
+
+        Mockito.verify(eventPublisher).publishEvent(new BookLibraryChangedEvent(5L));
+    }
+
+    @Test
+    void getBooksBefore_returnsPageInAscendingOrder() {
+        Book first = Book.builder().id(1L).title("Первая").build();
+        Book second = Book.builder().id(2L).title("Вторая").build();
+        Mockito.when(bookRepository.findPageBefore(Mockito.eq(123L), Mockito.isNull(), Mockito.eq(3L), Mockito.any()))
+                .thenReturn(List.of(second, first));
+        Mockito.when(bookRepository.findPageAfter(Mockito.eq(123L), Mockito.isNull(), Mockito.eq(2L), Mockito.any()))
+                .thenReturn(List.of(Book.builder().id(3L).build()));
+
+        BookPage page = bookService.getBooksBefore(123L, null, 3L, 10);
+
+        Assertions.assertEquals(List.of(first, second), page.books());
+        Assertions.assertFalse(page.hasPrevious());
+        Assertions.assertTrue(page.hasNext());
+    }
+
+    @Test
+    void getBooksFrom_startsAtRememberedBookWithoutOffset() {
+        Book first = Book.builder().id(21L).title("Первая на странице").build();
+        Mockito.when(bookRepository.findPageAfter(Mockito.eq(123L), Mockito.isNull(), Mockito.eq(20L), Mockito.any()))
+                .thenReturn(List.of(first));
+        Mockito.when(bookRepository.findPageBefore(Mockito.eq(123L), Mockito.isNull(), Mockito.eq(21L), Mockito.any()))
+                .thenReturn(List.of(Book.builder().id(5L).build()));
+
+        BookPage page = bookService.getBooksFrom(123L, null, 21L, 10);
+
+        Assertions.assertEquals(List.of(first), page.books());
+        Assertions.assertTrue(page.hasPrevious());
+        Assertions.assertFalse(page.hasNext());
+    }
+
+    @Test
+    void getBooksAfter_detectsNextPageByExtraRow() {
+        List<Book> rows = List.of(Book.builder().id(11L).build(), Book.builder().id(12L).build(),
+                Book.builder().id(13L).build());
+        Mockito.when(bookRepository.findPageAfter(Mockito.eq(123L), Mockito.isNull(), Mockito.eq(10L), Mockito.any()))
+                .thenReturn(rows);
+        Mockito.when(bookRepository.findPageBefore(Mockito.eq(123L), Mockito.isNull(), Mockito.eq(11L), Mockito.any()))
+                .thenReturn(List.of(Book.builder().id(10L).build()));
+
+        BookPage page = bookService.getBooksAfter(123L, null, 10L, 2);
+
+        Assertions.assertEquals(rows.subList(0, 2), page.books());
+        Assertions.assertTrue(page.hasPrevious());
+        Assertions.assertTrue(page.hasNext());
+    }
+
+    @Test
+    void updateStatus_reportsFinishedBookToReadingStats() {
+        User user = User.builder().telegramId(123L).build();
+        Book book = Book.builder().id(5L).title("Книга").currentPage(120).status(BookStatus.READING).user(user).build();
+        Mockito.when(bookRepository.save(book)).thenReturn(book);
+
+        bookService.updateStatus(book, BookStatus.READ);
+
+        Mockito.verify(readingStatsService).onBookChanged(123L, null,
+                new ReadingStatsService.Contribution(5L, "Книга", book.getFinishDate(), 120));
+    }
+}
@@ -0,0 +1,237 @@
+package com.telegram_bots.bookbot.services;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.service.LitresHttpClient;
+import com.telegram_bots.bookbot.service.LitresPageParser;
+import com.telegram_bots.bookbot.service.LitresService;
+import com.telegram_bots.bookbot.utils.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LitresHttpClientTest {
+
+    private static final String SEARCH_PAGE = """
+            <div class="art-item">
+              <div class="art-item__name"><a>Мастер и Маргарита</a></div>
+              <div class="art-item__author"><a>Михаил Булгаков</a></div>
+              <div class="art-item__annotation">Объем: 900 тыс. знаков</div>
+            </div>
+            """;
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicReference<String> lastQuery = new AtomicReference<>();
+    private final CountDownLatch hang = new CountDownLatch(1);
+    private volatile boolean slow;
+    // страница отдаётся частями: первые двадцать карточек сразу, остальное после hang
+    private volatile boolean stalledPage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/pages/rmd_search/", exchange -> {
+            requests.incrementAndGet();
+            lastQuery.set(exchange.getRequestURI().getQuery());
+            if (slow) {
+                try {
+                    hang.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (stalledPage) {
+                writeStalledPage(exchange.getResponseBody(), exchange);
+                return;
+            }
+            byte[] body = SEARCH_PAGE.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        hang.countDown();
+        server.stop(0);
+    }
+
+    private void writeStalledPage(OutputStream out, HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        try (out) {
+            out.write("<html><body>".getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < 20; i++) {
+                out.write(SEARCH_PAGE.replace("Маргарита", "Маргарита " + i).getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+            hang.await(5, TimeUnit.SECONDS);
+            out.write("</body></html>".getBytes(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ignored) {
+            // клиент закрыл соединение, дочитав сколько нужно
+        }
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private LitresService service(LitresHttpClient client) {
+        return new LitresService(client, 100, Duration.ofMinutes(60), Duration.ZERO,
+                System::nanoTime, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testAsyncSearchParsesAndCaches() throws Exception {
+        LitresHttpClient client = new LitresHttpClient(baseUrl(), "http", 1000, 2000, 1);
+        LitresService litresService = service(client);
+
+        List<LitresBookDto> books = litresService.searchBooksAsync("Мастер и Маргарита").get(5, TimeUnit.SECONDS);
+        List<LitresBookDto> cached = litresService.searchBooksAsync("мастер и маргарита").get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, books.size());
+        assertEquals("Михаил Булгаков", books.get(0).getAuthor());
+        assertEquals(500, books.get(0).getTotalPages());
+        assertEquals(books, cached);
+        assertEquals(1, requests.get());
+        assertTrue(lastQuery.get().startsWith("q=Мастер"));
+        client.shutdown();
+    }
+
+    @Test
+    void testSyncSearchUsesHttpClient() {
+        LitresHttpClient client = new LitresHttpClient(baseUrl(), "http", 1000, 2000, 1);
+
+        assertEquals(1, service(client).searchBooks("мастер").size());
+        client.shutdown();
+    }
+
+    @Test
+    void testAsyncSearchGivesUpAtDeadline() throws Exception {
+        slow = true;
+        LitresHttpClient client = new LitresHttpClient(baseUrl(), "http", 1000, 300, 1);
+
+        long started = System.nanoTime();
+        List<LitresBookDto> books = service(client).searchBooksAsync("мастер").get(3, TimeUnit.SECONDS);
+
+        assertTrue(books.isEmpty());
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(2));
+        client.shutdown();
+    }
+
+    @Test
+    void testFetchPageRejectsOtherHosts() {
+        LitresHttpClient client = new LitresHttpClient(baseUrl(), "jsoup", 1000, 2000, 1);
+
+        assertThrows(IOException.class, () -> client.fetchPage("https://example.com/book/1/"));
+        assertThrows(IOException.class, () -> client.fetchPage(baseUrl() + ".evil.com/book/1/"));
+        assertEquals(0, requests.get());
+    }
+
+    @Test
+    void testJsoupModeHasTimeout() {
+        slow = true;
+        LitresHttpClient client = new LitresHttpClient(baseUrl(), "jsoup", 1000, 300, 1);
+
+        long started = System.nanoTime();
+        assertThrows(IOException.class, () -> client.fetch("мастер"));
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(2));
+        client.shutdown();
+    }
+
+    @Test
+    void testQueuedBlockingFetchCountsTowardDeadline() throws Exception {
+        LitresHttpClient client = new LitresHttpClient(baseUrl(), "jsoup", 1000, 300, 1, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            client.submit(() -> release.await(5, TimeUnit.SECONDS));
+            assertFalse(client.hasIdleCapacity());
+
+            long started = System.nanoTime();
+            CompletableFuture<String> queued = client.submit(() -> "late");
+            CompletableFuture<String> rejected = client.submit(() -> "rejected");
+
+            // очередь на один запрос: третий отклоняется сразу, второй ждёт не дольше дедлайна
+            assertTrue(rejected.isCompletedExceptionally());
+            ExecutionException error = assertThrows(ExecutionException.class, () -> queued.get(2, TimeUnit.SECONDS));
+            assertInstanceOf(TimeoutException.class, error.getCause());
+            assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(1));
+        } finally {
+            release.countDown();
+            client.shutdown();
+        }
+    }
+
+    @Test
+    void testSearchReturnsDegradedAtDeadline() {
+        slow = true;
+        LitresHttpClient client = new LitresHttpClient(baseUrl(), "jsoup", 1000, 300, 1);
+
+        long started = System.nanoTime();
+        assertTrue(service(client).search("мастер").degraded());
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(2));
+        client.shutdown();
+    }
+
+    @Test
+    void testStreamingStopsAfterEnoughBooks() throws Exception {
+        stalledPage = true;
+        for (String mode : List.of("http", "jsoup")) {
+            LitresHttpClient client = new LitresHttpClient(baseUrl(), mode, 1000, 4000, 1);
+            LitresService litresService = new LitresService(client, 0, Duration.ofMinutes(60), Duration.ZERO,
+                    new CircuitBreaker(5, Duration.ofSeconds(30)), 0, Duration.ZERO, true, 2,
+                    System::nanoTime, new SimpleMeterRegistry());
+
+            long started = System.nanoTime();
+            List<LitresBookDto> books = litresService.searchBooksAsync("мастер").get(3, TimeUnit.SECONDS);
+
+            // хвост страницы придёт только через 5 секунд, ждать его не нужно
+            assertEquals(List.of("Мастер и Маргарита 0", "Мастер и Маргарита 1"),
+                    books.stream().map(LitresBookDto::getTitle).toList(), mode);
+            assertEquals(500, books.get(1).getTotalPages());
+            assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(2), mode);
+            client.shutdown();
+        }
+    }
+
+    @Test
+    void testStreamingGivesUpAtDeadlineWhileReadingBody() throws Exception {
+        // заголовки приходят сразу, а тело обрывается на середине
+        stalledPage = true;
+        LitresHttpClient client = new LitresHttpClient(baseUrl(), "http", 1000, 300, 1);
+
+        CompletableFuture<List<LitresBookDto>> books = client.fetchStreamAsync("мастер",
+                parser -> new LitresPageParser(0).parse(parser));
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> books.get(2, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, error.getCause());
+        client.shutdown();
+    }
+}
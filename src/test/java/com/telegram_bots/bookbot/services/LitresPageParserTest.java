@@ -0,0 +1,123 @@
+package com.telegram_bots.bookbot.services;
+
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.service.LitresPageParser;
+import org.jsoup.Jsoup;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LitresPageParserTest {
+
+    private static final String PAGE = """
+            <html><body>
+            <div class="art-item">
+              <div class="art-item__name"><a>Мастер и Маргарита</a></div>
+              <div class="art-item__author"><a>Михаил Булгаков</a></div>
+              <div class="art-item__annotation">Объем: 900 тыс. знаков</div>
+            </div>
+            <div class="art-item">
+              <div class="art-item__author"><a>Без названия</a></div>
+            </div>
+            <div class="art-item">
+              <div class="art-item__name"><a>Собачье сердце</a></div>
+              <div class="art-item__author"><a>Михаил Булгаков</a></div>
+              <div data-test-id="annotation">Объем: 180 тыс. знаков</div>
+            </div>
+            <div class="art-item">
+              <div class="art-item__name"><a>Белая гвардия</a></div>
+            </div>
+            </body></html>
+            """;
+
+    @Test
+    void testStreamAndDomGiveSameBooks() throws IOException {
+        List<LitresBookDto> dom = new LitresPageParser(0).parse(Jsoup.parse(PAGE));
+        List<LitresBookDto> stream = new LitresPageParser(0).parse(streamParser(PAGE));
+
+        assertEquals(3, dom.size());
+        assertEquals(dom, stream);
+        assertEquals(500, stream.get(0).getTotalPages());
+        assertEquals(100, stream.get(1).getTotalPages());
+        assertEquals(0, stream.get(2).getTotalPages());
+    }
+
+    @Test
+    void testLimitSkipsBooksWithoutTitle() throws IOException {
+        List<LitresBookDto> dom = new LitresPageParser(2).parse(Jsoup.parse(PAGE));
+        List<LitresBookDto> stream = new LitresPageParser(2).parse(streamParser(PAGE));
+
+        assertEquals(List.of("Мастер и Маргарита", "Собачье сердце"),
+                stream.stream().map(LitresBookDto::getTitle).toList());
+        assertEquals(dom, stream);
+    }
+
+    @Test
+    void testStreamStopsBeforeRestOfPage() throws IOException {
+        String item = PAGE.substring(PAGE.indexOf("<div class=\"art-item\">"), PAGE.indexOf("<div class=\"art-item\">", 20));
+        String page = "<html><body>" + item.repeat(2000) + "</body></html>";
+        CountingReader reader = new CountingReader(new StringReader(page));
+
+        List<LitresBookDto> books = new LitresPageParser(2)
+                .parse(new StreamParser(Parser.htmlParser()).parse(reader, "https://www.litres.ru/"));
+
+        assertEquals(2, books.size());
+        assertTrue(reader.read < page.length() / 4, "прочитано " + reader.read + " из " + page.length());
+    }
+
+    @Test
+    void testFindCardMatchesNormalizedTitleAndResolvesLink() {
+        String page = """
+                <div class="art-item">
+                  <div class="art-item__name"><a href="/book/mihail-bulgakov/master-i-margarita-1/">Мастер и Маргарита</a></div>
+                  <div class="art-item__author"><a>Михаил Булгаков</a></div>
+                </div>
+                <div class="art-item">
+                  <div class="art-item__name"><a href="/book/other/">Собачье сердце</a></div>
+                </div>
+                """;
+
+        LitresPageParser.Card card = new LitresPageParser(0)
+                .findCard(Jsoup.parse(page, "https://www.litres.ru/pages/rmd_search/"), "  мастер и МАРГАРИТА ")
+                .orElseThrow();
+
+        assertEquals("Мастер и Маргарита", card.book().getTitle());
+        assertEquals(0, card.book().getTotalPages());
+        assertEquals("https://www.litres.ru/book/mihail-bulgakov/master-i-margarita-1/", card.detailUrl());
+        assertTrue(new LitresPageParser(0).findCard(Jsoup.parse(page), "Белая гвардия").isEmpty());
+    }
+
+    @Test
+    void testDetailTotalPages() {
+        assertEquals(290, LitresPageParser.detailTotalPages(Jsoup.parse("<div>Объём: 290 стр.</div>")));
+        assertEquals(500, LitresPageParser.detailTotalPages(Jsoup.parse("<div>Объем: 900 тыс. знаков</div>")));
+        assertEquals(0, LitresPageParser.detailTotalPages(Jsoup.parse("<div>Аннотация</div>")));
+    }
+
+    private static StreamParser streamParser(String html) {
+        return new StreamParser(Parser.htmlParser()).parse(html, "https://www.litres.ru/");
+    }
+
+    private static final class CountingReader extends FilterReader {
+        private long read;
+
+        private CountingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            read += Math.max(0, count);
+            return count;
+        }
+    }
+}
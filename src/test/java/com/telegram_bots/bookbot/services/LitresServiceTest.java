@@ -1,10 +1,12 @@
 package com.telegram_bots.bookbot.services;
 
 import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.model.dto.SearchResult;
+import com.telegram_bots.bookbot.service.LitresHttpClient;
 import com.telegram_bots.bookbot.service.LitresService;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import com.telegram_bots.bookbot.utils.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.jsoup.Jsoup;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -12,42 +14,52 @@ import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 public class LitresServiceTest {
-    @Mock
-    private Document documentMock;
+    private LitresService litresService;
 
-    @Mock
-    private Element bookElementMock;
+    private final AtomicLong ticker = new AtomicLong();
 
-    private LitresService litresService;
+    private final LitresHttpClient httpClient = new LitresHttpClient("http://127.0.0.1:1", "jsoup", 1000, 1000, 1);
+
+    private static final String SEARCH_PAGE = """
+            <div class="art-item">
+              <div class="art-item__name"><a>Мастер и Маргарита</a></div>
+              <div class="art-item__author"><a>Михаил Булгаков</a></div>
+              <div class="art-item__annotation">Объем: 900 тыс. знаков</div>
+            </div>
+            """;
 
     @BeforeEach
     void setUp() {
-        litresService = Mockito.spy(new LitresService());
+        litresService = Mockito.spy(new LitresService(httpClient, 100, Duration.ofMinutes(60), Duration.ZERO,
+                ticker::get, new SimpleMeterRegistry()));
     }
 
     @Test
     void testSearchBooks_Success() throws IOException {
-        when(documentMock.select(".art-item")).thenReturn(new Elements(bookElementMock));
-
-        Element titleElement = mock(Element.class);
-        when(titleElement.text()).thenReturn("Book Title");
-
-        Element authorElement = mock(Element.class);
-        when(authorElement.text()).thenReturn("Author Name");
-
-        when(bookElementMock.select(".art-item__name a")).thenReturn(new Elements(titleElement));
-        when(bookElementMock.select(".art-item__author a")).thenReturn(new Elements(authorElement));
-
-        doReturn(documentMock).when(litresService).fetchDocument(anyString());
+        doReturn(Jsoup.parse("""
+                <div class="art-item">
+                  <div class="art-item__name"><a>Book Title</a></div>
+                  <div class="art-item__author"><a>Author Name</a></div>
+                </div>
+                """)).when(litresService).fetchDocument(anyString());
 
         List<LitresBookDto> books = litresService.searchBooks("some query");
 
@@ -58,18 +70,12 @@ public class LitresServiceTest {
 
     @Test
     void testSearchBooks_EmptyTitle() throws IOException {
-        when(documentMock.select(".art-item")).thenReturn(new Elements(bookElementMock));
-
-        Element titleElement = mock(Element.class);
-        when(titleElement.text()).thenReturn("");
-
-        Element authorElement = mock(Element.class);
-        when(authorElement.text()).thenReturn("Author Name");
-
-        when(bookElementMock.select(".art-item__name a")).thenReturn(new Elements(titleElement));
-        when(bookElementMock.select(".art-item__author a")).thenReturn(new Elements(authorElement));
-
-        doReturn(documentMock).when(litresService).fetchDocument(anyString());
+        doReturn(Jsoup.parse("""
+                <div class="art-item">
+                  <div class="art-item__name"><a></a></div>
+                  <div class="art-item__author"><a>Author Name</a></div>
+                </div>
+                """)).when(litresService).fetchDocument(anyString());
 
         List<LitresBookDto> books = litresService.searchBooks("some query");
 
@@ -84,4 +90,118 @@ public class LitresServiceTest {
 
         assertTrue(books.isEmpty());
     }
+
+    @Test
+    void testSearchBooks_CachedByNormalizedQuery() throws IOException {
+        doReturn(Jsoup.parse(SEARCH_PAGE)).when(litresService).fetchDocument(anyString());
+
+        List<LitresBookDto> first = litresService.searchBooks("Мастер и Маргарита");
+        List<LitresBookDto> second = litresService.searchBooks("  мастер, и МАРГАРИТА! ");
+
+        assertEquals(1, first.size());
+        assertEquals(500, first.get(0).getTotalPages());
+        assertEquals(first, second);
+        verify(litresService, times(1)).fetchDocument(anyString());
+    }
+
+    @Test
+    void testSearchBooks_ErrorIsNotCached() throws IOException {
+        doThrow(new IOException("Network error"))
+                .doReturn(Jsoup.parse(SEARCH_PAGE))
+                .when(litresService).fetchDocument(anyString());
+
+        assertTrue(litresService.searchBooks("мастер").isEmpty());
+        assertEquals(1, litresService.searchBooks("мастер").size());
+    }
+
+    @Test
+    void testSearch_OpenCircuitAnswersDegradedWithoutFetching() throws IOException {
+        CircuitBreaker breaker = new CircuitBreaker(2, Duration.ofSeconds(30), ticker::get);
+        LitresService service = Mockito.spy(new LitresService(httpClient, 100, Duration.ofMinutes(60), Duration.ZERO,
+                breaker, 0, Duration.ZERO, ticker::get, new SimpleMeterRegistry()));
+        doThrow(new IOException("Network error"))
+                .doThrow(new IOException("Network error"))
+                .doReturn(Jsoup.parse(SEARCH_PAGE))
+                .when(service).fetchDocument(anyString());
+
+        assertTrue(service.search("мастер").degraded());
+        assertTrue(service.search("мастер").degraded());
+        assertEquals(CircuitBreaker.State.OPEN, service.getCircuitState());
+
+        SearchResult rejected = service.search("мастер");
+        assertTrue(rejected.degraded());
+        verify(service, times(2)).fetchDocument(anyString());
+
+        // после паузы пробный запрос проходит и замыкает цепь
+        ticker.addAndGet(Duration.ofSeconds(31).toNanos());
+        SearchResult recovered = service.search("мастер");
+        assertFalse(recovered.degraded());
+        assertEquals(1, recovered.books().size());
+        assertEquals(CircuitBreaker.State.CLOSED, service.getCircuitState());
+    }
+
+    @Test
+    void testSearchBooks_ExpiredEntryIsFetchedAgain() throws IOException {
+        doReturn(Jsoup.parse(SEARCH_PAGE)).when(litresService).fetchDocument(anyString());
+
+        litresService.searchBooks("мастер");
+        ticker.addAndGet(Duration.ofMinutes(61).toNanos());
+        litresService.searchBooks("мастер");
+
+        verify(litresService, times(2)).fetchDocument(anyString());
+    }
+
+    @Test
+    void testSearchBooks_StaleWhileRevalidate() throws IOException {
+        LitresService swr = Mockito.spy(new LitresService(httpClient, 100, Duration.ofMinutes(60), Duration.ofMinutes(5),
+                ticker::get, new SimpleMeterRegistry()));
+        doReturn(Jsoup.parse(SEARCH_PAGE)).when(swr).fetchDocument(anyString());
+
+        swr.searchBooks("мастер");
+        ticker.addAndGet(Duration.ofMinutes(6).toNanos());
+
+        // устаревший результат отдаётся сразу, а обновление уходит в фон
+        assertEquals(1, swr.searchBooks("мастер").size());
+        verify(swr, timeout(2000).times(2)).fetchDocument(anyString());
+    }
+
+    @Test
+    void testSearchBooks_ConcurrentSearchesShareOneFetch() throws Exception {
+        // кэш выключен, склеивание должно работать и без него; дедлайн поиска с запасом,
+        // чтобы пока тест ждёт присоединившихся, первый поиск не завершился пустым результатом
+        LitresHttpClient patientClient = new LitresHttpClient("http://127.0.0.1:1", "jsoup", 1000, 30_000, 1);
+        LitresService uncached = Mockito.spy(new LitresService(patientClient, 0, Duration.ofMinutes(60), Duration.ZERO,
+                ticker::get, new SimpleMeterRegistry()));
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            fetching.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Jsoup.parse(SEARCH_PAGE);
+        }).when(uncached).fetchDocument(anyString());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<LitresBookDto>>> searches = new ArrayList<>();
+            searches.add(executor.submit(() -> uncached.searchBooks("Мастер и Маргарита")));
+            assertTrue(fetching.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                searches.add(executor.submit(() -> uncached.searchBooks("мастер и маргарита!")));
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (uncached.getInFlightSearches().getOrDefault("мастер и маргарита", 0) < 3) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (Future<List<LitresBookDto>> search : searches) {
+                assertEquals(1, search.get(5, TimeUnit.SECONDS).size());
+            }
+            verify(uncached, times(1)).fetchDocument(anyString());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,246 @@
+package com.telegram_bots.bookbot.services;
+
+import com.telegram_bots.bookbot.model.dto.Statistics;
+import com.telegram_bots.bookbot.model.entities.Book;
+import com.telegram_bots.bookbot.model.entities.UserReadingStats;
+import com.telegram_bots.bookbot.repository.BookRepository;
+import com.telegram_bots.bookbot.repository.UserReadingStatsRepository;
+import com.telegram_bots.bookbot.service.ReadingStatsService;
+import com.telegram_bots.bookbot.service.ReadingStatsService.Contribution;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReadingStatsServiceTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 5, 15);
+    private static final Long CHAT_ID = 7L;
+
+    @Mock
+    private UserReadingStatsRepository statsRepository;
+
+    @Mock
+    private BookRepository bookRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ReadingStatsService statsService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        Clock clock = Clock.fixed(TODAY.atTime(12, 0).toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        statsService = new ReadingStatsService(statsRepository, bookRepository, 10, false, "aggregate", clock,
+                TransactionOperations.withoutTransaction(), meterRegistry);
+        lenient().when(statsRepository.save(any(UserReadingStats.class))).thenAnswer(inv -> inv.getArgument(0));
+    }
+
+    private static Book finished(long id, String title, LocalDate finishDate, Integer pages) {
+        return Book.builder().id(id).title(title).finishDate(finishDate).currentPage(pages).build();
+    }
+
+    private static UserReadingStats aggregate() {
+        return UserReadingStats.builder()
+                .telegramId(CHAT_ID)
+                .dayStart(TODAY)
+                .monthStart(TODAY.withDayOfMonth(1))
+                .yearStart(TODAY.withDayOfYear(1))
+                .build();
+    }
+
+    @Test
+    void testMissingAggregateIsRebuiltFromBooks() {
+        when(statsRepository.findById(CHAT_ID)).thenReturn(Optional.empty());
+        when(bookRepository.findFinishedByOwner(CHAT_ID)).thenReturn(List.of(
+                finished(1, "Сегодня", TODAY, 100),
+                finished(2, "В этом месяце", TODAY.minusDays(3), 300),
+                finished(3, "В прошлом году", TODAY.minusYears(1), 50),
+                finished(4, "Без страниц", TODAY.minusMonths(2), null)));
+
+        Statistics stats = statsService.getStatistics(CHAT_ID);
+
+        assertEquals(new Statistics(1, 100, 2, 400, 3, 400, "В этом месяце", 300), stats);
+        InOrder inOrder = inOrder(statsRepository);
+        // строка сначала вставляется без гонки на ключе, потом перезаписывается под блокировкой
+        inOrder.verify(statsRepository).insertIfAbsent(CHAT_ID);
+        inOrder.verify(statsRepository).findForUpdate(CHAT_ID);
+        inOrder.verify(statsRepository).save(argThat(saved -> saved.getTelegramId().equals(CHAT_ID)));
+    }
+
+    @Test
+    void testCountersOfPastWindowsReadAsZero() {
+        UserReadingStats stored = aggregate();
+        stored.setDayStart(TODAY.minusDays(1));
+        stored.setDayBooks(2);
+        stored.setDayPages(500);
+        stored.setMonthBooks(2);
+        stored.setMonthPages(500);
+        when(statsRepository.findById(CHAT_ID)).thenReturn(Optional.of(stored));
+
+        Statistics stats = statsService.getStatistics(CHAT_ID);
+
+        assertEquals(0, stats.todayBooks());
+        assertEquals(0, stats.todayPages());
+        assertEquals(2, stats.monthBooks());
+        assertEquals("-", stats.biggestBookTitle());
+        verifyNoInteractions(bookRepository);
+    }
+
+    @Test
+    void testFinishingBookShiftsCountersWithoutScanningBooks() {
+        UserReadingStats stored = aggregate();
+        stored.setDayStart(TODAY.minusDays(1));
+        stored.setDayBooks(1);
+        stored.setMonthBooks(1);
+        stored.setMonthPages(200);
+        stored.setBiggestBookId(5L);
+        stored.setBiggestBookTitle("Вчерашняя");
+        stored.setBiggestBookPages(200);
+        when(statsRepository.findForUpdate(CHAT_ID)).thenReturn(Optional.of(stored));
+
+        statsService.onBookChanged(CHAT_ID, null, new Contribution(9L, "Новая", TODAY, 350));
+
+        assertEquals(TODAY, stored.getDayStart());
+        assertEquals(1, stored.getDayBooks());
+        assertEquals(350, stored.getDayPages());
+        assertEquals(2, stored.getMonthBooks());
+        assertEquals(550, stored.getMonthPages());
+        assertEquals(1, stored.getYearBooks());
+        assertEquals(9L, stored.getBiggestBookId());
+        verify(bookRepository, never()).findFinishedByOwner(any());
+    }
+
+    @Test
+    void testBiggestBookIsLookedUpWhenItShrinks() {
+        UserReadingStats stored = aggregate();
+        stored.setDayBooks(2);
+        stored.setDayPages(700);
+        stored.setBiggestBookId(1L);
+        stored.setBiggestBookTitle("Толстая");
+        stored.setBiggestBookPages(500);
+        when(statsRepository.findForUpdate(CHAT_ID)).thenReturn(Optional.of(stored));
+        when(bookRepository.findBiggestFinished(eq(CHAT_ID), any(Pageable.class)))
+                .thenReturn(List.of(finished(2, "Средняя", TODAY, 200)));
+
+        statsService.onBookChanged(CHAT_ID,
+                new Contribution(1L, "Толстая", TODAY, 500), new Contribution(1L, "Толстая", TODAY, 100));
+
+        assertEquals(2, stored.getDayBooks());
+        assertEquals(300, stored.getDayPages());
+        assertEquals(2L, stored.getBiggestBookId());
+        assertEquals("Средняя", stored.getBiggestBookTitle());
+        assertEquals(200, stored.getBiggestBookPages());
+    }
+
+    @Test
+    void testUnchangedContributionDoesNotTouchAggregate() {
+        Contribution same = new Contribution(1L, "Книга", TODAY, 10);
+
+        statsService.onBookChanged(CHAT_ID, same, same);
+        statsService.onBookChanged(CHAT_ID, null, null);
+
+        verifyNoInteractions(statsRepository);
+    }
+
+    @Test
+    void testConsistencyCheckRepairsDriftedAggregate() {
+        UserReadingStats drifted = aggregate();
+        drifted.setDayBooks(5);
+        when(statsRepository.findByTelegramIdGreaterThanOrderByTelegramId(eq(Long.MIN_VALUE), any(Pageable.class)))
+                .thenReturn(List.of(drifted));
+        when(statsRepository.findForUpdate(CHAT_ID)).thenReturn(Optional.of(drifted));
+        when(bookRepository.statisticsOf(CHAT_ID, TODAY)).thenReturn(new Statistics(1, 40, 1, 40, 1, 40, "Книга", 40));
+        when(bookRepository.findFinishedByOwner(CHAT_ID)).thenReturn(List.of(finished(1, "Книга", TODAY, 40)));
+
+        int mismatches = statsService.checkConsistency();
+
+        assertEquals(1, mismatches);
+        ArgumentCaptor<UserReadingStats> saved = ArgumentCaptor.forClass(UserReadingStats.class);
+        verify(statsRepository).save(saved.capture());
+        assertEquals(1, saved.getValue().getDayBooks());
+        assertEquals(40, saved.getValue().getDayPages());
+        assertEquals(1.0, meterRegistry.counter("book.stats.mismatches").count());
+    }
+
+    @Test
+    void testConsistencyCheckLocksEachUserInOwnTransaction() {
+        AtomicInteger transactions = new AtomicInteger();
+        TransactionOperations perUser = new TransactionOperations() {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) {
+                transactions.incrementAndGet();
+                return action.doInTransaction(null);
+            }
+        };
+        Clock clock = Clock.fixed(TODAY.atTime(12, 0).toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        statsService = new ReadingStatsService(statsRepository, bookRepository, 10, false, "aggregate", clock,
+                perUser, meterRegistry);
+        UserReadingStats other = aggregate();
+        other.setTelegramId(8L);
+        when(statsRepository.findByTelegramIdGreaterThanOrderByTelegramId(eq(Long.MIN_VALUE), any(Pageable.class)))
+                .thenReturn(List.of(aggregate(), other));
+        when(statsRepository.findForUpdate(anyLong())).thenReturn(Optional.of(aggregate()));
+        when(bookRepository.statisticsOf(anyLong(), eq(TODAY))).thenReturn(new Statistics(0, 0, 0, 0, 0, 0, "-", 0));
+
+        assertEquals(0, statsService.checkConsistency());
+
+        assertEquals(2, transactions.get());
+        verify(statsRepository).findForUpdate(CHAT_ID);
+        verify(statsRepository).findForUpdate(8L);
+    }
+
+    @Test
+    void testBackfillRebuildsOwnersWithoutAggregate() {
+        when(statsRepository.findOwnersWithoutStats(any(Pageable.class)))
+                .thenReturn(List.of(CHAT_ID, 8L))
+                .thenReturn(List.of());
+        when(bookRepository.findFinishedByOwner(anyLong())).thenReturn(List.of());
+
+        assertEquals(2, statsService.backfill());
+        verify(statsRepository, times(2)).save(any(UserReadingStats.class));
+    }
+
+    @Test
+    void testConsistencyCheckLeavesMatchingAggregate() {
+        UserReadingStats stored = aggregate();
+        when(statsRepository.findByTelegramIdGreaterThanOrderByTelegramId(eq(Long.MIN_VALUE), any(Pageable.class)))
+                .thenReturn(List.of(stored));
+        when(statsRepository.findForUpdate(CHAT_ID)).thenReturn(Optional.of(stored));
+        when(bookRepository.statisticsOf(CHAT_ID, TODAY)).thenReturn(new Statistics(0, 0, 0, 0, 0, 0, "-", 0));
+
+        assertEquals(0, statsService.checkConsistency());
+        verify(statsRepository, never()).save(any());
+        verify(bookRepository, never()).findFinishedByOwner(any());
+    }
+
+    @Test
+    void testQuerySourceAnswersFromAggregateQuery() {
+        Clock clock = Clock.fixed(TODAY.atTime(12, 0).toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+        statsService = new ReadingStatsService(statsRepository, bookRepository, 10, false, "query", clock,
+                TransactionOperations.withoutTransaction(), meterRegistry);
+        Statistics expected = new Statistics(1, 10, 2, 20, 3, 30, "Книга", 15);
+        when(bookRepository.statisticsOf(CHAT_ID, TODAY)).thenReturn(expected);
+
+        assertEquals(expected, statsService.getStatistics(CHAT_ID));
+        verify(statsRepository, never()).findById(any());
+    }
+}
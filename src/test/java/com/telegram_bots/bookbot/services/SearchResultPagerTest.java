@@ -0,0 +1,161 @@
+package com.telegram_bots.bookbot.services;
+
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.model.dto.SearchResult;
+import com.telegram_bots.bookbot.service.BookSearchService;
+import com.telegram_bots.bookbot.service.SearchResultPager;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SearchResultPagerTest {
+
+    @Mock
+    private BookSearchService bookSearchService;
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = nanos::get;
+
+    private SimpleMeterRegistry meterRegistry;
+    private SearchResultPager pager;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        pager = new SearchResultPager(bookSearchService, Duration.ofMinutes(30), 100, 1, ticker, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pager.shutdown();
+    }
+
+    @Test
+    void testNextPageIsPrefetchedAfterFirst() {
+        when(bookSearchService.search("булгаков", 2)).thenReturn(SearchResult.of(books(0, 2)));
+        when(bookSearchService.searchMore("булгаков", 4)).thenReturn(SearchResult.of(books(0, 4)));
+        when(bookSearchService.searchMore("Булгаков!", 6)).thenReturn(SearchResult.of(books(0, 5)));
+
+        SearchResultPager.Page first = pager.first("булгаков", 2);
+
+        assertEquals(books(0, 2), first.books());
+        assertTrue(first.hasMore());
+        verify(bookSearchService, timeout(2000)).searchMore("булгаков", 4);
+
+        SearchResultPager.Page second = pager.page("Булгаков!", 1, 2);
+        assertEquals(books(2, 4), second.books());
+        assertEquals(2, second.offset());
+        // показ второй страницы сразу заказывает третью
+        verify(bookSearchService, timeout(2000)).searchMore("Булгаков!", 6);
+        assertEquals(2, meterRegistry.counter("book.search.pages.prefetched").count());
+    }
+
+    @Test
+    void testNewBooksAreAppendedWithoutDuplicatesAndShortPageEndsSearch() {
+        when(bookSearchService.search("булгаков", 2)).thenReturn(SearchResult.of(books(0, 2)));
+        // источник вернул меньше, чем просили: выдача закончилась
+        when(bookSearchService.searchMore("булгаков", 4)).thenReturn(SearchResult.of(List.of(
+                book(1), book(0), book(2))));
+
+        pager.first("булгаков", 2);
+        SearchResultPager.Page second = pager.page("булгаков", 1, 2);
+
+        assertEquals(List.of(book(2)), second.books());
+        assertFalse(second.hasMore());
+        assertEquals(book(2), pager.book("булгаков", 2, key(2)).orElseThrow());
+        assertTrue(pager.book("булгаков", 3, key(3)).isEmpty());
+        verify(bookSearchService, times(1)).searchMore("булгаков", 4);
+    }
+
+    @Test
+    void testShortFirstPageHasNoMore() {
+        when(bookSearchService.search("булгаков", 5)).thenReturn(SearchResult.of(books(0, 2)));
+
+        SearchResultPager.Page first = pager.first("булгаков", 5);
+
+        assertFalse(first.hasMore());
+        assertEquals(book(1), pager.book("булгаков", 1, key(1)).orElseThrow());
+        verify(bookSearchService, never()).searchMore(anyString(), anyInt());
+    }
+
+    @Test
+    void testDegradedResultsCanBeSelectedButAreSearchedAgain() {
+        when(bookSearchService.search("булгаков", 2))
+                .thenReturn(SearchResult.degraded(books(0, 1)))
+                .thenReturn(SearchResult.of(books(5, 7)));
+
+        SearchResultPager.Page offline = pager.first("булгаков", 2);
+        assertTrue(offline.degraded());
+        assertFalse(offline.hasMore());
+        assertEquals(book(0), pager.book("булгаков", 0, key(0)).orElseThrow());
+
+        SearchResultPager.Page online = pager.first("булгаков", 2);
+        assertFalse(online.degraded());
+        assertEquals(books(5, 7), online.books());
+    }
+
+    @Test
+    void testResultsExpireAfterFirstSearchEvenWhenPaged() {
+        when(bookSearchService.search("булгаков", 2))
+                .thenReturn(SearchResult.of(books(0, 2)))
+                .thenReturn(SearchResult.of(books(5, 7)));
+        when(bookSearchService.searchMore("булгаков", 4)).thenReturn(SearchResult.of(books(0, 3)));
+
+        pager.first("булгаков", 2);
+        nanos.addAndGet(Duration.ofMinutes(20).toNanos());
+        // догрузка страницы и выбор книги не продлевают срок выдачи
+        assertEquals(List.of(book(2)), pager.page("булгаков", 1, 2).books());
+        assertEquals(book(0), pager.book("булгаков", 0, key(0)).orElseThrow());
+        nanos.addAndGet(Duration.ofMinutes(11).toNanos());
+
+        assertTrue(pager.book("булгаков", 0, key(0)).isEmpty());
+        assertEquals(books(5, 7), pager.first("булгаков", 2).books());
+        verify(bookSearchService, times(2)).search("булгаков", 2);
+    }
+
+    @Test
+    void testExpiredResultsAreNotRebuiltOnSelection() {
+        assertTrue(pager.book("булгаков", 1, key(1)).isEmpty());
+        verifyNoInteractions(bookSearchService);
+    }
+
+    @Test
+    void testSelectionFollowsBookKeyWhenResultsChanged() {
+        when(bookSearchService.search("булгаков", 2))
+                .thenReturn(SearchResult.degraded(books(0, 2)))
+                .thenReturn(SearchResult.of(List.of(book(7), book(1))));
+
+        pager.first("булгаков", 2);
+        // другой пользователь искал то же самое, выдача заменилась, книга 1 сменила номер
+        pager.first("булгаков", 2);
+
+        assertEquals(book(1), pager.book("булгаков", 0, key(1)).orElseThrow());
+        assertTrue(pager.book("булгаков", 0, key(0)).isEmpty());
+    }
+
+    private static List<LitresBookDto> books(int from, int to) {
+        return IntStream.range(from, to).mapToObj(SearchResultPagerTest::book).toList();
+    }
+
+    private static long key(int number) {
+        return SearchResultPager.selectionKey(book(number));
+    }
+
+    private static LitresBookDto book(int number) {
+        return new LitresBookDto("Книга " + number, "Михаил Булгаков", 100 + number);
+    }
+}
@@ -0,0 +1,73 @@
+package com.telegram_bots.bookbot.services;
+
+import com.telegram_bots.bookbot.model.entities.User;
+import com.telegram_bots.bookbot.repository.UserRepository;
+import com.telegram_bots.bookbot.service.UserResolver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserResolverTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private UserResolver userResolver;
+
+    @BeforeEach
+    void setUp() {
+        userResolver = new UserResolver(userRepository, 100, 24, 30, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testKnownUserIsReadFromDatabaseOnce() {
+        User user = User.builder().id(UUID.randomUUID()).telegramId(1L).build();
+        when(userRepository.findByTelegramId(1L)).thenReturn(Optional.of(user));
+
+        assertSame(user, userResolver.find(1L).orElseThrow());
+        assertSame(user, userResolver.getOrCreate(1L));
+
+        verify(userRepository, times(1)).findByTelegramId(1L);
+        verify(userRepository, never()).upsertByTelegramId(any());
+    }
+
+    @Test
+    void testMissingUserIsCachedUntilCreated() {
+        when(userRepository.findByTelegramId(2L)).thenReturn(Optional.empty());
+        when(userRepository.upsertByTelegramId(2L))
+                .thenReturn(User.builder().id(UUID.randomUUID()).telegramId(2L).build());
+
+        assertTrue(userResolver.find(2L).isEmpty());
+        assertTrue(userResolver.find(2L).isEmpty());
+        User created = userResolver.getOrCreate(2L);
+
+        assertEquals(2L, created.getTelegramId());
+        assertSame(created, userResolver.find(2L).orElseThrow());
+        verify(userRepository, times(1)).findByTelegramId(2L);
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    void testCreationOnColdCacheIsSingleUpsert() {
+        User existing = User.builder().id(UUID.randomUUID()).telegramId(3L).build();
+        when(userRepository.upsertByTelegramId(3L)).thenReturn(existing);
+
+        assertSame(existing, userResolver.getOrCreate(3L));
+        assertSame(existing, userResolver.getOrCreate(3L));
+        assertSame(existing, userResolver.find(3L).orElseThrow());
+
+        verify(userRepository, times(1)).upsertByTelegramId(3L);
+        verify(userRepository, never()).findByTelegramId(any());
+    }
+}
@@ -0,0 +1,110 @@
+package com.telegram_bots.bookbot.services.search;
+
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.model.dto.SearchResult;
+import com.telegram_bots.bookbot.service.LitresService;
+import com.telegram_bots.bookbot.service.search.LitresSearchProvider;
+import com.telegram_bots.bookbot.service.search.SearchFanOut;
+import com.telegram_bots.bookbot.service.search.SearchProvider;
+import com.telegram_bots.bookbot.support.FixtureSearchProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SearchFanOutTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final LitresBookDto master = new LitresBookDto("Мастер и Маргарита", "Михаил Булгаков", 500);
+    private final LitresBookDto heart = new LitresBookDto("Собачье сердце", "Михаил Булгаков", 120);
+
+    @Test
+    void testResultsOfAllProvidersAreMerged() {
+        FixtureSearchProvider first = new FixtureSearchProvider("first").with("булгаков", master);
+        FixtureSearchProvider second = new FixtureSearchProvider("second").with("Булгаков", heart, master);
+
+        SearchResult result = fanOut(1000, first, second).search("булгаков");
+
+        assertFalse(result.degraded());
+        assertEquals(List.of(master, heart), result.books());
+    }
+
+    @Test
+    void testSlowProviderDoesNotDelayAnswer() {
+        FixtureSearchProvider fast = new FixtureSearchProvider("fast").with("булгаков", heart);
+        FixtureSearchProvider slow = new FixtureSearchProvider("slow").with("булгаков", master)
+                .delayedBy(Duration.ofSeconds(5));
+
+        long startedAt = System.nanoTime();
+        SearchResult result = fanOut(200, fast, slow).search("булгаков");
+        long elapsedMillis = (System.nanoTime() - startedAt) / 1_000_000;
+
+        assertEquals(List.of(heart), result.books());
+        assertFalse(result.degraded());
+        assertTrue(elapsedMillis < 2000, "ждали " + elapsedMillis + " мс");
+        assertEquals(1, meterRegistry.counter("book.search.provider.timeouts", "provider", "slow").count());
+    }
+
+    @Test
+    void testProviderDeadlineOverridesDefault() {
+        FixtureSearchProvider patient = new FixtureSearchProvider("patient").with("булгаков", master)
+                .delayedBy(Duration.ofMillis(300))
+                .withDeadline(Duration.ofSeconds(3));
+
+        assertEquals(List.of(master), fanOut(50, patient).search("булгаков").books());
+    }
+
+    @Test
+    void testFailedProviderIsSkipped() {
+        FixtureSearchProvider broken = new FixtureSearchProvider("broken").failingWith(new IllegalStateException("boom"));
+        FixtureSearchProvider working = new FixtureSearchProvider("working").with("булгаков", heart);
+
+        SearchResult result = fanOut(1000, broken, working).search("булгаков");
+
+        assertEquals(List.of(heart), result.books());
+        assertFalse(result.degraded());
+        assertEquals(1, meterRegistry.counter("book.search.provider.failures", "provider", "broken").count());
+    }
+
+    @Test
+    void testDegradedWhenNoProviderAnswered() {
+        FixtureSearchProvider down = new FixtureSearchProvider("down").unavailable();
+        FixtureSearchProvider slow = new FixtureSearchProvider("slow").with("булгаков", master)
+                .delayedBy(Duration.ofSeconds(5));
+
+        SearchResult result = fanOut(100, down, slow).search("булгаков");
+
+        assertTrue(result.degraded());
+        assertTrue(result.books().isEmpty());
+    }
+
+    @Test
+    void testSingleProviderIsAwaitedPastDefaultDeadline() {
+        FixtureSearchProvider only = new FixtureSearchProvider("only").with("булгаков", master)
+                .delayedBy(Duration.ofMillis(300));
+
+        SearchResult result = fanOut(50, only).search("булгаков");
+
+        assertFalse(result.degraded());
+        assertEquals(List.of(master), result.books());
+        assertEquals(0, meterRegistry.counter("book.search.provider.timeouts", "provider", "only").count());
+    }
+
+    @Test
+    void testLitresDeadlineFollowsRequestTimeout() {
+        LitresService litresService = mock(LitresService.class);
+        when(litresService.getRequestTimeout()).thenReturn(Duration.ofSeconds(10));
+
+        assertTrue(new LitresSearchProvider(litresService, 0).deadline().compareTo(Duration.ofSeconds(10)) >= 0);
+        assertEquals(Duration.ofSeconds(2), new LitresSearchProvider(litresService, 2000).deadline());
+    }
+
+    private SearchFanOut fanOut(long deadlineMillis, SearchProvider... providers) {
+        return new SearchFanOut(List.of(providers), deadlineMillis, meterRegistry);
+    }
+}
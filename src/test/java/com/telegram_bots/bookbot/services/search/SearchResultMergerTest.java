@@ -0,0 +1,51 @@
+package com.telegram_bots.bookbot.services.search;
+
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.service.search.SearchResultMerger;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchResultMergerTest {
+
+    private final LitresBookDto master = new LitresBookDto("Мастер и Маргарита", "Михаил Булгаков", 0);
+    private final LitresBookDto heart = new LitresBookDto("Собачье сердце", "Михаил Булгаков", 120);
+    private final LitresBookDto guard = new LitresBookDto("Белая гвардия", "Михаил Булгаков", 400);
+
+    @Test
+    void testFirstProviderOrderKeptForSingleRanking() {
+        assertEquals(List.of(master, heart), SearchResultMerger.merge(List.of(List.of(master, heart))));
+    }
+
+    @Test
+    void testBookFoundByBothProvidersRanksFirstAndIsDeduplicated() {
+        LitresBookDto guardCopy = new LitresBookDto("БЕЛАЯ  гвардия!", "михаил булгаков", 0);
+
+        List<LitresBookDto> merged = SearchResultMerger.merge(List.of(
+                List.of(master, guard),
+                List.of(heart, guardCopy)));
+
+        assertEquals(List.of("Белая гвардия", "Мастер и Маргарита", "Собачье сердце"),
+                merged.stream().map(LitresBookDto::getTitle).toList());
+    }
+
+    @Test
+    void testMissingPagesAreTakenFromDuplicate() {
+        LitresBookDto masterWithPages = new LitresBookDto("Мастер и Маргарита", "Михаил Булгаков", 500);
+
+        List<LitresBookDto> merged = SearchResultMerger.merge(List.of(List.of(master), List.of(masterWithPages)));
+
+        assertEquals(1, merged.size());
+        assertEquals(500, merged.get(0).getTotalPages());
+        assertEquals(0, master.getTotalPages());
+    }
+
+    @Test
+    void testBooksWithoutTitleAreDropped() {
+        List<LitresBookDto> merged = SearchResultMerger.merge(List.of(List.of(new LitresBookDto("", "Автор"), heart)));
+
+        assertEquals(List.of(heart), merged);
+    }
+}
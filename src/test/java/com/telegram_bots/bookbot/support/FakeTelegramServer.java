@@ -0,0 +1,75 @@
+package com.telegram_bots.bookbot.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Локальная замена api.telegram.org для офлайн-тестов.
+ * Принимает любые вызовы Bot API, запоминает их и отвечает успешным результатом.
+ */
+public class FakeTelegramServer implements AutoCloseable {
+
+    public record ApiCall(String method, String body) {
+    }
+
+    private final HttpServer server;
+    private final BlockingQueue<ApiCall> calls = new LinkedBlockingQueue<>();
+
+    public FakeTelegramServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Значение для bot.api.base-url, токен бота дописывается к нему библиотекой.
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/bot";
+    }
+
+    public ApiCall awaitCall(String method, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        ApiCall call;
+        while ((call = calls.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) != null) {
+            if (call.method().equals(method)) {
+                return call;
+            }
+        }
+        return null;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = path.substring(path.lastIndexOf('/') + 1);
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        calls.add(new ApiCall(method, body));
+
+        byte[] response = ("{\"ok\":true,\"result\":" + resultFor(method) + "}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    private static String resultFor(String method) {
+        if (method.startsWith("send") || method.startsWith("edit")) {
+            return "{\"message_id\":1,\"date\":0,\"chat\":{\"id\":1,\"type\":\"private\"}}";
+        }
+        return "true";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
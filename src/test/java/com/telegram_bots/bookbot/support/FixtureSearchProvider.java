@@ -0,0 +1,85 @@
+package com.telegram_bots.bookbot.support;
+
+import com.telegram_bots.bookbot.model.dto.LitresBookDto;
+import com.telegram_bots.bookbot.model.dto.SearchResult;
+import com.telegram_bots.bookbot.service.search.SearchProvider;
+import com.telegram_bots.bookbot.utils.SearchQueryNormalizer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Провайдер поиска с заранее заданными выдачами для офлайн-тестов.
+ * Запрос сопоставляется с фикстурой после нормализации, умеет отвечать с задержкой и падать.
+ */
+public class FixtureSearchProvider implements SearchProvider {
+
+    private final String name;
+    private final Map<String, List<LitresBookDto>> fixtures = new HashMap<>();
+    private final AtomicInteger calls = new AtomicInteger();
+    private Duration delay = Duration.ZERO;
+    private Duration deadline;
+    private RuntimeException failure;
+    private boolean degraded;
+
+    public FixtureSearchProvider(String name) {
+        this.name = name;
+    }
+
+    public FixtureSearchProvider with(String query, LitresBookDto... books) {
+        fixtures.put(SearchQueryNormalizer.normalize(query), List.of(books));
+        return this;
+    }
+
+    public FixtureSearchProvider delayedBy(Duration delay) {
+        this.delay = delay;
+        return this;
+    }
+
+    public FixtureSearchProvider withDeadline(Duration deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    public FixtureSearchProvider failingWith(RuntimeException failure) {
+        this.failure = failure;
+        return this;
+    }
+
+    public FixtureSearchProvider unavailable() {
+        this.degraded = true;
+        return this;
+    }
+
+    public int getCalls() {
+        return calls.get();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public CompletableFuture<SearchResult> searchAsync(String query) {
+        calls.incrementAndGet();
+        List<LitresBookDto> books = new ArrayList<>(fixtures.getOrDefault(SearchQueryNormalizer.normalize(query), List.of()));
+        return CompletableFuture.supplyAsync(() -> {
+            if (failure != null) {
+                throw failure;
+            }
+            return degraded ? SearchResult.degraded(List.of()) : SearchResult.of(books);
+        }, CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public Duration deadline() {
+        return deadline;
+    }
+}
@@ -0,0 +1,102 @@
+package com.telegram_bots.bookbot.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgingTest {
+
+    private final LatencyTracker tracker = new LatencyTracker(100);
+    private final AtomicInteger hedges = new AtomicInteger();
+    private final Hedging hedging = new Hedging(tracker, 90, Duration.ofMillis(20), hedges::incrementAndGet);
+
+    @Test
+    void testPercentile() {
+        assertEquals(-1, tracker.percentile(50));
+        for (int i = 1; i <= 100; i++) {
+            tracker.record(i);
+        }
+        assertEquals(50, tracker.percentile(50));
+        assertEquals(99, tracker.percentile(99));
+        assertEquals(100, tracker.percentile(100));
+    }
+
+    @Test
+    void testNoHedgeUntilEnoughSamples() throws Exception {
+        assertEquals(-1, hedging.hedgeDelayNanos());
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<String> result = hedging.execute(() -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture("ok");
+        });
+
+        assertEquals("ok", result.get(1, TimeUnit.SECONDS));
+        assertEquals(1, attempts.get());
+        assertEquals(0, hedges.get());
+    }
+
+    @Test
+    void testSlowFirstAttemptIsHedged() throws Exception {
+        warmUp();
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<String> stuck = new CompletableFuture<>();
+
+        CompletableFuture<String> result = hedging.execute(() ->
+                attempts.incrementAndGet() == 1 ? stuck : CompletableFuture.completedFuture("second"));
+
+        assertEquals("second", result.get(2, TimeUnit.SECONDS));
+        assertEquals(2, attempts.get());
+        assertEquals(1, hedges.get());
+    }
+
+    @Test
+    void testNoHedgeWhenNotAllowed() throws Exception {
+        warmUp();
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<String> slow = new CompletableFuture<>();
+
+        CompletableFuture<String> result = hedging.execute(() -> {
+            attempts.incrementAndGet();
+            return slow;
+        }, () -> false);
+        Thread.sleep(100);
+        slow.complete("first");
+
+        assertEquals("first", result.get(1, TimeUnit.SECONDS));
+        assertEquals(1, attempts.get());
+        assertEquals(0, hedges.get());
+    }
+
+    @Test
+    void testFailsOnlyWhenAllAttemptsFail() throws Exception {
+        warmUp();
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<String> result = hedging.execute(() -> attempts.incrementAndGet() == 1 ? first : second);
+        second.completeExceptionally(new IllegalStateException("second"));
+        while (attempts.get() < 2) {
+            Thread.sleep(5);
+        }
+        assertFalse(result.isDone());
+
+        first.completeExceptionally(new IllegalStateException("first"));
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> result.get(2, TimeUnit.SECONDS));
+        assertEquals("first", error.getCause().getMessage());
+    }
+
+    private void warmUp() {
+        for (int i = 0; i < 20; i++) {
+            tracker.record(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.telegram_bots.bookbot.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefixIndexTest {
+
+    @Test
+    void testPrefixLookup() {
+        PrefixIndex<String> index = PrefixIndex.<String>builder(10)
+                .add("мастер и маргарита", "master", 0)
+                .add("мастерство", "craft", 0)
+                .add("мать", "mother", 0)
+                .add("собачье сердце", "heart", 0)
+                .build();
+
+        assertEquals(List.of("master", "craft"), index.search("мастер", 10));
+        assertEquals(List.of("master", "craft", "mother"), index.search("ма", 10));
+        assertEquals(List.of("master"), index.search("мастер и", 10));
+        assertEquals(List.of("heart"), index.search("собачье сердце", 10));
+        assertTrue(index.search("мастеры", 10).isEmpty());
+        assertTrue(index.search("собачье сердце!", 10).isEmpty());
+        assertEquals(4, index.search("", 10).size());
+    }
+
+    @Test
+    void testWeightOrderAndDeduplication() {
+        PrefixIndex<String> index = PrefixIndex.<String>builder(10)
+                .add("маргарита", "master", 0)
+                .add("мастер и маргарита", "master", 1)
+                .add("маргаритки", "flowers", 0)
+                .build();
+
+        assertEquals(List.of("master", "flowers"), index.search("ма", 10));
+        assertEquals(List.of("master", "flowers"), index.search("марг", 10));
+        assertEquals(List.of("master"), index.search("ма", 1));
+    }
+
+    @Test
+    void testTopKIsKeptPerNode() {
+        PrefixIndex.Builder<Integer> builder = PrefixIndex.builder(3);
+        for (int i = 0; i < 100; i++) {
+            builder.add("книга " + i, i, i);
+        }
+        PrefixIndex<Integer> index = builder.build();
+
+        assertEquals(100, index.size());
+        assertEquals(List.of(99, 98, 97), index.search("книга", 10));
+        assertEquals(List.of(19, 18, 17), index.search("книга 1", 10));
+        assertEquals(List.of(59, 58, 57), index.search("книга 5", 10));
+        assertEquals(List.of(42), index.search("книга 42", 10));
+    }
+
+    @Test
+    void testEmptyIndex() {
+        assertTrue(PrefixIndex.<String>builder(5).build().search("а", 5).isEmpty());
+        assertTrue(PrefixIndex.empty().search("", 5).isEmpty());
+    }
+
+    @Test
+    void testLookupStaysFastOnLargeIndex() {
+        PrefixIndex.Builder<Integer> builder = PrefixIndex.builder(10);
+        for (int i = 0; i < 100_000; i++) {
+            builder.add("книга номер " + i, i, 0);
+        }
+        PrefixIndex<Integer> index = builder.build();
+
+        List<Long> timings = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            long started = System.nanoTime();
+            index.search("книга номер " + (i * 37 % 1000), 10);
+            timings.add(System.nanoTime() - started);
+        }
+        timings.sort(null);
+        // с большим запасом от 5 мс, чтобы не падать на медленных машинах
+        assertTrue(timings.get(990) < TimeUnit.MILLISECONDS.toNanos(5), "p99 " + timings.get(990) + " нс");
+    }
+}
@@ -0,0 +1,30 @@
+package com.telegram_bots.bookbot.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SearchQueryNormalizerTest {
+
+    @Test
+    void testCaseAndYoAreFolded() {
+        assertEquals("еж и елка", SearchQueryNormalizer.normalize("Ёж и Ёлка"));
+    }
+
+    @Test
+    void testPunctuationAndWhitespaceCollapse() {
+        assertEquals("мастер и маргарита", SearchQueryNormalizer.normalize("  Мастер,  и\tМаргарита!!! "));
+        assertEquals("war and peace", SearchQueryNormalizer.normalize("War -- and -- Peace"));
+    }
+
+    @Test
+    void testDigitsAreKept() {
+        assertEquals("1984", SearchQueryNormalizer.normalize("«1984»"));
+    }
+
+    @Test
+    void testEmptyInput() {
+        assertEquals("", SearchQueryNormalizer.normalize(null));
+        assertEquals("", SearchQueryNormalizer.normalize(" ?! "));
+    }
+}
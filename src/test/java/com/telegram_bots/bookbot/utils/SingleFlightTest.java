@@ -0,0 +1,123 @@
+package com.telegram_bots.bookbot.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testConcurrentCallsShareOneLoad() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return "value";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        List<Future<String>> followers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            followers.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                loads.incrementAndGet();
+                return "other";
+            })));
+        }
+        waitForWaiters(5);
+        assertEquals(1, singleFlight.getInFlightCount());
+
+        release.countDown();
+        assertEquals("value", leader.get(5, TimeUnit.SECONDS));
+        for (Future<String> follower : followers) {
+            assertEquals("value", follower.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    void testFailureIsSharedAndNotRemembered() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            throw new IOException("boom");
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<String> follower = executor.submit(() -> singleFlight.execute("key", () -> "other"));
+        waitForWaiters(1);
+        release.countDown();
+
+        ExecutionException leaderError = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        ExecutionException followerError = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, leaderError.getCause());
+        assertInstanceOf(IOException.class, followerError.getCause());
+
+        assertEquals("fresh", singleFlight.execute("key", () -> "fresh"));
+    }
+
+    @Test
+    void testDifferentKeysDoNotWait() throws Exception {
+        assertEquals("a", singleFlight.execute("a", () -> "a"));
+        assertEquals("b", singleFlight.execute("b", () -> "b"));
+    }
+
+    @Test
+    void testAsyncAndSyncCallersShareOneLoad() throws Exception {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        CompletableFuture<String> leader = singleFlight.executeAsync("key", () -> {
+            loads.incrementAndGet();
+            return pending;
+        });
+        CompletableFuture<String> asyncFollower = singleFlight.executeAsync("key", () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        Future<String> syncFollower = executor.submit(() -> singleFlight.execute("key", () -> "other"));
+        waitForWaiters(2);
+
+        pending.complete("value");
+        assertEquals("value", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("value", asyncFollower.get(5, TimeUnit.SECONDS));
+        assertEquals("value", syncFollower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    private void waitForWaiters(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.getWaiterCounts().getOrDefault("key", 0) < expected) {
+            assertTrue(System.nanoTime() < deadline, "не дождались ожидающих");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.telegram_bots.bookbot.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrigramIndexTest {
+
+    private final TrigramIndex index = new TrigramIndex();
+
+    @Test
+    void testTrigramsArePaddedAndUnique() {
+        // "  да", " да", "да ", а для "аа" повторов нет
+        assertEquals(3, TrigramIndex.trigrams("да").length);
+        assertEquals(3, TrigramIndex.trigrams("да да").length);
+        assertEquals(0, TrigramIndex.trigrams("").length);
+    }
+
+    @Test
+    void testExactTitleScoresHighest() {
+        index.add("мастер и маргарита");
+        index.add("собачье сердце");
+        index.add("мастер");
+
+        List<TrigramIndex.Match> matches = index.search("мастер и маргарита", 0.1, 10);
+
+        assertEquals(0, matches.get(0).document());
+        assertEquals(1.0, matches.get(0).score(), 1e-9);
+        assertTrue(matches.stream().noneMatch(match -> match.document() == 1));
+    }
+
+    @Test
+    void testTyposStillMatch() {
+        index.add("преступление и наказание");
+
+        List<TrigramIndex.Match> matches = index.search("преступленье и наказанье", 0.5, 10);
+
+        assertEquals(1, matches.size());
+        assertTrue(matches.get(0).score() < 1.0);
+    }
+
+    @Test
+    void testMinScoreAndLimit() {
+        for (int i = 0; i < 50; i++) {
+            index.add("книга " + i);
+        }
+
+        assertEquals(5, index.search("книга", 0.1, 5).size());
+        assertTrue(index.search("книга", 0.99, 5).isEmpty());
+        assertTrue(index.search("", 0.1, 5).isEmpty());
+    }
+}